@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.swing;
+
+import java.io.File;
+
+import org.mapsforge.core.graphics.GraphicFactory;
+import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.map.awt.AwtGraphicFactory;
+import org.mapsforge.map.layer.cache.FileSystemTileCache;
+import org.mapsforge.map.layer.renderer.RenderStatistics;
+import org.mapsforge.map.layer.renderer.TileBatchRenderer;
+import org.mapsforge.map.model.DisplayModel;
+import org.mapsforge.map.reader.MapFile;
+import org.mapsforge.map.reader.ReadBuffer;
+import org.mapsforge.map.rendertheme.InternalRenderTheme;
+
+/**
+ * Pre-renders the tiles of a map file into a persistent {@link FileSystemTileCache} without opening a window.
+ */
+public final class BatchRenderer {
+	private static final GraphicFactory GRAPHIC_FACTORY = AwtGraphicFactory.INSTANCE;
+
+	/**
+	 * Starts the {@code BatchRenderer}.
+	 * 
+	 * @param args
+	 *            command line args: expects the map file, the cache directory, the first and the last zoom level and
+	 *            optionally the bounding box to render as minLat,minLon,maxLat,maxLon. Without a bounding box, the
+	 *            whole map file is rendered.
+	 * @throws InterruptedException
+	 *             if the rendering thread has been interrupted.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 4 || args.length > 5) {
+			throw new IllegalArgumentException(
+					"usage: <mapFile> <cacheDirectory> <zoomLevelMin> <zoomLevelMax> [<minLat,minLon,maxLat,maxLon>]");
+		}
+		File file = getMapFile(args[0]);
+		File cacheDirectory = new File(args[1]);
+		byte zoomLevelMin = Byte.parseByte(args[2]);
+		byte zoomLevelMax = Byte.parseByte(args[3]);
+
+		System.setProperty("java.awt.headless", "true");
+		// Increase read buffer limit
+		ReadBuffer.setMaximumBufferSize(6500000);
+
+		MapFile mapFile = new MapFile(file);
+		BoundingBox boundingBox = args.length == 5 ? BoundingBox.fromString(args[4]) : mapFile.boundingBox();
+		DisplayModel displayModel = new DisplayModel();
+
+		// the cache must be able to hold all tiles, tiles are written synchronously so that every rendering thread
+		// compresses its own tiles
+		long tileCount = TileBatchRenderer.getTileCount(boundingBox, zoomLevelMin, zoomLevelMax,
+				displayModel.getTileSize());
+		FileSystemTileCache tileCache = new FileSystemTileCache((int) Math.min(Integer.MAX_VALUE, tileCount),
+				cacheDirectory, GRAPHIC_FACTORY, true);
+
+		TileBatchRenderer tileBatchRenderer = new TileBatchRenderer(mapFile, tileCache, InternalRenderTheme.OSMARENDER,
+				displayModel, GRAPHIC_FACTORY);
+		try {
+			RenderStatistics renderStatistics = tileBatchRenderer.render(boundingBox, zoomLevelMin, zoomLevelMax);
+			System.out.println(renderStatistics);
+		} finally {
+			tileBatchRenderer.destroy();
+			tileCache.destroy();
+			mapFile.close();
+		}
+	}
+
+	private static File getMapFile(String fileName) {
+		File mapFile = new File(fileName);
+		if (!mapFile.exists()) {
+			throw new IllegalArgumentException("file does not exist: " + mapFile);
+		} else if (!mapFile.isFile()) {
+			throw new IllegalArgumentException("not a file: " + mapFile);
+		} else if (!mapFile.canRead()) {
+			throw new IllegalArgumentException("cannot read file: " + mapFile);
+		}
+		return mapFile;
+	}
+
+	private BatchRenderer() {
+		throw new IllegalStateException();
+	}
+}
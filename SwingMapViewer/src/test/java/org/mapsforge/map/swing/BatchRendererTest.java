@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.swing;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchRendererTest {
+	private static void verifyInvalidArguments(String[] args) throws InterruptedException {
+		try {
+			BatchRenderer.main(args);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(true);
+		}
+	}
+
+	@Test
+	public void mainTest() throws InterruptedException {
+		String[] args = new String[] {};
+		verifyInvalidArguments(args);
+
+		args = new String[] { "file/not/found.map", "cache", "0", "10" };
+		verifyInvalidArguments(args);
+	}
+}
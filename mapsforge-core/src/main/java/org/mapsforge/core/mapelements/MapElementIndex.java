@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.core.mapelements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapsforge.core.graphics.Display;
+import org.mapsforge.core.model.Rectangle;
+
+/**
+ * A spatial index for collision tests between {@link MapElementContainer MapElementContainers}.
+ * <p>
+ * The absolute boundaries of the elements are stored in a uniform grid of square cells, so a collision test only
+ * compares an element with those elements that share a grid cell with it instead of with all indexed elements.
+ * Elements that are always drawn never clash by their boundaries and are therefore not stored in the grid.
+ * <p>
+ * Point texts also clash with equal texts nearby, even if their boundaries do not intersect or either of them is
+ * always drawn, see {@link PointTextContainer#clashesWith(MapElementContainer)}. They are additionally indexed by their
+ * text, so such duplicates are found regardless of the grid.
+ * <p>
+ * This class is not thread safe.
+ */
+public class MapElementIndex {
+	/**
+	 * Default edge length in pixels of a grid cell, in the order of the size of a typical label.
+	 */
+	public static final int DEFAULT_CELL_SIZE = 128;
+
+	private static long getKey(int cellX, int cellY) {
+		return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+	}
+
+	private final Map<Long, List<MapElementContainer>> cells;
+	private final double cellSize;
+	private final Map<String, List<PointTextContainer>> texts;
+
+	public MapElementIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize
+	 *            the edge length in pixels of a grid cell.
+	 * @throws IllegalArgumentException
+	 *             if the cell size is not positive.
+	 */
+	public MapElementIndex(int cellSize) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("cell size must be positive: " + cellSize);
+		}
+		this.cellSize = cellSize;
+		this.cells = new HashMap<Long, List<MapElementContainer>>();
+		this.texts = new HashMap<String, List<PointTextContainer>>();
+	}
+
+	/**
+	 * Adds an element to this index.
+	 *
+	 * @param mapElementContainer
+	 *            the element to add.
+	 */
+	public void add(MapElementContainer mapElementContainer) {
+		if (mapElementContainer instanceof PointTextContainer) {
+			PointTextContainer pointTextContainer = (PointTextContainer) mapElementContainer;
+			List<PointTextContainer> equalTexts = this.texts.get(pointTextContainer.text);
+			if (equalTexts == null) {
+				equalTexts = new ArrayList<PointTextContainer>(2);
+				this.texts.put(pointTextContainer.text, equalTexts);
+			}
+			equalTexts.add(pointTextContainer);
+		}
+		if (Display.ALWAYS == mapElementContainer.display) {
+			return;
+		}
+
+		Rectangle boundary = mapElementContainer.getBoundaryAbsolute();
+		int minCellX = getCell(boundary.left);
+		int maxCellX = getCell(boundary.right);
+		int minCellY = getCell(boundary.top);
+		int maxCellY = getCell(boundary.bottom);
+		for (int cellX = minCellX; cellX <= maxCellX; ++cellX) {
+			for (int cellY = minCellY; cellY <= maxCellY; ++cellY) {
+				Long key = Long.valueOf(getKey(cellX, cellY));
+				List<MapElementContainer> cell = this.cells.get(key);
+				if (cell == null) {
+					cell = new ArrayList<MapElementContainer>(4);
+					this.cells.put(key, cell);
+				}
+				cell.add(mapElementContainer);
+			}
+		}
+	}
+
+	/**
+	 * Removes all elements from this index.
+	 */
+	public void clear() {
+		this.cells.clear();
+		this.texts.clear();
+	}
+
+	/**
+	 * @param mapElementContainer
+	 *            the element to test.
+	 * @return true if the element clashes with any element in this index, false otherwise.
+	 * @see MapElementContainer#clashesWith(MapElementContainer)
+	 */
+	public boolean clashesWith(MapElementContainer mapElementContainer) {
+		if (mapElementContainer instanceof PointTextContainer) {
+			List<PointTextContainer> equalTexts = this.texts.get(((PointTextContainer) mapElementContainer).text);
+			if (equalTexts != null) {
+				for (int i = 0, n = equalTexts.size(); i < n; ++i) {
+					if (equalTexts.get(i).clashesWith(mapElementContainer)) {
+						return true;
+					}
+				}
+			}
+		}
+		if (Display.ALWAYS == mapElementContainer.display) {
+			return false;
+		}
+
+		Rectangle boundary = mapElementContainer.getBoundaryAbsolute();
+		int minCellX = getCell(boundary.left);
+		int maxCellX = getCell(boundary.right);
+		int minCellY = getCell(boundary.top);
+		int maxCellY = getCell(boundary.bottom);
+		for (int cellX = minCellX; cellX <= maxCellX; ++cellX) {
+			for (int cellY = minCellY; cellY <= maxCellY; ++cellY) {
+				List<MapElementContainer> cell = this.cells.get(Long.valueOf(getKey(cellX, cellY)));
+				if (cell == null) {
+					continue;
+				}
+				for (int i = 0, n = cell.size(); i < n; ++i) {
+					if (cell.get(i).clashesWith(mapElementContainer)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private int getCell(double pixel) {
+		return (int) Math.floor(pixel / this.cellSize);
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.core.mapelements;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.graphics.Align;
+import org.mapsforge.core.graphics.Bitmap;
+import org.mapsforge.core.graphics.Canvas;
+import org.mapsforge.core.graphics.Cap;
+import org.mapsforge.core.graphics.Color;
+import org.mapsforge.core.graphics.Display;
+import org.mapsforge.core.graphics.FontFamily;
+import org.mapsforge.core.graphics.FontStyle;
+import org.mapsforge.core.graphics.Join;
+import org.mapsforge.core.graphics.Matrix;
+import org.mapsforge.core.graphics.Paint;
+import org.mapsforge.core.graphics.Position;
+import org.mapsforge.core.graphics.Style;
+import org.mapsforge.core.model.Point;
+import org.mapsforge.core.model.Rectangle;
+
+public class MapElementIndexTest {
+	private static class DummyContainer extends MapElementContainer {
+		DummyContainer(double x, double y, double width, double height, Display display) {
+			super(new Point(x, y), display, 0);
+			this.boundary = new Rectangle(0, 0, width, height);
+		}
+
+		@Override
+		public void draw(Canvas canvas, Point origin, Matrix matrix) {
+			// do nothing
+		}
+	}
+
+	private static class DummyPaint implements Paint {
+		@Override
+		public int getTextHeight(String text) {
+			return 10;
+		}
+
+		@Override
+		public int getTextWidth(String text) {
+			return 10 * text.length();
+		}
+
+		@Override
+		public boolean isTransparent() {
+			return false;
+		}
+
+		@Override
+		public void setBitmapShader(Bitmap bitmap) {
+			// do nothing
+		}
+
+		@Override
+		public void setBitmapShaderShift(Point origin) {
+			// do nothing
+		}
+
+		@Override
+		public void setColor(Color color) {
+			// do nothing
+		}
+
+		@Override
+		public void setColor(int color) {
+			// do nothing
+		}
+
+		@Override
+		public void setDashPathEffect(float[] strokeDasharray) {
+			// do nothing
+		}
+
+		@Override
+		public void setStrokeCap(Cap cap) {
+			// do nothing
+		}
+
+		@Override
+		public void setStrokeJoin(Join join) {
+			// do nothing
+		}
+
+		@Override
+		public void setStrokeWidth(float strokeWidth) {
+			// do nothing
+		}
+
+		@Override
+		public void setStyle(Style style) {
+			// do nothing
+		}
+
+		@Override
+		public void setTextAlign(Align align) {
+			// do nothing
+		}
+
+		@Override
+		public void setTextSize(float textSize) {
+			// do nothing
+		}
+
+		@Override
+		public void setTypeface(FontFamily fontFamily, FontStyle fontStyle) {
+			// do nothing
+		}
+	}
+
+	private static class DummyTextContainer extends PointTextContainer {
+		DummyTextContainer(double x, double y, String text, Display display) {
+			super(new Point(x, y), display, 0, text, new DummyPaint(), null, null, Position.CENTER, 1000);
+			this.boundary = new Rectangle(-this.textWidth / 2d, -this.textHeight / 2d, this.textWidth / 2d,
+					this.textHeight / 2d);
+		}
+
+		@Override
+		public void draw(Canvas canvas, Point origin, Matrix matrix) {
+			// do nothing
+		}
+	}
+
+	private static MapElementContainer create(double x, double y, double width, double height) {
+		return new DummyContainer(x, y, width, height, Display.IFSPACE);
+	}
+
+	@Test
+	public void clashesWithTest() {
+		MapElementIndex mapElementIndex = new MapElementIndex(100);
+		Assert.assertFalse(mapElementIndex.clashesWith(create(0, 0, 10, 10)));
+
+		mapElementIndex.add(create(90, 90, 20, 20));
+		Assert.assertTrue(mapElementIndex.clashesWith(create(105, 105, 10, 10)));
+		Assert.assertTrue(mapElementIndex.clashesWith(create(80, 80, 15, 15)));
+		Assert.assertFalse(mapElementIndex.clashesWith(create(111, 111, 10, 10)));
+		Assert.assertFalse(mapElementIndex.clashesWith(create(50, 50, 10, 10)));
+
+		mapElementIndex.add(create(-150, -150, 500, 10));
+		Assert.assertTrue(mapElementIndex.clashesWith(create(300, -145, 10, 10)));
+		Assert.assertFalse(mapElementIndex.clashesWith(create(400, -145, 10, 10)));
+
+		Assert.assertFalse(mapElementIndex.clashesWith(new DummyContainer(95, 95, 10, 10, Display.ALWAYS)));
+		mapElementIndex.add(new DummyContainer(500, 500, 10, 10, Display.ALWAYS));
+		Assert.assertFalse(mapElementIndex.clashesWith(create(500, 500, 10, 10)));
+
+		mapElementIndex.clear();
+		Assert.assertFalse(mapElementIndex.clashesWith(create(105, 105, 10, 10)));
+	}
+
+	@Test
+	public void equalTextsTest() {
+		MapElementIndex mapElementIndex = new MapElementIndex();
+		mapElementIndex.add(new DummyTextContainer(0, 0, "Main Street", Display.IFSPACE));
+
+		// the boundaries do not intersect, but equal texts must be at least 200 pixels apart
+		Assert.assertTrue(mapElementIndex.clashesWith(new DummyTextContainer(150, 0, "Main Street", Display.IFSPACE)));
+		Assert.assertFalse(mapElementIndex.clashesWith(new DummyTextContainer(150, 0, "Side Street", Display.IFSPACE)));
+		Assert.assertFalse(mapElementIndex.clashesWith(new DummyTextContainer(250, 0, "Main Street", Display.IFSPACE)));
+
+		// a text which is always drawn still suppresses equal texts nearby
+		mapElementIndex.add(new DummyTextContainer(1000, 0, "Market", Display.ALWAYS));
+		Assert.assertTrue(mapElementIndex.clashesWith(new DummyTextContainer(1100, 0, "Market", Display.IFSPACE)));
+		Assert.assertTrue(mapElementIndex.clashesWith(new DummyTextContainer(1100, 0, "Market", Display.ALWAYS)));
+		Assert.assertFalse(mapElementIndex.clashesWith(create(995, -5, 10, 10)));
+
+		mapElementIndex.clear();
+		Assert.assertFalse(mapElementIndex.clashesWith(new DummyTextContainer(150, 0, "Main Street", Display.IFSPACE)));
+	}
+
+	@Test
+	public void constructorTest() {
+		try {
+			new MapElementIndex(0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(true);
+		}
+	}
+
+	@Test
+	public void randomTest() {
+		Random random = new Random(42);
+		List<MapElementContainer> indexed = new ArrayList<MapElementContainer>();
+		MapElementIndex mapElementIndex = new MapElementIndex();
+		for (int i = 0; i < 500; ++i) {
+			MapElementContainer element = create(random.nextInt(2000) - 1000, random.nextInt(2000) - 1000,
+					1 + random.nextInt(300), 1 + random.nextInt(50));
+
+			boolean expected = false;
+			for (MapElementContainer other : indexed) {
+				expected |= other.clashesWith(element);
+			}
+			Assert.assertEquals(expected, mapElementIndex.clashesWith(element));
+
+			indexed.add(element);
+			mapElementIndex.add(element);
+		}
+	}
+}
@@ -24,6 +24,7 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
@@ -31,6 +32,7 @@ import org.mapsforge.core.graphics.Bitmap;
 
 public class AwtBitmap implements Bitmap {
 	BufferedImage bufferedImage;
+	private final AtomicInteger refCount = new AtomicInteger();
 
 	public AwtBitmap(InputStream inputStream) throws IOException {
 		this.bufferedImage = ImageIO.read(inputStream);
@@ -58,7 +60,9 @@ public class AwtBitmap implements Bitmap {
 
 	@Override
 	public void decrementRefCount() {
-		// no-op
+		if (this.refCount.decrementAndGet() < 0) {
+			destroy();
+		}
 	}
 
 	@Override
@@ -73,11 +77,14 @@ public class AwtBitmap implements Bitmap {
 
 	@Override
 	public void incrementRefCount() {
-		// no-op
+		this.refCount.incrementAndGet();
 	}
 
 	@Override
 	public void scaleTo(int width, int height) {
+		if (getWidth() == width && getHeight() == height) {
+			return;
+		}
 		BufferedImage resizedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 		Graphics2D graphics = resizedImage.createGraphics();
 		graphics.setComposite(AlphaComposite.Src);
@@ -89,6 +96,13 @@ public class AwtBitmap implements Bitmap {
 		this.bufferedImage = resizedImage;
 	}
 
+	/**
+	 * Called when the last reference to this bitmap has been released.
+	 */
+	protected void destroy() {
+		// nothing to release, the image is reclaimed by the garbage collector
+	}
+
 	@Override
 	public void setBackgroundColor(int color) {
 		Graphics2D graphics = bufferedImage.createGraphics();
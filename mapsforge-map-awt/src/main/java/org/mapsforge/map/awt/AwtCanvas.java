@@ -128,19 +128,19 @@ class AwtCanvas implements Canvas {
 
 	@Override
 	public void drawText(String text, int x, int y, Paint paint) {
-		if (paint.isTransparent()) {
+		if (paint.isTransparent() || text.isEmpty()) {
 			return;
 		}
 
 		AwtPaint awtPaint = AwtGraphicFactory.getPaint(paint);
+		// the layout is cached per font, rotated way names reuse the layout of the unrotated text
+		TextLayout textLayout = awtPaint.textLayoutCache.getTextLayout(text);
 
 		if (awtPaint.stroke == null) {
 			this.graphics2D.setColor(awtPaint.color);
-			this.graphics2D.setFont(awtPaint.font);
-			this.graphics2D.drawString(text, x, y);
+			textLayout.draw(this.graphics2D, x, y);
 		} else {
 			setColorAndStroke(awtPaint);
-			TextLayout textLayout = new TextLayout(text, awtPaint.font, this.graphics2D.getFontRenderContext());
 			AffineTransform affineTransform = new AffineTransform();
 			affineTransform.translate(x, y);
 			this.graphics2D.draw(textLayout.getOutline(affineTransform));
@@ -167,7 +167,7 @@ public class AwtGraphicFactory implements GraphicFactory {
 
 	@Override
 	public TileBitmap createTileBitmap(InputStream inputStream, int tileSize, boolean hasAlpha) throws IOException {
-		return new AwtTileBitmap(inputStream);
+		return new AwtTileBitmap(inputStream, tileSize);
 	}
 
 	@Override
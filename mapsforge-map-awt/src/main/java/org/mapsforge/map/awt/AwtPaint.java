@@ -18,12 +18,9 @@ package org.mapsforge.map.awt;
 
 import java.awt.BasicStroke;
 import java.awt.Font;
-import java.awt.FontMetrics;
-import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.awt.TexturePaint;
-import java.awt.image.BufferedImage;
 
 import org.mapsforge.core.graphics.Align;
 import org.mapsforge.core.graphics.Bitmap;
@@ -98,6 +95,7 @@ public class AwtPaint implements Paint {
 	Font font;
 	Stroke stroke;
 	Style style;
+	TextLayoutCache textLayoutCache;
 	TexturePaint texturePaint;
 	private int cap;
 	private String fontName;
@@ -111,9 +109,6 @@ public class AwtPaint implements Paint {
 	private int shaderWidth;
 	private int shaderHeight;
 
-	// Avoid creating unnecessary objects
-	private final BufferedImage bufferedImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-
 	AwtPaint() {
 		this.cap = getCap(Cap.ROUND);
 		this.color = java.awt.Color.BLACK;
@@ -130,6 +125,7 @@ public class AwtPaint implements Paint {
 		this.stroke = ap.stroke;
 		this.fontStyle = ap.fontStyle;
 		this.font = ap.font;
+		this.textLayoutCache = ap.textLayoutCache;
 		this.fontName = ap.fontName;
 		this.strokeWidth = ap.strokeWidth;
 		this.textSize = ap.textSize;
@@ -138,18 +134,12 @@ public class AwtPaint implements Paint {
 
 	@Override
 	public int getTextHeight(String text) {
-		Graphics2D graphics2d = bufferedImage.createGraphics();
-		FontMetrics fontMetrics = graphics2d.getFontMetrics(this.font);
-		graphics2d.dispose();
-		return (int) this.font.createGlyphVector(fontMetrics.getFontRenderContext(), text).getVisualBounds().getHeight();
+		return this.textLayoutCache.getTextHeight(text);
 	}
 
 	@Override
 	public int getTextWidth(String text) {
-		Graphics2D graphics2d = bufferedImage.createGraphics();
-		FontMetrics fontMetrics = graphics2d.getFontMetrics(this.font);
-		graphics2d.dispose();
-		return fontMetrics.stringWidth(text);
+		return this.textLayoutCache.getTextWidth(text);
 	}
 
 	@Override
@@ -245,8 +235,10 @@ public class AwtPaint implements Paint {
 	private void createFont() {
 		if (this.textSize > 0) {
 			this.font = new Font(this.fontName, this.fontStyle, (int) this.textSize);
+			this.textLayoutCache = TextLayoutCache.getInstance(this.font);
 		} else {
 			this.font = null;
+			this.textLayoutCache = null;
 		}
 	}
 
@@ -25,13 +25,8 @@ import org.mapsforge.core.mapelements.SymbolContainer;
 import org.mapsforge.core.model.Point;
 import org.mapsforge.core.model.Rectangle;
 
-import java.awt.font.FontRenderContext;
-import java.awt.font.LineBreakMeasurer;
-import java.awt.font.TextAttribute;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
-import java.text.AttributedCharacterIterator;
-import java.text.AttributedString;
 
 public class AwtPointTextContainer extends PointTextContainer {
 
@@ -55,27 +50,17 @@ public class AwtPointTextContainer extends PointTextContainer {
 
 		int textWidth = this.paintFront.getTextWidth(this.text);
 		if (textWidth > maxTextWidth) {
-			AttributedString attrString = new AttributedString(this.text);
 			AwtPaint awtPaintFront = AwtGraphicFactory.getPaint(this.paintFront);
-			attrString.addAttribute(TextAttribute.FOREGROUND, awtPaintFront.color);
-			attrString.addAttribute(TextAttribute.FONT, awtPaintFront.font);
-			AttributedCharacterIterator paragraph = attrString.getIterator();
-			int paragraphStart = paragraph.getBeginIndex();
-			int paragraphEnd = paragraph.getEndIndex();
-			FontRenderContext frc = awtCanvas.getGraphicObject().getFontRenderContext();
-			LineBreakMeasurer lineMeasurer = new LineBreakMeasurer(paragraph, frc);
+			// the lines are broken once per font and text and reused for every tile the label is drawn on
+			TextLayout[] layouts = awtPaintFront.textLayoutCache.getTextLines(this.text, maxTextWidth);
 
 			float layoutHeight = 0;
-			lineMeasurer.setPosition(paragraphStart);
-			while (lineMeasurer.getPosition() < paragraphEnd) {
-				TextLayout layout = lineMeasurer.nextLayout(maxTextWidth);
+			for (TextLayout layout : layouts) {
 				layoutHeight += layout.getAscent() + layout.getDescent() + layout.getLeading();
 			}
 
 			float drawPosY = (float) pointAdjusted.y;
-			lineMeasurer.setPosition(paragraphStart);
-			while (lineMeasurer.getPosition() < paragraphEnd) {
-				TextLayout layout = lineMeasurer.nextLayout(maxTextWidth);
+			for (TextLayout layout : layouts) {
 				float posX = (float) pointAdjusted.x;
 				float posY = drawPosY;
 				if (Position.CENTER == this.position) {
@@ -111,6 +96,7 @@ public class AwtPointTextContainer extends PointTextContainer {
 					affineTransform.translate(posX, posY);
 					awtCanvas.getGraphicObject().draw(layout.getOutline(affineTransform));
 				}
+				awtCanvas.getGraphicObject().setColor(awtPaintFront.color);
 				layout.draw(awtCanvas.getGraphicObject(), posX, posY);
 				drawPosY += layout.getAscent() + layout.getDescent() + layout.getLeading();
 			}
@@ -17,23 +17,145 @@
  */
 package org.mapsforge.map.awt;
 
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
 
 import org.mapsforge.core.graphics.TileBitmap;
 
+/**
+ * A tile bitmap whose image is recycled once the last reference to it has been released.
+ * <p>
+ * Released images are kept as soft references in a pool per tile size and transparency, so the garbage collector can
+ * still reclaim them under memory pressure. New tiles, whether rendered or decoded, take their image from the pool
+ * and only allocate a new one if the pool is empty. Only images of the tile size in one of the two integer pixel
+ * formats used for tiles are pooled.
+ */
 public class AwtTileBitmap extends AwtBitmap implements TileBitmap {
+	private static final Map<Integer, Deque<SoftReference<BufferedImage>>> REUSABLE_IMAGES = new HashMap<Integer, Deque<SoftReference<BufferedImage>>>();
+
+	private static void clear(BufferedImage bufferedImage) {
+		Graphics2D graphics = bufferedImage.createGraphics();
+		graphics.setComposite(AlphaComposite.Clear);
+		graphics.fillRect(0, 0, bufferedImage.getWidth(), bufferedImage.getHeight());
+		graphics.dispose();
+	}
+
+	private static int composeHash(int tileSize, boolean isTransparent) {
+		if (isTransparent) {
+			return tileSize + 0x10000000;
+		}
+		return tileSize;
+	}
+
+	private static BufferedImage createImage(int tileSize, boolean isTransparent) {
+		BufferedImage bufferedImage = getImageFromReusableSet(tileSize, isTransparent);
+		if (bufferedImage == null) {
+			return new BufferedImage(tileSize, tileSize, getType(isTransparent));
+		}
+		clear(bufferedImage);
+		return bufferedImage;
+	}
+
+	private static BufferedImage getImageFromReusableSet(int tileSize, boolean isTransparent) {
+		synchronized (REUSABLE_IMAGES) {
+			Deque<SoftReference<BufferedImage>> images = REUSABLE_IMAGES.get(composeHash(tileSize, isTransparent));
+			if (images == null) {
+				return null;
+			}
+			while (!images.isEmpty()) {
+				BufferedImage bufferedImage = images.pop().get();
+				if (bufferedImage != null) {
+					return bufferedImage;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static int getType(boolean isTransparent) {
+		return isTransparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+	}
+
+	private static boolean isReusable(BufferedImage bufferedImage) {
+		return bufferedImage.getWidth() == bufferedImage.getHeight()
+				&& (bufferedImage.getType() == BufferedImage.TYPE_INT_ARGB || bufferedImage.getType() == BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Decodes an image, into a pooled image if the image has the tile size and can be decoded into one of the pooled
+	 * pixel formats.
+	 */
+	private static BufferedImage readImage(InputStream inputStream, int tileSize) throws IOException {
+		ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream);
+		if (imageInputStream == null) {
+			throw new IOException("ImageIO failed to read inputStream");
+		}
+		try {
+			Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+			if (!imageReaders.hasNext()) {
+				throw new IOException("ImageIO failed to read inputStream");
+			}
+			ImageReader imageReader = imageReaders.next();
+			try {
+				imageReader.setInput(imageInputStream, true, true);
+				ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+				if (imageReader.getWidth(0) == tileSize && imageReader.getHeight(0) == tileSize) {
+					Iterator<ImageTypeSpecifier> imageTypes = imageReader.getImageTypes(0);
+					while (imageTypes.hasNext()) {
+						ImageTypeSpecifier imageType = imageTypes.next();
+						int type = imageType.getBufferedImageType();
+						if (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB) {
+							// every pixel is decoded, so a pooled image need not be cleared
+							BufferedImage bufferedImage = getImageFromReusableSet(tileSize,
+									type == BufferedImage.TYPE_INT_ARGB);
+							if (bufferedImage != null) {
+								imageReadParam.setDestination(bufferedImage);
+							} else {
+								imageReadParam.setDestinationType(imageType);
+							}
+							break;
+						}
+					}
+				}
+				return imageReader.read(0, imageReadParam);
+			} finally {
+				imageReader.dispose();
+			}
+		} finally {
+			imageInputStream.close();
+		}
+	}
 
 	private long expiration = 0;
+	private final AtomicBoolean released = new AtomicBoolean();
 	private long timestamp = System.currentTimeMillis();
 
 	public AwtTileBitmap(InputStream inputStream) throws IOException {
 		super(inputStream);
 	}
 
+	public AwtTileBitmap(InputStream inputStream, int tileSize) throws IOException {
+		super(readImage(inputStream, tileSize));
+	}
+
 	public AwtTileBitmap(int tileSize) {
-		super(tileSize, tileSize);
+		this(tileSize, true);
 	}
 
 	@Override
@@ -45,7 +167,7 @@ public class AwtTileBitmap extends AwtBitmap implements TileBitmap {
 	public boolean isExpired() {
 		if (expiration == 0)
 			return false;
-		return (expiration >= System.currentTimeMillis());
+		return (expiration <= System.currentTimeMillis());
 	}
 
 	@Override
@@ -59,11 +181,26 @@ public class AwtTileBitmap extends AwtBitmap implements TileBitmap {
 	}
 
 	public AwtTileBitmap(int tileSize, boolean hasAlpha) {
-		super(tileSize, tileSize, hasAlpha);
+		super(createImage(tileSize, hasAlpha));
 	}
 
 	public AwtTileBitmap(BufferedImage bufferedImage) {
 		super(bufferedImage);
 	}
 
+	@Override
+	protected void destroy() {
+		if (!this.released.compareAndSet(false, true) || !isReusable(this.bufferedImage)) {
+			return;
+		}
+		int hash = composeHash(this.bufferedImage.getWidth(), this.bufferedImage.getType() == BufferedImage.TYPE_INT_ARGB);
+		synchronized (REUSABLE_IMAGES) {
+			Deque<SoftReference<BufferedImage>> images = REUSABLE_IMAGES.get(hash);
+			if (images == null) {
+				images = new ArrayDeque<SoftReference<BufferedImage>>();
+				REUSABLE_IMAGES.put(hash, images);
+			}
+			images.push(new SoftReference<BufferedImage>(this.bufferedImage));
+		}
+	}
 }
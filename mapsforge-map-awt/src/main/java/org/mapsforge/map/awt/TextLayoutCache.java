@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.awt;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.image.BufferedImage;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.mapsforge.core.util.LRUCache;
+
+/**
+ * A bounded cache of the measurements and layouts of texts in one font.
+ * <p>
+ * Captions and way names repeat across neighbouring tiles and every text is measured during label placement and
+ * laid out again when it is drawn. The cache keeps the results for the most recently used texts of a font and is
+ * shared by all paints with an equal font. Texts are measured like before with the metrics of a default graphics
+ * context, layouts are created with the anti-aliasing and fractional metrics hints of {@link AwtCanvas}.
+ * <p>
+ * This class is thread safe.
+ */
+final class TextLayoutCache {
+	/**
+	 * Maximum number of texts per font.
+	 */
+	static final int CAPACITY = 1024;
+
+	/**
+	 * Maximum number of fonts, a render theme uses only a few.
+	 */
+	private static final int FONT_CAPACITY = 64;
+
+	private static final FontRenderContext LAYOUT_FONT_RENDER_CONTEXT = new FontRenderContext(null,
+			RenderingHints.VALUE_TEXT_ANTIALIAS_ON, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+	private static final Map<Font, TextLayoutCache> TEXT_LAYOUT_CACHES = new LRUCache<Font, TextLayoutCache>(
+			FONT_CAPACITY);
+
+	/**
+	 * @param font
+	 *            the font of the texts.
+	 * @return the cache shared by all paints with an equal font.
+	 */
+	static TextLayoutCache getInstance(Font font) {
+		synchronized (TEXT_LAYOUT_CACHES) {
+			TextLayoutCache textLayoutCache = TEXT_LAYOUT_CACHES.get(font);
+			if (textLayoutCache == null) {
+				textLayoutCache = new TextLayoutCache(font);
+				TEXT_LAYOUT_CACHES.put(font, textLayoutCache);
+			}
+			return textLayoutCache;
+		}
+	}
+
+	private static final class Entry {
+		final int height;
+		volatile TextLayout layout;
+		volatile Lines lines;
+		final int width;
+
+		Entry(int width, int height) {
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	private static final class Lines {
+		final TextLayout[] layouts;
+		final int maxTextWidth;
+
+		Lines(TextLayout[] layouts, int maxTextWidth) {
+			this.layouts = layouts;
+			this.maxTextWidth = maxTextWidth;
+		}
+	}
+
+	private final Map<String, Entry> entries;
+	private final Font font;
+	private final FontMetrics fontMetrics;
+
+	private TextLayoutCache(Font font) {
+		this.font = font;
+		this.entries = new LRUCache<String, Entry>(CAPACITY);
+
+		Graphics2D graphics2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+		this.fontMetrics = graphics2d.getFontMetrics(font);
+		graphics2d.dispose();
+	}
+
+	/**
+	 * @return the height of the visual bounds of the text.
+	 */
+	int getTextHeight(String text) {
+		return getEntry(text).height;
+	}
+
+	/**
+	 * @return the layout of the text on a single line.
+	 */
+	TextLayout getTextLayout(String text) {
+		Entry entry = getEntry(text);
+		TextLayout layout = entry.layout;
+		if (layout == null) {
+			// concurrent callers may both lay out the text, both layouts are equal
+			layout = new TextLayout(text, this.font, LAYOUT_FONT_RENDER_CONTEXT);
+			entry.layout = layout;
+		}
+		return layout;
+	}
+
+	/**
+	 * @return the layouts of the lines of the text, broken to fit into the given width.
+	 */
+	TextLayout[] getTextLines(String text, int maxTextWidth) {
+		Entry entry = getEntry(text);
+		Lines lines = entry.lines;
+		if (lines == null || lines.maxTextWidth != maxTextWidth) {
+			lines = new Lines(breakLines(text, maxTextWidth), maxTextWidth);
+			entry.lines = lines;
+		}
+		return lines.layouts;
+	}
+
+	/**
+	 * @return the advance width of the text.
+	 */
+	int getTextWidth(String text) {
+		return getEntry(text).width;
+	}
+
+	private TextLayout[] breakLines(String text, int maxTextWidth) {
+		AttributedString attributedString = new AttributedString(text);
+		attributedString.addAttribute(TextAttribute.FONT, this.font);
+		LineBreakMeasurer lineBreakMeasurer = new LineBreakMeasurer(attributedString.getIterator(),
+				LAYOUT_FONT_RENDER_CONTEXT);
+		List<TextLayout> layouts = new ArrayList<TextLayout>();
+		while (lineBreakMeasurer.getPosition() < text.length()) {
+			layouts.add(lineBreakMeasurer.nextLayout(maxTextWidth));
+		}
+		return layouts.toArray(new TextLayout[layouts.size()]);
+	}
+
+	private Entry getEntry(String text) {
+		Entry entry;
+		synchronized (this.entries) {
+			entry = this.entries.get(text);
+		}
+		if (entry == null) {
+			// measured outside of the lock, a text measured concurrently is simply stored twice
+			int width = this.fontMetrics.stringWidth(text);
+			int height = (int) this.font.createGlyphVector(this.fontMetrics.getFontRenderContext(), text)
+					.getVisualBounds().getHeight();
+			entry = new Entry(width, height);
+			synchronized (this.entries) {
+				this.entries.put(text, entry);
+			}
+		}
+		return entry;
+	}
+}
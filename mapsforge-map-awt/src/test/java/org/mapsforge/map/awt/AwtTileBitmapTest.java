@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.awt;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.graphics.GraphicFactory;
+import org.mapsforge.core.graphics.TileBitmap;
+
+public class AwtTileBitmapTest {
+	private static final GraphicFactory GRAPHIC_FACTORY = AwtGraphicFactory.INSTANCE;
+
+	private static byte[] encode(BufferedImage bufferedImage) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ImageIO.write(bufferedImage, "png", outputStream);
+		return outputStream.toByteArray();
+	}
+
+	@Test
+	public void decodeTest() throws IOException {
+		int tileSize = 17;
+		BufferedImage source = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+		source.setRGB(3, 4, 0x80FF0000);
+		byte[] png = encode(source);
+
+		TileBitmap bitmap = GRAPHIC_FACTORY.createTileBitmap(new ByteArrayInputStream(png), tileSize, true);
+		BufferedImage bufferedImage = AwtGraphicFactory.getBitmap(bitmap);
+		Assert.assertEquals(BufferedImage.TYPE_INT_ARGB, bufferedImage.getType());
+		Assert.assertEquals(0x80FF0000, bufferedImage.getRGB(3, 4));
+		bitmap.decrementRefCount();
+
+		TileBitmap reused = GRAPHIC_FACTORY.createTileBitmap(new ByteArrayInputStream(png), tileSize, true);
+		Assert.assertSame(bufferedImage, AwtGraphicFactory.getBitmap(reused));
+		Assert.assertEquals(0x80FF0000, bufferedImage.getRGB(3, 4));
+		Assert.assertEquals(0, bufferedImage.getRGB(4, 3));
+	}
+
+	@Test
+	public void recycleTest() {
+		int tileSize = 19;
+		TileBitmap bitmap = GRAPHIC_FACTORY.createTileBitmap(tileSize, true);
+		BufferedImage bufferedImage = AwtGraphicFactory.getBitmap(bitmap);
+		bufferedImage.setRGB(1, 1, 0xFF00FF00);
+		bitmap.decrementRefCount();
+		// a second release must not add the image to the pool twice
+		bitmap.decrementRefCount();
+
+		TileBitmap reused = GRAPHIC_FACTORY.createTileBitmap(tileSize, true);
+		Assert.assertSame(bufferedImage, AwtGraphicFactory.getBitmap(reused));
+		Assert.assertEquals(0, bufferedImage.getRGB(1, 1));
+		Assert.assertNotSame(bufferedImage, AwtGraphicFactory.getBitmap(GRAPHIC_FACTORY.createTileBitmap(tileSize, true)));
+
+		// images are only reused for the same transparency
+		reused.decrementRefCount();
+		Assert.assertNotSame(bufferedImage, AwtGraphicFactory.getBitmap(GRAPHIC_FACTORY.createTileBitmap(tileSize, false)));
+	}
+
+	@Test
+	public void refCountTest() {
+		int tileSize = 23;
+		TileBitmap bitmap = GRAPHIC_FACTORY.createTileBitmap(tileSize, true);
+		BufferedImage bufferedImage = AwtGraphicFactory.getBitmap(bitmap);
+		bitmap.incrementRefCount();
+		bitmap.decrementRefCount();
+		Assert.assertNotSame(bufferedImage, AwtGraphicFactory.getBitmap(GRAPHIC_FACTORY.createTileBitmap(tileSize, true)));
+
+		bitmap.decrementRefCount();
+		Assert.assertSame(bufferedImage, AwtGraphicFactory.getBitmap(GRAPHIC_FACTORY.createTileBitmap(tileSize, true)));
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.awt;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.font.TextLayout;
+import java.awt.image.BufferedImage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextLayoutCacheTest {
+	private static final Font FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 14);
+
+	@Test
+	public void getInstanceTest() {
+		TextLayoutCache textLayoutCache = TextLayoutCache.getInstance(FONT);
+		Assert.assertSame(textLayoutCache, TextLayoutCache.getInstance(new Font(Font.SANS_SERIF, Font.PLAIN, 14)));
+		Assert.assertNotSame(textLayoutCache, TextLayoutCache.getInstance(new Font(Font.SANS_SERIF, Font.BOLD, 14)));
+	}
+
+	@Test
+	public void measureTest() {
+		Graphics2D graphics2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+		FontMetrics fontMetrics = graphics2d.getFontMetrics(FONT);
+		graphics2d.dispose();
+
+		TextLayoutCache textLayoutCache = TextLayoutCache.getInstance(FONT);
+		String text = "Unter den Linden";
+		Assert.assertEquals(fontMetrics.stringWidth(text), textLayoutCache.getTextWidth(text));
+		Assert.assertEquals((int) FONT.createGlyphVector(fontMetrics.getFontRenderContext(), text).getVisualBounds()
+				.getHeight(), textLayoutCache.getTextHeight(text));
+	}
+
+	@Test
+	public void textLayoutTest() {
+		TextLayoutCache textLayoutCache = TextLayoutCache.getInstance(FONT);
+		String text = "Karl-Marx-Allee";
+		TextLayout textLayout = textLayoutCache.getTextLayout(text);
+		Assert.assertSame(textLayout, textLayoutCache.getTextLayout(text));
+
+		String longText = "Staatliche Museen zu Berlin Stiftung Preussischer Kulturbesitz";
+		TextLayout[] lines = textLayoutCache.getTextLines(longText, 100);
+		Assert.assertTrue(lines.length > 1);
+		for (TextLayout line : lines) {
+			Assert.assertTrue(line.getAdvance() <= 100);
+		}
+		Assert.assertSame(lines, textLayoutCache.getTextLines(longText, 100));
+		Assert.assertTrue(textLayoutCache.getTextLines(longText, 200).length < lines.length);
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapsforge.core.model.LatLong;
+import org.mapsforge.core.model.Tag;
+
+/**
+ * A thread safe cache for decoded blocks with LRU policy, bounded by the estimated heap size of the cached data.
+ * <p>
+ * Cached bundles contain all POIs and ways of a block for one query zoom level, they have not been filtered for a
+ * specific tile and must not be modified.
+ */
+class BlockCache {
+	/**
+	 * Estimated size in bytes of an array without its elements.
+	 */
+	private static final int ARRAY_SIZE = 16;
+
+	/**
+	 * Estimated size in bytes of a {@link LatLong}.
+	 */
+	private static final int LATLONG_SIZE = 32;
+
+	/**
+	 * Estimated size in bytes of a {@link PointOfInterest} without its tags and position.
+	 */
+	private static final int POI_SIZE = 24;
+
+	/**
+	 * Estimated size in bytes of an object reference.
+	 */
+	private static final int REFERENCE_SIZE = 8;
+
+	/**
+	 * Estimated size in bytes of a {@link Tag}, assuming that its strings are shared with other tags.
+	 */
+	private static final int TAG_SIZE = 24;
+
+	/**
+	 * Estimated size in bytes of a {@link Way} without its tags and coordinates.
+	 */
+	private static final int WAY_SIZE = 32;
+
+	private static final class CacheEntry {
+		final PoiWayBundle poiWayBundle;
+		final long size;
+
+		CacheEntry(PoiWayBundle poiWayBundle, long size) {
+			this.poiWayBundle = poiWayBundle;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Calculates the key of a block, the query zoom level also identifies the sub-file.
+	 *
+	 * @param queryZoomLevel
+	 *            the zoom level for which the block was decoded.
+	 * @param blockNumber
+	 *            the number of the block in its sub-file.
+	 * @return the cache key.
+	 */
+	static long calculateKey(int queryZoomLevel, long blockNumber) {
+		return (blockNumber << 5) | queryZoomLevel;
+	}
+
+	/**
+	 * @param poiWayBundle
+	 *            the decoded block.
+	 * @return a rough estimate of the heap size of the decoded block in bytes.
+	 */
+	static long estimateSize(PoiWayBundle poiWayBundle) {
+		long size = 2 * ARRAY_SIZE + (long) poiWayBundle.wayTileBitmasks.length * 4;
+		for (PointOfInterest pointOfInterest : poiWayBundle.pois) {
+			size += REFERENCE_SIZE + POI_SIZE + LATLONG_SIZE + estimateSize(pointOfInterest.tags);
+		}
+		for (Way way : poiWayBundle.ways) {
+			size += REFERENCE_SIZE + WAY_SIZE + estimateSize(way.tags) + ARRAY_SIZE;
+			if (way.labelPosition != null) {
+				size += LATLONG_SIZE;
+			}
+			if (way.latLongs != null) {
+				for (LatLong[] latLongs : way.latLongs) {
+					size += REFERENCE_SIZE + ARRAY_SIZE + (long) latLongs.length * (REFERENCE_SIZE + LATLONG_SIZE);
+				}
+			} else {
+				for (int[] coordinates : way.coordinates) {
+					size += REFERENCE_SIZE + ARRAY_SIZE + (long) coordinates.length * 4;
+				}
+			}
+		}
+		return size;
+	}
+
+	private static long estimateSize(List<Tag> tags) {
+		return ARRAY_SIZE + tags.size() * (REFERENCE_SIZE + TAG_SIZE);
+	}
+
+	private final long capacity;
+	private long hits;
+	private long loads;
+	private final Map<Long, CacheEntry> map;
+	private long misses;
+	private long size;
+
+	/**
+	 * @param capacity
+	 *            the maximum estimated size of all cached blocks in bytes.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	BlockCache(long capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.capacity = capacity;
+		this.map = new LinkedHashMap<Long, CacheEntry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Destroy the cache at the end of its lifetime.
+	 */
+	synchronized void destroy() {
+		this.map.clear();
+		this.size = 0;
+	}
+
+	/**
+	 * @param key
+	 *            the key of the block, see {@link #calculateKey(int, long)}.
+	 * @return the cached block or null, if the block is not cached.
+	 */
+	synchronized PoiWayBundle get(long key) {
+		CacheEntry cacheEntry = this.map.get(Long.valueOf(key));
+		if (cacheEntry == null) {
+			++this.misses;
+			return null;
+		}
+		++this.hits;
+		return cacheEntry.poiWayBundle;
+	}
+
+	/**
+	 * @return the current hit, miss and load counters of this cache.
+	 */
+	synchronized CacheStatistics getStatistics() {
+		return new CacheStatistics(this.hits, this.misses, this.loads);
+	}
+
+	/**
+	 * Adds a decoded block to the cache and removes the least recently used blocks if the capacity is exceeded.
+	 * Blocks which are larger than the capacity are not cached.
+	 *
+	 * @param key
+	 *            the key of the block, see {@link #calculateKey(int, long)}.
+	 * @param poiWayBundle
+	 *            the unfiltered block.
+	 */
+	void put(long key, PoiWayBundle poiWayBundle) {
+		long bundleSize = estimateSize(poiWayBundle);
+		synchronized (this) {
+			++this.loads;
+			if (bundleSize > this.capacity) {
+				return;
+			}
+			CacheEntry previous = this.map.put(Long.valueOf(key), new CacheEntry(poiWayBundle, bundleSize));
+			if (previous != null) {
+				this.size -= previous.size;
+			}
+			this.size += bundleSize;
+
+			Iterator<CacheEntry> iterator = this.map.values().iterator();
+			while (this.size > this.capacity && iterator.hasNext()) {
+				this.size -= iterator.next().size;
+				iterator.remove();
+			}
+		}
+	}
+}
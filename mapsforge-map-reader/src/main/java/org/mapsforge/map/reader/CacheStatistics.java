@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.reader;
+
+/**
+ * An immutable snapshot of the counters of a cache used by the {@link MapFile}.
+ */
+public class CacheStatistics {
+	/**
+	 * Number of lookups which were served from the cache.
+	 */
+	public final long hits;
+
+	/**
+	 * Number of times data was read from the map file to fill the cache.
+	 */
+	public final long loads;
+
+	/**
+	 * Number of lookups which were not served from the cache.
+	 */
+	public final long misses;
+
+	CacheStatistics(long hits, long misses, long loads) {
+		this.hits = hits;
+		this.misses = misses;
+		this.loads = loads;
+	}
+
+	/**
+	 * @return the ratio of hits to all lookups, or 0 if there were no lookups.
+	 */
+	public double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return lookups == 0 ? 0 : (double) this.hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("hits=");
+		stringBuilder.append(this.hits);
+		stringBuilder.append(", misses=");
+		stringBuilder.append(this.misses);
+		stringBuilder.append(", loads=");
+		stringBuilder.append(this.loads);
+		return stringBuilder.toString();
+	}
+}
@@ -15,14 +15,23 @@
 package org.mapsforge.map.reader;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.mapsforge.core.util.LRUCache;
 import org.mapsforge.map.reader.header.SubFileParameter;
 
 /**
- * A cache for database index blocks with a fixed size and LRU policy.
+ * A thread safe cache for database index blocks with a fixed size.
+ * <p>
+ * The cache is organised as a set-associative cache: every index block is identified by its absolute position in the
+ * map file, which selects one of several independent sets. Each set holds a few index blocks which are replaced in
+ * LRU order and is guarded by its own lock, so concurrent lookups of different blocks rarely contend. Lookups do not
+ * allocate any objects.
+ * <p>
+ * For small map files the complete index can be preloaded, in which case all lookups are served without locking.
  */
 class IndexCache {
 	/**
@@ -30,38 +39,107 @@ class IndexCache {
 	 */
 	private static final int INDEX_ENTRIES_PER_BLOCK = 128;
 
+	/**
+	 * Number of index blocks in each set of the cache.
+	 */
+	private static final int SET_SIZE = 4;
+
 	/**
 	 * Maximum size in bytes of one index block.
 	 */
 	private static final int SIZE_OF_INDEX_BLOCK = INDEX_ENTRIES_PER_BLOCK * SubFileParameter.BYTES_PER_INDEX_ENTRY;
 
-	private final Map<IndexCacheEntryKey, byte[]> map;
-	private final RandomAccessFile randomAccessFile;
+	/**
+	 * A set of cached index blocks, all fields are guarded by the set itself.
+	 */
+	private static final class IndexBlockSet {
+		long accessCounter;
+		final byte[][] blocks = new byte[SET_SIZE][];
+		long hits;
+		final long[] keys = new long[SET_SIZE];
+		final long[] lastAccess = new long[SET_SIZE];
+		long misses;
+
+		byte[] get(long key) {
+			for (int i = 0; i < SET_SIZE; ++i) {
+				if (this.blocks[i] != null && this.keys[i] == key) {
+					this.lastAccess[i] = ++this.accessCounter;
+					++this.hits;
+					return this.blocks[i];
+				}
+			}
+			++this.misses;
+			return null;
+		}
+
+		byte[] put(long key, byte[] block) {
+			int replace = 0;
+			for (int i = 0; i < SET_SIZE; ++i) {
+				if (this.blocks[i] != null && this.keys[i] == key) {
+					// another thread has loaded the same block in the meantime
+					return this.blocks[i];
+				} else if (this.blocks[i] == null) {
+					replace = i;
+					break;
+				} else if (this.lastAccess[i] < this.lastAccess[replace]) {
+					replace = i;
+				}
+			}
+			this.keys[replace] = key;
+			this.blocks[replace] = block;
+			this.lastAccess[replace] = ++this.accessCounter;
+			return block;
+		}
+	}
+
+	private static long mix(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 32);
+	}
+
+	private final FileChannel fileChannel;
+	private final AtomicLong loads;
+	private volatile Map<SubFileParameter, byte[]> preloadedIndex;
+	private final IndexBlockSet[] sets;
 
 	/**
-	 * @param randomAccessFile
+	 * @param fileChannel
 	 *            the map file from which the index should be read and cached.
 	 * @param capacity
-	 *            the maximum number of entries in the cache.
+	 *            the maximum number of index blocks in the cache, rounded up to a multiple of the set size.
 	 * @throws IllegalArgumentException
 	 *             if the capacity is negative.
 	 */
-	IndexCache(RandomAccessFile randomAccessFile, int capacity) {
-		this.randomAccessFile = randomAccessFile;
-		this.map = new LRUCache<IndexCacheEntryKey, byte[]>(capacity);
+	IndexCache(FileChannel fileChannel, int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.fileChannel = fileChannel;
+		this.loads = new AtomicLong();
+		this.sets = new IndexBlockSet[Math.max(1, (capacity + SET_SIZE - 1) / SET_SIZE)];
+		for (int i = 0; i < this.sets.length; ++i) {
+			this.sets[i] = new IndexBlockSet();
+		}
 	}
 
 	/**
 	 * Destroy the cache at the end of its lifetime.
 	 */
 	void destroy() {
-		this.map.clear();
+		this.preloadedIndex = null;
+		for (IndexBlockSet set : this.sets) {
+			synchronized (set) {
+				for (int i = 0; i < SET_SIZE; ++i) {
+					set.blocks[i] = null;
+				}
+			}
+		}
 	}
 
 	/**
 	 * Returns the index entry of a block in the given map file. If the required index entry is not cached, it will be
 	 * read from the map file index and put in the cache.
-	 * 
+	 *
 	 * @param subFileParameter
 	 *            the parameters of the map file for which the index entry is needed.
 	 * @param blockNumber
@@ -76,29 +154,34 @@ class IndexCache {
 			throw new IOException("invalid block number: " + blockNumber);
 		}
 
-		// calculate the index block number
-		long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
+		Map<SubFileParameter, byte[]> preloaded = this.preloadedIndex;
+		if (preloaded != null) {
+			byte[] index = preloaded.get(subFileParameter);
+			if (index != null) {
+				return Deserializer.getFiveBytesLong(index, (int) (blockNumber * SubFileParameter.BYTES_PER_INDEX_ENTRY));
+			}
+		}
 
-		// create the cache entry key for this request
-		IndexCacheEntryKey indexCacheEntryKey = new IndexCacheEntryKey(subFileParameter, indexBlockNumber);
+		// calculate the index block number and its position in the file, which is unique within the file
+		long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
+		long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber * SIZE_OF_INDEX_BLOCK;
 
 		// check for cached index block
-		byte[] indexBlock = this.map.get(indexCacheEntryKey);
+		IndexBlockSet set = this.sets[(int) ((mix(indexBlockPosition) & Long.MAX_VALUE) % this.sets.length)];
+		byte[] indexBlock;
+		synchronized (set) {
+			indexBlock = set.get(indexBlockPosition);
+		}
 		if (indexBlock == null) {
-			// cache miss, seek to the correct index block in the file and read it
-			long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber * SIZE_OF_INDEX_BLOCK;
-
+			// cache miss, read the index block without holding the lock of the set
 			int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
 			int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
-			indexBlock = new byte[indexBlockSize];
+			indexBlock = readIndex(indexBlockPosition, indexBlockSize);
 
-			this.randomAccessFile.seek(indexBlockPosition);
-			if (this.randomAccessFile.read(indexBlock, 0, indexBlockSize) != indexBlockSize) {
-				throw new IOException("could not read index block with size: " + indexBlockSize);
+			// put the index block in the set
+			synchronized (set) {
+				indexBlock = set.put(indexBlockPosition, indexBlock);
 			}
-
-			// put the index block in the map
-			this.map.put(indexCacheEntryKey, indexBlock);
 		}
 
 		// calculate the address of the index entry inside the index block
@@ -108,4 +191,49 @@ class IndexCache {
 		// return the real index entry
 		return Deserializer.getFiveBytesLong(indexBlock, addressInIndexBlock);
 	}
+
+	/**
+	 * @return the current hit, miss and load counters of this cache.
+	 */
+	CacheStatistics getStatistics() {
+		long hits = 0;
+		long misses = 0;
+		for (IndexBlockSet set : this.sets) {
+			synchronized (set) {
+				hits += set.hits;
+				misses += set.misses;
+			}
+		}
+		return new CacheStatistics(hits, misses, this.loads.get());
+	}
+
+	/**
+	 * Reads the complete index of the given sub-files into memory. Subsequent lookups for these sub-files are served
+	 * from memory without locking and are not counted in the cache statistics.
+	 *
+	 * @param subFileParameters
+	 *            the sub-files whose index should be preloaded.
+	 * @throws IOException
+	 *             if an I/O error occurs during reading.
+	 */
+	void preload(Iterable<SubFileParameter> subFileParameters) throws IOException {
+		Map<SubFileParameter, byte[]> preloaded = new HashMap<SubFileParameter, byte[]>();
+		for (SubFileParameter subFileParameter : subFileParameters) {
+			int indexSize = (int) (subFileParameter.indexEndAddress - subFileParameter.indexStartAddress);
+			preloaded.put(subFileParameter, readIndex(subFileParameter.indexStartAddress, indexSize));
+		}
+		this.preloadedIndex = preloaded;
+	}
+
+	private byte[] readIndex(long position, int size) throws IOException {
+		byte[] index = new byte[size];
+		ByteBuffer indexBuffer = ByteBuffer.wrap(index);
+		while (indexBuffer.hasRemaining()) {
+			if (this.fileChannel.read(indexBuffer, position + indexBuffer.position()) < 0) {
+				throw new IOException("could not read index block with size: " + size);
+			}
+		}
+		this.loads.incrementAndGet();
+		return index;
+	}
 }
@@ -17,10 +17,14 @@
 package org.mapsforge.map.reader;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,8 +42,10 @@ import org.mapsforge.map.reader.header.SubFileParameter;
 /**
  * A class for reading binary map files.
  * <p>
- * The readMapData method is now thread safe, but care should be taken that not too much data is
- * read at the same time (keep simultaneous requests to minimum)
+ * The readMapData method is thread safe and does not block, every call decodes the requested blocks with its own
+ * {@link ReadBuffer}. By default blocks are read with positional reads from a shared {@link FileChannel}. If the map
+ * file is opened with memory mapping enabled, each sub-file is mapped read-only and blocks are decoded directly from
+ * the mapped memory without any file seeks or copies.
  *
  * @see <a href="https://github.com/mapsforge/mapsforge/blob/master/docs/Specification-Binary-Map-File.md">Specification</a>
  */
@@ -61,9 +67,9 @@ public class MapFile implements MapDataStore {
 	private static final Byte DEFAULT_START_ZOOM_LEVEL = Byte.valueOf((byte) 12);
 
 	/**
-	 * Amount of cache blocks that the index cache should store.
+	 * Default amount of cache blocks that the index cache should store.
 	 */
-	private static final int INDEX_CACHE_SIZE = 64;
+	public static final int DEFAULT_INDEX_CACHE_SIZE = 64;
 
 	/**
 	 * Error message for an invalid first way offset.
@@ -102,8 +108,6 @@ public class MapFile implements MapDataStore {
 	 */
 	private static final int POI_NUMBER_OF_TAGS_BITMASK = 0x0f;
 
-	private static final String READ_ONLY_MODE = "r";
-
 	/**
 	 * Length of the debug signature at the beginning of each block.
 	 */
@@ -184,11 +188,13 @@ public class MapFile implements MapDataStore {
 	 */
 	private static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
 
+	private volatile BlockCache blockCache;
 	private final IndexCache databaseIndexCache;
 	private final long fileSize;
-	private final RandomAccessFile inputFile;
+	private final FileChannel inputChannel;
 	private final MapFileHeader mapFileHeader;
-	private final ReadBuffer readBuffer;
+	private final Map<SubFileParameter, ByteBuffer> mappedSubFiles;
+	private volatile boolean primitiveWayCoordinates;
 	private final long timestamp;
 
 
@@ -214,6 +220,34 @@ public class MapFile implements MapDataStore {
 	 * @throws MapFileException if the given map file is null or invalid.
 	 */
 	public MapFile(File mapFile) {
+		this(mapFile, false);
+	}
+
+	/**
+	 * Opens the given map file, reads its header data and validates them.
+	 * <p>
+	 * With memory mapping enabled, every sub-file is mapped read-only into memory so that concurrent calls of
+	 * {@link #readMapData(Tile)} decode blocks directly from the page cache. Mapping consumes address space rather than
+	 * heap, it should therefore only be used on 64-bit systems or for small map files.
+	 *
+	 * @param mapFile the map file.
+	 * @param memoryMapped true if the sub-files should be memory-mapped, false to read blocks from the file.
+	 * @throws MapFileException if the given map file is null or invalid.
+	 */
+	public MapFile(File mapFile, boolean memoryMapped) {
+		this(mapFile, memoryMapped, DEFAULT_INDEX_CACHE_SIZE);
+	}
+
+	/**
+	 * Opens the given map file, reads its header data and validates them.
+	 *
+	 * @param mapFile the map file.
+	 * @param memoryMapped true if the sub-files should be memory-mapped, false to read blocks from the file.
+	 * @param indexCacheSize the number of index blocks the index cache should store, each block holds the index
+	 *                       entries of 128 consecutive blocks of a sub-file.
+	 * @throws MapFileException if the given map file is null or invalid.
+	 */
+	public MapFile(File mapFile, boolean memoryMapped, int indexCacheSize) {
 		if (mapFile == null) {
 			throw new MapFileException("mapFile must not be null");
 		}
@@ -228,13 +262,14 @@ public class MapFile implements MapDataStore {
 			}
 
 			// open the file in read only mode
-			this.inputFile = new RandomAccessFile(mapFile, READ_ONLY_MODE);
-			this.fileSize = this.inputFile.length();
+			this.inputChannel = new FileInputStream(mapFile).getChannel();
+			this.fileSize = this.inputChannel.size();
 
-			this.readBuffer = new ReadBuffer(this.inputFile);
+			ReadBuffer readBuffer = new ReadBuffer(this.inputChannel);
 			this.mapFileHeader = new MapFileHeader();
-			this.mapFileHeader.readHeader(this.readBuffer, this.fileSize);
-			this.databaseIndexCache = new IndexCache(this.inputFile, INDEX_CACHE_SIZE);
+			this.mapFileHeader.readHeader(readBuffer, this.fileSize);
+			this.databaseIndexCache = new IndexCache(this.inputChannel, indexCacheSize);
+			this.mappedSubFiles = memoryMapped ? mapSubFiles() : null;
 
 			this.timestamp = mapFile.lastModified();
 		} catch (Exception e) {
@@ -271,13 +306,33 @@ public class MapFile implements MapDataStore {
 	 */
 	private void closeFile() {
 		try {
+			BlockCache currentBlockCache = this.blockCache;
+			if (currentBlockCache != null) {
+				currentBlockCache.destroy();
+			}
 			this.databaseIndexCache.destroy();
-			this.inputFile.close();
+			this.inputChannel.close();
 		} catch (Exception e) {
 			LOGGER.log(Level.SEVERE, e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * @return a snapshot of the hit, miss and load counters of the decoded block cache, or null if the block cache is
+	 *         disabled.
+	 */
+	public CacheStatistics getBlockCacheStatistics() {
+		BlockCache currentBlockCache = this.blockCache;
+		return currentBlockCache == null ? null : currentBlockCache.getStatistics();
+	}
+
+	/**
+	 * @return a snapshot of the hit, miss and load counters of the index cache.
+	 */
+	public CacheStatistics getIndexCacheStatistics() {
+		return this.databaseIndexCache.getStatistics();
+	}
+
 	/**
 	 * @return the metadata for the current map file.
 	 * @throws IllegalStateException
@@ -305,7 +360,7 @@ public class MapFile implements MapDataStore {
 	 * @return the read map data.
 	 */
 	@Override
-	public synchronized MapReadResult readMapData(Tile tile) {
+	public MapReadResult readMapData(Tile tile) {
 		try {
 			QueryParameters queryParameters = new QueryParameters();
 			queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
@@ -330,6 +385,65 @@ public class MapFile implements MapDataStore {
 		}
 	}
 
+	/**
+	 * Reads the complete index of all sub-files into memory, so that no index lookup requires file access any more.
+	 * This is only done if the total size of the index does not exceed the given limit, which makes it suitable for
+	 * small map files.
+	 *
+	 * @param maximumSize the maximum total size of the index in bytes.
+	 * @return true if the index has been preloaded, false if it is too large.
+	 */
+	public boolean preloadIndex(long maximumSize) {
+		List<SubFileParameter> subFileParameters = getSubFileParameters();
+		long indexSize = 0;
+		for (SubFileParameter subFileParameter : subFileParameters) {
+			indexSize += subFileParameter.indexEndAddress - subFileParameter.indexStartAddress;
+		}
+		if (indexSize > maximumSize) {
+			return false;
+		}
+		try {
+			this.databaseIndexCache.preload(subFileParameters);
+			return true;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, e.getMessage(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * Enables or disables the cache for decoded blocks. At zoom levels above the base zoom level of a sub-file many
+	 * adjacent tiles are read from the same block, with the cache enabled such a block is decoded only once and the
+	 * data is filtered for each requested tile. Replacing the cache discards all cached blocks.
+	 *
+	 * @param maximumSize the maximum estimated heap size of all cached blocks in bytes, 0 disables the cache.
+	 */
+	public void setBlockCacheSize(long maximumSize) {
+		BlockCache previousBlockCache = this.blockCache;
+		this.blockCache = maximumSize > 0 ? new BlockCache(maximumSize) : null;
+		if (previousBlockCache != null) {
+			previousBlockCache.destroy();
+		}
+	}
+
+	/**
+	 * Selects the representation of the way nodes returned by {@link #readMapData(Tile)}. By default every node is
+	 * returned as a {@link LatLong} object in {@link Way#latLongs}. With primitive way coordinates enabled the nodes
+	 * are returned as microdegrees in the flat arrays of {@link Way#coordinates} instead, which avoids one object per
+	 * node. Changing the representation discards all cached blocks.
+	 *
+	 * @param enabled true if way nodes should be returned as primitive coordinates, false for {@link LatLong} objects.
+	 */
+	public void setPrimitiveWayCoordinates(boolean enabled) {
+		if (this.primitiveWayCoordinates != enabled) {
+			this.primitiveWayCoordinates = enabled;
+			BlockCache currentBlockCache = this.blockCache;
+			if (currentBlockCache != null) {
+				currentBlockCache.destroy();
+			}
+		}
+	}
+
 	/**
 	 * Restricts returns of data to zoom level range specified. This can be used to restrict
 	 * the use of this map data base when used in MultiMapDatabase settings.
@@ -362,110 +476,248 @@ public class MapFile implements MapDataStore {
 		return tile.getBoundingBox().intersects(getMapFileInfo().boundingBox);
 	}
 
-	private void decodeWayNodesDoubleDelta(LatLong[] waySegment, double tileLatitude, double tileLongitude) {
+	/**
+	 * Maps every sub-file of the map file read-only into memory.
+	 *
+	 * @return the mapped sub-files, sub-files which cannot be mapped are not contained.
+	 * @throws IOException
+	 *             if an I/O error occurs during mapping.
+	 */
+	private Map<SubFileParameter, ByteBuffer> mapSubFiles() throws IOException {
+		Map<SubFileParameter, ByteBuffer> mappedBuffers = new HashMap<SubFileParameter, ByteBuffer>();
+		for (SubFileParameter subFileParameter : getSubFileParameters()) {
+			if (subFileParameter.subFileSize > Integer.MAX_VALUE) {
+				// a single mapping cannot exceed 2 GB, blocks of this sub-file are read from the file instead
+				LOGGER.warning("sub-file too large for memory mapping: " + subFileParameter.subFileSize);
+				continue;
+			}
+			mappedBuffers.put(subFileParameter, this.inputChannel.map(FileChannel.MapMode.READ_ONLY,
+					subFileParameter.startAddress, subFileParameter.subFileSize));
+		}
+		return mappedBuffers;
+	}
+
+	/**
+	 * @return the distinct parameters of all sub-files in the map file.
+	 */
+	private List<SubFileParameter> getSubFileParameters() {
+		List<SubFileParameter> subFileParameters = new ArrayList<SubFileParameter>();
+		// the zoom levels of the map file info may have been restricted, the header knows the real range
+		byte zoomLevelMin = this.mapFileHeader.getQueryZoomLevel((byte) 0);
+		byte zoomLevelMax = this.mapFileHeader.getQueryZoomLevel(Byte.MAX_VALUE);
+		for (byte zoomLevel = zoomLevelMin; zoomLevel <= zoomLevelMax; ++zoomLevel) {
+			SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(zoomLevel);
+			if (subFileParameter != null && !subFileParameters.contains(subFileParameter)) {
+				subFileParameters.add(subFileParameter);
+			}
+		}
+		return subFileParameters;
+	}
+
+	/**
+	 * Decodes the double-delta encoded nodes of a way segment into microdegrees without rounding errors.
+	 */
+	private static void decodeWayNodesDoubleDelta(int[] waySegment, int tileLatitudeE6, int tileLongitudeE6,
+	                                              ReadBuffer readBuffer) {
 		// get the first way node latitude offset (VBE-S)
-		double wayNodeLatitude = tileLatitude
-				+ LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+		int wayNodeLatitude = tileLatitudeE6 + readBuffer.readSignedInt();
 
 		// get the first way node longitude offset (VBE-S)
-		double wayNodeLongitude = tileLongitude
-				+ LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+		int wayNodeLongitude = tileLongitudeE6 + readBuffer.readSignedInt();
 
 		// store the first way node
-		waySegment[0] = new LatLong(wayNodeLatitude, wayNodeLongitude);
+		waySegment[0] = wayNodeLatitude;
+		waySegment[1] = wayNodeLongitude;
 
-		double previousSingleDeltaLatitude = 0;
-		double previousSingleDeltaLongitude = 0;
+		int previousSingleDeltaLatitude = 0;
+		int previousSingleDeltaLongitude = 0;
 
-		for (int wayNodesIndex = 1; wayNodesIndex < waySegment.length; ++wayNodesIndex) {
+		for (int wayNodesIndex = 2; wayNodesIndex < waySegment.length; wayNodesIndex += 2) {
 			// get the way node latitude double-delta offset (VBE-S)
-			double doubleDeltaLatitude = LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+			int singleDeltaLatitude = readBuffer.readSignedInt() + previousSingleDeltaLatitude;
 
 			// get the way node longitude double-delta offset (VBE-S)
-			double doubleDeltaLongitude = LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+			int singleDeltaLongitude = readBuffer.readSignedInt() + previousSingleDeltaLongitude;
 
-			double singleDeltaLatitude = doubleDeltaLatitude + previousSingleDeltaLatitude;
-			double singleDeltaLongitude = doubleDeltaLongitude + previousSingleDeltaLongitude;
+			wayNodeLatitude += singleDeltaLatitude;
+			wayNodeLongitude += singleDeltaLongitude;
 
-			wayNodeLatitude = wayNodeLatitude + singleDeltaLatitude;
-			wayNodeLongitude = wayNodeLongitude + singleDeltaLongitude;
-
-			waySegment[wayNodesIndex] = new LatLong(wayNodeLatitude, wayNodeLongitude);
+			waySegment[wayNodesIndex] = wayNodeLatitude;
+			waySegment[wayNodesIndex + 1] = wayNodeLongitude;
 
 			previousSingleDeltaLatitude = singleDeltaLatitude;
 			previousSingleDeltaLongitude = singleDeltaLongitude;
 		}
 	}
 
-	private void decodeWayNodesSingleDelta(LatLong[] waySegment, double tileLatitude, double tileLongitude) {
+	/**
+	 * Decodes the single-delta encoded nodes of a way segment into microdegrees without rounding errors.
+	 */
+	private static void decodeWayNodesSingleDelta(int[] waySegment, int tileLatitudeE6, int tileLongitudeE6,
+	                                              ReadBuffer readBuffer) {
 		// get the first way node latitude single-delta offset (VBE-S)
-		double wayNodeLatitude = tileLatitude
-				+ LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+		int wayNodeLatitude = tileLatitudeE6 + readBuffer.readSignedInt();
 
 		// get the first way node longitude single-delta offset (VBE-S)
-		double wayNodeLongitude = tileLongitude
-				+ LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+		int wayNodeLongitude = tileLongitudeE6 + readBuffer.readSignedInt();
 
 		// store the first way node
-		waySegment[0] = new LatLong(wayNodeLatitude, wayNodeLongitude);
+		waySegment[0] = wayNodeLatitude;
+		waySegment[1] = wayNodeLongitude;
 
-		for (int wayNodesIndex = 1; wayNodesIndex < waySegment.length; ++wayNodesIndex) {
+		for (int wayNodesIndex = 2; wayNodesIndex < waySegment.length; wayNodesIndex += 2) {
 			// get the way node latitude offset (VBE-S)
-			wayNodeLatitude = wayNodeLatitude + LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+			wayNodeLatitude += readBuffer.readSignedInt();
 
 			// get the way node longitude offset (VBE-S)
-			wayNodeLongitude = wayNodeLongitude + LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+			wayNodeLongitude += readBuffer.readSignedInt();
 
-			waySegment[wayNodesIndex] = new LatLong(wayNodeLatitude, wayNodeLongitude);
+			waySegment[wayNodesIndex] = wayNodeLatitude;
+			waySegment[wayNodesIndex + 1] = wayNodeLongitude;
 		}
 	}
 
+	/**
+	 * Checks if the bounding box of the given way coordinates in microdegrees intersects the given bounding box, this
+	 * is equivalent to {@link BoundingBox#intersectsArea(LatLong[][])}.
+	 */
+	private static boolean intersectsArea(BoundingBox boundingBox, int[][] coordinates) {
+		if (coordinates.length == 0 || coordinates[0].length == 0) {
+			return false;
+		}
+		int minLatitude = Integer.MAX_VALUE;
+		int minLongitude = Integer.MAX_VALUE;
+		int maxLatitude = Integer.MIN_VALUE;
+		int maxLongitude = Integer.MIN_VALUE;
+		for (int[] waySegment : coordinates) {
+			for (int i = 0; i < waySegment.length; i += 2) {
+				minLatitude = Math.min(minLatitude, waySegment[i]);
+				maxLatitude = Math.max(maxLatitude, waySegment[i]);
+				minLongitude = Math.min(minLongitude, waySegment[i + 1]);
+				maxLongitude = Math.max(maxLongitude, waySegment[i + 1]);
+			}
+		}
+		return boundingBox.maxLatitude >= LatLongUtils.microdegreesToDegrees(minLatitude)
+				&& boundingBox.maxLongitude >= LatLongUtils.microdegreesToDegrees(minLongitude)
+				&& boundingBox.minLatitude <= LatLongUtils.microdegreesToDegrees(maxLatitude)
+				&& boundingBox.minLongitude <= LatLongUtils.microdegreesToDegrees(maxLongitude);
+	}
+
+	private static boolean intersectsArea(BoundingBox boundingBox, Way way) {
+		if (way.latLongs != null) {
+			return boundingBox.intersectsArea(way.latLongs);
+		}
+		return intersectsArea(boundingBox, way.coordinates);
+	}
+
+	private static LatLong[] toLatLongs(int[] waySegment) {
+		LatLong[] latLongs = new LatLong[waySegment.length / 2];
+		for (int i = 0; i < latLongs.length; ++i) {
+			latLongs[i] = new LatLong(LatLongUtils.microdegreesToDegrees(waySegment[2 * i]),
+					LatLongUtils.microdegreesToDegrees(waySegment[2 * i + 1]));
+		}
+		return latLongs;
+	}
+
+	/**
+	 * Applies the filters of a query to a block which has been decoded without filtering.
+	 */
+	private static PoiWayBundle filterPoiWayBundle(PoiWayBundle poiWayBundle, QueryParameters queryParameters,
+	                                               BoundingBox boundingBox, boolean filterRequired) {
+		if (!filterRequired && !queryParameters.useTileBitmask) {
+			return poiWayBundle;
+		}
+
+		List<PointOfInterest> pois;
+		if (filterRequired) {
+			pois = new ArrayList<PointOfInterest>();
+			for (PointOfInterest pointOfInterest : poiWayBundle.pois) {
+				if (boundingBox.contains(pointOfInterest.position)) {
+					pois.add(pointOfInterest);
+				}
+			}
+		} else {
+			pois = poiWayBundle.pois;
+		}
+
+		List<Way> ways = new ArrayList<Way>();
+		BoundingBox wayFilterBbox = boundingBox.extend(wayFilterDistance);
+		for (int i = 0, n = poiWayBundle.ways.size(); i < n; ++i) {
+			if (queryParameters.useTileBitmask
+					&& (queryParameters.queryTileBitmask & poiWayBundle.wayTileBitmasks[i]) == 0) {
+				continue;
+			}
+			Way way = poiWayBundle.ways.get(i);
+			if (filterRequired && wayFilterEnabled && !intersectsArea(wayFilterBbox, way)) {
+				continue;
+			}
+			ways.add(way);
+		}
+
+		return new PoiWayBundle(pois, ways);
+	}
+
+	/**
+	 * Decodes a block. If unfiltered is true, all POIs and ways of the query zoom level are returned together with the
+	 * tile bitmask of each way, so that the result can be cached and filtered later.
+	 */
 	private PoiWayBundle processBlock(QueryParameters queryParameters, SubFileParameter subFileParameter,
-	                                  BoundingBox boundingBox, double tileLatitude, double tileLongitude) {
-		if (!processBlockSignature()) {
+	                                  BoundingBox boundingBox, double tileLatitude, double tileLongitude,
+	                                  ReadBuffer readBuffer, boolean unfiltered) {
+		if (!processBlockSignature(readBuffer)) {
 			return null;
 		}
 
-		int[][] zoomTable = readZoomTable(subFileParameter);
+		int[][] zoomTable = readZoomTable(subFileParameter, readBuffer);
 		int zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
 		int poisOnQueryZoomLevel = zoomTable[zoomTableRow][0];
 		int waysOnQueryZoomLevel = zoomTable[zoomTableRow][1];
 
 		// get the relative offset to the first stored way in the block
-		int firstWayOffset = this.readBuffer.readUnsignedInt();
+		int firstWayOffset = readBuffer.readUnsignedInt();
 		if (firstWayOffset < 0) {
 			LOGGER.warning(INVALID_FIRST_WAY_OFFSET + firstWayOffset);
 			return null;
 		}
 
 		// add the current buffer position to the relative first way offset
-		firstWayOffset += this.readBuffer.getBufferPosition();
-		if (firstWayOffset > this.readBuffer.getBufferSize()) {
+		firstWayOffset += readBuffer.getBufferPosition();
+		if (firstWayOffset > readBuffer.getBufferLimit()) {
 			LOGGER.warning(INVALID_FIRST_WAY_OFFSET + firstWayOffset);
 			return null;
 		}
 
-		boolean filterRequired = queryParameters.queryZoomLevel > subFileParameter.baseZoomLevel;
+		boolean filterRequired = !unfiltered && queryParameters.queryZoomLevel > subFileParameter.baseZoomLevel;
 
-		List<PointOfInterest> pois = processPOIs(tileLatitude, tileLongitude, poisOnQueryZoomLevel, boundingBox, filterRequired);
+		List<PointOfInterest> pois = processPOIs(tileLatitude, tileLongitude, poisOnQueryZoomLevel, boundingBox,
+				filterRequired, readBuffer);
 		if (pois == null) {
 			return null;
 		}
 
 		// finished reading POIs, check if the current buffer position is valid
-		if (this.readBuffer.getBufferPosition() > firstWayOffset) {
-			LOGGER.warning("invalid buffer position: " + this.readBuffer.getBufferPosition());
+		if (readBuffer.getBufferPosition() > firstWayOffset) {
+			LOGGER.warning("invalid buffer position: " + readBuffer.getBufferPosition());
 			return null;
 		}
 
 		// move the pointer to the first way
-		this.readBuffer.setBufferPosition(firstWayOffset);
+		readBuffer.setBufferPosition(firstWayOffset);
 
-		List<Way> ways = processWays(queryParameters, waysOnQueryZoomLevel, boundingBox, filterRequired, tileLatitude, tileLongitude);
+		List<Integer> wayTileBitmasks = unfiltered ? new ArrayList<Integer>() : null;
+		List<Way> ways = processWays(queryParameters, waysOnQueryZoomLevel, boundingBox, filterRequired, tileLatitude,
+				tileLongitude, readBuffer, wayTileBitmasks);
 		if (ways == null) {
 			return null;
 		}
 
+		if (wayTileBitmasks != null) {
+			int[] tileBitmasks = new int[wayTileBitmasks.size()];
+			for (int i = 0; i < tileBitmasks.length; ++i) {
+				tileBitmasks[i] = wayTileBitmasks.get(i).intValue();
+			}
+			return new PoiWayBundle(pois, ways, tileBitmasks);
+		}
 		return new PoiWayBundle(pois, ways);
 	}
 
@@ -476,6 +728,10 @@ public class MapFile implements MapDataStore {
 		boolean queryReadWaterInfo = false;
 
 		MapReadResultBuilder mapReadResultBuilder = new MapReadResultBuilder();
+		BlockCache currentBlockCache = this.blockCache;
+		boolean filterRequired = queryParameters.queryZoomLevel > subFileParameter.baseZoomLevel;
+		ReadBuffer readBuffer = new ReadBuffer(this.inputChannel);
+		ByteBuffer mappedSubFile = this.mappedSubFiles == null ? null : this.mappedSubFiles.get(subFileParameter);
 
 		// read and process all blocks from top to bottom and from left to right
 		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
@@ -493,6 +749,17 @@ public class MapFile implements MapDataStore {
 					queryReadWaterInfo = true;
 				}
 
+				// check if the decoded block is cached, the cached data still needs to be filtered for this query
+				long blockCacheKey = BlockCache.calculateKey(queryParameters.queryZoomLevel, blockNumber);
+				if (currentBlockCache != null) {
+					PoiWayBundle cachedPoiWayBundle = currentBlockCache.get(blockCacheKey);
+					if (cachedPoiWayBundle != null) {
+						mapReadResultBuilder.add(filterPoiWayBundle(cachedPoiWayBundle, queryParameters, boundingBox,
+								filterRequired));
+						continue;
+					}
+				}
+
 				// get and check the current block pointer
 				long currentBlockPointer = currentBlockIndexEntry & BITMASK_INDEX_OFFSET;
 				if (currentBlockPointer < 1 || currentBlockPointer > subFileParameter.subFileSize) {
@@ -534,11 +801,15 @@ public class MapFile implements MapDataStore {
 					return null;
 				}
 
-				// seek to the current block in the map file
-				this.inputFile.seek(subFileParameter.startAddress + currentBlockPointer);
-
-				// read the current block into the buffer
-				if (!this.readBuffer.readFromFile(currentBlockSize)) {
+				// read the current block into the buffer, mapped sub-files are decoded in place
+				boolean blockRead;
+				if (mappedSubFile != null) {
+					blockRead = readBuffer.readFromMappedBuffer(mappedSubFile, (int) currentBlockPointer, currentBlockSize);
+				} else {
+					blockRead = readBuffer.readFromFile(subFileParameter.startAddress + currentBlockPointer,
+							currentBlockSize);
+				}
+				if (!blockRead) {
 					// skip the current block
 					LOGGER.warning("reading current block has failed: " + currentBlockSize);
 					return null;
@@ -551,9 +822,20 @@ public class MapFile implements MapDataStore {
 						subFileParameter.baseZoomLevel);
 
 				try {
-					PoiWayBundle poiWayBundle = processBlock(queryParameters, subFileParameter, boundingBox, tileLatitude, tileLongitude);
-					if (poiWayBundle != null) {
-						mapReadResultBuilder.add(poiWayBundle);
+					if (currentBlockCache != null) {
+						PoiWayBundle poiWayBundle = processBlock(queryParameters, subFileParameter, boundingBox,
+								tileLatitude, tileLongitude, readBuffer, true);
+						if (poiWayBundle != null) {
+							currentBlockCache.put(blockCacheKey, poiWayBundle);
+							mapReadResultBuilder.add(filterPoiWayBundle(poiWayBundle, queryParameters, boundingBox,
+									filterRequired));
+						}
+					} else {
+						PoiWayBundle poiWayBundle = processBlock(queryParameters, subFileParameter, boundingBox,
+								tileLatitude, tileLongitude, readBuffer, false);
+						if (poiWayBundle != null) {
+							mapReadResultBuilder.add(poiWayBundle);
+						}
 					}
 				} catch (ArrayIndexOutOfBoundsException e) {
 					LOGGER.log(Level.SEVERE, e.getMessage(), e);
@@ -574,10 +856,10 @@ public class MapFile implements MapDataStore {
 	 *
 	 * @return true if the block signature could be processed successfully, false otherwise.
 	 */
-	private boolean processBlockSignature() {
+	private boolean processBlockSignature(ReadBuffer readBuffer) {
 		if (this.mapFileHeader.getMapFileInfo().debugFile) {
 			// get and check the block signature
-			String signatureBlock = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_BLOCK);
+			String signatureBlock = readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_BLOCK);
 			if (!signatureBlock.startsWith("###TileStart")) {
 				LOGGER.warning("invalid block signature: " + signatureBlock);
 				return false;
@@ -586,14 +868,15 @@ public class MapFile implements MapDataStore {
 		return true;
 	}
 
-	private List<PointOfInterest> processPOIs(double tileLatitude, double tileLongitude, int numberOfPois, BoundingBox boundingBox, boolean filterRequired) {
+	private List<PointOfInterest> processPOIs(double tileLatitude, double tileLongitude, int numberOfPois,
+	                                          BoundingBox boundingBox, boolean filterRequired, ReadBuffer readBuffer) {
 		List<PointOfInterest> pois = new ArrayList<PointOfInterest>();
 		Tag[] poiTags = this.mapFileHeader.getMapFileInfo().poiTags;
 
 		for (int elementCounter = numberOfPois; elementCounter != 0; --elementCounter) {
 			if (this.mapFileHeader.getMapFileInfo().debugFile) {
 				// get and check the POI signature
-				String signaturePoi = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_POI);
+				String signaturePoi = readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_POI);
 				if (!signaturePoi.startsWith("***POIStart")) {
 					LOGGER.warning("invalid POI signature: " + signaturePoi);
 					return null;
@@ -601,13 +884,13 @@ public class MapFile implements MapDataStore {
 			}
 
 			// get the POI latitude offset (VBE-S)
-			double latitude = tileLatitude + LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+			double latitude = tileLatitude + LatLongUtils.microdegreesToDegrees(readBuffer.readSignedInt());
 
 			// get the POI longitude offset (VBE-S)
-			double longitude = tileLongitude + LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+			double longitude = tileLongitude + LatLongUtils.microdegreesToDegrees(readBuffer.readSignedInt());
 
 			// get the special byte which encodes multiple flags
-			byte specialByte = this.readBuffer.readByte();
+			byte specialByte = readBuffer.readByte();
 
 			// bit 1-4 represent the layer
 			byte layer = (byte) ((specialByte & POI_LAYER_BITMASK) >>> POI_LAYER_SHIFT);
@@ -618,7 +901,7 @@ public class MapFile implements MapDataStore {
 
 			// get the tag IDs (VBE-U)
 			for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
-				int tagId = this.readBuffer.readUnsignedInt();
+				int tagId = readBuffer.readUnsignedInt();
 				if (tagId < 0 || tagId >= poiTags.length) {
 					LOGGER.warning("invalid POI tag ID: " + tagId);
 					return null;
@@ -627,7 +910,7 @@ public class MapFile implements MapDataStore {
 			}
 
 			// get the feature bitmask (1 byte)
-			byte featureByte = this.readBuffer.readByte();
+			byte featureByte = readBuffer.readByte();
 
 			// bit 1-3 enable optional features
 			boolean featureName = (featureByte & POI_FEATURE_NAME) != 0;
@@ -636,17 +919,17 @@ public class MapFile implements MapDataStore {
 
 			// check if the POI has a name
 			if (featureName) {
-				tags.add(new Tag(TAG_KEY_NAME, this.readBuffer.readUTF8EncodedString()));
+				tags.add(new Tag(TAG_KEY_NAME, readBuffer.readUTF8EncodedString()));
 			}
 
 			// check if the POI has a house number
 			if (featureHouseNumber) {
-				tags.add(new Tag(TAG_KEY_HOUSE_NUMBER, this.readBuffer.readUTF8EncodedString()));
+				tags.add(new Tag(TAG_KEY_HOUSE_NUMBER, readBuffer.readUTF8EncodedString()));
 			}
 
 			// check if the POI has an elevation
 			if (featureElevation) {
-				tags.add(new Tag(TAG_KEY_ELE, Integer.toString(this.readBuffer.readSignedInt())));
+				tags.add(new Tag(TAG_KEY_ELE, Integer.toString(readBuffer.readSignedInt())));
 			}
 
 			LatLong position = new LatLong(latitude, longitude);
@@ -660,21 +943,22 @@ public class MapFile implements MapDataStore {
 		return pois;
 	}
 
-	private LatLong[][] processWayDataBlock(double tileLatitude, double tileLongitude, boolean doubleDeltaEncoding) {
+	private int[][] processWayDataBlock(int tileLatitudeE6, int tileLongitudeE6, boolean doubleDeltaEncoding,
+	                                    ReadBuffer readBuffer) {
 		// get and check the number of way coordinate blocks (VBE-U)
-		int numberOfWayCoordinateBlocks = this.readBuffer.readUnsignedInt();
+		int numberOfWayCoordinateBlocks = readBuffer.readUnsignedInt();
 		if (numberOfWayCoordinateBlocks < 1 || numberOfWayCoordinateBlocks > Short.MAX_VALUE) {
 			LOGGER.warning("invalid number of way coordinate blocks: " + numberOfWayCoordinateBlocks);
 			return null;
 		}
 
 		// create the array which will store the different way coordinate blocks
-		LatLong[][] wayCoordinates = new LatLong[numberOfWayCoordinateBlocks][];
+		int[][] wayCoordinates = new int[numberOfWayCoordinateBlocks][];
 
 		// read the way coordinate blocks
 		for (int coordinateBlock = 0; coordinateBlock < numberOfWayCoordinateBlocks; ++coordinateBlock) {
 			// get and check the number of way nodes (VBE-U)
-			int numberOfWayNodes = this.readBuffer.readUnsignedInt();
+			int numberOfWayNodes = readBuffer.readUnsignedInt();
 			if (numberOfWayNodes < 2 || numberOfWayNodes > Short.MAX_VALUE) {
 				LOGGER.warning("invalid number of way nodes: " + numberOfWayNodes);
 				// returning null here will actually leave the tile blank as the
@@ -683,13 +967,13 @@ public class MapFile implements MapDataStore {
 				return null;
 			}
 
-			// create the array which will store the current way segment
-			LatLong[] waySegment = new LatLong[numberOfWayNodes];
+			// create the array which will store the latitude and longitude of each node of the current way segment
+			int[] waySegment = new int[numberOfWayNodes * 2];
 
 			if (doubleDeltaEncoding) {
-				decodeWayNodesDoubleDelta(waySegment, tileLatitude, tileLongitude);
+				decodeWayNodesDoubleDelta(waySegment, tileLatitudeE6, tileLongitudeE6, readBuffer);
 			} else {
-				decodeWayNodesSingleDelta(waySegment, tileLatitude, tileLongitude);
+				decodeWayNodesSingleDelta(waySegment, tileLatitudeE6, tileLongitudeE6, readBuffer);
 			}
 
 			wayCoordinates[coordinateBlock] = waySegment;
@@ -700,16 +984,22 @@ public class MapFile implements MapDataStore {
 
 	private List<Way> processWays(QueryParameters queryParameters, int numberOfWays,
 	                              BoundingBox boundingBox, boolean filterRequired,
-	                              double tileLatitude, double tileLongitude) {
+	                              double tileLatitude, double tileLongitude, ReadBuffer readBuffer,
+	                              List<Integer> wayTileBitmasks) {
 		List<Way> ways = new ArrayList<Way>();
 		Tag[] wayTags = this.mapFileHeader.getMapFileInfo().wayTags;
 
 		BoundingBox wayFilterBbox = boundingBox.extend(wayFilterDistance);
+		boolean primitiveCoordinates = this.primitiveWayCoordinates;
+
+		// the writer encodes all way nodes relative to the tile coordinates in microdegrees
+		int tileLatitudeE6 = LatLongUtils.degreesToMicrodegrees(tileLatitude);
+		int tileLongitudeE6 = LatLongUtils.degreesToMicrodegrees(tileLongitude);
 
 		for (int elementCounter = numberOfWays; elementCounter != 0; --elementCounter) {
 			if (this.mapFileHeader.getMapFileInfo().debugFile) {
 				// get and check the way signature
-				String signatureWay = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_WAY);
+				String signatureWay = readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_WAY);
 				if (!signatureWay.startsWith("---WayStart")) {
 					LOGGER.warning("invalid way signature: " + signatureWay);
 					return null;
@@ -717,28 +1007,32 @@ public class MapFile implements MapDataStore {
 			}
 
 			// get the size of the way (VBE-U)
-			int wayDataSize = this.readBuffer.readUnsignedInt();
+			int wayDataSize = readBuffer.readUnsignedInt();
 			if (wayDataSize < 0) {
 				LOGGER.warning("invalid way data size: " + wayDataSize);
 				return null;
 			}
 
-			if (queryParameters.useTileBitmask) {
+			Integer wayTileBitmask = null;
+			if (wayTileBitmasks != null) {
+				// keep the way tile bitmask (2 bytes) for later filtering
+				wayTileBitmask = Integer.valueOf(readBuffer.readShort());
+			} else if (queryParameters.useTileBitmask) {
 				// get the way tile bitmask (2 bytes)
-				int tileBitmask = this.readBuffer.readShort();
+				int tileBitmask = readBuffer.readShort();
 				// check if the way is inside the requested tile
 				if ((queryParameters.queryTileBitmask & tileBitmask) == 0) {
 					// skip the rest of the way and continue with the next way
-					this.readBuffer.skipBytes(wayDataSize - 2);
+					readBuffer.skipBytes(wayDataSize - 2);
 					continue;
 				}
 			} else {
 				// ignore the way tile bitmask (2 bytes)
-				this.readBuffer.skipBytes(2);
+				readBuffer.skipBytes(2);
 			}
 
 			// get the special byte which encodes multiple flags
-			byte specialByte = this.readBuffer.readByte();
+			byte specialByte = readBuffer.readByte();
 
 			// bit 1-4 represent the layer
 			byte layer = (byte) ((specialByte & WAY_LAYER_BITMASK) >>> WAY_LAYER_SHIFT);
@@ -748,7 +1042,7 @@ public class MapFile implements MapDataStore {
 			List<Tag> tags = new ArrayList<Tag>();
 
 			for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
-				int tagId = this.readBuffer.readUnsignedInt();
+				int tagId = readBuffer.readUnsignedInt();
 				if (tagId < 0 || tagId >= wayTags.length) {
 					LOGGER.warning("invalid way tag ID: " + tagId);
 					return null;
@@ -757,7 +1051,7 @@ public class MapFile implements MapDataStore {
 			}
 
 			// get the feature bitmask (1 byte)
-			byte featureByte = this.readBuffer.readByte();
+			byte featureByte = readBuffer.readByte();
 
 			// bit 1-6 enable optional features
 			boolean featureName = (featureByte & WAY_FEATURE_NAME) != 0;
@@ -769,34 +1063,47 @@ public class MapFile implements MapDataStore {
 
 			// check if the way has a name
 			if (featureName) {
-				tags.add(new Tag(TAG_KEY_NAME, this.readBuffer.readUTF8EncodedString()));
+				tags.add(new Tag(TAG_KEY_NAME, readBuffer.readUTF8EncodedString()));
 			}
 
 			// check if the way has a house number
 			if (featureHouseNumber) {
-				tags.add(new Tag(TAG_KEY_HOUSE_NUMBER, this.readBuffer.readUTF8EncodedString()));
+				tags.add(new Tag(TAG_KEY_HOUSE_NUMBER, readBuffer.readUTF8EncodedString()));
 			}
 
 			// check if the way has a reference
 			if (featureRef) {
-				tags.add(new Tag(TAG_KEY_REF, this.readBuffer.readUTF8EncodedString()));
+				tags.add(new Tag(TAG_KEY_REF, readBuffer.readUTF8EncodedString()));
 			}
 
-			LatLong labelPosition = readOptionalLabelPosition(tileLatitude, tileLongitude, featureLabelPosition);
+			LatLong labelPosition = readOptionalLabelPosition(tileLatitude, tileLongitude, featureLabelPosition,
+					readBuffer);
 
-			int wayDataBlocks = readOptionalWayDataBlocksByte(featureWayDataBlocksByte);
+			int wayDataBlocks = readOptionalWayDataBlocksByte(featureWayDataBlocksByte, readBuffer);
 			if (wayDataBlocks < 1) {
 				LOGGER.warning("invalid number of way data blocks: " + wayDataBlocks);
 				return null;
 			}
 
 			for (int wayDataBlock = 0; wayDataBlock < wayDataBlocks; ++wayDataBlock) {
-				LatLong[][] wayNodes = processWayDataBlock(tileLatitude, tileLongitude, featureWayDoubleDeltaEncoding);
+				int[][] wayNodes = processWayDataBlock(tileLatitudeE6, tileLongitudeE6, featureWayDoubleDeltaEncoding,
+						readBuffer);
 				if (wayNodes != null) {
-					if (filterRequired && wayFilterEnabled && !wayFilterBbox.intersectsArea(wayNodes)) {
+					if (filterRequired && wayFilterEnabled && !intersectsArea(wayFilterBbox, wayNodes)) {
 						continue;
 					}
-					ways.add(new Way(layer, tags, wayNodes, labelPosition));
+					if (primitiveCoordinates) {
+						ways.add(new Way(layer, tags, wayNodes, labelPosition));
+					} else {
+						LatLong[][] latLongs = new LatLong[wayNodes.length][];
+						for (int i = 0; i < wayNodes.length; ++i) {
+							latLongs[i] = toLatLongs(wayNodes[i]);
+						}
+						ways.add(new Way(layer, tags, latLongs, labelPosition));
+					}
+					if (wayTileBitmasks != null) {
+						wayTileBitmasks.add(wayTileBitmask);
+					}
 				}
 			}
 		}
@@ -804,13 +1111,14 @@ public class MapFile implements MapDataStore {
 		return ways;
 	}
 
-	private LatLong readOptionalLabelPosition(double tileLatitude, double tileLongitude, boolean featureLabelPosition) {
+	private LatLong readOptionalLabelPosition(double tileLatitude, double tileLongitude, boolean featureLabelPosition,
+	                                          ReadBuffer readBuffer) {
 		if (featureLabelPosition) {
 			// get the label position latitude offset (VBE-S)
-			double latitude = tileLatitude + LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+			double latitude = tileLatitude + LatLongUtils.microdegreesToDegrees(readBuffer.readSignedInt());
 
 			// get the label position longitude offset (VBE-S)
-			double longitude = tileLongitude + LatLongUtils.microdegreesToDegrees(this.readBuffer.readSignedInt());
+			double longitude = tileLongitude + LatLongUtils.microdegreesToDegrees(readBuffer.readSignedInt());
 
 			return new LatLong(latitude, longitude);
 		}
@@ -818,16 +1126,16 @@ public class MapFile implements MapDataStore {
 		return null;
 	}
 
-	private int readOptionalWayDataBlocksByte(boolean featureWayDataBlocksByte) {
+	private int readOptionalWayDataBlocksByte(boolean featureWayDataBlocksByte, ReadBuffer readBuffer) {
 		if (featureWayDataBlocksByte) {
 			// get and check the number of way data blocks (VBE-U)
-			return this.readBuffer.readUnsignedInt();
+			return readBuffer.readUnsignedInt();
 		}
 		// only one way data block exists
 		return 1;
 	}
 
-	private int[][] readZoomTable(SubFileParameter subFileParameter) {
+	private int[][] readZoomTable(SubFileParameter subFileParameter, ReadBuffer readBuffer) {
 		int rows = subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin + 1;
 		int[][] zoomTable = new int[rows][2];
 
@@ -835,8 +1143,8 @@ public class MapFile implements MapDataStore {
 		int cumulatedNumberOfWays = 0;
 
 		for (int row = 0; row < rows; ++row) {
-			cumulatedNumberOfPois += this.readBuffer.readUnsignedInt();
-			cumulatedNumberOfWays += this.readBuffer.readUnsignedInt();
+			cumulatedNumberOfPois += readBuffer.readUnsignedInt();
+			cumulatedNumberOfWays += readBuffer.readUnsignedInt();
 
 			zoomTable[row][0] = cumulatedNumberOfPois;
 			zoomTable[row][1] = cumulatedNumberOfWays;
@@ -850,9 +1158,9 @@ public class MapFile implements MapDataStore {
 		// only to create a dummy empty file.
 		databaseIndexCache = null;
 		fileSize = 0;
-		inputFile = null;
+		inputChannel = null;
 		mapFileHeader = null;
-		readBuffer = null;
+		mappedSubFiles = null;
 		timestamp = System.currentTimeMillis();
 	}
 }
@@ -18,10 +18,24 @@ import java.util.List;
 
 class PoiWayBundle {
 	final List<PointOfInterest> pois;
+	final int[] wayTileBitmasks;
 	final List<Way> ways;
 
 	PoiWayBundle(List<PointOfInterest> pois, List<Way> ways) {
+		this(pois, ways, null);
+	}
+
+	/**
+	 * @param pois
+	 *            the POIs of the block.
+	 * @param ways
+	 *            the ways of the block.
+	 * @param wayTileBitmasks
+	 *            the tile bitmask of each way, only required for bundles which are filtered later.
+	 */
+	PoiWayBundle(List<PointOfInterest> pois, List<Way> ways, int[] wayTileBitmasks) {
 		this.pois = pois;
 		this.ways = ways;
+		this.wayTileBitmasks = wayTileBitmasks;
 	}
 }
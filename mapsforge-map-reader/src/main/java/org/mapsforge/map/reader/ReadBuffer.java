@@ -16,12 +16,17 @@
 package org.mapsforge.map.reader;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.logging.Logger;
 
 /**
- * Reads from a {@link RandomAccessFile} into a buffer and decodes the data.
+ * Reads from a {@link FileChannel} into a buffer and decodes the data.
+ * <p>
+ * Alternatively a region of a memory-mapped file can be decoded in place, see
+ * {@link #readFromMappedBuffer(ByteBuffer, int, int)}. A ReadBuffer is not thread safe, but any number of instances
+ * may share the same channel or mapped buffer as they only use absolute reads.
  */
 public class ReadBuffer {
 
@@ -54,11 +59,13 @@ public class ReadBuffer {
 	}
 
 	private byte[] bufferData;
+	private int bufferLimit;
 	private int bufferPosition;
-	private final RandomAccessFile inputFile;
+	private ByteBuffer bufferWrapper;
+	private final FileChannel inputChannel;
 
-	ReadBuffer(RandomAccessFile inputFile) {
-		this.inputFile = inputFile;
+	ReadBuffer(FileChannel inputChannel) {
+		this.inputChannel = inputChannel;
 	}
 
 	/**
@@ -67,12 +74,13 @@ public class ReadBuffer {
 	 * @return the byte value.
 	 */
 	public byte readByte() {
-		return this.bufferData[this.bufferPosition++];
+		return this.bufferWrapper.get(this.bufferPosition++);
 	}
 
 	/**
-	 * Reads the given amount of bytes from the file into the read buffer and resets the internal buffer position. If
-	 * the capacity of the read buffer is too small, a larger one is created automatically.
+	 * Reads the given amount of bytes from the current position of the file into the read buffer and resets the
+	 * internal buffer position. If the capacity of the read buffer is too small, a larger one is created
+	 * automatically.
 	 * 
 	 * @param length
 	 *            the amount of bytes to read from the file.
@@ -81,19 +89,65 @@ public class ReadBuffer {
 	 *             if an error occurs while reading the file.
 	 */
 	public boolean readFromFile(int length) throws IOException {
-		// ensure that the read buffer is large enough
-		if (this.bufferData == null || this.bufferData.length < length) {
-			// ensure that the read buffer is not too large
-			if (length > maximumBufferSize) {
-				LOGGER.warning("invalid read length: " + length);
+		ByteBuffer byteBuffer = prepareBuffer(length);
+		if (byteBuffer == null) {
+			return false;
+		}
+		while (byteBuffer.hasRemaining()) {
+			if (this.inputChannel.read(byteBuffer) < 0) {
 				return false;
 			}
-			this.bufferData = new byte[length];
 		}
+		return true;
+	}
 
-		// reset the buffer position and read the data into the buffer
-		this.bufferPosition = 0;
-		return this.inputFile.read(this.bufferData, 0, length) == length;
+	/**
+	 * Reads the given amount of bytes from the given position of the file into the read buffer and resets the
+	 * internal buffer position. The position of the file channel is not changed, so this method may be called
+	 * concurrently on different ReadBuffer instances sharing the same channel.
+	 * 
+	 * @param offset
+	 *            the absolute position in the file at which reading starts.
+	 * @param length
+	 *            the amount of bytes to read from the file.
+	 * @return true if the whole data was read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	public boolean readFromFile(long offset, int length) throws IOException {
+		ByteBuffer byteBuffer = prepareBuffer(length);
+		if (byteBuffer == null) {
+			return false;
+		}
+		while (byteBuffer.hasRemaining()) {
+			if (this.inputChannel.read(byteBuffer, offset + byteBuffer.position()) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Uses the given region of a memory-mapped file as the read buffer and sets the internal buffer position to its
+	 * start. No data is copied, all subsequent read operations decode the mapped region directly.
+	 * 
+	 * @param mappedBuffer
+	 *            the mapped file, only absolute read operations are performed on it.
+	 * @param offset
+	 *            the position of the region within the mapped buffer.
+	 * @param length
+	 *            the length of the region in bytes.
+	 * @return true if the region lies within the mapped buffer, false otherwise.
+	 */
+	public boolean readFromMappedBuffer(ByteBuffer mappedBuffer, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > mappedBuffer.capacity()) {
+			LOGGER.warning("invalid mapped region: " + offset + ", " + length);
+			return false;
+		}
+		this.bufferWrapper = mappedBuffer;
+		this.bufferPosition = offset;
+		this.bufferLimit = offset + length;
+		return true;
 	}
 
 	/**
@@ -105,7 +159,7 @@ public class ReadBuffer {
 	 */
 	public int readInt() {
 		this.bufferPosition += 4;
-		return Deserializer.getInt(this.bufferData, this.bufferPosition - 4);
+		return this.bufferWrapper.getInt(this.bufferPosition - 4);
 	}
 
 	/**
@@ -117,7 +171,7 @@ public class ReadBuffer {
 	 */
 	public long readLong() {
 		this.bufferPosition += 8;
-		return Deserializer.getLong(this.bufferData, this.bufferPosition - 8);
+		return this.bufferWrapper.getLong(this.bufferPosition - 8);
 	}
 
 	/**
@@ -129,7 +183,7 @@ public class ReadBuffer {
 	 */
 	public int readShort() {
 		this.bufferPosition += 2;
-		return Deserializer.getShort(this.bufferData, this.bufferPosition - 2);
+		return this.bufferWrapper.getShort(this.bufferPosition - 2);
 	}
 
 	/**
@@ -145,18 +199,18 @@ public class ReadBuffer {
 		byte variableByteShift = 0;
 
 		// check if the continuation bit is set
-		while ((this.bufferData[this.bufferPosition] & 0x80) != 0) {
-			variableByteDecode |= (this.bufferData[this.bufferPosition++] & 0x7f) << variableByteShift;
+		while ((this.bufferWrapper.get(this.bufferPosition) & 0x80) != 0) {
+			variableByteDecode |= (this.bufferWrapper.get(this.bufferPosition++) & 0x7f) << variableByteShift;
 			variableByteShift += 7;
 		}
 
 		// read the six data bits from the last byte
-		if ((this.bufferData[this.bufferPosition] & 0x40) != 0) {
+		if ((this.bufferWrapper.get(this.bufferPosition) & 0x40) != 0) {
 			// negative
-			return -(variableByteDecode | ((this.bufferData[this.bufferPosition++] & 0x3f) << variableByteShift));
+			return -(variableByteDecode | ((this.bufferWrapper.get(this.bufferPosition++) & 0x3f) << variableByteShift));
 		}
 		// positive
-		return variableByteDecode | ((this.bufferData[this.bufferPosition++] & 0x3f) << variableByteShift);
+		return variableByteDecode | ((this.bufferWrapper.get(this.bufferPosition++) & 0x3f) << variableByteShift);
 	}
 
 	/**
@@ -171,13 +225,13 @@ public class ReadBuffer {
 		byte variableByteShift = 0;
 
 		// check if the continuation bit is set
-		while ((this.bufferData[this.bufferPosition] & 0x80) != 0) {
-			variableByteDecode |= (this.bufferData[this.bufferPosition++] & 0x7f) << variableByteShift;
+		while ((this.bufferWrapper.get(this.bufferPosition) & 0x80) != 0) {
+			variableByteDecode |= (this.bufferWrapper.get(this.bufferPosition++) & 0x7f) << variableByteShift;
 			variableByteShift += 7;
 		}
 
 		// read the seven data bits from the last byte
-		return variableByteDecode | (this.bufferData[this.bufferPosition++] << variableByteShift);
+		return variableByteDecode | (this.bufferWrapper.get(this.bufferPosition++) << variableByteShift);
 	}
 
 	/**
@@ -197,10 +251,23 @@ public class ReadBuffer {
 	 * @return the UTF-8 decoded string (may be null).
 	 */
 	public String readUTF8EncodedString(int stringLength) {
-		if (stringLength > 0 && this.bufferPosition + stringLength <= this.bufferData.length) {
+		if (stringLength > 0 && this.bufferPosition + stringLength <= this.bufferLimit) {
+			byte[] stringData;
+			int stringOffset;
+			if (this.bufferWrapper.hasArray()) {
+				stringData = this.bufferWrapper.array();
+				stringOffset = this.bufferWrapper.arrayOffset() + this.bufferPosition;
+			} else {
+				// mapped buffers have no backing array, the string bytes must be copied
+				stringData = new byte[stringLength];
+				stringOffset = 0;
+				for (int i = 0; i < stringLength; ++i) {
+					stringData[i] = this.bufferWrapper.get(this.bufferPosition + i);
+				}
+			}
 			this.bufferPosition += stringLength;
 			try {
-				return new String(this.bufferData, this.bufferPosition - stringLength, stringLength, CHARSET_UTF8);
+				return new String(stringData, stringOffset, stringLength, CHARSET_UTF8);
 			} catch (UnsupportedEncodingException e) {
 				throw new IllegalStateException(e);
 			}
@@ -217,10 +284,35 @@ public class ReadBuffer {
 	}
 
 	/**
-	 * @return the current size of the read buffer.
+	 * @return the position after the last valid byte of the read buffer.
+	 */
+	int getBufferLimit() {
+		return this.bufferLimit;
+	}
+
+	/**
+	 * Ensures that the read buffer can hold the given amount of bytes and resets the internal buffer position.
+	 * 
+	 * @param length
+	 *            the amount of bytes that will be read.
+	 * @return a buffer to read exactly length bytes into, or null if the length is invalid.
 	 */
-	int getBufferSize() {
-		return this.bufferData.length;
+	private ByteBuffer prepareBuffer(int length) {
+		// ensure that the read buffer is large enough
+		if (this.bufferData == null || this.bufferData.length < length) {
+			// ensure that the read buffer is not too large
+			if (length > maximumBufferSize) {
+				LOGGER.warning("invalid read length: " + length);
+				return null;
+			}
+			this.bufferData = new byte[length];
+		}
+		this.bufferWrapper = ByteBuffer.wrap(this.bufferData);
+
+		// reset the buffer position
+		this.bufferPosition = 0;
+		this.bufferLimit = length;
+		return ByteBuffer.wrap(this.bufferData, 0, length);
 	}
 
 	/**
@@ -15,6 +15,7 @@
  */
 package org.mapsforge.map.reader;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.mapsforge.core.model.LatLong;
@@ -24,13 +25,21 @@ import org.mapsforge.core.model.Tag;
  * An immutable container for all data associated with a single way or area (closed way).
  */
 public class Way {
+	/**
+	 * The coordinates of the way nodes in microdegrees, latitude and longitude of each node are stored alternately in
+	 * one array per way segment (null if the coordinates are stored in {@link #latLongs}).
+	 * 
+	 * @see MapFile#setPrimitiveWayCoordinates(boolean)
+	 */
+	public final int[][] coordinates;
+
 	/**
 	 * The position of the area label (may be null).
 	 */
 	public final LatLong labelPosition;
 
 	/**
-	 * The geographical coordinates of the way nodes.
+	 * The geographical coordinates of the way nodes (null if the coordinates are stored in {@link #coordinates}).
 	 */
 	public final LatLong[][] latLongs;
 
@@ -48,6 +57,15 @@ public class Way {
 		this.layer = layer;
 		this.tags = tags;
 		this.latLongs = latLongs;
+		this.coordinates = null;
+		this.labelPosition = labelPosition;
+	}
+
+	Way(byte layer, List<Tag> tags, int[][] coordinates, LatLong labelPosition) {
+		this.layer = layer;
+		this.tags = tags;
+		this.latLongs = null;
+		this.coordinates = coordinates;
 		this.labelPosition = labelPosition;
 	}
 
@@ -67,9 +85,12 @@ public class Way {
 			return false;
 		} else if (this.labelPosition!= null && this.labelPosition.equals(other.labelPosition)) {
 			return false;
-		} else if (this.latLongs.length != other.latLongs.length) {
+		} else if (!Arrays.deepEquals(this.coordinates, other.coordinates)) {
 			return false;
-		} else {
+		} else if (this.latLongs != null) {
+			if (other.latLongs == null || this.latLongs.length != other.latLongs.length) {
+				return false;
+			}
 			for (int i = 0; i < this.latLongs.length; i++) {
 				if (this.latLongs[i].length != other.latLongs[i].length) {
 					return false;
@@ -91,7 +112,8 @@ public class Way {
 		int result = 1;
 		result = prime * result + layer;
 		result = prime * result + tags.hashCode();
-		result = prime * result + latLongs.hashCode();
+		result = prime * result + Arrays.deepHashCode(latLongs);
+		result = prime * result + Arrays.deepHashCode(coordinates);
 		if (labelPosition != null) {
 			result = prime * result + labelPosition.hashCode();
 		}
@@ -15,12 +15,16 @@
 package org.mapsforge.map.reader;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.mapsforge.core.model.LatLong;
 import org.mapsforge.core.model.Tag;
 import org.mapsforge.core.model.Tile;
+import org.mapsforge.core.util.LatLongUtils;
 import org.mapsforge.core.util.MercatorProjection;
 import org.mapsforge.map.reader.header.MapFileException;
 import org.mapsforge.map.reader.header.MapFileInfo;
@@ -73,6 +77,22 @@ public class MapFileWithDataTest {
 		Assert.assertTrue(way.tags.contains(new Tag("ref=äöü")));
 	}
 
+	private static void executeQueries(MapFile mapFile) {
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			int tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			int tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			Tile tile = new Tile(tileX, tileY, zoomLevel, 256);
+
+			MapReadResult mapReadResult = mapFile.readMapData(tile);
+
+			Assert.assertEquals(1, mapReadResult.pointOfInterests.size());
+			Assert.assertEquals(1, mapReadResult.ways.size());
+
+			checkPointOfInterest(mapReadResult.pointOfInterests.get(0));
+			checkWay(mapReadResult.ways.get(0));
+		}
+	}
+
 	@Test
 	public void executeQueryTest() {
 		MapFile mapFile = new MapFile(MAP_FILE);
@@ -80,20 +100,157 @@ public class MapFileWithDataTest {
 		MapFileInfo mapFileInfo = mapFile.getMapFileInfo();
 		Assert.assertTrue(mapFileInfo.debugFile);
 
+		executeQueries(mapFile);
+
+		mapFile.close();
+	}
+
+	@Test
+	public void executeQueryMemoryMappedTest() {
+		MapFile mapFile = new MapFile(MAP_FILE, true);
+
+		MapFileInfo mapFileInfo = mapFile.getMapFileInfo();
+		Assert.assertTrue(mapFileInfo.debugFile);
+
+		executeQueries(mapFile);
+
+		mapFile.close();
+	}
+
+	@Test
+	public void executeConcurrentQueryTest() throws InterruptedException {
+		for (final boolean memoryMapped : new boolean[] { false, true }) {
+			final MapFile mapFile = new MapFile(MAP_FILE, memoryMapped);
+			final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; ++i) {
+				threads[i] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int j = 0; j < 50; ++j) {
+								executeQueries(mapFile);
+							}
+						} catch (Throwable t) {
+							failures.add(t);
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			mapFile.close();
+			Assert.assertTrue(failures.toString(), failures.isEmpty());
+		}
+	}
+
+	@Test
+	public void indexCacheTest() {
+		MapFile mapFile = new MapFile(MAP_FILE, false, 8);
+
+		executeQueries(mapFile);
+		CacheStatistics statistics = mapFile.getIndexCacheStatistics();
+		Assert.assertTrue(statistics.loads > 0);
+		Assert.assertEquals(statistics.loads, statistics.misses);
+
+		// all index blocks are cached now, repeated queries must not read the index again
+		executeQueries(mapFile);
+		CacheStatistics repeatedStatistics = mapFile.getIndexCacheStatistics();
+		Assert.assertEquals(statistics.loads, repeatedStatistics.loads);
+		Assert.assertTrue(repeatedStatistics.hits > statistics.hits);
+
+		mapFile.close();
+	}
+
+	@Test
+	public void preloadIndexTest() {
+		MapFile mapFile = new MapFile(MAP_FILE);
+
+		Assert.assertFalse(mapFile.preloadIndex(0));
+		Assert.assertTrue(mapFile.preloadIndex(Long.MAX_VALUE));
+		long loads = mapFile.getIndexCacheStatistics().loads;
+
+		executeQueries(mapFile);
+		CacheStatistics statistics = mapFile.getIndexCacheStatistics();
+		Assert.assertEquals(loads, statistics.loads);
+		Assert.assertEquals(0, statistics.hits + statistics.misses);
+
+		mapFile.close();
+	}
+
+	@Test
+	public void blockCacheTest() {
+		MapFile mapFile = new MapFile(MAP_FILE);
+		MapFile cachedMapFile = new MapFile(MAP_FILE);
+		Assert.assertNull(cachedMapFile.getBlockCacheStatistics());
+		cachedMapFile.setBlockCacheSize(1000000);
+
+		for (int run = 0; run < 2; ++run) {
+			executeQueries(cachedMapFile);
+
+			// cached blocks must be filtered exactly like uncached ones, including for neighbouring tiles
+			for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+				int tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+				int tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+				for (int x = tileX - 1; x <= tileX + 1; ++x) {
+					for (int y = tileY - 1; y <= tileY + 1; ++y) {
+						Tile tile = new Tile(x, y, zoomLevel, 256);
+						MapReadResult expected = mapFile.readMapData(tile);
+						MapReadResult actual = cachedMapFile.readMapData(tile);
+						Assert.assertEquals(expected.pointOfInterests, actual.pointOfInterests);
+						Assert.assertEquals(expected.ways.size(), actual.ways.size());
+						Assert.assertEquals(expected.isWater, actual.isWater);
+					}
+				}
+			}
+		}
+
+		CacheStatistics statistics = cachedMapFile.getBlockCacheStatistics();
+		Assert.assertTrue(statistics.loads > 0);
+		Assert.assertTrue(statistics.hits > statistics.loads);
+
+		cachedMapFile.setBlockCacheSize(0);
+		Assert.assertNull(cachedMapFile.getBlockCacheStatistics());
+
+		mapFile.close();
+		cachedMapFile.close();
+	}
+
+	@Test
+	public void primitiveWayCoordinatesTest() {
+		MapFile mapFile = new MapFile(MAP_FILE);
+		MapFile primitiveMapFile = new MapFile(MAP_FILE);
+		primitiveMapFile.setPrimitiveWayCoordinates(true);
+		primitiveMapFile.setBlockCacheSize(1000000);
+
 		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
 			int tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
 			int tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
 			Tile tile = new Tile(tileX, tileY, zoomLevel, 256);
 
-			MapReadResult mapReadResult = mapFile.readMapData(tile);
+			Way way = mapFile.readMapData(tile).ways.get(0);
+			Way primitiveWay = primitiveMapFile.readMapData(tile).ways.get(0);
+			Assert.assertNull(primitiveWay.latLongs);
+			Assert.assertNull(way.coordinates);
+			Assert.assertEquals(way.tags, primitiveWay.tags);
+			Assert.assertEquals(way.latLongs.length, primitiveWay.coordinates.length);
 
-			Assert.assertEquals(1, mapReadResult.pointOfInterests.size());
-			Assert.assertEquals(1, mapReadResult.ways.size());
-
-			checkPointOfInterest(mapReadResult.pointOfInterests.get(0));
-			checkWay(mapReadResult.ways.get(0));
+			for (int i = 0; i < way.latLongs.length; ++i) {
+				Assert.assertEquals(way.latLongs[i].length * 2, primitiveWay.coordinates[i].length);
+				for (int j = 0; j < way.latLongs[i].length; ++j) {
+					Assert.assertEquals(LatLongUtils.degreesToMicrodegrees(way.latLongs[i][j].latitude),
+							primitiveWay.coordinates[i][2 * j]);
+					Assert.assertEquals(LatLongUtils.degreesToMicrodegrees(way.latLongs[i][j].longitude),
+							primitiveWay.coordinates[i][2 * j + 1]);
+				}
+			}
 		}
 
 		mapFile.close();
+		primitiveMapFile.close();
 	}
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
+
+/**
+ * An existing map file which is updated incrementally. Only the parts of the header which are needed to verify that
+ * the file matches the configuration, the tag lists and the tile indexes are read, the tiles are read as raw bytes so
+ * that they can be copied verbatim.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class BaseMapFile implements Closeable {
+	private static final long INDEX_OFFSET_MASK = 0x7FFFFFFFFFL;
+	private static final Charset UTF8_CHARSET = Charset.forName("utf8");
+
+	private static List<String> readTags(ByteBuffer buffer) {
+		int amountOfTags = buffer.getShort();
+		List<String> tags = new ArrayList<String>(amountOfTags);
+		for (int i = 0; i < amountOfTags; i++) {
+			tags.add(readUTF8(buffer));
+		}
+		return Collections.unmodifiableList(tags);
+	}
+
+	private static String readUTF8(ByteBuffer buffer) {
+		byte[] bytes = new byte[readVariableByteUnsigned(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, UTF8_CHARSET);
+	}
+
+	private static int readVariableByteUnsigned(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private final boolean debugFile;
+	private long[] index;
+	private int indexZoomInterval = -1;
+	private final int[] microdegreesBoundingBox;
+	private final List<String> poiTags;
+	private final RandomAccessFile randomAccessFile;
+	private final long[] subFileSizes;
+	private final long[] subFileStartAddresses;
+	private final byte[] subFileZoomLevels;
+	private final List<String> wayTags;
+
+	/**
+	 * @param file
+	 *            the map file.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid map file.
+	 */
+	BaseMapFile(File file) throws IOException {
+		this.randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			byte[] magicBytes = new byte[MapFileWriter.MAGIC_BYTE.length()];
+			this.randomAccessFile.readFully(magicBytes);
+			if (!MapFileWriter.MAGIC_BYTE.equals(new String(magicBytes, UTF8_CHARSET))) {
+				throw new IOException("not a map file: " + file);
+			}
+			byte[] header = new byte[this.randomAccessFile.readInt()];
+			this.randomAccessFile.readFully(header);
+			ByteBuffer buffer = ByteBuffer.wrap(header);
+
+			// file version, file size and date of creation
+			buffer.position(buffer.position() + 4 + 8 + 8);
+
+			this.microdegreesBoundingBox = new int[4];
+			for (int i = 0; i < this.microdegreesBoundingBox.length; i++) {
+				this.microdegreesBoundingBox[i] = buffer.getInt();
+			}
+
+			// tile size and projection
+			buffer.getShort();
+			readUTF8(buffer);
+
+			byte flags = buffer.get();
+			this.debugFile = (flags & MapFileWriter.BITMAP_DEBUG) != 0;
+			if ((flags & MapFileWriter.BITMAP_MAP_START_POSITION) != 0) {
+				buffer.position(buffer.position() + 4 + 4);
+			}
+			if ((flags & MapFileWriter.BITMAP_MAP_START_ZOOM) != 0) {
+				buffer.get();
+			}
+			if ((flags & MapFileWriter.BITMAP_PREFERRED_LANGUAGE) != 0) {
+				readUTF8(buffer);
+			}
+			if ((flags & MapFileWriter.BITMAP_COMMENT) != 0) {
+				readUTF8(buffer);
+			}
+			if ((flags & MapFileWriter.BITMAP_CREATED_WITH) != 0) {
+				readUTF8(buffer);
+			}
+
+			this.poiTags = readTags(buffer);
+			this.wayTags = readTags(buffer);
+
+			int amountOfZoomIntervals = buffer.get();
+			this.subFileZoomLevels = new byte[amountOfZoomIntervals * 3];
+			this.subFileStartAddresses = new long[amountOfZoomIntervals];
+			this.subFileSizes = new long[amountOfZoomIntervals];
+			for (int i = 0; i < amountOfZoomIntervals; i++) {
+				buffer.get(this.subFileZoomLevels, i * 3, 3);
+				this.subFileStartAddresses[i] = buffer.getLong();
+				this.subFileSizes[i] = buffer.getLong();
+			}
+		} catch (RuntimeException e) {
+			this.randomAccessFile.close();
+			throw new IOException("invalid map file header: " + file, e);
+		} catch (IOException e) {
+			this.randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.index = null;
+		this.randomAccessFile.close();
+	}
+
+	/**
+	 * @return the bounding box of the map in microdegrees in the order minLat, minLon, maxLat, maxLon.
+	 */
+	int[] getMicrodegreesBoundingBox() {
+		return this.microdegreesBoundingBox.clone();
+	}
+
+	/**
+	 * @return the POI tags in the order of their ids.
+	 */
+	List<String> getPoiTags() {
+		return this.poiTags;
+	}
+
+	/**
+	 * @return the way tags in the order of their ids.
+	 */
+	List<String> getWayTags() {
+		return this.wayTags;
+	}
+
+	/**
+	 * @return true if the map file contains debug signatures, false otherwise.
+	 */
+	boolean isDebugFile() {
+		return this.debugFile;
+	}
+
+	/**
+	 * @return true if the sub files have the same base, minimum and maximum zoom levels as the given configuration.
+	 */
+	boolean matches(ZoomIntervalConfiguration zoomIntervalConfiguration) {
+		if (zoomIntervalConfiguration.getNumberOfZoomIntervals() != this.subFileSizes.length) {
+			return false;
+		}
+		for (int i = 0; i < this.subFileSizes.length; i++) {
+			if (zoomIntervalConfiguration.getBaseZoom(i) != this.subFileZoomLevels[i * 3]
+					|| zoomIntervalConfiguration.getMinZoom(i) != this.subFileZoomLevels[i * 3 + 1]
+					|| zoomIntervalConfiguration.getMaxZoom(i) != this.subFileZoomLevels[i * 3 + 2]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the encoded data of a tile, including its debug signature. Tiles should be read in the order of the sub
+	 * files, as only the index of one sub file is kept in memory.
+	 * 
+	 * @param zoomIntervalIndex
+	 *            the index of the sub file.
+	 * @param tileNumber
+	 *            the number of the tile in the sub file, tiles are numbered row by row.
+	 * @param amountOfTiles
+	 *            the expected number of tiles of the sub file.
+	 * @return the raw bytes of the tile.
+	 * @throws IOException
+	 *             if the tile cannot be read or the sub file does not have the expected number of tiles.
+	 */
+	byte[] readTile(int zoomIntervalIndex, int tileNumber, int amountOfTiles) throws IOException {
+		if (this.indexZoomInterval != zoomIntervalIndex) {
+			readIndex(zoomIntervalIndex, amountOfTiles);
+		}
+		long tileOffset = this.index[tileNumber];
+		long nextTileOffset = tileNumber + 1 < this.index.length ? this.index[tileNumber + 1]
+				: this.subFileSizes[zoomIntervalIndex];
+
+		byte[] tile = new byte[(int) (nextTileOffset - tileOffset)];
+		this.randomAccessFile.seek(this.subFileStartAddresses[zoomIntervalIndex] + tileOffset);
+		this.randomAccessFile.readFully(tile);
+		return tile;
+	}
+
+	private void readIndex(int zoomIntervalIndex, int amountOfTiles) throws IOException {
+		this.index = null;
+		this.indexZoomInterval = -1;
+
+		int signatureLength = this.debugFile ? MapFileWriter.DEBUG_INDEX_START_STRING.length() : 0;
+		byte[] indexBytes = new byte[amountOfTiles * MapFileWriter.BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE];
+		this.randomAccessFile.seek(this.subFileStartAddresses[zoomIntervalIndex] + signatureLength);
+		this.randomAccessFile.readFully(indexBytes);
+
+		long[] offsets = new long[amountOfTiles];
+		for (int i = 0; i < amountOfTiles; i++) {
+			long offset = 0;
+			for (int j = 0; j < MapFileWriter.BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE; j++) {
+				offset = (offset << 8) | (indexBytes[i * MapFileWriter.BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE + j] & 0xff);
+			}
+			offsets[i] = offset & INDEX_OFFSET_MASK;
+		}
+		// the first tile directly follows the index
+		if (amountOfTiles > 0 && offsets[0] != signatureLength + indexBytes.length) {
+			throw new IOException("sub file " + zoomIntervalIndex + " does not have " + amountOfTiles + " tiles");
+		}
+
+		this.index = offsets;
+		this.indexZoomInterval = zoomIntervalIndex;
+	}
+}
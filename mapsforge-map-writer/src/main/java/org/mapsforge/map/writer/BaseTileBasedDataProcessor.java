@@ -46,6 +46,7 @@ import org.mapsforge.map.writer.model.TileGridLayout;
 import org.mapsforge.map.writer.model.WayResolver;
 import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
 import org.mapsforge.map.writer.util.GeoUtils;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
 
 import com.vividsolutions.jts.geom.TopologyException;
 
@@ -67,6 +68,14 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 			this.outerToInner = null;
 
 			TDWay[] members = relation.getMemberWays();
+			if (BaseTileBasedDataProcessor.this.extentIndex != null) {
+				for (TDWay member : members) {
+					if (member != null) {
+						BaseTileBasedDataProcessor.this.extentIndex.addWay(EntityType.Relation, relation.getId(),
+								member);
+					}
+				}
+			}
 			try {
 				this.polygonizer.polygonizeAndRelate(members);
 			} catch (TopologyException e) {
@@ -244,6 +253,9 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 			if (way.isRenderRelevant() && !BaseTileBasedDataProcessor.this.outerToInnerMapping.contains(way.getId())
 					&& !BaseTileBasedDataProcessor.this.innerWaysWithoutAdditionalTags.contains(way.getId())) {
 				addWayToTiles(way, BaseTileBasedDataProcessor.this.bboxEnlargement);
+				if (BaseTileBasedDataProcessor.this.extentIndex != null) {
+					BaseTileBasedDataProcessor.this.extentIndex.addWay(EntityType.Way, way.getId(), way);
+				}
 			}
 
 			return true;
@@ -256,12 +268,16 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 	// accounting
 	protected float[] countWays;
 	protected float[] countWayTileFactor;
+	protected final ExtentIndex extentIndex;
 
 	protected final TShortIntHashMap histogramPoiTags;
 	protected final TShortIntHashMap histogramWayTags;
 	protected final TLongSet innerWaysWithoutAdditionalTags;
 
 	protected long maxWayID = Long.MIN_VALUE;
+	// the tag ids of this run, they are optimized for the data when it is completed
+	protected Map<Short, Short> optimizedPoiIds;
+	protected Map<Short, Short> optimizedWayIds;
 	protected final TLongObjectHashMap<TLongArrayList> outerToInnerMapping;
 
 	protected final String preferredLanguage;
@@ -287,6 +303,7 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 		this.bboxEnlargement = configuration.getBboxEnlargement();
 		this.preferredLanguage = configuration.getPreferredLanguage();
 		this.skipInvalidRelations = configuration.isSkipInvalidRelations();
+		this.extentIndex = configuration.isExtentIndex() ? new ExtentIndex() : null;
 
 		this.outerToInnerMapping = new TLongObjectHashMap<>();
 		this.innerWaysWithoutAdditionalTags = new TLongHashSet();
@@ -297,6 +314,8 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 
 		this.histogramPoiTags = new TShortIntHashMap();
 		this.histogramWayTags = new TShortIntHashMap();
+		this.optimizedPoiIds = OSMTagMapping.getInstance().getOptimizedPoiIds();
+		this.optimizedWayIds = OSMTagMapping.getInstance().getOptimizedWayIds();
 
 		// compute horizontal and vertical tile coordinate offsets for all
 		// base zoom levels
@@ -326,6 +345,16 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 		return this.boundingbox;
 	}
 
+	@Override
+	public Map<Short, Short> getOptimizedPoiIds() {
+		return this.optimizedPoiIds;
+	}
+
+	@Override
+	public Map<Short, Short> getOptimizedWayIds() {
+		return this.optimizedWayIds;
+	}
+
 	@Override
 	public TileGridLayout getTileGridLayout(int zoomIntervalIndex) {
 		return this.tileGridLayouts[zoomIntervalIndex];
@@ -336,6 +365,30 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 		return this.zoomIntervalConfiguration;
 	}
 
+	/**
+	 * Keeps the tag ids of an existing map file, so that its tiles can be copied. Tags which are not contained in the
+	 * file get the next ids.
+	 * 
+	 * @param poiTags
+	 *            the POI tags of the file in the format key=value
+	 * @param wayTags
+	 *            the way tags of the file in the format key=value
+	 * @throws IllegalArgumentException
+	 *             if a tag is not contained in the tag mapping
+	 */
+	void fixTagOrdering(List<String> poiTags, List<String> wayTags) {
+		this.optimizedPoiIds = OSMTagMapping.getInstance().fixPoiOrdering(poiTags, this.optimizedPoiIds);
+		this.optimizedWayIds = OSMTagMapping.getInstance().fixWayOrdering(wayTags, this.optimizedWayIds);
+	}
+
+	/**
+	 * @return the extents of the POIs, ways and relations which have been added to tiles or null if they are not
+	 *         recorded.
+	 */
+	ExtentIndex getExtentIndex() {
+		return this.extentIndex;
+	}
+
 	protected void addPOI(TDNode poi) {
 		if (!poi.isPOI()) {
 			return;
@@ -355,6 +408,9 @@ abstract class BaseTileBasedDataProcessor implements TileBasedDataProcessor, Nod
 				if (tileData != null) {
 					tileData.addPOI(poi);
 					countPoiTags(poi);
+					if (this.extentIndex != null) {
+						this.extentIndex.addPOI(poi);
+					}
 				}
 			}
 		}
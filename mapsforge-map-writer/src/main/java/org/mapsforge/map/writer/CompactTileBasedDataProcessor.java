@@ -0,0 +1,288 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.procedure.TLongProcedure;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDRelation;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileCoordinate;
+import org.mapsforge.map.writer.model.TileData;
+import org.mapsforge.map.writer.model.TileInfo;
+import org.mapsforge.map.writer.util.GeoUtils;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+
+/**
+ * A TileBasedDataStore that uses the RAM as storage device for temporary data structures, like the
+ * {@link RAMTileBasedDataProcessor}, but keeps the data in a compact form.
+ * <p>
+ * The coordinates of the nodes and the way nodes of the ways are stored in primitive lists ordered by id, names and
+ * tags are shared between all entities. Only POIs are kept as {@link TDNode} objects. The {@link TDNode} and
+ * {@link TDWay} objects of all other entities are created on demand, the tiles only store the ids of their entities.
+ */
+public final class CompactTileBasedDataProcessor extends BaseTileBasedDataProcessor {
+	/**
+	 * Creates a new instance of a {@link CompactTileBasedDataProcessor}.
+	 * 
+	 * @param configuration
+	 *            the configuration
+	 * @return a new instance of a {@link CompactTileBasedDataProcessor}
+	 */
+	public static CompactTileBasedDataProcessor newInstance(MapWriterConfiguration configuration) {
+		return new CompactTileBasedDataProcessor(configuration);
+	}
+
+	private final InternPool internPool;
+	private final TLongObjectHashMap<TDRelation> multipolygons;
+	private final NodeStore nodes;
+	private final TLongObjectHashMap<TDNode> pois;
+	private final HDTileData[][][] tileData;
+	private final WayStore ways;
+
+	private CompactTileBasedDataProcessor(MapWriterConfiguration configuration) {
+		super(configuration);
+		this.internPool = new InternPool();
+		this.multipolygons = new TLongObjectHashMap<>();
+		this.nodes = new NodeStore();
+		this.pois = new TLongObjectHashMap<>();
+		this.ways = new WayStore(this.internPool);
+		this.tileData = new HDTileData[this.zoomIntervalConfiguration.getNumberOfZoomIntervals()][][];
+		for (int i = 0; i < this.zoomIntervalConfiguration.getNumberOfZoomIntervals(); i++) {
+			this.tileData[i] = new HDTileData[this.tileGridLayouts[i].getAmountTilesHorizontal()][this.tileGridLayouts[i]
+					.getAmountTilesVertical()];
+		}
+	}
+
+	@Override
+	public void addNode(Node node) {
+		TDNode tdNode = TDNode.fromNode(node, this.preferredLanguage);
+		this.nodes.add(tdNode.getId(), tdNode.getLatitude(), tdNode.getLongitude());
+		if (tdNode.isPOI()) {
+			TDNode poi = new TDNode(tdNode.getId(), tdNode.getLatitude(), tdNode.getLongitude(),
+					tdNode.getElevation(), tdNode.getLayer(), this.internPool.intern(tdNode.getHouseNumber()),
+					this.internPool.intern(tdNode.getName()), this.internPool.intern(tdNode.getTags()));
+			this.pois.put(poi.getId(), poi);
+			addPOI(poi);
+		}
+	}
+
+	@Override
+	public void addRelation(Relation relation) {
+		TDRelation tdRelation = TDRelation.fromRelation(relation, this, this.preferredLanguage);
+		if (tdRelation != null) {
+			this.multipolygons.put(relation.getId(), tdRelation);
+		}
+	}
+
+	@Override
+	public void addWay(Way way) {
+		TDWay tdWay = TDWay.fromWay(way, this, this.preferredLanguage);
+		if (tdWay == null) {
+			return;
+		}
+		this.ways.add(tdWay);
+		this.maxWayID = Math.max(this.maxWayID, way.getId());
+
+		if (tdWay.isCoastline()) {
+			// find matching tiles on zoom level 12
+			Set<TileCoordinate> coastLineTiles = GeoUtils.mapWayToTiles(tdWay, TileInfo.TILE_INFO_ZOOMLEVEL, 0);
+			for (TileCoordinate tileCoordinate : coastLineTiles) {
+				TLongHashSet coastlines = this.tilesToCoastlines.get(tileCoordinate);
+				if (coastlines == null) {
+					coastlines = new TLongHashSet();
+					this.tilesToCoastlines.put(tileCoordinate, coastlines);
+				}
+				coastlines.add(tdWay.getId());
+			}
+		}
+	}
+
+	@Override
+	public void complete() {
+		this.nodes.complete();
+
+		// virtual ways created for multipolygons are added to the way store, but not handled as ways
+		int amountOfWays = this.ways.size();
+
+		// Polygonize multipolygon
+		RelationHandler relationHandler = new RelationHandler();
+		this.multipolygons.forEachValue(relationHandler);
+		this.multipolygons.clear();
+
+		WayHandler wayHandler = new WayHandler();
+		for (int i = 0; i < amountOfWays; i++) {
+			wayHandler.execute(this.ways.getAt(i, this));
+		}
+		this.ways.complete();
+
+		this.optimizedPoiIds = OSMTagMapping.getInstance().optimizePoiOrdering(this.histogramPoiTags);
+		this.optimizedWayIds = OSMTagMapping.getInstance().optimizeWayOrdering(this.histogramWayTags);
+	}
+
+	@Override
+	public Set<TDWay> getCoastLines(TileCoordinate tc) {
+		if (tc.getZoomlevel() <= TileInfo.TILE_INFO_ZOOMLEVEL) {
+			return Collections.emptySet();
+		}
+		TileCoordinate correspondingOceanTile = tc.translateToZoomLevel(TileInfo.TILE_INFO_ZOOMLEVEL).get(0);
+		TLongHashSet coastlines = this.tilesToCoastlines.get(correspondingOceanTile);
+		if (coastlines == null) {
+			return Collections.emptySet();
+		}
+
+		final Set<TDWay> res = new HashSet<>();
+		coastlines.forEach(new TLongProcedure() {
+			@Override
+			public boolean execute(long id) {
+				TDWay way = getWay(id);
+				if (way != null) {
+					res.add(way);
+					return true;
+				}
+				return false;
+			}
+		});
+		return res;
+	}
+
+	@Override
+	public List<TDWay> getInnerWaysOfMultipolygon(long outerWayID) {
+		TLongArrayList innerwayIDs = this.outerToInnerMapping.get(outerWayID);
+		if (innerwayIDs == null) {
+			return null;
+		}
+		return getInnerWaysOfMultipolygon(innerwayIDs.toArray());
+	}
+
+	@Override
+	public TDNode getNode(long id) {
+		TDNode poi = this.pois.get(id);
+		if (poi != null) {
+			return poi;
+		}
+		return this.nodes.get(id);
+	}
+
+	@Override
+	public TileData getTile(int baseZoomIndex, int tileCoordinateX, int tileCoordinateY) {
+		HDTileData hdt = getTileImpl(baseZoomIndex, tileCoordinateX, tileCoordinateY);
+		if (hdt == null) {
+			return null;
+		}
+
+		final RAMTileData td = new RAMTileData();
+		TLongIterator it = hdt.getPois().iterator();
+		while (it.hasNext()) {
+			td.addPOI(this.pois.get(it.next()));
+		}
+
+		it = hdt.getWays().iterator();
+		while (it.hasNext()) {
+			long id = it.next();
+			TDWay way = getWay(id);
+			if (way == null) {
+				LOGGER.finer("referenced way non-existing" + id);
+				continue;
+			}
+			if (this.outerToInnerMapping.contains(id)) {
+				way.setShape(TDWay.MULTI_POLYGON);
+			}
+			td.addWay(way);
+		}
+
+		return td;
+	}
+
+	@Override
+	public TDWay getWay(long id) {
+		return this.ways.get(id, this);
+	}
+
+	@Override
+	public void release() {
+		// nothing to do here
+	}
+
+	@Override
+	protected HDTileData getTileImpl(int zoom, int tileX, int tileY) {
+		int tileCoordinateXIndex = tileX - this.tileGridLayouts[zoom].getUpperLeft().getX();
+		int tileCoordinateYIndex = tileY - this.tileGridLayouts[zoom].getUpperLeft().getY();
+		// check for valid range
+		if (tileCoordinateXIndex < 0 || tileCoordinateYIndex < 0 || this.tileData[zoom].length <= tileCoordinateXIndex
+				|| this.tileData[zoom][tileCoordinateXIndex].length <= tileCoordinateYIndex) {
+			return null;
+		}
+
+		HDTileData td = this.tileData[zoom][tileCoordinateXIndex][tileCoordinateYIndex];
+		if (td == null) {
+			td = new HDTileData();
+			this.tileData[zoom][tileCoordinateXIndex][tileCoordinateYIndex] = td;
+		}
+
+		return td;
+	}
+
+	@Override
+	protected void handleAdditionalRelationTags(TDWay way, TDRelation relation) {
+		// the relation has been merged into a copy of the way, it is merged again into the stored way,
+		// which may already contain the information of other relations
+		TDWay storedWay = getWay(way.getId());
+		if (storedWay != null) {
+			storedWay.mergeRelationInformation(relation);
+			storedWay.setShape(way.getShape());
+			this.ways.update(storedWay);
+		}
+	}
+
+	@Override
+	protected void handleVirtualInnerWay(TDWay virtualWay) {
+		this.ways.add(virtualWay);
+	}
+
+	@Override
+	protected void handleVirtualOuterWay(TDWay virtualWay) {
+		this.ways.add(virtualWay);
+	}
+
+	private List<TDWay> getInnerWaysOfMultipolygon(long[] innerWayIDs) {
+		if (innerWayIDs == null) {
+			return Collections.emptyList();
+		}
+		List<TDWay> res = new ArrayList<>();
+		for (long id : innerWayIDs) {
+			TDWay current = getWay(id);
+			if (current == null) {
+				continue;
+			}
+			res.add(current);
+		}
+
+		return res;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+
+/**
+ * The extents of the POIs, ways and multipolygon relations which have been written to a map file, stored next to the
+ * map file.
+ * <p>
+ * The map file itself does not contain the ids of its elements, so when a map file is updated incrementally, the
+ * previous positions of deleted and modified entities are taken from the extent index of the base file.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class ExtentIndex {
+	private static final String FILE_EXTENSION = ".extents";
+	private static final String MAGIC = "mapsforge extent index";
+	private static final int NO_SLOT = -1;
+	private static final int VERSION = 1;
+
+	/**
+	 * @param way
+	 *            the way.
+	 * @return the extent of the way nodes in microdegrees in the order minLat, minLon, maxLat, maxLon or null if the
+	 *         way nodes are not resolved.
+	 */
+	static int[] getExtent(TDWay way) {
+		TDNode[] wayNodes = way.getWayNodes();
+		if (wayNodes == null || wayNodes.length == 0) {
+			return null;
+		}
+		int[] extent = new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+		for (TDNode wayNode : wayNodes) {
+			extent[0] = Math.min(extent[0], wayNode.getLatitude());
+			extent[1] = Math.min(extent[1], wayNode.getLongitude());
+			extent[2] = Math.max(extent[2], wayNode.getLatitude());
+			extent[3] = Math.max(extent[3], wayNode.getLongitude());
+		}
+		return extent;
+	}
+
+	/**
+	 * @param mapFile
+	 *            the map file.
+	 * @return the file of the extent index which belongs to the map file.
+	 */
+	static File getFile(File mapFile) {
+		return new File(mapFile.getPath() + FILE_EXTENSION);
+	}
+
+	/**
+	 * @param file
+	 *            the file of the extent index.
+	 * @return the extent index.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid extent index.
+	 */
+	static ExtentIndex read(File file) throws IOException {
+		DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (!MAGIC.equals(inputStream.readUTF()) || inputStream.readInt() != VERSION) {
+				throw new IOException("not a valid extent index: " + file);
+			}
+			ExtentIndex extentIndex = new ExtentIndex();
+			extentIndex.read(inputStream, extentIndex.nodes);
+			extentIndex.read(inputStream, extentIndex.ways);
+			extentIndex.read(inputStream, extentIndex.relations);
+			return extentIndex;
+		} catch (EOFException e) {
+			throw new IOException("truncated extent index: " + file, e);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private final TIntArrayList extents = new TIntArrayList();
+	private final TLongIntHashMap nodes = new TLongIntHashMap(16, 0.5f, 0, NO_SLOT);
+	private final TLongIntHashMap relations = new TLongIntHashMap(16, 0.5f, 0, NO_SLOT);
+	private final TLongIntHashMap ways = new TLongIntHashMap(16, 0.5f, 0, NO_SLOT);
+
+	/**
+	 * Adds an extent, if the entity has already been added the extents are merged.
+	 * 
+	 * @param entityType
+	 *            the type of the entity, either node, way or relation.
+	 * @param id
+	 *            the OSM id of the entity.
+	 * @param extent
+	 *            the extent in microdegrees in the order minLat, minLon, maxLat, maxLon.
+	 */
+	void add(EntityType entityType, long id, int[] extent) {
+		TLongIntHashMap map = getMap(entityType);
+		int slot = map.get(id);
+		if (slot == NO_SLOT) {
+			map.put(id, this.extents.size() / 4);
+			this.extents.add(extent);
+		} else {
+			int offset = slot * 4;
+			this.extents.set(offset, Math.min(this.extents.get(offset), extent[0]));
+			this.extents.set(offset + 1, Math.min(this.extents.get(offset + 1), extent[1]));
+			this.extents.set(offset + 2, Math.max(this.extents.get(offset + 2), extent[2]));
+			this.extents.set(offset + 3, Math.max(this.extents.get(offset + 3), extent[3]));
+		}
+	}
+
+	/**
+	 * @param poi
+	 *            a POI which has been added to the map.
+	 */
+	void addPOI(TDNode poi) {
+		add(EntityType.Node, poi.getId(), new int[] { poi.getLatitude(), poi.getLongitude(), poi.getLatitude(),
+				poi.getLongitude() });
+	}
+
+	/**
+	 * @param entityType
+	 *            the type of the entity, either way or relation.
+	 * @param id
+	 *            the OSM id of the entity.
+	 * @param way
+	 *            a way which belongs to the entity, ways without resolved way nodes are ignored.
+	 */
+	void addWay(EntityType entityType, long id, TDWay way) {
+		int[] extent = getExtent(way);
+		if (extent != null) {
+			add(entityType, id, extent);
+		}
+	}
+
+	/**
+	 * @param entityType
+	 *            the type of the entity, either node, way or relation.
+	 * @param id
+	 *            the OSM id of the entity.
+	 * @return the extent in microdegrees in the order minLat, minLon, maxLat, maxLon or null if the entity is unknown.
+	 */
+	int[] get(EntityType entityType, long id) {
+		int slot = getMap(entityType).get(id);
+		if (slot == NO_SLOT) {
+			return null;
+		}
+		return this.extents.toArray(slot * 4, 4);
+	}
+
+	/**
+	 * @return the number of entities.
+	 */
+	int size() {
+		return this.nodes.size() + this.ways.size() + this.relations.size();
+	}
+
+	/**
+	 * @param file
+	 *            the file to write the extent index to.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	void write(File file) throws IOException {
+		DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			outputStream.writeUTF(MAGIC);
+			outputStream.writeInt(VERSION);
+			write(outputStream, this.nodes);
+			write(outputStream, this.ways);
+			write(outputStream, this.relations);
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	private TLongIntHashMap getMap(EntityType entityType) {
+		switch (entityType) {
+			case Node:
+				return this.nodes;
+			case Way:
+				return this.ways;
+			case Relation:
+				return this.relations;
+			default:
+				throw new IllegalArgumentException("invalid entity type: " + entityType);
+		}
+	}
+
+	private void read(DataInputStream inputStream, TLongIntHashMap map) throws IOException {
+		int amount = inputStream.readInt();
+		int[] extent = new int[4];
+		for (int i = 0; i < amount; i++) {
+			long id = inputStream.readLong();
+			for (int j = 0; j < extent.length; j++) {
+				extent[j] = inputStream.readInt();
+			}
+			map.put(id, this.extents.size() / 4);
+			this.extents.add(extent);
+		}
+	}
+
+	private void write(DataOutputStream outputStream, TLongIntHashMap map) throws IOException {
+		outputStream.writeInt(map.size());
+		for (TLongIntIterator iterator = map.iterator(); iterator.hasNext();) {
+			iterator.advance();
+			outputStream.writeLong(iterator.key());
+			int offset = iterator.value() * 4;
+			for (int j = 0; j < 4; j++) {
+				outputStream.writeInt(this.extents.get(offset + j));
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@ import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.hash.TLongHashSet;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -39,12 +40,18 @@ import org.openstreetmap.osmosis.core.domain.v0_6.Way;
 import org.openstreetmap.osmosis.core.lifecycle.ReleasableIterator;
 import org.openstreetmap.osmosis.core.store.IndexedObjectStore;
 import org.openstreetmap.osmosis.core.store.IndexedObjectStoreReader;
-import org.openstreetmap.osmosis.core.store.NoSuchIndexElementException;
 import org.openstreetmap.osmosis.core.store.SimpleObjectStore;
 import org.openstreetmap.osmosis.core.store.SingleClassObjectSerializationFactory;
 
 /**
  * A TileBasedDataStore that uses the hard disk as storage device for temporary data structures.
+ * <p>
+ * The coordinates of all nodes are stored in a memory-mapped file indexed by node id, the ways in a file of compact
+ * records, so that way nodes and ways are resolved without deserializing osmosis entities. Only POIs and relations
+ * are kept as osmosis entities.
+ * <p>
+ * Tiles are read on the writer thread while the encoding workers resolve the inner ways of multipolygons, so both are
+ * synchronized on this processor: the POI index reader is not thread-safe and reading a tile updates its ways.
  */
 public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 	/**
@@ -60,26 +67,29 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 	final TLongObjectMap<List<TDRelation>> additionalRelationTags;
 	final TLongObjectMap<TDWay> virtualWays;
+	// only POIs are stored with all their tags
 	private final IndexedObjectStore<Node> indexedNodeStore;
-	private final IndexedObjectStore<Way> indexedWayStore;
 
 	private IndexedObjectStoreReader<Node> nodeIndexReader;
+	private final MappedNodeStore nodeStore;
 	private final SimpleObjectStore<Relation> relationStore;
 
 	private final HDTileData[][][] tileData;
-	private IndexedObjectStoreReader<Way> wayIndexReader;
-
-	private final SimpleObjectStore<Way> wayStore;
+	private final WayFile wayFile;
 
 	private HDTileBasedDataProcessor(MapWriterConfiguration configuration) {
 		super(configuration);
 		this.indexedNodeStore = new IndexedObjectStore<>(new SingleClassObjectSerializationFactory(Node.class),
 				"idxNodes");
-		this.indexedWayStore = new IndexedObjectStore<>(new SingleClassObjectSerializationFactory(Way.class), "idxWays");
+		try {
+			this.nodeStore = new MappedNodeStore();
+			this.wayFile = new WayFile();
+		} catch (IOException e) {
+			throw new RuntimeException("could not create temporary files", e);
+		}
 		// indexedRelationStore = new IndexedObjectStore<Relation>(
 		// new SingleClassObjectSerializationFactory(
 		// Relation.class), "idxWays");
-		this.wayStore = new SimpleObjectStore<>(new SingleClassObjectSerializationFactory(Way.class), "heapWays", true);
 		this.relationStore = new SimpleObjectStore<>(new SingleClassObjectSerializationFactory(Relation.class),
 				"heapRelations", true);
 
@@ -94,9 +104,16 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 	@Override
 	public void addNode(Node node) {
-		this.indexedNodeStore.add(node.getId(), node);
 		TDNode tdNode = TDNode.fromNode(node, this.preferredLanguage);
-		addPOI(tdNode);
+		try {
+			this.nodeStore.add(tdNode.getId(), tdNode.getLatitude(), tdNode.getLongitude());
+		} catch (IOException e) {
+			throw new RuntimeException("could not store node " + node.getId(), e);
+		}
+		if (tdNode.isPOI()) {
+			this.indexedNodeStore.add(node.getId(), node);
+			addPOI(tdNode);
+		}
 	}
 
 	@Override
@@ -106,9 +123,17 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 	@Override
 	public void addWay(Way way) {
-		this.wayStore.add(way);
-		this.indexedWayStore.add(way.getId(), way);
 		this.maxWayID = Math.max(way.getId(), this.maxWayID);
+		// the way nodes are resolved when the way is added, so nodes must be added before the ways
+		TDWay tdWay = TDWay.fromWay(way, this, this.preferredLanguage);
+		if (tdWay == null) {
+			return;
+		}
+		try {
+			this.wayFile.add(tdWay);
+		} catch (IOException e) {
+			throw new RuntimeException("could not store way " + way.getId(), e);
+		}
 	}
 
 	// TODO add accounting of average number of tiles per way
@@ -117,8 +142,11 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		this.indexedNodeStore.complete();
 		this.nodeIndexReader = this.indexedNodeStore.createReader();
 
-		this.indexedWayStore.complete();
-		this.wayIndexReader = this.indexedWayStore.createReader();
+		try {
+			this.wayFile.complete();
+		} catch (IOException e) {
+			throw new RuntimeException("could not complete way file", e);
+		}
 
 		// handle relations
 		ReleasableIterator<Relation> relationReader = this.relationStore.iterate();
@@ -130,26 +158,29 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		}
 
 		// handle ways
-		ReleasableIterator<Way> wayReader = this.wayStore.iterate();
+		WayFile.WayIterator wayReader = this.wayFile.iterator(this);
 		WayHandler wayHandler = new WayHandler();
-		while (wayReader.hasNext()) {
-			Way way = wayReader.next();
-			TDWay tdWay = TDWay.fromWay(way, this, this.preferredLanguage);
-			if (tdWay == null) {
-				continue;
-			}
-			List<TDRelation> associatedRelations = this.additionalRelationTags.get(tdWay.getId());
-			if (associatedRelations != null) {
-				for (TDRelation tileDataRelation : associatedRelations) {
-					tdWay.mergeRelationInformation(tileDataRelation);
+		try {
+			while (wayReader.hasNext()) {
+				TDWay tdWay = wayReader.next();
+				if (tdWay == null) {
+					continue;
+				}
+				List<TDRelation> associatedRelations = this.additionalRelationTags.get(tdWay.getId());
+				if (associatedRelations != null) {
+					for (TDRelation tileDataRelation : associatedRelations) {
+						tdWay.mergeRelationInformation(tileDataRelation);
+					}
 				}
-			}
 
-			wayHandler.execute(tdWay);
+				wayHandler.execute(tdWay);
+			}
+		} finally {
+			wayReader.close();
 		}
 
-		OSMTagMapping.getInstance().optimizePoiOrdering(this.histogramPoiTags);
-		OSMTagMapping.getInstance().optimizeWayOrdering(this.histogramWayTags);
+		this.optimizedPoiIds = OSMTagMapping.getInstance().optimizePoiOrdering(this.histogramPoiTags);
+		this.optimizedWayIds = OSMTagMapping.getInstance().optimizeWayOrdering(this.histogramWayTags);
 	}
 
 	@Override
@@ -159,10 +190,6 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		}
 		TileCoordinate correspondingOceanTile = tc.translateToZoomLevel(TileInfo.TILE_INFO_ZOOMLEVEL).get(0);
 
-		if (this.wayIndexReader == null) {
-			throw new IllegalStateException("way store not accessible, call complete() first");
-		}
-
 		TLongHashSet coastlines = this.tilesToCoastlines.get(correspondingOceanTile);
 		if (coastlines == null) {
 			return Collections.emptySet();
@@ -172,14 +199,11 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		HashSet<TDWay> coastlinesAsTDWay = new HashSet<>(coastlines.size());
 		while (it.hasNext()) {
 			long id = it.next();
-			TDWay tdWay = null;
-			try {
-				tdWay = TDWay.fromWay(this.wayIndexReader.get(id), this, this.preferredLanguage);
-			} catch (NoSuchIndexElementException e) {
-				LOGGER.finer("coastline way non-existing" + id);
-			}
+			TDWay tdWay = this.wayFile.get(id, this);
 			if (tdWay != null) {
 				coastlinesAsTDWay.add(tdWay);
+			} else {
+				LOGGER.finer("coastline way non-existing" + id);
 			}
 		}
 		return coastlinesAsTDWay;
@@ -196,20 +220,15 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 	@Override
 	public TDNode getNode(long id) {
-		if (this.nodeIndexReader == null) {
-			throw new IllegalStateException("node store not accessible, call complete() first");
-		}
-
-		try {
-			return TDNode.fromNode(this.nodeIndexReader.get(id), this.preferredLanguage);
-		} catch (NoSuchIndexElementException e) {
+		TDNode node = this.nodeStore.get(id);
+		if (node == null) {
 			LOGGER.finer("node cannot be found in index: " + id);
-			return null;
 		}
+		return node;
 	}
 
 	@Override
-	public TileData getTile(int baseZoomIndex, int tileCoordinateX, int tileCoordinateY) {
+	public synchronized TileData getTile(int baseZoomIndex, int tileCoordinateX, int tileCoordinateY) {
 		HDTileData hdt = getTileImpl(baseZoomIndex, tileCoordinateX, tileCoordinateY);
 		if (hdt == null) {
 			return null;
@@ -220,23 +239,18 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 	@Override
 	public TDWay getWay(long id) {
-		if (this.wayIndexReader == null) {
-			throw new IllegalStateException("way store not accessible, call complete() first");
-		}
-
-		try {
-			return TDWay.fromWay(this.wayIndexReader.get(id), this, this.preferredLanguage);
-		} catch (NoSuchIndexElementException e) {
+		TDWay way = this.wayFile.get(id, this);
+		if (way == null) {
 			LOGGER.finer("way cannot be found in index: " + id);
-			return null;
 		}
+		return way;
 	}
 
 	@Override
 	public void release() {
 		this.indexedNodeStore.release();
-		this.indexedWayStore.release();
-		this.wayStore.release();
+		this.nodeStore.release();
+		this.wayFile.release();
 		this.relationStore.release();
 	}
 
@@ -288,19 +302,16 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 
 		it = hdt.getWays().iterator();
 		while (it.hasNext()) {
-			TDWay way = null;
 			long id = it.next();
-			try {
-				way = TDWay.fromWay(this.wayIndexReader.get(id), this, this.preferredLanguage);
-				td.addWay(way);
-			} catch (NoSuchIndexElementException e) {
+			TDWay way = this.wayFile.get(id, this);
+			if (way == null) {
 				// is it a virtual way?
 				way = this.virtualWays.get(id);
-				if (way != null) {
-					td.addWay(way);
-				} else {
-					LOGGER.finer("referenced way non-existing" + id);
-				}
+			}
+			if (way != null) {
+				td.addWay(way);
+			} else {
+				LOGGER.finer("referenced way non-existing" + id);
 			}
 
 			if (way != null) {
@@ -326,10 +337,8 @@ public final class HDTileBasedDataProcessor extends BaseTileBasedDataProcessor {
 		}
 		List<TDWay> res = new ArrayList<>();
 		for (long id : innerWayIDs) {
-			TDWay current = null;
-			try {
-				current = TDWay.fromWay(this.wayIndexReader.get(id), this, this.preferredLanguage);
-			} catch (NoSuchIndexElementException e) {
+			TDWay current = this.wayFile.get(id, this);
+			if (current == null) {
 				current = this.virtualWays.get(id);
 				if (current == null) {
 					LOGGER.fine("multipolygon with outer way id " + id + " references non-existing inner way " + id);
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * Maps OSM ids to the positions in which they have been added.
+ * <p>
+ * OSM files are ordered by id, so the ids are usually added in ascending order and are looked up by binary search
+ * without any additional memory. Only if an id is added out of order, or twice, a hash index is built and the position
+ * added last wins.
+ * <p>
+ * Adding ids is not thread-safe, lookups are once all ids have been added.
+ */
+final class IdIndex {
+	private static final int NO_POSITION = -1;
+
+	private TLongIntHashMap hashIndex;
+	private final TLongArrayList ids;
+
+	IdIndex() {
+		this.ids = new TLongArrayList();
+	}
+
+	/**
+	 * @param id
+	 *            the OSM id.
+	 * @return the position of the id.
+	 */
+	int add(long id) {
+		int position = this.ids.size();
+		if (this.hashIndex == null && position > 0 && id <= this.ids.get(position - 1)) {
+			this.hashIndex = new TLongIntHashMap(position * 2, 0.5f, 0, NO_POSITION);
+			for (int i = 0; i < position; ++i) {
+				this.hashIndex.put(this.ids.get(i), i);
+			}
+		}
+		this.ids.add(id);
+		if (this.hashIndex != null) {
+			this.hashIndex.put(id, position);
+		}
+		return position;
+	}
+
+	/**
+	 * Releases the spare capacity after the last id has been added.
+	 */
+	void complete() {
+		this.ids.trimToSize();
+	}
+
+	/**
+	 * @return the id at the given position.
+	 */
+	long getId(int position) {
+		return this.ids.get(position);
+	}
+
+	/**
+	 * @return the position of the id or -1 if the id is unknown.
+	 */
+	int indexOf(long id) {
+		if (this.hashIndex != null) {
+			return this.hashIndex.get(id);
+		}
+		int position = this.ids.binarySearch(id);
+		return position < 0 ? NO_POSITION : position;
+	}
+
+	/**
+	 * @return the number of added ids.
+	 */
+	int size() {
+		return this.ids.size();
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicates names and tag arrays, so that equal values of many entities share a single instance.
+ * <p>
+ * The returned tag arrays are shared and must not be modified.
+ */
+final class InternPool {
+	private static final class TagsKey {
+		final short[] tags;
+		private final int hashCode;
+
+		TagsKey(short[] tags) {
+			this.tags = tags;
+			this.hashCode = Arrays.hashCode(tags);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof TagsKey)) {
+				return false;
+			}
+			return Arrays.equals(this.tags, ((TagsKey) obj).tags);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
+	private final Map<String, String> strings;
+	private final Map<TagsKey, short[]> tags;
+
+	InternPool() {
+		this.strings = new HashMap<String, String>();
+		this.tags = new HashMap<TagsKey, short[]>();
+	}
+
+	/**
+	 * @return the shared instance equal to the given tags, null if the tags are null.
+	 */
+	short[] intern(short[] tagsToIntern) {
+		if (tagsToIntern == null) {
+			return null;
+		}
+		TagsKey key = new TagsKey(tagsToIntern);
+		short[] interned = this.tags.get(key);
+		if (interned == null) {
+			this.tags.put(key, tagsToIntern);
+			return tagsToIntern;
+		}
+		return interned;
+	}
+
+	/**
+	 * @return the shared instance equal to the given string, null if the string is null.
+	 */
+	String intern(String string) {
+		if (string == null) {
+			return null;
+		}
+		String interned = this.strings.get(string);
+		if (interned == null) {
+			this.strings.put(string, string);
+			return string;
+		}
+		return interned;
+	}
+}
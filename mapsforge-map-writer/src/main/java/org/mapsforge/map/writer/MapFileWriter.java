@@ -14,11 +14,16 @@
  */
 package org.mapsforge.map.writer;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +32,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +47,7 @@ import org.mapsforge.map.writer.model.TDWay;
 import org.mapsforge.map.writer.model.TileBasedDataProcessor;
 import org.mapsforge.map.writer.model.TileCoordinate;
 import org.mapsforge.map.writer.model.TileData;
+import org.mapsforge.map.writer.model.TileGridLayout;
 import org.mapsforge.map.writer.model.TileInfo;
 import org.mapsforge.map.writer.model.WayDataBlock;
 import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
@@ -86,6 +93,183 @@ public final class MapFileWriter {
 		}
 	}
 
+	/**
+	 * The buffers a worker thread needs to encode one tile, allocated once per thread.
+	 */
+	private static class TileBuffers {
+		final ByteBuffer poiDataBuffer = ByteBuffer.allocate(POI_DATA_BUFFER_SIZE);
+		final ByteBuffer tileBuffer = ByteBuffer.allocate(TILE_BUFFER_SIZE);
+		final ByteBuffer wayBuffer = ByteBuffer.allocate(WAY_BUFFER_SIZE);
+		final ByteBuffer wayDataBuffer = ByteBuffer.allocate(WAY_DATA_BUFFER_SIZE);
+	}
+
+	private static class TileCopyCallable implements Callable<byte[]> {
+		private final int amountOfTiles;
+		private final BaseMapFile baseMapFile;
+		private final int tileNumber;
+		private final int zoomIntervalIndex;
+
+		TileCopyCallable(BaseMapFile baseMapFile, int zoomIntervalIndex, int tileNumber, int amountOfTiles) {
+			this.baseMapFile = baseMapFile;
+			this.zoomIntervalIndex = zoomIntervalIndex;
+			this.tileNumber = tileNumber;
+			this.amountOfTiles = amountOfTiles;
+		}
+
+		@Override
+		public byte[] call() throws IOException {
+			return this.baseMapFile.readTile(this.zoomIntervalIndex, this.tileNumber, this.amountOfTiles);
+		}
+	}
+
+	private static class TileEncodingCallable implements Callable<byte[]> {
+		private final MapWriterConfiguration configuration;
+		private final TileData currentTile;
+		private final TileBasedDataProcessor dataProcessor;
+		private final ZoomIntervalConfiguration zoomIntervalConfiguration;
+		private final LoadingCache<TDWay, Geometry> jtsGeometryCache;
+		private final TileCoordinate tileCoordinate;
+		private final int zoomIntervalIndex;
+
+		TileEncodingCallable(TileCoordinate tileCoordinate, TileData currentTile, int zoomIntervalIndex,
+				ZoomIntervalConfiguration zoomIntervalConfiguration, LoadingCache<TDWay, Geometry> jtsGeometryCache,
+				MapWriterConfiguration configuration, TileBasedDataProcessor dataProcessor) {
+			this.tileCoordinate = tileCoordinate;
+			this.currentTile = currentTile;
+			this.zoomIntervalIndex = zoomIntervalIndex;
+			this.zoomIntervalConfiguration = zoomIntervalConfiguration;
+			this.jtsGeometryCache = jtsGeometryCache;
+			this.configuration = configuration;
+			this.dataProcessor = dataProcessor;
+		}
+
+		@Override
+		public byte[] call() {
+			TileBuffers tileBuffers = TILE_BUFFERS.get();
+			processTile(this.configuration, this.dataProcessor, this.tileCoordinate, this.currentTile, this.zoomIntervalConfiguration,
+					this.jtsGeometryCache, this.zoomIntervalIndex, tileBuffers.tileBuffer, tileBuffers.poiDataBuffer,
+					tileBuffers.wayDataBuffer, tileBuffers.wayBuffer);
+			return Arrays.copyOf(tileBuffers.tileBuffer.array(), tileBuffers.tileBuffer.position());
+		}
+	}
+
+	/**
+	 * Encodes the tiles of all sub files concurrently and hands them out in file order.
+	 * <p>
+	 * The tile data is read from the data processor in the calling thread. Encoding a tile, that is clipping,
+	 * simplifying and serializing its ways and POIs, is done by the worker threads, which only look up the inner ways
+	 * of multipolygons in the data processor. The encoding of a tile does not depend on the encoding of other tiles, so
+	 * the file is the same for any number of worker threads. A bounded window of tiles is kept in flight and runs ahead into the next sub file, so the
+	 * workers are not drained at the end of a sub file.
+	 * <p>
+	 * When a map file is updated, the tiles which are not affected by the changes are copied from the base file in
+	 * the calling thread instead of being encoded.
+	 */
+	private static class TilePipeline {
+		private final BaseMapFile baseMapFile;
+		private final BitSet[] changedTiles;
+		private final MapWriterConfiguration configuration;
+		private final TileBasedDataProcessor dataProcessor;
+		private final ExecutorService executorService;
+		private final LoadingCache<TDWay, Geometry> jtsGeometryCache;
+		private int nextTileX;
+		private int nextTileY;
+		private int nextZoomIntervalIndex;
+		private final Deque<Future<byte[]>> pendingTiles;
+		private final int windowSize;
+
+		TilePipeline(TileBasedDataProcessor dataProcessor, LoadingCache<TDWay, Geometry> jtsGeometryCache,
+				MapWriterConfiguration configuration, ExecutorService executorService, int windowSize,
+				BaseMapFile baseMapFile, BitSet[] changedTiles) {
+			this.dataProcessor = dataProcessor;
+			this.executorService = executorService;
+			this.baseMapFile = baseMapFile;
+			this.changedTiles = changedTiles;
+			this.jtsGeometryCache = jtsGeometryCache;
+			this.configuration = configuration;
+			this.windowSize = windowSize;
+			this.pendingTiles = new ArrayDeque<Future<byte[]>>(windowSize);
+			startZoomInterval(0);
+		}
+
+		/**
+		 * Cancels all tiles which are still in flight.
+		 */
+		void cancel() {
+			for (Future<byte[]> future : this.pendingTiles) {
+				future.cancel(false);
+			}
+			this.pendingTiles.clear();
+		}
+
+		/**
+		 * @return the encoded next tile in file order, tiles of a sub file are ordered row by row.
+		 */
+		byte[] next() throws IOException {
+			fill();
+			Future<byte[]> future = this.pendingTiles.poll();
+			if (future == null) {
+				throw new IllegalStateException("no more tiles");
+			}
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while encoding tiles");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				} else if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+
+		private void fill() {
+			int amountOfZoomIntervals = this.dataProcessor.getZoomIntervalConfiguration().getNumberOfZoomIntervals();
+			while (this.pendingTiles.size() < this.windowSize && this.nextZoomIntervalIndex < amountOfZoomIntervals) {
+				TileGridLayout tileGridLayout = this.dataProcessor.getTileGridLayout(this.nextZoomIntervalIndex);
+				TileCoordinate upperLeft = tileGridLayout.getUpperLeft();
+				int lengthX = tileGridLayout.getAmountTilesHorizontal();
+				int tileNumber = (this.nextTileY - upperLeft.getY()) * lengthX + this.nextTileX - upperLeft.getX();
+				if (this.baseMapFile != null && !this.changedTiles[this.nextZoomIntervalIndex].get(tileNumber)) {
+					FutureTask<byte[]> tileCopy = new FutureTask<byte[]>(new TileCopyCallable(this.baseMapFile,
+							this.nextZoomIntervalIndex, tileNumber, lengthX
+									* tileGridLayout.getAmountTilesVertical()));
+					tileCopy.run();
+					this.pendingTiles.add(tileCopy);
+				} else {
+					ZoomIntervalConfiguration zoomIntervalConfiguration = this.dataProcessor
+							.getZoomIntervalConfiguration();
+					TileCoordinate tileCoordinate = new TileCoordinate(this.nextTileX, this.nextTileY,
+							zoomIntervalConfiguration.getBaseZoom(this.nextZoomIntervalIndex));
+					TileData currentTile = this.dataProcessor.getTile(this.nextZoomIntervalIndex, this.nextTileX,
+							this.nextTileY);
+					this.pendingTiles.add(this.executorService.submit(new TileEncodingCallable(tileCoordinate,
+							currentTile, this.nextZoomIntervalIndex, zoomIntervalConfiguration,
+							this.jtsGeometryCache, this.configuration, this.dataProcessor)));
+				}
+
+				if (++this.nextTileX == upperLeft.getX() + lengthX) {
+					this.nextTileX = upperLeft.getX();
+					if (++this.nextTileY == upperLeft.getY() + tileGridLayout.getAmountTilesVertical()) {
+						startZoomInterval(this.nextZoomIntervalIndex + 1);
+					}
+				}
+			}
+		}
+
+		private void startZoomInterval(int zoomIntervalIndex) {
+			this.nextZoomIntervalIndex = zoomIntervalIndex;
+			if (zoomIntervalIndex < this.dataProcessor.getZoomIntervalConfiguration().getNumberOfZoomIntervals()) {
+				TileCoordinate upperLeft = this.dataProcessor.getTileGridLayout(zoomIntervalIndex).getUpperLeft();
+				this.nextTileX = upperLeft.getX();
+				this.nextTileY = upperLeft.getY();
+			}
+		}
+	}
+
 	private static class WayPreprocessingCallable implements Callable<WayPreprocessingResult> {
 		private final MapWriterConfiguration configuration;
 		private final LoadingCache<TDWay, Geometry> jtsGeometryCache;
@@ -271,32 +455,32 @@ public final class MapFileWriter {
 	// private static final CoastlineHandler COASTLINE_HANDLER = new
 	// CoastlineHandler();
 
-	private static final short BITMAP_COMMENT = 8;
-	private static final short BITMAP_CREATED_WITH = 4;
+	static final short BITMAP_COMMENT = 8;
+	static final short BITMAP_CREATED_WITH = 4;
 	// bitmap flags for file features
-	private static final short BITMAP_DEBUG = 128;
+	static final short BITMAP_DEBUG = 128;
 	// bitmap flags for pois
 	private static final short BITMAP_ELEVATION = 32;
 	private static final short BITMAP_ENCODING = 4;
 	private static final short BITMAP_HOUSENUMBER = 64;
 
-	private static final int BITMAP_INDEX_ENTRY_WATER = 0x80;
+	static final int BITMAP_INDEX_ENTRY_WATER = 0x80;
 	private static final short BITMAP_LABEL = 16;
 
-	private static final short BITMAP_MAP_START_POSITION = 64;
+	static final short BITMAP_MAP_START_POSITION = 64;
 
-	private static final short BITMAP_MAP_START_ZOOM = 32;
+	static final short BITMAP_MAP_START_ZOOM = 32;
 	private static final short BITMAP_MULTIPLE_WAY_BLOCKS = 8;
 	// bitmap flags for pois and ways
 	private static final short BITMAP_NAME = 128;
-	private static final short BITMAP_PREFERRED_LANGUAGE = 16;
+	static final short BITMAP_PREFERRED_LANGUAGE = 16;
 
 	// bitmap flags for ways
 	private static final short BITMAP_REF = 32;
-	private static final int BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE = 5;
+	static final int BYTE_AMOUNT_SUBFILE_INDEX_PER_TILE = 5;
 	private static final int BYTES_INT = 4;
 	private static final int DEBUG_BLOCK_SIZE = 32;
-	private static final String DEBUG_INDEX_START_STRING = "+++IndexStart+++";
+	static final String DEBUG_INDEX_START_STRING = "+++IndexStart+++";
 	// DEBUG STRINGS
 	private static final String DEBUG_STRING_POI_HEAD = "***POIStart";
 
@@ -317,12 +501,24 @@ public final class MapFileWriter {
 	private static final ExecutorService EXECUTOR_SERVICE = Executors.newFixedThreadPool(Runtime.getRuntime()
 			.availableProcessors());
 	private static final int JTS_GEOMETRY_CACHE_SIZE = 50000;
-	private static final String MAGIC_BYTE = "mapsforge binary OSM";
+	static final String MAGIC_BYTE = "mapsforge binary OSM";
 	private static final int OFFSET_FILE_SIZE = 28;
 	private static final float PROGRESS_PERCENT_STEP = 10f;
 	private static final String PROJECTION = "Mercator";
 	private static final int SIZE_ZOOMINTERVAL_CONFIGURATION = 19;
 
+	private static final ThreadLocal<TileBuffers> TILE_BUFFERS = new ThreadLocal<TileBuffers>() {
+		@Override
+		protected TileBuffers initialValue() {
+			return new TileBuffers();
+		}
+	};
+
+	/**
+	 * Number of tiles per worker thread which are encoded ahead of the tile being written.
+	 */
+	private static final int TILE_WINDOW_PER_THREAD = 16;
+
 	private static final TileInfo TILE_INFO = TileInfo.getInstance();
 
 	private static final int tileSize = 256; // needed for optimal simplification, but set to constant here TODO
@@ -341,48 +537,57 @@ public final class MapFileWriter {
 	 */
 	public static void writeFile(MapWriterConfiguration configuration, TileBasedDataProcessor dataProcessor)
 			throws IOException {
-		RandomAccessFile randomAccessFile = new RandomAccessFile(configuration.getOutputFile(), "rw");
-
-		int amountOfZoomIntervals = dataProcessor.getZoomIntervalConfiguration().getNumberOfZoomIntervals();
-		ByteBuffer containerHeaderBuffer = ByteBuffer.allocate(HEADER_BUFFER_SIZE);
-		// CONTAINER HEADER
-		int totalHeaderSize = writeHeaderBuffer(configuration, dataProcessor, containerHeaderBuffer);
-
-		// set to mark where zoomIntervalConfig starts
-		containerHeaderBuffer.reset();
-
-		final LoadingCache<TDWay, Geometry> jtsGeometryCache = CacheBuilder.newBuilder()
-				.maximumSize(JTS_GEOMETRY_CACHE_SIZE).concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
-				.build(new JTSGeometryCacheLoader(dataProcessor));
+		writeFile(configuration, dataProcessor, EXECUTOR_SERVICE);
+	}
 
-		// SUB FILES
-		// for each zoom interval write a sub file
-		long currentFileSize = totalHeaderSize;
-		for (int i = 0; i < amountOfZoomIntervals; i++) {
-			// SUB FILE INDEX AND DATA
-			long subfileSize = writeSubfile(currentFileSize, i, dataProcessor, jtsGeometryCache, randomAccessFile,
-					configuration);
-			// SUB FILE META DATA IN CONTAINER HEADER
-			writeSubfileMetaDataToContainerHeader(dataProcessor.getZoomIntervalConfiguration(), i, currentFileSize,
-					subfileSize, containerHeaderBuffer);
-			currentFileSize += subfileSize;
+	/**
+	 * Updates an existing map file. Only the tiles which are affected by the changes are encoded from the updated
+	 * data, all other tiles are copied verbatim from the base file. The base file must have been written with the
+	 * same bounding box, zoom interval configuration, tag mapping and options, the ids of the tags are kept. The
+	 * previous extents of deleted and modified entities are taken from the extent index of the base file, so the base
+	 * file must have been written with an extent index.
+	 * 
+	 * @param configuration
+	 *            the configuration, including the base file
+	 * @param dataProcessor
+	 *            the data processor with the updated data
+	 * @param osmChange
+	 *            the changes since the base file was written
+	 * @throws IOException
+	 *             thrown if any IO error occurs
+	 * @throws IllegalArgumentException
+	 *             thrown if the base file does not match the configuration or has no extent index
+	 */
+	public static void updateFile(MapWriterConfiguration configuration, TileBasedDataProcessor dataProcessor,
+			OsmChange osmChange) throws IOException {
+		if (!(dataProcessor instanceof BaseTileBasedDataProcessor)) {
+			throw new IllegalArgumentException("data processor does not support incremental updates");
+		}
+		File baseExtentIndexFile = ExtentIndex.getFile(configuration.getBaseFile());
+		if (!baseExtentIndexFile.isFile()) {
+			throw new IllegalArgumentException("base file has no extent index, it must be written with extent-index="
+					+ "true or the map file must be written from scratch: " + baseExtentIndexFile);
+		}
+		ExtentIndex baseExtentIndex = ExtentIndex.read(baseExtentIndexFile);
+
+		BaseMapFile baseMapFile = new BaseMapFile(configuration.getBaseFile());
+		try {
+			checkBaseFile(baseMapFile, configuration, dataProcessor);
+			((BaseTileBasedDataProcessor) dataProcessor).fixTagOrdering(baseMapFile.getPoiTags(),
+					baseMapFile.getWayTags());
+
+			BitSet[] changedTiles = osmChange.getChangedTiles((BaseTileBasedDataProcessor) dataProcessor,
+					baseExtentIndex);
+			for (int i = 0; i < changedTiles.length; i++) {
+				TileGridLayout tileGridLayout = dataProcessor.getTileGridLayout(i);
+				LOGGER.info("encoding " + changedTiles[i].cardinality() + " of "
+						+ tileGridLayout.getAmountTilesHorizontal() * tileGridLayout.getAmountTilesVertical()
+						+ " tiles of sub file for zoom interval index " + i);
+			}
+			writeFile(configuration, dataProcessor, baseMapFile, changedTiles, EXECUTOR_SERVICE);
+		} finally {
+			baseMapFile.close();
 		}
-
-		randomAccessFile.seek(0);
-		randomAccessFile.write(containerHeaderBuffer.array(), 0, totalHeaderSize);
-
-		// WRITE FILE SIZE TO HEADER
-		long fileSize = randomAccessFile.length();
-		randomAccessFile.seek(OFFSET_FILE_SIZE);
-		randomAccessFile.writeLong(fileSize);
-
-		randomAccessFile.close();
-
-		CacheStats stats = jtsGeometryCache.stats();
-		LOGGER.info("JTS Geometry cache hit rate: " + stats.hitRate());
-		LOGGER.info("JTS Geometry total load time: " + stats.totalLoadTime() / 1000);
-
-		LOGGER.info("Finished writing file.");
 	}
 
 	/**
@@ -479,7 +684,7 @@ public final class MapFileWriter {
 	}
 
 	static void processPOI(TDNode poi, int currentTileLat, int currentTileLon, boolean debugStrings,
-			ByteBuffer poiBuffer) {
+			Map<Short, Short> optimizedPoiIds, ByteBuffer poiBuffer) {
 		if (debugStrings) {
 			StringBuilder sb = new StringBuilder();
 			sb.append(DEBUG_STRING_POI_HEAD).append(poi.getId()).append(DEBUG_STRING_POI_TAIL);
@@ -498,8 +703,7 @@ public final class MapFileWriter {
 		// write tag ids to the file
 		if (poi.getTags() != null) {
 			for (short tagID : poi.getTags()) {
-				poiBuffer.put(Serializer.getVariableByteUnsigned(OSMTagMapping.getInstance().getOptimizedPoiIds()
-						.get(Short.valueOf(tagID)).intValue()));
+				poiBuffer.put(Serializer.getVariableByteUnsigned(optimizedPoiIds.get(Short.valueOf(tagID)).intValue()));
 			}
 		}
 
@@ -522,7 +726,7 @@ public final class MapFileWriter {
 	}
 
 	static void processWay(WayPreprocessingResult wpr, TDWay way, int currentTileLat, int currentTileLon,
-			ByteBuffer wayBuffer) {
+			Map<Short, Short> optimizedWayIds, ByteBuffer wayBuffer) {
 		// write subtile bitmask of way
 		wayBuffer.putShort(wpr.getSubtileMask());
 
@@ -532,7 +736,7 @@ public final class MapFileWriter {
 		// write tag ids
 		if (way.getTags() != null) {
 			for (short tagID : way.getTags()) {
-				wayBuffer.put(Serializer.getVariableByteUnsigned(mappedWayTagID(tagID)));
+				wayBuffer.put(Serializer.getVariableByteUnsigned(optimizedWayIds.get(Short.valueOf(tagID)).intValue()));
 			}
 		}
 
@@ -673,19 +877,19 @@ public final class MapFileWriter {
 		writeUTF8(configuration.getWriterVersion(), containerHeaderBuffer);
 
 		// AMOUNT POI TAGS
-		containerHeaderBuffer.putShort((short) configuration.getTagMapping().getOptimizedPoiIds().size());
+		containerHeaderBuffer.putShort((short) dataProcessor.getOptimizedPoiIds().size());
 		// POI TAGS
 		// retrieves tag ids in order of frequency, most frequent come first
-		for (short tagId : configuration.getTagMapping().getOptimizedPoiIds().keySet()) {
+		for (short tagId : dataProcessor.getOptimizedPoiIds().keySet()) {
 			OSMTag tag = configuration.getTagMapping().getPoiTag(tagId);
 			writeUTF8(tag.tagKey(), containerHeaderBuffer);
 		}
 
 		// AMOUNT OF WAY TAGS
-		containerHeaderBuffer.putShort((short) configuration.getTagMapping().getOptimizedWayIds().size());
+		containerHeaderBuffer.putShort((short) dataProcessor.getOptimizedWayIds().size());
 
 		// WAY TAGS
-		for (short tagId : configuration.getTagMapping().getOptimizedWayIds().keySet()) {
+		for (short tagId : dataProcessor.getOptimizedWayIds().keySet()) {
 			OSMTag tag = configuration.getTagMapping().getWayTag(tagId);
 			writeUTF8(tag.tagKey(), containerHeaderBuffer);
 		}
@@ -735,8 +939,20 @@ public final class MapFileWriter {
 		}
 	}
 
-	private static int mappedWayTagID(short original) {
-		return OSMTagMapping.getInstance().getOptimizedWayIds().get(Short.valueOf(original)).intValue();
+	private static void checkBaseFile(BaseMapFile baseMapFile, MapWriterConfiguration configuration,
+			TileBasedDataProcessor dataProcessor) {
+		int[] boundingBox = new int[] {
+				LatLongUtils.degreesToMicrodegrees(dataProcessor.getBoundingBox().minLatitude),
+				LatLongUtils.degreesToMicrodegrees(dataProcessor.getBoundingBox().minLongitude),
+				LatLongUtils.degreesToMicrodegrees(dataProcessor.getBoundingBox().maxLatitude),
+				LatLongUtils.degreesToMicrodegrees(dataProcessor.getBoundingBox().maxLongitude) };
+		if (!Arrays.equals(boundingBox, baseMapFile.getMicrodegreesBoundingBox())) {
+			throw new IllegalArgumentException("base file has a different bounding box");
+		} else if (!baseMapFile.matches(dataProcessor.getZoomIntervalConfiguration())) {
+			throw new IllegalArgumentException("base file has a different zoom interval configuration");
+		} else if (baseMapFile.isDebugFile() != configuration.isDebugStrings()) {
+			throw new IllegalArgumentException("base file has a different debug-file option");
+		}
 	}
 
 	private static void processIndexEntry(TileCoordinate tileCoordinate, ByteBuffer indexBuffer,
@@ -748,25 +964,22 @@ public final class MapFileWriter {
 		indexBuffer.put(indexBytes);
 	}
 
-	private static void processTile(MapWriterConfiguration configuration, TileCoordinate tileCoordinate,
-			TileBasedDataProcessor dataProcessor, LoadingCache<TDWay, Geometry> jtsGeometryCache,
-			int zoomIntervalIndex, ByteBuffer tileBuffer, ByteBuffer poiDataBuffer, ByteBuffer wayDataBuffer,
-			ByteBuffer wayBuffer) {
+	private static void processTile(MapWriterConfiguration configuration, TileBasedDataProcessor dataProcessor,
+			TileCoordinate tileCoordinate, TileData currentTile, ZoomIntervalConfiguration zoomIntervalConfiguration,
+			LoadingCache<TDWay, Geometry> jtsGeometryCache, int zoomIntervalIndex, ByteBuffer tileBuffer,
+			ByteBuffer poiDataBuffer, ByteBuffer wayDataBuffer, ByteBuffer wayBuffer) {
 		tileBuffer.clear();
 		poiDataBuffer.clear();
 		wayDataBuffer.clear();
 		wayBuffer.clear();
 
-		final TileData currentTile = dataProcessor.getTile(zoomIntervalIndex, tileCoordinate.getX(),
-				tileCoordinate.getY());
-
 		final int currentTileLat = LatLongUtils.degreesToMicrodegrees(MercatorProjection.tileYToLatitude(
 				tileCoordinate.getY(), tileCoordinate.getZoomlevel()));
 		final int currentTileLon = LatLongUtils.degreesToMicrodegrees(MercatorProjection.tileXToLongitude(
 				tileCoordinate.getX(), tileCoordinate.getZoomlevel()));
 
-		final byte minZoomCurrentInterval = dataProcessor.getZoomIntervalConfiguration().getMinZoom(zoomIntervalIndex);
-		final byte maxZoomCurrentInterval = dataProcessor.getZoomIntervalConfiguration().getMaxZoom(zoomIntervalIndex);
+		final byte minZoomCurrentInterval = zoomIntervalConfiguration.getMinZoom(zoomIntervalIndex);
+		final byte maxZoomCurrentInterval = zoomIntervalConfiguration.getMaxZoom(zoomIntervalIndex);
 
 		// write amount of POIs and ways for each zoom level
 		Map<Byte, List<TDNode>> poisByZoomlevel = currentTile.poisByZoomlevel(minZoomCurrentInterval,
@@ -788,7 +1001,8 @@ public final class MapFileWriter {
 				List<TDNode> pois = poisByZoomlevel.get(Byte.valueOf(zoomlevel));
 				if (pois != null) {
 					for (TDNode poi : pois) {
-						processPOI(poi, currentTileLat, currentTileLon, configuration.isDebugStrings(), poiDataBuffer);
+						processPOI(poi, currentTileLat, currentTileLon, configuration.isDebugStrings(),
+								dataProcessor.getOptimizedPoiIds(), poiDataBuffer);
 					}
 					// increment count of POIs on this zoom level
 					entitiesPerZoomLevel[indexEntitiesPerZoomLevelTable][0] += pois.size();
@@ -801,39 +1015,33 @@ public final class MapFileWriter {
 
 				List<TDWay> ways = waysByZoomlevel.get(Byte.valueOf(zoomlevel));
 				if (ways != null) {
-					List<WayPreprocessingCallable> callables = new ArrayList<>();
+					// tiles are encoded in parallel, so the ways of one tile are preprocessed in this thread
 					for (TDWay way : ways) {
-						if (!way.isInvalid()) {
-							callables.add(new WayPreprocessingCallable(way, tileCoordinate, maxZoomCurrentInterval,
-									jtsGeometryCache, configuration));
+						if (way.isInvalid()) {
+							continue;
 						}
-					}
-					try {
-						List<Future<WayPreprocessingResult>> futures = EXECUTOR_SERVICE.invokeAll(callables);
-						for (Future<WayPreprocessingResult> wprFuture : futures) {
-							WayPreprocessingResult wpr;
-							try {
-								wpr = wprFuture.get();
-							} catch (ExecutionException e) {
-								LOGGER.log(Level.WARNING, "error in parallel preprocessing of ways", e);
-								continue;
-							}
-							if (wpr != null) {
-								wayBuffer.clear();
-								// increment count of ways on this zoom level
-								entitiesPerZoomLevel[indexEntitiesPerZoomLevelTable][1]++;
-								if (configuration.isDebugStrings()) {
-									writeWaySignature(wpr.getWay(), wayDataBuffer);
-								}
-								processWay(wpr, wpr.getWay(), currentTileLat, currentTileLon, wayBuffer);
-								// write size of way to way data buffer
-								wayDataBuffer.put(Serializer.getVariableByteUnsigned(wayBuffer.position()));
-								// write way data to way data buffer
-								wayDataBuffer.put(wayBuffer.array(), 0, wayBuffer.position());
+						WayPreprocessingResult wpr;
+						try {
+							wpr = new WayPreprocessingCallable(way, tileCoordinate, maxZoomCurrentInterval,
+									jtsGeometryCache, configuration).call();
+						} catch (RuntimeException e) {
+							LOGGER.log(Level.WARNING, "error in preprocessing of way: " + way.getId(), e);
+							continue;
+						}
+						if (wpr != null) {
+							wayBuffer.clear();
+							// increment count of ways on this zoom level
+							entitiesPerZoomLevel[indexEntitiesPerZoomLevelTable][1]++;
+							if (configuration.isDebugStrings()) {
+								writeWaySignature(wpr.getWay(), wayDataBuffer);
 							}
+							processWay(wpr, wpr.getWay(), currentTileLat, currentTileLon,
+									dataProcessor.getOptimizedWayIds(), wayBuffer);
+							// write size of way to way data buffer
+							wayDataBuffer.put(Serializer.getVariableByteUnsigned(wayBuffer.position()));
+							// write way data to way data buffer
+							wayDataBuffer.put(wayBuffer.array(), 0, wayBuffer.position());
 						}
-					} catch (InterruptedException e) {
-						LOGGER.log(Level.WARNING, "error in parallel preprocessing of ways", e);
 					}
 				}
 			}
@@ -849,6 +1057,74 @@ public final class MapFileWriter {
 		}
 	}
 
+	/**
+	 * Writes the map file with the given worker threads.
+	 */
+	static void writeFile(MapWriterConfiguration configuration, TileBasedDataProcessor dataProcessor,
+			ExecutorService executorService) throws IOException {
+		writeFile(configuration, dataProcessor, null, null, executorService);
+	}
+
+	private static void writeFile(MapWriterConfiguration configuration, TileBasedDataProcessor dataProcessor,
+			BaseMapFile baseMapFile, BitSet[] changedTiles, ExecutorService executorService) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(configuration.getOutputFile(), "rw");
+
+		int amountOfZoomIntervals = dataProcessor.getZoomIntervalConfiguration().getNumberOfZoomIntervals();
+		ByteBuffer containerHeaderBuffer = ByteBuffer.allocate(HEADER_BUFFER_SIZE);
+		// CONTAINER HEADER
+		int totalHeaderSize = writeHeaderBuffer(configuration, dataProcessor, containerHeaderBuffer);
+
+		// set to mark where zoomIntervalConfig starts
+		containerHeaderBuffer.reset();
+
+		final LoadingCache<TDWay, Geometry> jtsGeometryCache = CacheBuilder.newBuilder()
+				.maximumSize(JTS_GEOMETRY_CACHE_SIZE).concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+				.build(new JTSGeometryCacheLoader(dataProcessor));
+
+		// SUB FILES
+		// for each zoom interval write a sub file, the tiles of all sub files are encoded by one pipeline
+		TilePipeline tilePipeline = new TilePipeline(dataProcessor, jtsGeometryCache, configuration, executorService,
+				Runtime.getRuntime().availableProcessors() * TILE_WINDOW_PER_THREAD, baseMapFile, changedTiles);
+		long currentFileSize = totalHeaderSize;
+		try {
+			for (int i = 0; i < amountOfZoomIntervals; i++) {
+				// SUB FILE INDEX AND DATA
+				long subfileSize = writeSubfile(currentFileSize, i, dataProcessor, tilePipeline, randomAccessFile,
+						configuration);
+				// SUB FILE META DATA IN CONTAINER HEADER
+				writeSubfileMetaDataToContainerHeader(dataProcessor.getZoomIntervalConfiguration(), i,
+						currentFileSize, subfileSize, containerHeaderBuffer);
+				currentFileSize += subfileSize;
+			}
+		} finally {
+			tilePipeline.cancel();
+		}
+
+		randomAccessFile.seek(0);
+		randomAccessFile.write(containerHeaderBuffer.array(), 0, totalHeaderSize);
+
+		// WRITE FILE SIZE TO HEADER
+		long fileSize = randomAccessFile.length();
+		randomAccessFile.seek(OFFSET_FILE_SIZE);
+		randomAccessFile.writeLong(fileSize);
+
+		randomAccessFile.close();
+
+		if (dataProcessor instanceof BaseTileBasedDataProcessor) {
+			ExtentIndex extentIndex = ((BaseTileBasedDataProcessor) dataProcessor).getExtentIndex();
+			if (extentIndex != null) {
+				LOGGER.info("writing extent index with " + extentIndex.size() + " entities");
+				extentIndex.write(ExtentIndex.getFile(configuration.getOutputFile()));
+			}
+		}
+
+		CacheStats stats = jtsGeometryCache.stats();
+		LOGGER.info("JTS Geometry cache hit rate: " + stats.hitRate());
+		LOGGER.info("JTS Geometry total load time: " + stats.totalLoadTime() / 1000);
+
+		LOGGER.info("Finished writing file.");
+	}
+
 	private static void writeIndex(ByteBuffer indexBuffer, long startPositionSubfile, long subFileSize,
 			RandomAccessFile randomAccessFile) throws IOException {
 		randomAccessFile.seek(startPositionSubfile);
@@ -857,7 +1133,7 @@ public final class MapFileWriter {
 	}
 
 	private static long writeSubfile(final long startPositionSubfile, final int zoomIntervalIndex,
-			final TileBasedDataProcessor dataStore, final LoadingCache<TDWay, Geometry> jtsGeometryCache,
+			final TileBasedDataProcessor dataStore, final TilePipeline tilePipeline,
 			final RandomAccessFile randomAccessFile, final MapWriterConfiguration configuration) throws IOException {
 		LOGGER.fine("writing data for zoom interval " + zoomIntervalIndex + ", number of tiles: "
 				+ dataStore.getTileGridLayout(zoomIntervalIndex).getAmountTilesHorizontal()
@@ -883,10 +1159,6 @@ public final class MapFileWriter {
 				+ (configuration.isDebugStrings() ? DEBUG_INDEX_START_STRING.getBytes(UTF8_CHARSET).length : 0);
 
 		final ByteBuffer indexBuffer = ByteBuffer.allocate(indexBufferSize);
-		final ByteBuffer tileBuffer = ByteBuffer.allocate(TILE_BUFFER_SIZE);
-		final ByteBuffer wayDataBuffer = ByteBuffer.allocate(WAY_DATA_BUFFER_SIZE);
-		final ByteBuffer wayBuffer = ByteBuffer.allocate(WAY_BUFFER_SIZE);
-		final ByteBuffer poiDataBuffer = ByteBuffer.allocate(POI_DATA_BUFFER_SIZE);
 
 		final ByteBuffer multipleTilesBuffer = ByteBuffer.allocate(TILES_BUFFER_SIZE);
 
@@ -903,11 +1175,11 @@ public final class MapFileWriter {
 				TileCoordinate tileCoordinate = new TileCoordinate(tileX, tileY, baseZoomCurrentInterval);
 
 				processIndexEntry(tileCoordinate, indexBuffer, currentSubfileOffset);
-				processTile(configuration, tileCoordinate, dataStore, jtsGeometryCache, zoomIntervalIndex, tileBuffer,
-						poiDataBuffer, wayDataBuffer, wayBuffer);
-				currentSubfileOffset += tileBuffer.position();
+				// the pipeline returns the tiles in the same order
+				byte[] tile = tilePipeline.next();
+				currentSubfileOffset += tile.length;
 
-				writeTile(multipleTilesBuffer, tileBuffer, randomAccessFile);
+				writeTile(multipleTilesBuffer, tile, randomAccessFile);
 
 				if (++processedTiles % amountOfTilesInPercentStep == 0) {
 					if (processedTiles == amountTiles) {
@@ -949,10 +1221,10 @@ public final class MapFileWriter {
 		buffer.putLong(subfileSize);
 	}
 
-	private static void writeTile(ByteBuffer multipleTilesBuffer, ByteBuffer tileBuffer,
-			RandomAccessFile randomAccessFile) throws IOException {
+	private static void writeTile(ByteBuffer multipleTilesBuffer, byte[] tile, RandomAccessFile randomAccessFile)
+			throws IOException {
 		// add tile to tiles buffer
-		multipleTilesBuffer.put(tileBuffer.array(), 0, tileBuffer.position());
+		multipleTilesBuffer.put(tile);
 
 		// if necessary, allocate new buffer
 		if (multipleTilesBuffer.remaining() < MIN_TILE_BUFFER_SIZE) {
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sparse array of longs indexed by OSM id, backed by a memory-mapped temporary file.
+ * <p>
+ * The id space is divided into blocks of 1024 ids. Only blocks which contain at least one id are allocated in the
+ * file, each allocated block takes 8 KB. Dense ids therefore need little more than 8 bytes per id, whereas sparse
+ * ids, such as the ids of an extract of a larger region, need up to 8 KB per id in the worst case. Besides the file,
+ * 4 bytes of memory are used per 1024 ids up to the highest id. The file is mapped in segments of 64 MB. Negative
+ * ids, as used by editors for new entities, are kept in memory.
+ * <p>
+ * Setting values is not thread-safe, getting values is once all values have been set.
+ */
+final class MappedLongArray {
+	private static final int BLOCK_BITS = 10;
+	private static final long BLOCK_MASK = (1 << BLOCK_BITS) - 1;
+	private static final int BYTES_PER_LONG = 8;
+	private static final int SEGMENT_BITS = 13;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+	private static final long SEGMENT_SIZE = (long) BYTES_PER_LONG << (BLOCK_BITS + SEGMENT_BITS);
+
+	private int amountOfBlocks;
+	private int[] blocks;
+	private final File file;
+	private final FileChannel fileChannel;
+	private final TLongLongHashMap negativeIndices;
+	private final RandomAccessFile randomAccessFile;
+	private final List<MappedByteBuffer> segments;
+
+	/**
+	 * @param prefix
+	 *            the prefix of the name of the temporary file.
+	 * @throws IOException
+	 *             if the temporary file cannot be created.
+	 */
+	MappedLongArray(String prefix) throws IOException {
+		this.file = File.createTempFile(prefix, null);
+		this.file.deleteOnExit();
+		this.randomAccessFile = new RandomAccessFile(this.file, "rw");
+		this.fileChannel = this.randomAccessFile.getChannel();
+		// block numbers are stored incremented by one, so 0 marks an unallocated block
+		this.blocks = new int[1024];
+		this.negativeIndices = new TLongLongHashMap();
+		this.segments = new ArrayList<MappedByteBuffer>();
+	}
+
+	/**
+	 * @return the value at the given index, 0 if no value has been set.
+	 */
+	long get(long index) {
+		if (index < 0) {
+			return this.negativeIndices.get(index);
+		}
+		long blockIndex = index >>> BLOCK_BITS;
+		if (blockIndex >= this.blocks.length || this.blocks[(int) blockIndex] == 0) {
+			return 0;
+		}
+		int block = this.blocks[(int) blockIndex] - 1;
+		return this.segments.get(block >>> SEGMENT_BITS).getLong(getOffset(block, index));
+	}
+
+	/**
+	 * Deletes the temporary file, the array must not be used afterwards.
+	 */
+	void release() {
+		this.segments.clear();
+		try {
+			this.randomAccessFile.close();
+		} catch (IOException e) {
+			// nothing to do
+		}
+		this.file.delete();
+	}
+
+	/**
+	 * @param index
+	 *            the index, usually an OSM id.
+	 * @param value
+	 *            the value, 0 is used for missing values.
+	 * @throws IOException
+	 *             if the file cannot be extended.
+	 */
+	void set(long index, long value) throws IOException {
+		if (index < 0) {
+			this.negativeIndices.put(index, value);
+			return;
+		}
+		long blockIndex = index >>> BLOCK_BITS;
+		if (blockIndex > Integer.MAX_VALUE - 1) {
+			throw new IllegalArgumentException("index too large: " + index);
+		}
+		if (blockIndex >= this.blocks.length) {
+			this.blocks = Arrays.copyOf(this.blocks, (int) Math.min(Integer.MAX_VALUE - 1,
+					Math.max(blockIndex + 1, 2L * this.blocks.length)));
+		}
+		if (this.blocks[(int) blockIndex] == 0) {
+			allocateBlock((int) blockIndex);
+		}
+		int block = this.blocks[(int) blockIndex] - 1;
+		this.segments.get(block >>> SEGMENT_BITS).putLong(getOffset(block, index), value);
+	}
+
+	private void allocateBlock(int blockIndex) throws IOException {
+		int block = this.amountOfBlocks++;
+		if ((block >>> SEGMENT_BITS) == this.segments.size()) {
+			// mapping beyond the end of the file extends the file, the new content is zero
+			this.segments.add(this.fileChannel.map(FileChannel.MapMode.READ_WRITE, this.segments.size()
+					* SEGMENT_SIZE, SEGMENT_SIZE));
+		}
+		this.blocks[blockIndex] = block + 1;
+	}
+
+	private static int getOffset(int block, long index) {
+		return (int) ((((long) (block & SEGMENT_MASK) << BLOCK_BITS) | (index & BLOCK_MASK)) * BYTES_PER_LONG);
+	}
+}
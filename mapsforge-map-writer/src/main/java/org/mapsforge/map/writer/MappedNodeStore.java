@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.IOException;
+
+import org.mapsforge.map.writer.model.TDNode;
+
+/**
+ * Stores the coordinates of OSM nodes in a {@link MappedLongArray} indexed by node id, so that nodes are resolved
+ * without deserializing them.
+ */
+final class MappedNodeStore {
+	/**
+	 * Added to the latitude, so that the packed coordinates are never 0, which marks missing nodes.
+	 */
+	private static final int LATITUDE_OFFSET = 100000000;
+	private static final short[] NO_TAGS = new short[0];
+
+	private final MappedLongArray coordinates;
+
+	/**
+	 * @throws IOException
+	 *             if the temporary file cannot be created.
+	 */
+	MappedNodeStore() throws IOException {
+		this.coordinates = new MappedLongArray("nodeLocations");
+	}
+
+	/**
+	 * @param id
+	 *            the OSM id of the node.
+	 * @param latitude
+	 *            the latitude in microdegrees.
+	 * @param longitude
+	 *            the longitude in microdegrees.
+	 * @throws IOException
+	 *             if the file cannot be extended.
+	 */
+	void add(long id, int latitude, int longitude) throws IOException {
+		this.coordinates.set(id, ((long) (latitude + LATITUDE_OFFSET) << 32) | (longitude & 0xFFFFFFFFL));
+	}
+
+	/**
+	 * @param id
+	 *            the OSM id of the node.
+	 * @return a new node without tags at the coordinates of the stored node, null if the node is unknown.
+	 */
+	TDNode get(long id) {
+		long packed = this.coordinates.get(id);
+		if (packed == 0) {
+			return null;
+		}
+		return new TDNode(id, (int) (packed >> 32) - LATITUDE_OFFSET, (int) packed, (short) 0, (byte) 0, null, null,
+				NO_TAGS);
+	}
+
+	/**
+	 * Deletes the temporary file.
+	 */
+	void release() {
+		this.coordinates.release();
+	}
+}
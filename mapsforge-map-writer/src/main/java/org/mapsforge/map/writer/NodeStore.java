@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.list.array.TLongArrayList;
+
+import org.mapsforge.map.writer.model.TDNode;
+
+/**
+ * Stores the coordinates of OSM nodes packed into one long per node, instead of one {@link TDNode} object per node.
+ */
+final class NodeStore {
+	private static final short[] NO_TAGS = new short[0];
+
+	private static int getLatitude(long coordinates) {
+		return (int) (coordinates >> 32);
+	}
+
+	private static int getLongitude(long coordinates) {
+		return (int) coordinates;
+	}
+
+	private static long pack(int latitude, int longitude) {
+		return ((long) latitude << 32) | (longitude & 0xFFFFFFFFL);
+	}
+
+	private final TLongArrayList coordinates;
+	private final IdIndex idIndex;
+
+	NodeStore() {
+		this.coordinates = new TLongArrayList();
+		this.idIndex = new IdIndex();
+	}
+
+	/**
+	 * @param id
+	 *            the OSM id of the node.
+	 * @param latitude
+	 *            the latitude in microdegrees.
+	 * @param longitude
+	 *            the longitude in microdegrees.
+	 */
+	void add(long id, int latitude, int longitude) {
+		this.idIndex.add(id);
+		this.coordinates.add(pack(latitude, longitude));
+	}
+
+	/**
+	 * Releases the spare capacity after the last node has been added.
+	 */
+	void complete() {
+		this.idIndex.complete();
+		this.coordinates.trimToSize();
+	}
+
+	/**
+	 * @param id
+	 *            the OSM id of the node.
+	 * @return a new node without tags at the coordinates of the stored node, null if the node is unknown.
+	 */
+	TDNode get(long id) {
+		int position = this.idIndex.indexOf(id);
+		if (position < 0) {
+			return null;
+		}
+		long packed = this.coordinates.get(position);
+		return new TDNode(id, getLatitude(packed), getLongitude(packed), (short) 0, (byte) 0, null, null, NO_TAGS);
+	}
+
+	/**
+	 * @return the number of stored nodes.
+	 */
+	int size() {
+		return this.idIndex.size();
+	}
+}
@@ -20,9 +20,11 @@ import gnu.trove.set.hash.TShortHashSet;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -125,6 +127,7 @@ public final class OSMTagMapping {
 	private static final Logger LOGGER = Logger.getLogger(OSMTagMapping.class.getName());
 
 	private static OSMTagMapping mapping;
+	private static String mappingUrl;
 	private static final String XPATH_EXPRESSION_DEFAULT_ZOOM = "/tag-mapping/@default-zoom-appear";
 
 	private static final String XPATH_EXPRESSION_POIS = "//pois/osm-tag["
@@ -148,17 +151,43 @@ public final class OSMTagMapping {
 	/**
 	 * @param tagConf
 	 *            the {@link URL} to a file that contains a tag configuration
-	 * @return a new instance
+	 * @return a new instance or the existing one, if the mapping has already been initialized from the same file
 	 */
-	public static OSMTagMapping getInstance(URL tagConf) {
+	public static synchronized OSMTagMapping getInstance(URL tagConf) {
 		if (mapping != null) {
+			if (tagConf.toExternalForm().equals(mappingUrl)) {
+				return mapping;
+			}
 			throw new IllegalStateException("mapping already initialized");
 		}
 
 		mapping = new OSMTagMapping(tagConf);
+		mappingUrl = tagConf.toExternalForm();
 		return mapping;
 	}
 
+	private static Map<Short, Short> fixOrdering(List<String> tagKeys, Map<String, OSMTag> stringToTag,
+			Map<Short, Short> previousIds) {
+		Map<Short, Short> optimizedIds = new LinkedHashMap<>();
+
+		short tmpID = 0;
+		for (String tagKey : tagKeys) {
+			OSMTag tag = stringToTag.get(tagKey);
+			if (tag == null) {
+				throw new IllegalArgumentException("tag is not contained in the tag mapping: " + tagKey);
+			}
+			optimizedIds.put(Short.valueOf(tag.getId()), Short.valueOf(tmpID));
+			tmpID++;
+		}
+		for (Short id : previousIds.keySet()) {
+			if (!optimizedIds.containsKey(id)) {
+				optimizedIds.put(id, Short.valueOf(tmpID));
+				tmpID++;
+			}
+		}
+		return optimizedIds;
+	}
+
 	private final Map<Short, OSMTag> idToPoiTag = new LinkedHashMap<>();
 	private final Map<Short, OSMTag> idToWayTag = new LinkedHashMap<>();
 
@@ -357,17 +386,49 @@ public final class OSMTagMapping {
 	}
 
 	/**
-	 * @return a mapping that maps original tag ids to the optimized ones
+	 * Assigns the optimized ids in the given order, so that they match the POI tags of an existing map file. Tags of
+	 * the given ordering which are not contained in the list are appended.
+	 * 
+	 * @param tagKeys
+	 *            the POI tags in the format key=value
+	 * @param optimizedIds
+	 *            the current mapping of original tag ids to optimized ones, it is not changed
+	 * @return a new mapping that maps original tag ids to the fixed ones
+	 * @throws IllegalArgumentException
+	 *             if a tag is not contained in the tag mapping
+	 */
+	public Map<Short, Short> fixPoiOrdering(List<String> tagKeys, Map<Short, Short> optimizedIds) {
+		return fixOrdering(tagKeys, this.stringToPoiTag, optimizedIds);
+	}
+
+	/**
+	 * Assigns the optimized ids in the given order, so that they match the way tags of an existing map file. Tags of
+	 * the given ordering which are not contained in the list are appended.
+	 * 
+	 * @param tagKeys
+	 *            the way tags in the format key=value
+	 * @param optimizedIds
+	 *            the current mapping of original tag ids to optimized ones, it is not changed
+	 * @return a new mapping that maps original tag ids to the fixed ones
+	 * @throws IllegalArgumentException
+	 *             if a tag is not contained in the tag mapping
+	 */
+	public Map<Short, Short> fixWayOrdering(List<String> tagKeys, Map<Short, Short> optimizedIds) {
+		return fixOrdering(tagKeys, this.stringToWayTag, optimizedIds);
+	}
+
+	/**
+	 * @return an unmodifiable mapping that maps original tag ids to the ids in the order of the tag mapping file
 	 */
 	public Map<Short, Short> getOptimizedPoiIds() {
-		return this.optimizedPoiIds;
+		return Collections.unmodifiableMap(this.optimizedPoiIds);
 	}
 
 	/**
-	 * @return a mapping that maps original tag ids to the optimized ones
+	 * @return an unmodifiable mapping that maps original tag ids to the ids in the order of the tag mapping file
 	 */
 	public Map<Short, Short> getOptimizedWayIds() {
-		return this.optimizedWayIds;
+		return Collections.unmodifiableMap(this.optimizedWayIds);
 	}
 
 	/**
@@ -513,9 +574,10 @@ public final class OSMTagMapping {
 	/**
 	 * @param histogram
 	 *            a histogram that represents the frequencies of tags
+	 * @return a new mapping that maps original tag ids to optimized ones, the most frequent tag gets the smallest id
 	 */
-	public void optimizePoiOrdering(TShortIntHashMap histogram) {
-		this.optimizedPoiIds.clear();
+	public Map<Short, Short> optimizePoiOrdering(TShortIntHashMap histogram) {
+		Map<Short, Short> optimizedIds = new LinkedHashMap<>();
 		final TreeSet<HistogramEntry> poiOrdering = new TreeSet<>();
 
 		histogram.forEachEntry(new TShortIntProcedure() {
@@ -531,19 +593,21 @@ public final class OSMTagMapping {
 		OSMTag currentTag = null;
 		for (HistogramEntry histogramEntry : poiOrdering.descendingSet()) {
 			currentTag = this.idToPoiTag.get(Short.valueOf(histogramEntry.id));
-			this.optimizedPoiIds.put(Short.valueOf(histogramEntry.id), Short.valueOf(tmpPoiID));
+			optimizedIds.put(Short.valueOf(histogramEntry.id), Short.valueOf(tmpPoiID));
 			LOGGER.finer("adding poi tag: " + currentTag.tagKey() + " id:" + tmpPoiID + " amount: "
 					+ histogramEntry.amount);
 			tmpPoiID++;
 		}
+		return optimizedIds;
 	}
 
 	/**
 	 * @param histogram
 	 *            a histogram that represents the frequencies of tags
+	 * @return a new mapping that maps original tag ids to optimized ones, the most frequent tag gets the smallest id
 	 */
-	public void optimizeWayOrdering(TShortIntHashMap histogram) {
-		this.optimizedWayIds.clear();
+	public Map<Short, Short> optimizeWayOrdering(TShortIntHashMap histogram) {
+		Map<Short, Short> optimizedIds = new LinkedHashMap<>();
 		final TreeSet<HistogramEntry> wayOrdering = new TreeSet<>();
 
 		histogram.forEachEntry(new TShortIntProcedure() {
@@ -558,10 +622,11 @@ public final class OSMTagMapping {
 		OSMTag currentTag = null;
 		for (HistogramEntry histogramEntry : wayOrdering.descendingSet()) {
 			currentTag = this.idToWayTag.get(Short.valueOf(histogramEntry.id));
-			this.optimizedWayIds.put(Short.valueOf(histogramEntry.id), Short.valueOf(tmpWayID));
+			optimizedIds.put(Short.valueOf(histogramEntry.id), Short.valueOf(tmpWayID));
 			LOGGER.finer("adding way tag: " + currentTag.tagKey() + " id:" + tmpWayID + " amount: "
 					+ histogramEntry.amount);
 			tmpWayID++;
 		}
+		return optimizedIds;
 	}
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.mapsforge.core.util.LatLongUtils;
+import org.mapsforge.core.util.MercatorProjection;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.mapsforge.map.writer.model.TileCoordinate;
+import org.mapsforge.map.writer.model.TileGridLayout;
+import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * The entities of an osmChange file, used to determine the tiles of an existing map file which have to be encoded
+ * again.
+ * <p>
+ * Ways of the updated data which reference a changed node and relations which reference a changed entity have to be
+ * passed to {@link #addWay(Way)} and {@link #addRelation(Relation)} while the data is read. The affected tiles are
+ * then computed from the positions in the change file, the geometries of the affected entities in the updated data
+ * and, as osmChange files contain neither the previous positions of modified entities nor any position of deleted
+ * entities, from their previous extents in the extent index of the base file. Each affected area is enlarged by one
+ * tile to cover ways which have been added to neighbouring tiles by the bounding box enlargement.
+ */
+public final class OsmChange {
+	private static final Logger LOGGER = Logger.getLogger(OsmChange.class.getName());
+
+	private static final int TILE_MARGIN = 1;
+
+	private static void markTiles(TileBasedDataProcessor dataProcessor, BitSet[] changedTiles, int[] extent) {
+		markTiles(dataProcessor, changedTiles, extent[0], extent[1], extent[2], extent[3]);
+	}
+
+	private static void markTiles(TileBasedDataProcessor dataProcessor, BitSet[] changedTiles, int minLatitude,
+			int minLongitude, int maxLatitude, int maxLongitude) {
+		ZoomIntervalConfiguration zoomIntervalConfiguration = dataProcessor.getZoomIntervalConfiguration();
+		for (int i = 0; i < changedTiles.length; i++) {
+			TileGridLayout tileGridLayout = dataProcessor.getTileGridLayout(i);
+			TileCoordinate upperLeft = tileGridLayout.getUpperLeft();
+			int lengthX = tileGridLayout.getAmountTilesHorizontal();
+			byte baseZoom = zoomIntervalConfiguration.getBaseZoom(i);
+
+			int minX = Math.max(0, MercatorProjection.longitudeToTileX(
+					LatLongUtils.microdegreesToDegrees(minLongitude), baseZoom)
+					- TILE_MARGIN - upperLeft.getX());
+			int maxX = Math.min(lengthX - 1, MercatorProjection.longitudeToTileX(
+					LatLongUtils.microdegreesToDegrees(maxLongitude), baseZoom)
+					+ TILE_MARGIN - upperLeft.getX());
+			int minY = Math.max(0, MercatorProjection.latitudeToTileY(
+					LatLongUtils.microdegreesToDegrees(maxLatitude), baseZoom)
+					- TILE_MARGIN - upperLeft.getY());
+			int maxY = Math.min(tileGridLayout.getAmountTilesVertical() - 1, MercatorProjection.latitudeToTileY(
+					LatLongUtils.microdegreesToDegrees(minLatitude), baseZoom)
+					+ TILE_MARGIN - upperLeft.getY());
+			for (int y = minY; y <= maxY && minX <= maxX; y++) {
+				changedTiles[i].set(y * lengthX + minX, y * lengthX + maxX + 1);
+			}
+		}
+	}
+
+	/**
+	 * @param file
+	 *            the osmChange file.
+	 * @return the changed entities of the file.
+	 * @throws IOException
+	 *             if the file cannot be read or parsed.
+	 */
+	public static OsmChange read(File file) throws IOException {
+		OsmChange osmChange = new OsmChange();
+		InputStream inputStream = new FileInputStream(file);
+		try {
+			XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(inputStream);
+			try {
+				osmChange.read(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("could not parse change file: " + file, e);
+		} catch (NumberFormatException e) {
+			throw new IOException("could not parse change file: " + file, e);
+		} finally {
+			inputStream.close();
+		}
+		LOGGER.info("changed entities: " + osmChange.nodeIds.size() + " nodes, " + osmChange.wayIds.size()
+				+ " ways, " + osmChange.relationIds.size() + " relations");
+		return osmChange;
+	}
+
+	private final TLongHashSet affectedRelationIds = new TLongHashSet();
+	private final TLongHashSet affectedWayIds = new TLongHashSet();
+	private final TLongHashSet nodeIds = new TLongHashSet();
+	private final TIntArrayList positions = new TIntArrayList();
+	private final TLongHashSet referencedNodeIds = new TLongHashSet();
+	private final TLongHashSet relationIds = new TLongHashSet();
+	private final TLongHashSet wayIds = new TLongHashSet();
+
+	private OsmChange() {
+		// use read(File)
+	}
+
+	/**
+	 * Marks the members of the relation as affected if the relation or any of its members has changed.
+	 * 
+	 * @param relation
+	 *            a relation of the updated data, must be added after all ways.
+	 */
+	public void addRelation(Relation relation) {
+		boolean affected = this.relationIds.contains(relation.getId());
+		for (RelationMember member : relation.getMembers()) {
+			if (affected) {
+				break;
+			}
+			if (member.getMemberType() == EntityType.Way) {
+				affected = this.affectedWayIds.contains(member.getMemberId());
+			} else if (member.getMemberType() == EntityType.Node) {
+				affected = this.nodeIds.contains(member.getMemberId());
+			}
+		}
+		if (affected) {
+			this.affectedRelationIds.add(relation.getId());
+			addMembers(relation);
+		}
+	}
+
+	/**
+	 * Marks the way as affected if the way or any of its nodes has changed.
+	 * 
+	 * @param way
+	 *            a way of the updated data.
+	 */
+	public void addWay(Way way) {
+		if (this.wayIds.contains(way.getId())) {
+			this.affectedWayIds.add(way.getId());
+			return;
+		}
+		for (WayNode wayNode : way.getWayNodes()) {
+			if (this.nodeIds.contains(wayNode.getNodeId())) {
+				this.affectedWayIds.add(way.getId());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Computes the tiles which have to be encoded again. Must be called after the data processor has been completed.
+	 * 
+	 * @param dataProcessor
+	 *            the data processor with the updated data.
+	 * @param baseExtentIndex
+	 *            the extent index of the base file.
+	 * @return for each zoom interval the numbers of the affected tiles, tiles are numbered row by row.
+	 */
+	BitSet[] getChangedTiles(BaseTileBasedDataProcessor dataProcessor, ExtentIndex baseExtentIndex) {
+		BitSet[] changedTiles = new BitSet[dataProcessor.getZoomIntervalConfiguration().getNumberOfZoomIntervals()];
+		for (int i = 0; i < changedTiles.length; i++) {
+			changedTiles[i] = new BitSet();
+		}
+
+		for (int i = 0; i < this.positions.size(); i += 2) {
+			int latitude = this.positions.get(i);
+			int longitude = this.positions.get(i + 1);
+			markTiles(dataProcessor, changedTiles, latitude, longitude, latitude, longitude);
+		}
+
+		// entities which are neither in the base file nor in the updated data do not affect any tile
+		int unknown = 0;
+		TLongHashSet allNodeIds = new TLongHashSet(this.nodeIds);
+		allNodeIds.addAll(this.referencedNodeIds);
+		for (long nodeId : allNodeIds.toArray()) {
+			boolean known = false;
+			TDNode node = dataProcessor.getNode(nodeId);
+			if (node != null) {
+				markTiles(dataProcessor, changedTiles, node.getLatitude(), node.getLongitude(), node.getLatitude(),
+						node.getLongitude());
+				known = true;
+			}
+			int[] baseExtent = baseExtentIndex.get(EntityType.Node, nodeId);
+			if (baseExtent != null) {
+				markTiles(dataProcessor, changedTiles, baseExtent);
+				known = true;
+			}
+			if (!known) {
+				unknown++;
+			}
+		}
+
+		for (long wayId : this.affectedWayIds.toArray()) {
+			boolean known = false;
+			TDWay way = dataProcessor.getWay(wayId);
+			int[] extent = way == null ? null : ExtentIndex.getExtent(way);
+			if (extent != null) {
+				markTiles(dataProcessor, changedTiles, extent);
+				known = true;
+			}
+			int[] baseExtent = baseExtentIndex.get(EntityType.Way, wayId);
+			if (baseExtent != null) {
+				markTiles(dataProcessor, changedTiles, baseExtent);
+				known = true;
+			}
+			if (!known) {
+				unknown++;
+			}
+		}
+
+		// the members of relations in the updated data have been added to the affected ways
+		TLongHashSet allRelationIds = new TLongHashSet(this.relationIds);
+		allRelationIds.addAll(this.affectedRelationIds);
+		for (long relationId : allRelationIds.toArray()) {
+			int[] baseExtent = baseExtentIndex.get(EntityType.Relation, relationId);
+			if (baseExtent != null) {
+				markTiles(dataProcessor, changedTiles, baseExtent);
+			}
+		}
+
+		if (unknown > 0) {
+			LOGGER.fine(unknown + " changed entities are neither contained in the base file nor in the updated data");
+		}
+		return changedTiles;
+	}
+
+	private void addMembers(Relation relation) {
+		for (RelationMember member : relation.getMembers()) {
+			if (member.getMemberType() == EntityType.Way) {
+				this.affectedWayIds.add(member.getMemberId());
+			} else if (member.getMemberType() == EntityType.Node) {
+				this.referencedNodeIds.add(member.getMemberId());
+			}
+		}
+	}
+
+	private void read(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			String name = reader.getLocalName();
+			if ("node".equals(name)) {
+				this.nodeIds.add(Long.parseLong(reader.getAttributeValue(null, "id")));
+				String latitude = reader.getAttributeValue(null, "lat");
+				String longitude = reader.getAttributeValue(null, "lon");
+				if (latitude != null && longitude != null) {
+					this.positions.add(LatLongUtils.degreesToMicrodegrees(Double.parseDouble(latitude)));
+					this.positions.add(LatLongUtils.degreesToMicrodegrees(Double.parseDouble(longitude)));
+				}
+			} else if ("way".equals(name)) {
+				long id = Long.parseLong(reader.getAttributeValue(null, "id"));
+				this.wayIds.add(id);
+				this.affectedWayIds.add(id);
+			} else if ("nd".equals(name)) {
+				this.referencedNodeIds.add(Long.parseLong(reader.getAttributeValue(null, "ref")));
+			} else if ("relation".equals(name)) {
+				this.relationIds.add(Long.parseLong(reader.getAttributeValue(null, "id")));
+			} else if ("member".equals(name)) {
+				long ref = Long.parseLong(reader.getAttributeValue(null, "ref"));
+				String type = reader.getAttributeValue(null, "type");
+				if ("way".equals(type)) {
+					this.affectedWayIds.add(ref);
+				} else if ("node".equals(type)) {
+					this.referencedNodeIds.add(ref);
+				}
+			}
+		}
+	}
+}
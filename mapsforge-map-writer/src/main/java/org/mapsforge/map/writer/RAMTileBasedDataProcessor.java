@@ -121,8 +121,8 @@ public final class RAMTileBasedDataProcessor extends BaseTileBasedDataProcessor
 		WayHandler wayHandler = new WayHandler();
 		this.ways.forEachValue(wayHandler);
 
-		OSMTagMapping.getInstance().optimizePoiOrdering(this.histogramPoiTags);
-		OSMTagMapping.getInstance().optimizeWayOrdering(this.histogramWayTags);
+		this.optimizedPoiIds = OSMTagMapping.getInstance().optimizePoiOrdering(this.histogramPoiTags);
+		this.optimizedWayIds = OSMTagMapping.getInstance().optimizeWayOrdering(this.histogramWayTags);
 	}
 
 	@Override
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.mapsforge.map.writer.model.NodeResolver;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+
+/**
+ * Stores OSM ways in a temporary file, one record per way, and finds them by id through a {@link MappedLongArray}.
+ * <p>
+ * A record contains the attributes of the way and the ids of its way nodes, delta encoded as variable length
+ * numbers. The way nodes are resolved by a {@link NodeResolver} when a way is read.
+ * <p>
+ * Ways are added before {@link #complete()} and read afterwards. Reading ways by id is thread-safe.
+ */
+final class WayFile {
+	/**
+	 * Iterates over all ways in the order in which they have been added.
+	 */
+	final class WayIterator {
+		private final DataInputStream dataInputStream;
+		private final NodeResolver nodeResolver;
+
+		WayIterator(NodeResolver nodeResolver) throws IOException {
+			this.nodeResolver = nodeResolver;
+			this.dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(
+					WayFile.this.file)));
+		}
+
+		void close() {
+			try {
+				this.dataInputStream.close();
+			} catch (IOException e) {
+				// nothing to do
+			}
+		}
+
+		/**
+		 * @return true if there is a next way.
+		 */
+		boolean hasNext() {
+			try {
+				return this.dataInputStream.available() > 0;
+			} catch (IOException e) {
+				throw new RuntimeException("could not read way file", e);
+			}
+		}
+
+		/**
+		 * @return the next way, null if one of its way nodes is unknown.
+		 */
+		TDWay next() {
+			try {
+				byte[] record = new byte[this.dataInputStream.readInt()];
+				this.dataInputStream.readFully(record);
+				return readWay(ByteBuffer.wrap(record), this.nodeResolver);
+			} catch (IOException e) {
+				throw new RuntimeException("could not read way file", e);
+			}
+		}
+	}
+
+	private static final int BYTES_PER_INT = 4;
+	private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
+	private static long readVariableByteLong(ByteBuffer byteBuffer) {
+		long value = 0;
+		int shift = 0;
+		byte current;
+		do {
+			current = byteBuffer.get();
+			value |= (long) (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		return value;
+	}
+
+	private static String readString(ByteBuffer byteBuffer) {
+		int length = (int) readVariableByteLong(byteBuffer) - 1;
+		if (length < 0) {
+			return null;
+		}
+		String string = new String(byteBuffer.array(), byteBuffer.position(), length, UTF8_CHARSET);
+		byteBuffer.position(byteBuffer.position() + length);
+		return string;
+	}
+
+	private static TDWay readWay(ByteBuffer byteBuffer, NodeResolver nodeResolver) {
+		long id = byteBuffer.getLong();
+		byte layer = byteBuffer.get();
+		byte shape = byteBuffer.get();
+		String name = readString(byteBuffer);
+		String houseNumber = readString(byteBuffer);
+		String ref = readString(byteBuffer);
+		short[] tags = null;
+		int amountOfTags = (int) readVariableByteLong(byteBuffer) - 1;
+		if (amountOfTags >= 0) {
+			tags = new short[amountOfTags];
+			for (int i = 0; i < amountOfTags; ++i) {
+				tags[i] = byteBuffer.getShort();
+			}
+		}
+
+		TDNode[] wayNodes = new TDNode[(int) readVariableByteLong(byteBuffer)];
+		long wayNodeId = 0;
+		for (int i = 0; i < wayNodes.length; ++i) {
+			long delta = readVariableByteLong(byteBuffer);
+			// zigzag decoding
+			wayNodeId += (delta >>> 1) ^ -(delta & 1);
+			wayNodes[i] = nodeResolver.getNode(wayNodeId);
+			if (wayNodes[i] == null) {
+				return null;
+			}
+		}
+
+		return new TDWay(id, layer, name, houseNumber, ref, tags, shape, wayNodes);
+	}
+
+	private static void writeString(DataOutputStream dataOutputStream, String string) throws IOException {
+		if (string == null) {
+			writeVariableByteLong(dataOutputStream, 0);
+			return;
+		}
+		byte[] bytes = string.getBytes(UTF8_CHARSET);
+		writeVariableByteLong(dataOutputStream, bytes.length + 1);
+		dataOutputStream.write(bytes);
+	}
+
+	private static void writeVariableByteLong(DataOutputStream dataOutputStream, long value) throws IOException {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			dataOutputStream.writeByte((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		dataOutputStream.writeByte((int) remaining);
+	}
+
+	private FileChannel fileChannel;
+	private long fileSize;
+	private final File file;
+	private final MappedLongArray offsets;
+	private final DataOutputStream outputStream;
+	private RandomAccessFile randomAccessFile;
+	private final ByteArrayOutputStream recordBuffer;
+	private final DataOutputStream recordOutputStream;
+
+	/**
+	 * @throws IOException
+	 *             if the temporary files cannot be created.
+	 */
+	WayFile() throws IOException {
+		this.file = File.createTempFile("ways", null);
+		this.file.deleteOnExit();
+		this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file)));
+		this.offsets = new MappedLongArray("wayOffsets");
+		this.recordBuffer = new ByteArrayOutputStream();
+		this.recordOutputStream = new DataOutputStream(this.recordBuffer);
+	}
+
+	/**
+	 * Stores the way, the ids of its way nodes, shape and attributes. Other properties of the way are discarded.
+	 * 
+	 * @throws IOException
+	 *             if the way cannot be written.
+	 */
+	void add(TDWay way) throws IOException {
+		this.recordBuffer.reset();
+		this.recordOutputStream.writeLong(way.getId());
+		this.recordOutputStream.writeByte(way.getLayer());
+		this.recordOutputStream.writeByte(way.getShape());
+		writeString(this.recordOutputStream, way.getName());
+		writeString(this.recordOutputStream, way.getHouseNumber());
+		writeString(this.recordOutputStream, way.getRef());
+		short[] tags = way.getTags();
+		writeVariableByteLong(this.recordOutputStream, tags == null ? 0 : tags.length + 1);
+		if (tags != null) {
+			for (short tag : tags) {
+				this.recordOutputStream.writeShort(tag);
+			}
+		}
+
+		TDNode[] wayNodes = way.getWayNodes();
+		writeVariableByteLong(this.recordOutputStream, wayNodes.length);
+		long previousId = 0;
+		for (TDNode wayNode : wayNodes) {
+			long delta = wayNode.getId() - previousId;
+			// zigzag encoding
+			writeVariableByteLong(this.recordOutputStream, (delta << 1) ^ (delta >> 63));
+			previousId = wayNode.getId();
+		}
+
+		// offsets are stored incremented by one, so 0 marks a missing way
+		this.offsets.set(way.getId(), this.fileSize + 1);
+		this.outputStream.writeInt(this.recordBuffer.size());
+		this.recordBuffer.writeTo(this.outputStream);
+		this.fileSize += BYTES_PER_INT + this.recordBuffer.size();
+	}
+
+	/**
+	 * Finishes writing, ways can be read afterwards.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written or opened for reading.
+	 */
+	void complete() throws IOException {
+		this.outputStream.close();
+		this.randomAccessFile = new RandomAccessFile(this.file, "r");
+		this.fileChannel = this.randomAccessFile.getChannel();
+	}
+
+	/**
+	 * @return a new way with the stored data, null if the way or one of its way nodes is unknown.
+	 */
+	TDWay get(long id, NodeResolver nodeResolver) {
+		if (this.fileChannel == null) {
+			throw new IllegalStateException("way file not accessible, call complete() first");
+		}
+		long offset = this.offsets.get(id) - 1;
+		if (offset < 0) {
+			return null;
+		}
+		try {
+			ByteBuffer lengthBuffer = ByteBuffer.allocate(BYTES_PER_INT);
+			readFully(lengthBuffer, offset);
+			ByteBuffer recordBuffer = ByteBuffer.allocate(lengthBuffer.getInt(0));
+			readFully(recordBuffer, offset + BYTES_PER_INT);
+			recordBuffer.flip();
+			return readWay(recordBuffer, nodeResolver);
+		} catch (IOException e) {
+			throw new RuntimeException("could not read way " + id, e);
+		}
+	}
+
+	/**
+	 * @return an iterator over all ways, which must be closed after use.
+	 */
+	WayIterator iterator(NodeResolver nodeResolver) {
+		if (this.fileChannel == null) {
+			throw new IllegalStateException("way file not accessible, call complete() first");
+		}
+		try {
+			return new WayIterator(nodeResolver);
+		} catch (IOException e) {
+			throw new RuntimeException("could not read way file", e);
+		}
+	}
+
+	/**
+	 * Deletes the temporary files.
+	 */
+	void release() {
+		try {
+			this.outputStream.close();
+			if (this.randomAccessFile != null) {
+				this.randomAccessFile.close();
+			}
+		} catch (IOException e) {
+			// nothing to do
+		}
+		this.file.delete();
+		this.offsets.release();
+	}
+
+	private void readFully(ByteBuffer byteBuffer, long position) throws IOException {
+		long currentPosition = position;
+		while (byteBuffer.hasRemaining()) {
+			int read = this.fileChannel.read(byteBuffer, currentPosition);
+			if (read < 0) {
+				throw new EOFException("unexpected end of way file at position " + currentPosition);
+			}
+			currentPosition += read;
+		}
+	}
+}
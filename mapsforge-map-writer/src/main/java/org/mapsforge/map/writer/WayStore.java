@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapsforge.map.writer.model.NodeResolver;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+
+/**
+ * Stores OSM ways in primitive lists instead of {@link TDWay} objects.
+ * <p>
+ * A way is stored as the ids of its way nodes, its shape and an index into a pool of attributes. The attributes are
+ * the layer, the names and the tags, many ways share the same attributes. The {@link TDWay} of a stored way is created
+ * on demand, its way nodes are resolved by a {@link NodeResolver}.
+ */
+final class WayStore {
+	private static final class Attributes {
+		final String houseNumber;
+		final byte layer;
+		final String name;
+		final String ref;
+		final short[] tags;
+
+		Attributes(TDWay way, InternPool internPool) {
+			this.houseNumber = internPool.intern(way.getHouseNumber());
+			this.layer = way.getLayer();
+			this.name = internPool.intern(way.getName());
+			this.ref = internPool.intern(way.getRef());
+			this.tags = internPool.intern(way.getTags());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof Attributes)) {
+				return false;
+			}
+			Attributes other = (Attributes) obj;
+			return this.layer == other.layer && isEqual(this.houseNumber, other.houseNumber)
+					&& isEqual(this.name, other.name) && isEqual(this.ref, other.ref)
+					&& Arrays.equals(this.tags, other.tags);
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (this.houseNumber == null ? 0 : this.houseNumber.hashCode());
+			result = prime * result + this.layer;
+			result = prime * result + (this.name == null ? 0 : this.name.hashCode());
+			result = prime * result + (this.ref == null ? 0 : this.ref.hashCode());
+			result = prime * result + Arrays.hashCode(this.tags);
+			return result;
+		}
+
+		private static boolean isEqual(String string1, String string2) {
+			return string1 == null ? string2 == null : string1.equals(string2);
+		}
+	}
+
+	private final List<Attributes> attributes;
+	private final Map<Attributes, Integer> attributesIndex;
+	private final IdIndex idIndex;
+	private final InternPool internPool;
+	private final TIntArrayList wayAttributes;
+	private final TIntArrayList wayNodeOffsets;
+	private final TLongArrayList wayNodes;
+	private final TByteArrayList wayShapes;
+
+	/**
+	 * @param internPool
+	 *            the pool for the names and tags of the ways.
+	 */
+	WayStore(InternPool internPool) {
+		this.internPool = internPool;
+		this.attributes = new ArrayList<Attributes>();
+		this.attributesIndex = new HashMap<Attributes, Integer>();
+		this.idIndex = new IdIndex();
+		this.wayAttributes = new TIntArrayList();
+		this.wayNodeOffsets = new TIntArrayList();
+		this.wayNodes = new TLongArrayList();
+		this.wayShapes = new TByteArrayList();
+	}
+
+	/**
+	 * Stores the way, the ids of its way nodes, shape and attributes. Other properties of the way are discarded.
+	 */
+	void add(TDWay way) {
+		this.idIndex.add(way.getId());
+		this.wayAttributes.add(getAttributesIndex(way));
+		this.wayShapes.add(way.getShape());
+		this.wayNodeOffsets.add(this.wayNodes.size());
+		for (TDNode wayNode : way.getWayNodes()) {
+			this.wayNodes.add(wayNode.getId());
+		}
+	}
+
+	/**
+	 * Releases the spare capacity after the last way has been added.
+	 */
+	void complete() {
+		this.idIndex.complete();
+		this.wayAttributes.trimToSize();
+		this.wayNodeOffsets.trimToSize();
+		this.wayNodes.trimToSize();
+		this.wayShapes.trimToSize();
+	}
+
+	/**
+	 * @return a new way with the stored data, null if the way or one of its way nodes is unknown.
+	 */
+	TDWay get(long id, NodeResolver nodeResolver) {
+		int position = this.idIndex.indexOf(id);
+		if (position < 0) {
+			return null;
+		}
+		return getAt(position, nodeResolver);
+	}
+
+	/**
+	 * @return a new way with the stored data at the given position, null if the way has been replaced by a later way
+	 *         with the same id or if one of its way nodes is unknown.
+	 */
+	TDWay getAt(int position, NodeResolver nodeResolver) {
+		long id = this.idIndex.getId(position);
+		if (this.idIndex.indexOf(id) != position) {
+			return null;
+		}
+
+		int start = this.wayNodeOffsets.get(position);
+		int end = position + 1 < this.wayNodeOffsets.size() ? this.wayNodeOffsets.get(position + 1) : this.wayNodes
+				.size();
+		TDNode[] wayNodesOfWay = new TDNode[end - start];
+		for (int i = start; i < end; ++i) {
+			wayNodesOfWay[i - start] = nodeResolver.getNode(this.wayNodes.get(i));
+			if (wayNodesOfWay[i - start] == null) {
+				return null;
+			}
+		}
+
+		Attributes attributesOfWay = this.attributes.get(this.wayAttributes.get(position));
+		return new TDWay(id, attributesOfWay.layer, attributesOfWay.name, attributesOfWay.houseNumber,
+				attributesOfWay.ref, attributesOfWay.tags, this.wayShapes.get(position), wayNodesOfWay);
+	}
+
+	/**
+	 * @return the number of stored ways, including ways which have been replaced by a later way with the same id.
+	 */
+	int size() {
+		return this.idIndex.size();
+	}
+
+	/**
+	 * Replaces the stored shape and attributes of the way with those of the given way.
+	 * 
+	 * @return false if the way is unknown, true otherwise.
+	 */
+	boolean update(TDWay way) {
+		int position = this.idIndex.indexOf(way.getId());
+		if (position < 0) {
+			return false;
+		}
+		this.wayAttributes.set(position, getAttributesIndex(way));
+		this.wayShapes.set(position, way.getShape());
+		return true;
+	}
+
+	private int getAttributesIndex(TDWay way) {
+		Attributes attributesOfWay = new Attributes(way, this.internPool);
+		Integer index = this.attributesIndex.get(attributesOfWay);
+		if (index == null) {
+			index = Integer.valueOf(this.attributes.size());
+			this.attributes.add(attributesOfWay);
+			this.attributesIndex.put(attributesOfWay, index);
+		}
+		return index.intValue();
+	}
+}
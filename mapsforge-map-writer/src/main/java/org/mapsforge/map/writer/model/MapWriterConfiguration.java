@@ -26,8 +26,22 @@ import org.mapsforge.map.writer.OSMTagMapping;
  * Configuration for the map file writer.
  */
 public class MapWriterConfiguration {
+	private static File toInputFile(String file, String parameter) {
+		File f = new File(file);
+		if (!f.exists()) {
+			throw new IllegalArgumentException(parameter + " parameter points to a file that does not exist");
+		} else if (f.isDirectory()) {
+			throw new IllegalArgumentException(parameter + " parameter points to a directory, must be a file");
+		} else if (!f.canRead()) {
+			throw new IllegalArgumentException(parameter + " parameter points to a file we have no read permissions");
+		}
+		return f;
+	}
+
+	private File baseFile;
 	private BoundingBox bboxConfiguration;
 	private int bboxEnlargement;
+	private File changeFile;
 	private String comment;
 
 	private String dataProcessorType;
@@ -35,6 +49,7 @@ public class MapWriterConfiguration {
 
 	private boolean debugStrings;
 	private EncodingChoice encodingChoice;
+	private boolean extentIndex;
 	private int fileSpecificationVersion;
 
 	private boolean labelPosition;
@@ -54,6 +69,18 @@ public class MapWriterConfiguration {
 	private String writerVersion;
 	private ZoomIntervalConfiguration zoomIntervalConfiguration;
 
+	/**
+	 * Convenience method.
+	 * 
+	 * @param file
+	 *            the path to the existing map file which is updated incrementally
+	 */
+	public void addBaseFile(String file) {
+		if (file != null) {
+			setBaseFile(toInputFile(file, "base file"));
+		}
+	}
+
 	/**
 	 * Convenience method.
 	 * 
@@ -67,6 +94,18 @@ public class MapWriterConfiguration {
 		}
 	}
 
+	/**
+	 * Convenience method.
+	 * 
+	 * @param file
+	 *            the path to the osmChange file with the changes since the base file
+	 */
+	public void addChangeFile(String file) {
+		if (file != null) {
+			setChangeFile(toInputFile(file, "change file"));
+		}
+	}
+
 	/**
 	 * Convenience method.
 	 * 
@@ -147,6 +186,13 @@ public class MapWriterConfiguration {
 		}
 	}
 
+	/**
+	 * @return the baseFile
+	 */
+	public File getBaseFile() {
+		return this.baseFile;
+	}
+
 	/**
 	 * @return the bboxConfiguration
 	 */
@@ -161,6 +207,13 @@ public class MapWriterConfiguration {
 		return this.bboxEnlargement;
 	}
 
+	/**
+	 * @return the changeFile
+	 */
+	public File getChangeFile() {
+		return this.changeFile;
+	}
+
 	/**
 	 * @return the comment
 	 */
@@ -268,6 +321,14 @@ public class MapWriterConfiguration {
 		return this.debugStrings;
 	}
 
+	/**
+	 * @return true if the extents of the written POIs, ways and relations are stored next to the map file, which is
+	 *         always the case when a map file is updated, so that it can be updated again.
+	 */
+	public boolean isExtentIndex() {
+		return this.extentIndex || this.baseFile != null;
+	}
+
 	/**
 	 * @return the labelPosition
 	 */
@@ -325,6 +386,14 @@ public class MapWriterConfiguration {
 		}
 	}
 
+	/**
+	 * @param baseFile
+	 *            the baseFile to set
+	 */
+	public void setBaseFile(File baseFile) {
+		this.baseFile = baseFile;
+	}
+
 	/**
 	 * @param bboxConfiguration
 	 *            the bboxConfiguration to set
@@ -341,6 +410,14 @@ public class MapWriterConfiguration {
 		this.bboxEnlargement = bboxEnlargement;
 	}
 
+	/**
+	 * @param changeFile
+	 *            the changeFile to set
+	 */
+	public void setChangeFile(File changeFile) {
+		this.changeFile = changeFile;
+	}
+
 	/**
 	 * @param comment
 	 *            the comment to set
@@ -383,6 +460,15 @@ public class MapWriterConfiguration {
 		this.encodingChoice = encodingChoice;
 	}
 
+	/**
+	 * @param extentIndex
+	 *            true if the extents of the written POIs, ways and relations should be stored next to the map file,
+	 *            which is required to update the map file later.
+	 */
+	public void setExtentIndex(boolean extentIndex) {
+		this.extentIndex = extentIndex;
+	}
+
 	/**
 	 * @param fileSpecificationVersion
 	 *            the fileSpecificationVersion to set
@@ -499,5 +585,12 @@ public class MapWriterConfiguration {
 							+ this.bboxConfiguration.toString() + " - map start position: "
 							+ this.mapStartPosition.toString());
 		}
+		if ((this.baseFile == null) != (this.changeFile == null)) {
+			throw new IllegalArgumentException("base file and change file must be given together");
+		}
+		if (this.baseFile != null && this.outputFile != null
+				&& this.baseFile.getAbsoluteFile().equals(this.outputFile.getAbsoluteFile())) {
+			throw new IllegalArgumentException("base file must not be the output file: " + this.baseFile);
+		}
 	}
 }
@@ -106,7 +106,8 @@ public class TDWay {
 
 	private final String houseNumber;
 	private final long id;
-	private boolean invalid;
+	// set concurrently by the tile encoding workers if no geometry can be created for this way
+	private volatile boolean invalid;
 	private final byte layer;
 	private String name;
 	private String ref;
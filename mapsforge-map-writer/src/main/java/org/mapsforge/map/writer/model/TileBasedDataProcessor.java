@@ -15,6 +15,7 @@
 package org.mapsforge.map.writer.model;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.mapsforge.core.model.BoundingBox;
@@ -89,6 +90,22 @@ public interface TileBasedDataProcessor {
 	 */
 	List<TDWay> getInnerWaysOfMultipolygon(long outerWayID);
 
+	/**
+	 * Get the ids which are written for the POI tags. Once the data store is complete, the most frequent tags get the
+	 * smallest ids.
+	 * 
+	 * @return a mapping that maps original tag ids to the optimized ones
+	 */
+	Map<Short, Short> getOptimizedPoiIds();
+
+	/**
+	 * Get the ids which are written for the way tags. Once the data store is complete, the most frequent tags get the
+	 * smallest ids.
+	 * 
+	 * @return a mapping that maps original tag ids to the optimized ones
+	 */
+	Map<Short, Short> getOptimizedWayIds();
+
 	/**
 	 * Retrieves all the data that is associated with a tile.
 	 * 
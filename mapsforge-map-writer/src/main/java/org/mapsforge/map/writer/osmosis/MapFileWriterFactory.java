@@ -25,11 +25,14 @@ import org.openstreetmap.osmosis.core.pipeline.v0_6.SinkManager;
  * Factory for the mapfile writer osmosis plugin.
  */
 class MapFileWriterFactory extends TaskManagerFactory {
+	private static final String PARAM_BASE_FILE = "base-file";
 	private static final String PARAM_BBOX = "bbox";
 	private static final String PARAM_BBOX_ENLARGEMENT = "bbox-enlargement";
+	private static final String PARAM_CHANGE_FILE = "change-file";
 	private static final String PARAM_COMMENT = "comment";
 	private static final String PARAM_DEBUG_INFO = "debug-file";
 	private static final String PARAM_ENCODING = "encoding";
+	private static final String PARAM_EXTENT_INDEX = "extent-index";
 	private static final String PARAM_LABEL_POSITION = "label-position";
 	private static final String PARAM_MAP_START_POSITION = "map-start-position";
 	private static final String PARAM_MAP_START_ZOOM = "map-start-zoom";
@@ -54,9 +57,12 @@ class MapFileWriterFactory extends TaskManagerFactory {
 		configuration.addMapStartZoom(getStringArgument(taskConfig, PARAM_MAP_START_ZOOM, null));
 		configuration.addBboxConfiguration(getStringArgument(taskConfig, PARAM_BBOX, null));
 		configuration.addZoomIntervalConfiguration(getStringArgument(taskConfig, PARAM_ZOOMINTERVAL_CONFIG, null));
+		configuration.addBaseFile(getStringArgument(taskConfig, PARAM_BASE_FILE, null));
+		configuration.addChangeFile(getStringArgument(taskConfig, PARAM_CHANGE_FILE, null));
 
 		configuration.setComment(getStringArgument(taskConfig, PARAM_COMMENT, null));
 		configuration.setDebugStrings(getBooleanArgument(taskConfig, PARAM_DEBUG_INFO, false));
+		configuration.setExtentIndex(getBooleanArgument(taskConfig, PARAM_EXTENT_INDEX, false));
 		configuration.setPolygonClipping(getBooleanArgument(taskConfig, PARAM_POLYGON_CLIPPING, true));
 		configuration.setWayClipping(getBooleanArgument(taskConfig, PARAM_WAY_CLIPPING, true));
 		configuration.setLabelPosition(getBooleanArgument(taskConfig, PARAM_LABEL_POSITION, false));
@@ -22,8 +22,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.map.writer.CompactTileBasedDataProcessor;
 import org.mapsforge.map.writer.HDTileBasedDataProcessor;
 import org.mapsforge.map.writer.MapFileWriter;
+import org.mapsforge.map.writer.OsmChange;
 import org.mapsforge.map.writer.RAMTileBasedDataProcessor;
 import org.mapsforge.map.writer.model.MapWriterConfiguration;
 import org.mapsforge.map.writer.model.TileBasedDataProcessor;
@@ -42,12 +44,22 @@ import org.openstreetmap.osmosis.core.task.v0_6.Sink;
 public class MapFileWriterTask implements Sink {
 	private static final Logger LOGGER = Logger.getLogger(MapFileWriterTask.class.getName());
 
+	private static TileBasedDataProcessor createDataProcessor(MapWriterConfiguration configuration) {
+		if ("ram".equalsIgnoreCase(configuration.getDataProcessorType())) {
+			return RAMTileBasedDataProcessor.newInstance(configuration);
+		} else if ("compact".equalsIgnoreCase(configuration.getDataProcessorType())) {
+			return CompactTileBasedDataProcessor.newInstance(configuration);
+		}
+		return HDTileBasedDataProcessor.newInstance(configuration);
+	}
+
 	// Accounting
 	private int amountOfNodesProcessed = 0;
 	private int amountOfRelationsProcessed = 0;
 	private int amountOfWaysProcessed = 0;
 
 	private final MapWriterConfiguration configuration;
+	private OsmChange osmChange;
 	private TileBasedDataProcessor tileBasedGeoObjectStore;
 
 	MapFileWriterTask(MapWriterConfiguration configuration) {
@@ -69,13 +81,18 @@ public class MapFileWriterTask implements Sink {
 			throw new RuntimeException("map file specification version is not an integer", e);
 		}
 
+		// READ CHANGES IF AN EXISTING MAP FILE IS UPDATED
+		if (configuration.getChangeFile() != null) {
+			try {
+				this.osmChange = OsmChange.read(configuration.getChangeFile());
+			} catch (IOException e) {
+				throw new RuntimeException("could not read change file", e);
+			}
+		}
+
 		// CREATE DATASTORE IF BBOX IS DEFINED
 		if (this.configuration.getBboxConfiguration() != null) {
-			if ("ram".equalsIgnoreCase(configuration.getDataProcessorType())) {
-				this.tileBasedGeoObjectStore = RAMTileBasedDataProcessor.newInstance(configuration);
-			} else {
-				this.tileBasedGeoObjectStore = HDTileBasedDataProcessor.newInstance(configuration);
-			}
+			this.tileBasedGeoObjectStore = createDataProcessor(configuration);
 		}
 	}
 
@@ -96,7 +113,11 @@ public class MapFileWriterTask implements Sink {
 				LOGGER.info("overwriting file " + this.configuration.getOutputFile().getAbsolutePath());
 				this.configuration.getOutputFile().delete();
 			}
-			MapFileWriter.writeFile(this.configuration, this.tileBasedGeoObjectStore);
+			if (this.osmChange != null) {
+				MapFileWriter.updateFile(this.configuration, this.tileBasedGeoObjectStore, this.osmChange);
+			} else {
+				MapFileWriter.writeFile(this.configuration, this.tileBasedGeoObjectStore);
+			}
 		} catch (IOException e) {
 			LOGGER.log(Level.SEVERE, "error while writing file", e);
 		}
@@ -132,11 +153,7 @@ public class MapFileWriterTask implements Sink {
 							bound.getRight());
 					this.configuration.setBboxConfiguration(bbox);
 					this.configuration.validate();
-					if ("ram".equals(this.configuration.getDataProcessorType())) {
-						this.tileBasedGeoObjectStore = RAMTileBasedDataProcessor.newInstance(this.configuration);
-					} else {
-						this.tileBasedGeoObjectStore = HDTileBasedDataProcessor.newInstance(this.configuration);
-					}
+					this.tileBasedGeoObjectStore = createDataProcessor(this.configuration);
 				}
 				LOGGER.info("start reading data...");
 				break;
@@ -165,6 +182,9 @@ public class MapFileWriterTask implements Sink {
 			// *******************************************************
 			case Way:
 				this.tileBasedGeoObjectStore.addWay((Way) entity);
+				if (this.osmChange != null) {
+					this.osmChange.addWay((Way) entity);
+				}
 				entity = null;
 				this.amountOfWaysProcessed++;
 				break;
@@ -175,6 +195,9 @@ public class MapFileWriterTask implements Sink {
 			case Relation:
 				Relation currentRelation = (Relation) entity;
 				this.tileBasedGeoObjectStore.addRelation(currentRelation);
+				if (this.osmChange != null) {
+					this.osmChange.addRelation(currentRelation);
+				}
 				this.amountOfRelationsProcessed++;
 				entity = null;
 				break;
@@ -71,6 +71,10 @@ public final class GeoUtils {
 
 	/**
 	 * Clips a geometry to a tile.
+	 * <p>
+	 * Lines and polygons without holes are clipped directly on their coordinates, polygons are expected to be valid as
+	 * created by {@link JTSUtils#toJtsGeometry(TDWay, List)}. JTS is used for all other geometries and for polygons
+	 * which are split into several parts by the tile.
 	 * 
 	 * @param way
 	 *            the way
@@ -80,7 +84,8 @@ public final class GeoUtils {
 	 *            the tile coordinate
 	 * @param enlargementInMeters
 	 *            the bounding box buffer
-	 * @return the clipped geometry
+	 * @return the clipped geometry or null, if the geometry cannot be clipped to this tile. The way is not marked as
+	 *         invalid then, as tiles are clipped concurrently and other tiles may still be clipped successfully.
 	 */
 	public static Geometry clipToTile(TDWay way, Geometry geometry, TileCoordinate tileCoordinate,
 			int enlargementInMeters) {
@@ -88,8 +93,19 @@ public final class GeoUtils {
 		Geometry ret = null;
 
 		// create tile bounding box
-		tileBBJTS = tileToJTSGeometry(tileCoordinate.getX(), tileCoordinate.getY(), tileCoordinate.getZoomlevel(),
-				enlargementInMeters);
+		Envelope tileEnvelope = tileToEnvelope(tileCoordinate.getX(), tileCoordinate.getY(),
+				tileCoordinate.getZoomlevel(), enlargementInMeters);
+
+		if (geometry instanceof LineString) {
+			return RectangleClipper.clipLineString((LineString) geometry, tileEnvelope);
+		} else if (geometry instanceof Polygon) {
+			ret = RectangleClipper.clipPolygon((Polygon) geometry, tileEnvelope);
+			if (ret != null) {
+				return ret;
+			}
+		}
+
+		tileBBJTS = GEOMETRY_FACTORY.toGeometry(tileEnvelope);
 
 		// clip the geometry by intersection with the bounding box of the tile
 		// may throw a TopologyException
@@ -112,13 +128,12 @@ public final class GeoUtils {
 				LOGGER.warning("clipped way is not valid, trying to repair it: " + way.getId());
 				ret = JTSUtils.repairInvalidPolygon(ret);
 				if (ret == null) {
-					way.setInvalid(true);
 					LOGGER.warning("could not repair invalid polygon: " + way.getId());
 				}
 			}
 		} catch (TopologyException e) {
-			LOGGER.log(Level.WARNING, "JTS cannot clip way, not storing it in data file: " + way.getId(), e);
-			way.setInvalid(true);
+			LOGGER.log(Level.WARNING, "JTS cannot clip way, not storing it in tile: " + way.getId() + " " + tileCoordinate,
+					e);
 			return null;
 		}
 		return ret;
@@ -260,6 +275,9 @@ public final class GeoUtils {
 
 	/**
 	 * Simplifies a geometry using the Douglas Peucker algorithm.
+	 * <p>
+	 * Lines and polygons without holes are simplified directly on their coordinates, a simplified polygon is only used
+	 * if it is still valid. All other geometries are simplified by JTS, preserving their topology.
 	 * 
 	 * @param way
 	 *            the way
@@ -282,11 +300,13 @@ public final class GeoUtils {
 		double deltaLat = deltaLat(simplificationFactor, latMax, zoomlevel, tileSize);
 
 		try {
-			ret = TopologyPreservingSimplifier.simplify(geometry, deltaLat);
+			ret = simplifyCoordinates(geometry, deltaLat);
+			if (ret == null) {
+				ret = TopologyPreservingSimplifier.simplify(geometry, deltaLat);
+			}
 		} catch (TopologyException e) {
 			LOGGER.log(Level.FINE,
 					"JTS cannot simplify way due to an error, not simplifying way with id: " + way.getId(), e);
-			way.setInvalid(true);
 			return geometry;
 		}
 
@@ -401,7 +421,45 @@ public final class GeoUtils {
 		return bbox;
 	}
 
-	private static Geometry tileToJTSGeometry(long tileX, long tileY, byte zoom, int enlargementInMeter) {
+	/**
+	 * @return the simplified geometry or null if it must be simplified by JTS.
+	 */
+	private static Geometry simplifyCoordinates(Geometry geometry, double tolerance) {
+		if (geometry instanceof LineString) {
+			LineString lineString = (LineString) geometry;
+			Coordinate[] coordinates = LineSimplifier.simplify(lineString.getCoordinateSequence(), tolerance);
+			if (coordinates == null) {
+				return lineString;
+			} else if (lineString.isClosed() && coordinates.length < MIN_NODES_POLYGON) {
+				return null;
+			}
+			return GEOMETRY_FACTORY.createLineString(coordinates);
+		} else if (geometry instanceof MultiLineString) {
+			LineString[] lineStrings = new LineString[geometry.getNumGeometries()];
+			for (int i = 0; i < lineStrings.length; i++) {
+				Geometry lineString = simplifyCoordinates(geometry.getGeometryN(i), tolerance);
+				if (lineString == null) {
+					return null;
+				}
+				lineStrings[i] = (LineString) lineString;
+			}
+			return GEOMETRY_FACTORY.createMultiLineString(lineStrings);
+		} else if (geometry instanceof Polygon && ((Polygon) geometry).getNumInteriorRing() == 0) {
+			Polygon polygon = (Polygon) geometry;
+			Coordinate[] coordinates = LineSimplifier.simplify(polygon.getExteriorRing().getCoordinateSequence(),
+					tolerance);
+			if (coordinates == null) {
+				return polygon;
+			} else if (coordinates.length < MIN_NODES_POLYGON) {
+				return null;
+			}
+			Polygon simplified = GEOMETRY_FACTORY.createPolygon(GEOMETRY_FACTORY.createLinearRing(coordinates), null);
+			return simplified.isValid() ? simplified : null;
+		}
+		return null;
+	}
+
+	private static Envelope tileToEnvelope(long tileX, long tileY, byte zoom, int enlargementInMeter) {
 		double minLat = MercatorProjection.tileYToLatitude(tileY + 1, zoom);
 		double maxLat = MercatorProjection.tileYToLatitude(tileY, zoom);
 		double minLon = MercatorProjection.tileXToLongitude(tileX, zoom);
@@ -414,10 +472,11 @@ public final class GeoUtils {
 		maxLon += epsilons[1];
 		maxLat += epsilons[0];
 
-		Coordinate bottomLeft = new Coordinate(minLon, minLat);
-		Coordinate topRight = new Coordinate(maxLon, maxLat);
+		return new Envelope(minLon, maxLon, minLat, maxLat);
+	}
 
-		return GEOMETRY_FACTORY.createLineString(new Coordinate[] { bottomLeft, topRight }).getEnvelope();
+	private static Geometry tileToJTSGeometry(long tileX, long tileY, byte zoom, int enlargementInMeter) {
+		return GEOMETRY_FACTORY.toGeometry(tileToEnvelope(tileX, tileY, zoom, enlargementInMeter));
 	}
 
 	private static List<Integer> toCoordinateList(Geometry jtsGeometry) {
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+
+/**
+ * Simplifies coordinate sequences by the Douglas-Peucker algorithm.
+ * <p>
+ * The algorithm works iteratively on a stack of index ranges and marks the points to keep in a bit array, both are
+ * reused per thread. Unlike the {@link com.vividsolutions.jts.simplify.TopologyPreservingSimplifier} the result may
+ * intersect itself, so it is up to the caller to validate simplified polygons.
+ */
+final class LineSimplifier {
+	/**
+	 * Reusable buffers of one thread.
+	 */
+	private static final class Buffers {
+		boolean[] keep = new boolean[1024];
+		int[] stack = new int[64];
+	}
+
+	private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	/**
+	 * @param sequence
+	 *            the coordinates
+	 * @param tolerance
+	 *            the maximum distance of a removed point to the simplified line
+	 * @return the simplified coordinates or null if no point can be removed
+	 */
+	static Coordinate[] simplify(CoordinateSequence sequence, double tolerance) {
+		int size = sequence.size();
+		if (size < 3) {
+			return null;
+		}
+		Buffers buffers = BUFFERS.get();
+		if (buffers.keep.length < size) {
+			buffers.keep = new boolean[Math.max(size, buffers.keep.length * 2)];
+		}
+		boolean[] keep = buffers.keep;
+		for (int i = 1; i < size - 1; i++) {
+			keep[i] = false;
+		}
+		keep[0] = true;
+		keep[size - 1] = true;
+
+		double squaredTolerance = tolerance * tolerance;
+		int[] stack = buffers.stack;
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		stack[stackSize++] = size - 1;
+		int amountOfKeptPoints = 2;
+		while (stackSize > 0) {
+			int last = stack[--stackSize];
+			int first = stack[--stackSize];
+
+			double maxDistance = -1;
+			int maxIndex = -1;
+			for (int i = first + 1; i < last; i++) {
+				double distance = squaredDistanceToSegment(sequence.getX(i), sequence.getY(i), sequence.getX(first),
+						sequence.getY(first), sequence.getX(last), sequence.getY(last));
+				if (distance > maxDistance) {
+					maxDistance = distance;
+					maxIndex = i;
+				}
+			}
+			if (maxIndex < 0 || maxDistance <= squaredTolerance) {
+				continue;
+			}
+
+			keep[maxIndex] = true;
+			amountOfKeptPoints++;
+			if (stackSize + 4 > stack.length) {
+				int[] newStack = new int[stack.length * 2];
+				System.arraycopy(stack, 0, newStack, 0, stackSize);
+				stack = newStack;
+				buffers.stack = newStack;
+			}
+			stack[stackSize++] = first;
+			stack[stackSize++] = maxIndex;
+			stack[stackSize++] = maxIndex;
+			stack[stackSize++] = last;
+		}
+
+		if (amountOfKeptPoints == size) {
+			return null;
+		}
+		Coordinate[] coordinates = new Coordinate[amountOfKeptPoints];
+		for (int i = 0, j = 0; i < size; i++) {
+			if (keep[i]) {
+				coordinates[j++] = sequence.getCoordinateCopy(i);
+			}
+		}
+		return coordinates;
+	}
+
+	private static double squaredDistanceToSegment(double x, double y, double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double squaredLength = dx * dx + dy * dy;
+		// the closest point of the segment
+		double closestX = x1;
+		double closestY = y1;
+		if (squaredLength > 0) {
+			double r = ((x - x1) * dx + (y - y1) * dy) / squaredLength;
+			if (r >= 1) {
+				closestX = x2;
+				closestY = y2;
+			} else if (r > 0) {
+				closestX += r * dx;
+				closestY += r * dy;
+			}
+		}
+		return (x - closestX) * (x - closestX) + (y - closestY) * (y - closestY);
+	}
+
+	private LineSimplifier() {
+		throw new IllegalStateException();
+	}
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Clips lines and simple polygons to an axis-aligned rectangle on primitive coordinate arrays.
+ * <p>
+ * Lines are clipped segment by segment (Liang-Barsky), polygons without holes by the Sutherland-Hodgman algorithm. The
+ * latter is only exact if the polygon is clipped into a single piece, so polygons whose boundary enters the rectangle
+ * more than once are not clipped here. The coordinates are processed in buffers which are reused per thread, only the
+ * resulting geometries are allocated.
+ */
+final class RectangleClipper {
+	/**
+	 * Reusable buffers of one thread, coordinates are stored as x, y pairs.
+	 */
+	private static final class Buffers {
+		double[] coordinates = new double[1024];
+		double[] clipped = new double[1024];
+		int[] partEnds = new int[16];
+		int parts;
+		int partStart;
+		int size;
+		final double[] t = new double[2];
+
+		void add(double x, double y) {
+			if (this.size > this.partStart && this.coordinates[this.size - 2] == x
+					&& this.coordinates[this.size - 1] == y) {
+				return;
+			}
+			if (this.size + 2 > this.coordinates.length) {
+				this.coordinates = grow(this.coordinates, this.size + 2);
+			}
+			this.coordinates[this.size++] = x;
+			this.coordinates[this.size++] = y;
+		}
+
+		void endPart() {
+			if (this.size - this.partStart < 4) {
+				// a part needs at least two points
+				this.size = this.partStart;
+				return;
+			}
+			if (this.parts == this.partEnds.length) {
+				int[] partEnds = new int[this.parts * 2];
+				System.arraycopy(this.partEnds, 0, partEnds, 0, this.parts);
+				this.partEnds = partEnds;
+			}
+			this.partEnds[this.parts++] = this.size;
+			this.partStart = this.size;
+		}
+
+		void reset() {
+			this.parts = 0;
+			this.partStart = 0;
+			this.size = 0;
+		}
+	}
+
+	private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+	/**
+	 * Clips a line string, closed line strings are clipped as lines.
+	 * 
+	 * @param lineString
+	 *            the line string
+	 * @param rectangle
+	 *            the clipping rectangle
+	 * @return the clipped geometry, the line string itself if it is completely contained in the rectangle or an empty
+	 *         geometry if it is disjoint
+	 */
+	static Geometry clipLineString(LineString lineString, Envelope rectangle) {
+		Envelope envelope = lineString.getEnvelopeInternal();
+		if (rectangle.covers(envelope)) {
+			return lineString;
+		} else if (!rectangle.intersects(envelope)) {
+			return GEOMETRY_FACTORY.createGeometryCollection(null);
+		}
+
+		Buffers buffers = BUFFERS.get();
+		buffers.reset();
+		CoordinateSequence sequence = lineString.getCoordinateSequence();
+		double[] t = buffers.t;
+		for (int i = 1; i < sequence.size(); i++) {
+			double x0 = sequence.getX(i - 1);
+			double y0 = sequence.getY(i - 1);
+			double dx = sequence.getX(i) - x0;
+			double dy = sequence.getY(i) - y0;
+			if (!clipSegment(x0, y0, dx, dy, rectangle, t)) {
+				buffers.endPart();
+				continue;
+			}
+			if (t[0] > 0) {
+				// the segment enters the rectangle
+				buffers.endPart();
+			}
+			buffers.add(x0 + t[0] * dx, y0 + t[0] * dy);
+			buffers.add(x0 + t[1] * dx, y0 + t[1] * dy);
+			if (t[1] < 1) {
+				// the segment leaves the rectangle
+				buffers.endPart();
+			}
+		}
+		buffers.endPart();
+
+		// the first and the last part of a closed line are connected at its first point
+		boolean mergeEnds = buffers.parts > 1 && lineString.isClosed()
+				&& buffers.coordinates[0] == sequence.getX(0) && buffers.coordinates[1] == sequence.getY(0)
+				&& buffers.coordinates[buffers.size - 2] == sequence.getX(0)
+				&& buffers.coordinates[buffers.size - 1] == sequence.getY(0);
+		int amountOfParts = mergeEnds ? buffers.parts - 1 : buffers.parts;
+		if (amountOfParts == 0) {
+			return GEOMETRY_FACTORY.createGeometryCollection(null);
+		}
+
+		LineString[] lineStrings = new LineString[amountOfParts];
+		for (int i = 0; i < amountOfParts; i++) {
+			int start = i == 0 ? 0 : buffers.partEnds[i - 1];
+			int end = buffers.partEnds[i];
+			if (mergeEnds && i == 0) {
+				int lastStart = buffers.partEnds[buffers.parts - 2];
+				int lastEnd = buffers.partEnds[buffers.parts - 1];
+				Coordinate[] coordinates = new Coordinate[(lastEnd - lastStart + end - start) / 2 - 1];
+				toCoordinates(buffers.coordinates, lastStart, lastEnd, coordinates, 0);
+				toCoordinates(buffers.coordinates, start + 2, end, coordinates, (lastEnd - lastStart) / 2);
+				lineStrings[i] = GEOMETRY_FACTORY.createLineString(coordinates);
+			} else {
+				Coordinate[] coordinates = new Coordinate[(end - start) / 2];
+				toCoordinates(buffers.coordinates, start, end, coordinates, 0);
+				lineStrings[i] = GEOMETRY_FACTORY.createLineString(coordinates);
+			}
+		}
+		if (lineStrings.length == 1) {
+			return lineStrings[0];
+		}
+		return GEOMETRY_FACTORY.createMultiLineString(lineStrings);
+	}
+
+	/**
+	 * Clips a valid polygon without holes whose boundary enters the rectangle at most once.
+	 * 
+	 * @param polygon
+	 *            the polygon
+	 * @param rectangle
+	 *            the clipping rectangle
+	 * @return the clipped geometry, the polygon itself if it is completely contained in the rectangle, an empty
+	 *         geometry if the intersection is empty or null if the polygon cannot be clipped here
+	 */
+	static Geometry clipPolygon(Polygon polygon, Envelope rectangle) {
+		if (polygon.getNumInteriorRing() > 0) {
+			return null;
+		}
+		Envelope envelope = polygon.getEnvelopeInternal();
+		if (rectangle.covers(envelope)) {
+			return polygon;
+		} else if (!rectangle.intersects(envelope)) {
+			return GEOMETRY_FACTORY.createGeometryCollection(null);
+		}
+
+		Buffers buffers = BUFFERS.get();
+		buffers.reset();
+		CoordinateSequence sequence = polygon.getExteriorRing().getCoordinateSequence();
+		// the closing point is omitted
+		int amountOfPoints = sequence.size() - 1;
+		double[] t = buffers.t;
+		int entries = 0;
+		for (int i = 0; i < amountOfPoints; i++) {
+			double x0 = sequence.getX(i);
+			double y0 = sequence.getY(i);
+			if (clipSegment(x0, y0, sequence.getX(i + 1) - x0, sequence.getY(i + 1) - y0, rectangle, t) && t[0] > 0
+					&& ++entries > 1) {
+				return null;
+			}
+			buffers.add(x0, y0);
+		}
+
+		if (entries == 0) {
+			// the rectangle is either contained in the polygon or disjoint from it
+			Coordinate centre = rectangle.centre();
+			if (containsPoint(buffers.coordinates, buffers.size, centre.x, centre.y)) {
+				return GEOMETRY_FACTORY.toGeometry(rectangle);
+			}
+			return GEOMETRY_FACTORY.createGeometryCollection(null);
+		}
+
+		int size = buffers.size;
+		for (int edge = 0; edge < 4 && size > 0; edge++) {
+			size = clipRing(buffers, size, edge, rectangle);
+		}
+		size = removeCollinearPoints(buffers.coordinates, size);
+		if (size < 6 || signedArea(buffers.coordinates, size) == 0) {
+			return GEOMETRY_FACTORY.createGeometryCollection(null);
+		}
+
+		Coordinate[] coordinates = new Coordinate[size / 2 + 1];
+		toCoordinates(buffers.coordinates, 0, size, coordinates, 0);
+		coordinates[coordinates.length - 1] = new Coordinate(coordinates[0]);
+		return GEOMETRY_FACTORY.createPolygon(GEOMETRY_FACTORY.createLinearRing(coordinates), null);
+	}
+
+	/**
+	 * Clips a ring against one edge of the rectangle, the result replaces the coordinates of the buffers.
+	 * 
+	 * @return the new number of coordinates.
+	 */
+	private static int clipRing(Buffers buffers, int size, int edge, Envelope rectangle) {
+		double[] input = buffers.coordinates;
+		if (buffers.clipped.length < size * 2) {
+			buffers.clipped = new double[size * 2];
+		}
+		double[] output = buffers.clipped;
+		int outputSize = 0;
+
+		double previousX = input[size - 2];
+		double previousY = input[size - 1];
+		boolean previousInside = isInside(previousX, previousY, edge, rectangle);
+		for (int i = 0; i < size; i += 2) {
+			double x = input[i];
+			double y = input[i + 1];
+			boolean inside = isInside(x, y, edge, rectangle);
+			if (inside != previousInside) {
+				// add the intersection of the edge of the ring with the clipping line
+				double value = edge == 0 ? rectangle.getMinX() : edge == 1 ? rectangle.getMaxX()
+						: edge == 2 ? rectangle.getMinY() : rectangle.getMaxY();
+				if (edge < 2) {
+					output[outputSize++] = value;
+					output[outputSize++] = previousY + (y - previousY) * (value - previousX) / (x - previousX);
+				} else {
+					output[outputSize++] = previousX + (x - previousX) * (value - previousY) / (y - previousY);
+					output[outputSize++] = value;
+				}
+			}
+			if (inside) {
+				output[outputSize++] = x;
+				output[outputSize++] = y;
+			}
+			previousX = x;
+			previousY = y;
+			previousInside = inside;
+		}
+
+		// swap the buffers
+		buffers.clipped = input;
+		buffers.coordinates = output;
+		return outputSize;
+	}
+
+	/**
+	 * Clips the segment from (x0, y0) to (x0 + dx, y0 + dy) by the Liang-Barsky algorithm.
+	 * 
+	 * @return false if the segment does not intersect the rectangle, otherwise the parameters of the clipped segment
+	 *         are stored in t.
+	 */
+	private static boolean clipSegment(double x0, double y0, double dx, double dy, Envelope rectangle, double[] t) {
+		t[0] = 0;
+		t[1] = 1;
+		return clipSegment(-dx, x0 - rectangle.getMinX(), t) && clipSegment(dx, rectangle.getMaxX() - x0, t)
+				&& clipSegment(-dy, y0 - rectangle.getMinY(), t) && clipSegment(dy, rectangle.getMaxY() - y0, t);
+	}
+
+	private static boolean clipSegment(double p, double q, double[] t) {
+		if (p == 0) {
+			return q >= 0;
+		}
+		double r = q / p;
+		if (p < 0) {
+			if (r > t[1]) {
+				return false;
+			} else if (r > t[0]) {
+				t[0] = r;
+			}
+		} else {
+			if (r < t[0]) {
+				return false;
+			} else if (r < t[1]) {
+				t[1] = r;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests by ray casting whether a point lies in a ring.
+	 */
+	private static boolean containsPoint(double[] ring, int size, double x, double y) {
+		boolean inside = false;
+		for (int i = 0, j = size - 2; i < size; j = i, i += 2) {
+			if ((ring[i + 1] > y) != (ring[j + 1] > y)
+					&& x < (ring[j] - ring[i]) * (y - ring[i + 1]) / (ring[j + 1] - ring[i + 1]) + ring[i]) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	private static double[] grow(double[] array, int minimumLength) {
+		double[] newArray = new double[Math.max(array.length * 2, minimumLength)];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private static boolean isInside(double x, double y, int edge, Envelope rectangle) {
+		switch (edge) {
+			case 0:
+				return x >= rectangle.getMinX();
+			case 1:
+				return x <= rectangle.getMaxX();
+			case 2:
+				return y >= rectangle.getMinY();
+			default:
+				return y <= rectangle.getMaxY();
+		}
+	}
+
+	private static boolean isCollinear(double[] ring, int i, int j, int k) {
+		return (ring[j] - ring[i]) * (ring[k + 1] - ring[i + 1]) - (ring[j + 1] - ring[i + 1]) * (ring[k] - ring[i]) == 0;
+	}
+
+	/**
+	 * Removes repeated and collinear points in place, including the zero-width spikes which the Sutherland-Hodgman
+	 * algorithm leaves along the edges of the rectangle.
+	 * 
+	 * @return the new number of coordinates.
+	 */
+	private static int removeCollinearPoints(double[] ring, int size) {
+		int newSize = 0;
+		for (int i = 0; i < size; i += 2) {
+			while (newSize >= 4 && isCollinear(ring, newSize - 4, newSize - 2, i)) {
+				newSize -= 2;
+			}
+			ring[newSize++] = ring[i];
+			ring[newSize++] = ring[i + 1];
+		}
+
+		// the ring is closed, so the points around the first point are checked as well
+		int start = 0;
+		boolean changed = true;
+		while (changed && newSize - start >= 6) {
+			changed = false;
+			if (isCollinear(ring, newSize - 4, newSize - 2, start)) {
+				newSize -= 2;
+				changed = true;
+			} else if (isCollinear(ring, newSize - 2, start, start + 2)) {
+				start += 2;
+				changed = true;
+			}
+		}
+		if (start > 0) {
+			System.arraycopy(ring, start, ring, 0, newSize - start);
+		}
+		return newSize - start;
+	}
+
+	private static double signedArea(double[] ring, int size) {
+		double area = 0;
+		for (int i = 0, j = size - 2; i < size; j = i, i += 2) {
+			area += ring[j] * ring[i + 1] - ring[i] * ring[j + 1];
+		}
+		return area / 2;
+	}
+
+	private static void toCoordinates(double[] source, int start, int end, Coordinate[] coordinates, int offset) {
+		for (int i = start, j = offset; i < end; i += 2, j++) {
+			coordinates[j] = new Coordinate(source[i], source[i + 1]);
+		}
+	}
+
+	private RectangleClipper() {
+		throw new IllegalStateException();
+	}
+}
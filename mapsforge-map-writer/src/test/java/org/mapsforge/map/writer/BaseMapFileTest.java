@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
+
+public class BaseMapFileTest {
+	private static final Charset UTF8_CHARSET = Charset.forName("utf8");
+
+	private static void putString(ByteBuffer buffer, String string) {
+		byte[] bytes = string.getBytes(UTF8_CHARSET);
+		buffer.put(Serializer.getVariableByteUnsigned(bytes.length));
+		buffer.put(bytes);
+	}
+
+	private final File file = new File(System.getProperty("java.io.tmpdir"), getClass().getSimpleName()
+			+ System.currentTimeMillis() + ".map");
+
+	@After
+	public void afterTest() {
+		this.file.delete();
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidFileTest() throws IOException {
+		writeFile(ByteBuffer.wrap("not a map file, just some text".getBytes(UTF8_CHARSET)));
+		new BaseMapFile(this.file).close();
+	}
+
+	@Test
+	public void readTest() throws IOException {
+		writeMapFile();
+
+		BaseMapFile baseMapFile = new BaseMapFile(this.file);
+		Assert.assertArrayEquals(new int[] { 52400000, 13400000, 52700000, 13700000 },
+				baseMapFile.getMicrodegreesBoundingBox());
+		Assert.assertFalse(baseMapFile.isDebugFile());
+		Assert.assertEquals(Arrays.asList("amenity=university"), baseMapFile.getPoiTags());
+		Assert.assertEquals(Arrays.asList("natural=beach", "natural=coastline"), baseMapFile.getWayTags());
+		Assert.assertTrue(baseMapFile.matches(ZoomIntervalConfiguration.fromString("14,12,18")));
+		Assert.assertFalse(baseMapFile.matches(ZoomIntervalConfiguration.fromString("14,12,21")));
+
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, baseMapFile.readTile(0, 0, 2));
+		Assert.assertArrayEquals(new byte[] { 4, 5 }, baseMapFile.readTile(0, 1, 2));
+		baseMapFile.close();
+	}
+
+	@Test(expected = IOException.class)
+	public void wrongAmountOfTilesTest() throws IOException {
+		writeMapFile();
+
+		BaseMapFile baseMapFile = new BaseMapFile(this.file);
+		try {
+			baseMapFile.readTile(0, 0, 3);
+		} finally {
+			baseMapFile.close();
+		}
+	}
+
+	private void writeFile(ByteBuffer buffer) throws IOException {
+		FileOutputStream outputStream = new FileOutputStream(this.file);
+		try {
+			outputStream.write(buffer.array(), 0, buffer.limit());
+		} finally {
+			outputStream.close();
+		}
+	}
+
+	/**
+	 * Writes a map file with a single sub file of two tiles, the second one is a water tile.
+	 */
+	private void writeMapFile() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(1000);
+		header.putInt(3);
+		header.putLong(0);
+		header.putLong(0);
+		header.putInt(52400000);
+		header.putInt(13400000);
+		header.putInt(52700000);
+		header.putInt(13700000);
+		header.putShort((short) 256);
+		putString(header, "Mercator");
+		header.put((byte) (MapFileWriter.BITMAP_MAP_START_ZOOM | MapFileWriter.BITMAP_COMMENT
+				| MapFileWriter.BITMAP_CREATED_WITH));
+		header.put((byte) 14);
+		putString(header, "comment");
+		putString(header, "test");
+		header.putShort((short) 1);
+		putString(header, "amenity=university");
+		header.putShort((short) 2);
+		putString(header, "natural=beach");
+		putString(header, "natural=coastline");
+		header.put((byte) 1);
+		header.put(new byte[] { 14, 12, 18 });
+		int startAddress = MapFileWriter.MAGIC_BYTE.length() + 4 + header.position() + 8 + 8;
+		header.putLong(startAddress);
+		header.putLong(15);
+		header.flip();
+
+		ByteBuffer buffer = ByteBuffer.allocate(startAddress + 15);
+		buffer.put(MapFileWriter.MAGIC_BYTE.getBytes(UTF8_CHARSET));
+		buffer.putInt(header.limit());
+		buffer.put(header);
+		buffer.put(Serializer.getFiveBytes(10));
+		byte[] waterEntry = Serializer.getFiveBytes(13);
+		waterEntry[0] |= MapFileWriter.BITMAP_INDEX_ENTRY_WATER;
+		buffer.put(waterEntry);
+		buffer.put(new byte[] { 1, 2, 3, 4, 5 });
+		buffer.flip();
+		writeFile(buffer);
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.mapsforge.map.writer.util.TestDataUtils;
+
+public class CompactTileBasedDataProcessorTest {
+	private MapWriterConfiguration configuration;
+
+	@Before
+	public void setUp() {
+		this.configuration = new MapWriterConfiguration();
+		this.configuration.setWriterVersion("test");
+		this.configuration.loadTagMappingFile("src/test/resources/tag-mapping.xml");
+		this.configuration.addBboxConfiguration("52.4,13.4,52.7,13.7");
+		this.configuration.addZoomIntervalConfiguration("5,0,7,10,8,11,14,12,18");
+		this.configuration.setDataProcessorType("compact");
+		this.configuration.setBboxEnlargement(10);
+		this.configuration.setPreferredLanguage("de");
+		this.configuration.addEncodingChoice("auto");
+		this.configuration.validate();
+	}
+
+	@Test
+	public void getNodeAndWayTest() {
+		CompactTileBasedDataProcessor dataProcessor = CompactTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addData(dataProcessor);
+
+		TDNode node = dataProcessor.getNode(3);
+		Assert.assertEquals(52520000, node.getLatitude());
+		Assert.assertEquals(13520000, node.getLongitude());
+		Assert.assertFalse(node.isPOI());
+		Assert.assertTrue(dataProcessor.getNode(13).isPOI());
+		Assert.assertEquals("Universität", dataProcessor.getNode(13).getName());
+		Assert.assertNull(dataProcessor.getNode(99));
+
+		TDWay way = dataProcessor.getWay(23);
+		Assert.assertEquals(2, way.getWayNodes().length);
+		Assert.assertEquals(11, way.getWayNodes()[1].getId());
+		Assert.assertEquals("Strand", way.getName());
+		// equal attributes are shared
+		Assert.assertSame(dataProcessor.getWay(22).getTags(), way.getTags());
+		Assert.assertSame(dataProcessor.getWay(22).getName(), way.getName());
+		Assert.assertNull(dataProcessor.getWay(24));
+
+		// the information of the relation has been merged into the outer way
+		Assert.assertEquals("Insel", dataProcessor.getWay(20).getName());
+		Assert.assertEquals(1, dataProcessor.getInnerWaysOfMultipolygon(20).size());
+		Assert.assertEquals(21, dataProcessor.getInnerWaysOfMultipolygon(20).get(0).getId());
+	}
+
+	@Test
+	public void tilesTest() {
+		TileBasedDataProcessor ramDataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addData(ramDataProcessor);
+		List<String> expected = TestDataUtils.describeTiles(ramDataProcessor);
+		boolean containsMultipolygon = false;
+		for (String description : expected) {
+			containsMultipolygon |= description.contains("/20:" + TDWay.MULTI_POLYGON + ":Insel:");
+		}
+		Assert.assertTrue(containsMultipolygon);
+
+		TileBasedDataProcessor compactDataProcessor = CompactTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addData(compactDataProcessor);
+		Assert.assertEquals(expected, TestDataUtils.describeTiles(compactDataProcessor));
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.mapsforge.map.writer.util.TestDataUtils;
+
+public class HDTileBasedDataProcessorTest {
+	private static MapWriterConfiguration createConfiguration() {
+		MapWriterConfiguration configuration = new MapWriterConfiguration();
+		configuration.setWriterVersion("test");
+		configuration.loadTagMappingFile("src/test/resources/tag-mapping.xml");
+		configuration.addBboxConfiguration("52.4,13.4,52.7,13.7");
+		configuration.addZoomIntervalConfiguration("5,0,7,10,8,11,14,12,18");
+		configuration.setDataProcessorType("hd");
+		configuration.setBboxEnlargement(10);
+		configuration.setPreferredLanguage("de");
+		configuration.addEncodingChoice("auto");
+		configuration.validate();
+		return configuration;
+	}
+
+	@Test
+	public void getNodeAndWayTest() {
+		HDTileBasedDataProcessor dataProcessor = HDTileBasedDataProcessor.newInstance(createConfiguration());
+		TestDataUtils.addData(dataProcessor);
+
+		TDNode node = dataProcessor.getNode(3);
+		Assert.assertEquals(52520000, node.getLatitude());
+		Assert.assertEquals(13520000, node.getLongitude());
+		Assert.assertNull(dataProcessor.getNode(99));
+
+		TDWay way = dataProcessor.getWay(23);
+		Assert.assertEquals(2, way.getWayNodes().length);
+		Assert.assertEquals(10, way.getWayNodes()[0].getId());
+		Assert.assertEquals(13620000, way.getWayNodes()[1].getLongitude());
+		Assert.assertEquals("Strand", way.getName());
+		Assert.assertArrayEquals(dataProcessor.getWay(22).getTags(), way.getTags());
+		Assert.assertNull(dataProcessor.getWay(24));
+		Assert.assertEquals(21, dataProcessor.getInnerWaysOfMultipolygon(20).get(0).getId());
+
+		dataProcessor.release();
+	}
+
+	@Test
+	public void tilesTest() {
+		MapWriterConfiguration configuration = createConfiguration();
+		TileBasedDataProcessor ramDataProcessor = RAMTileBasedDataProcessor.newInstance(configuration);
+		TestDataUtils.addData(ramDataProcessor);
+
+		TileBasedDataProcessor hdDataProcessor = HDTileBasedDataProcessor.newInstance(configuration);
+		TestDataUtils.addData(hdDataProcessor);
+		Assert.assertEquals(TestDataUtils.describeTiles(ramDataProcessor),
+				TestDataUtils.describeTiles(hdDataProcessor));
+		hdDataProcessor.release();
+	}
+}
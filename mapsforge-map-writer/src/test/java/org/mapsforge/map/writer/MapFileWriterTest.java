@@ -14,17 +14,48 @@
  */
 package org.mapsforge.map.writer;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mapsforge.map.writer.model.MapWriterConfiguration;
 import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.mapsforge.map.writer.util.TestDataUtils;
 
 public class MapFileWriterTest {
+	private static final String TMP_DIR = System.getProperty("java.io.tmpdir");
+	private static final Charset UTF8_CHARSET = Charset.forName("utf8");
+
+	private static boolean containsString(File file, String string) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), UTF8_CHARSET).contains(string);
+	}
+
+	private static void delete(File mapFile) {
+		mapFile.delete();
+		ExtentIndex.getFile(mapFile).delete();
+	}
+
+	private final File baseFile = new File(TMP_DIR, getClass().getSimpleName() + System.currentTimeMillis()
+			+ "-base.map");
 	private MapWriterConfiguration configuration;
 	private TileBasedDataProcessor dataProcessor;
+	private final File outputFile = new File(TMP_DIR, getClass().getSimpleName() + System.currentTimeMillis()
+			+ ".map");
+
+	@After
+	public void afterTest() {
+		delete(this.baseFile);
+		delete(this.outputFile);
+	}
 
 	@Before
 	public void setUp() {
@@ -51,6 +82,36 @@ public class MapFileWriterTest {
 		this.dataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
 	}
 
+	@Test
+	public void parallelWriteTest() throws IOException {
+		// the same data written with one and with several worker threads must result in the same file
+		ExecutorService singleThread = Executors.newSingleThreadExecutor();
+		ExecutorService severalThreads = Executors.newFixedThreadPool(4);
+		try {
+			this.configuration.setOutputFile(this.baseFile);
+			TileBasedDataProcessor dataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+			TestDataUtils.addDeletedWay(dataProcessor);
+			TestDataUtils.addData(dataProcessor);
+			MapFileWriter.writeFile(this.configuration, dataProcessor, singleThread);
+
+			this.configuration.setOutputFile(this.outputFile);
+			dataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+			TestDataUtils.addDeletedWay(dataProcessor);
+			TestDataUtils.addData(dataProcessor);
+			MapFileWriter.writeFile(this.configuration, dataProcessor, severalThreads);
+		} finally {
+			singleThread.shutdown();
+			severalThreads.shutdown();
+		}
+
+		byte[] expected = Files.readAllBytes(this.baseFile.toPath());
+		byte[] actual = Files.readAllBytes(this.outputFile.toPath());
+		// the creation date in the header differs
+		Arrays.fill(expected, 36, 44, (byte) 0);
+		Arrays.fill(actual, 36, 44, (byte) 0);
+		Assert.assertArrayEquals(expected, actual);
+	}
+
 	@Test
 	public void testWriteHeaderBuffer() {
 		ByteBuffer headerBuffer = ByteBuffer.allocate(MapFileWriter.HEADER_BUFFER_SIZE);
@@ -70,6 +131,49 @@ public class MapFileWriterTest {
 		// == 219
 		Assert.assertEquals(219, headerLength);
 	}
+
+	@Test
+	public void updateFileTest() throws IOException {
+		this.configuration.setDebugStrings(true);
+		this.configuration.setExtentIndex(true);
+		this.configuration.setOutputFile(this.baseFile);
+		TileBasedDataProcessor baseDataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addDeletedWay(baseDataProcessor);
+		TestDataUtils.addData(baseDataProcessor);
+		MapFileWriter.writeFile(this.configuration, baseDataProcessor);
+		Assert.assertTrue(containsString(this.baseFile, "---WayStart30---"));
+		Assert.assertTrue(ExtentIndex.getFile(this.baseFile).isFile());
+
+		// the change file deletes way 30
+		this.configuration.setBaseFile(this.baseFile);
+		this.configuration.setChangeFile(TestDataUtils.CHANGE_FILE);
+		this.configuration.setOutputFile(this.outputFile);
+		OsmChange osmChange = OsmChange.read(TestDataUtils.CHANGE_FILE);
+		TileBasedDataProcessor updatedDataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addData(updatedDataProcessor);
+		MapFileWriter.updateFile(this.configuration, updatedDataProcessor, osmChange);
+
+		Assert.assertFalse(containsString(this.outputFile, "---WayStart30---"));
+		Assert.assertTrue(containsString(this.outputFile, "---WayStart22---"));
+		Assert.assertTrue(containsString(this.outputFile, "***POIStart13***"));
+		// the updated file can be updated again
+		Assert.assertTrue(ExtentIndex.getFile(this.outputFile).isFile());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void updateFileWithoutExtentIndexTest() throws IOException {
+		this.configuration.setOutputFile(this.baseFile);
+		TileBasedDataProcessor baseDataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addData(baseDataProcessor);
+		MapFileWriter.writeFile(this.configuration, baseDataProcessor);
+
+		this.configuration.setBaseFile(this.baseFile);
+		this.configuration.setChangeFile(TestDataUtils.CHANGE_FILE);
+		this.configuration.setOutputFile(this.outputFile);
+		TileBasedDataProcessor updatedDataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addData(updatedDataProcessor);
+		MapFileWriter.updateFile(this.configuration, updatedDataProcessor, OsmChange.read(TestDataUtils.CHANGE_FILE));
+	}
 	// @Test
 	// public void testProcessPOI() {
 	// fail("Not yet implemented");
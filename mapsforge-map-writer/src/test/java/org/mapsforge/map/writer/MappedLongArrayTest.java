@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedLongArrayTest {
+	@Test
+	public void setAndGetTest() throws IOException {
+		MappedLongArray mappedLongArray = new MappedLongArray("test");
+		Assert.assertEquals(0, mappedLongArray.get(1));
+
+		long[] indices = { 0, 1, 1023, 1024, -7, 5000000000L, 123456789 };
+		for (long index : indices) {
+			mappedLongArray.set(index, index * 3 + 1);
+		}
+		// blocks beyond the first segment of the file
+		for (long index = 0; index < 10000; ++index) {
+			mappedLongArray.set(index * 1024 + 17, index);
+		}
+
+		for (long index : indices) {
+			Assert.assertEquals(index * 3 + 1, mappedLongArray.get(index));
+		}
+		for (long index = 0; index < 10000; ++index) {
+			Assert.assertEquals(index, mappedLongArray.get(index * 1024 + 17));
+		}
+		Assert.assertEquals(0, mappedLongArray.get(2));
+		Assert.assertEquals(0, mappedLongArray.get(-8));
+		Assert.assertEquals(0, mappedLongArray.get(Long.MAX_VALUE));
+
+		mappedLongArray.release();
+	}
+}
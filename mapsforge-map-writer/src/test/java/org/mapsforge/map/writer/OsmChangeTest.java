@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapsforge.core.util.MercatorProjection;
+import org.mapsforge.map.writer.model.MapWriterConfiguration;
+import org.mapsforge.map.writer.model.TileCoordinate;
+import org.mapsforge.map.writer.model.TileGridLayout;
+import org.mapsforge.map.writer.util.TestDataUtils;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+
+public class OsmChangeTest {
+	private static final int ZOOM_INTERVAL = 2;
+
+	private static boolean isChanged(BaseTileBasedDataProcessor dataProcessor, BitSet[] changedTiles,
+			double latitude, double longitude) {
+		TileGridLayout tileGridLayout = dataProcessor.getTileGridLayout(ZOOM_INTERVAL);
+		TileCoordinate upperLeft = tileGridLayout.getUpperLeft();
+		byte baseZoom = dataProcessor.getZoomIntervalConfiguration().getBaseZoom(ZOOM_INTERVAL);
+		int x = MercatorProjection.longitudeToTileX(longitude, baseZoom) - upperLeft.getX();
+		int y = MercatorProjection.latitudeToTileY(latitude, baseZoom) - upperLeft.getY();
+		return changedTiles[ZOOM_INTERVAL].get(y * tileGridLayout.getAmountTilesHorizontal() + x);
+	}
+
+	private MapWriterConfiguration configuration;
+
+	@Before
+	public void setUp() {
+		this.configuration = new MapWriterConfiguration();
+		this.configuration.setWriterVersion("test");
+		this.configuration.loadTagMappingFile("src/test/resources/tag-mapping.xml");
+		this.configuration.addBboxConfiguration("52.4,13.4,52.7,13.7");
+		this.configuration.addZoomIntervalConfiguration("5,0,7,10,8,11,14,12,18");
+		this.configuration.setBboxEnlargement(10);
+		this.configuration.addEncodingChoice("auto");
+		this.configuration.validate();
+	}
+
+	@Test
+	public void changedTilesTest() throws IOException {
+		OsmChange osmChange = OsmChange.read(TestDataUtils.CHANGE_FILE);
+		osmChange.addWay(TestDataUtils.createWay(20, new long[] { 1, 2, 3, 4, 1 }));
+		osmChange.addWay(TestDataUtils.createWay(21, new long[] { 5, 6, 7, 8, 5 }));
+		osmChange.addWay(TestDataUtils.createWay(22, new long[] { 9, 10, 11, 12, 9 }));
+		osmChange.addWay(TestDataUtils.createWay(23, new long[] { 10, 11 }));
+		List<RelationMember> members = new ArrayList<>();
+		members.add(new RelationMember(20, EntityType.Way, "outer"));
+		members.add(new RelationMember(21, EntityType.Way, "inner"));
+		osmChange.addRelation(new Relation(100, 1, new Date(0), OsmUser.NONE, 1, Arrays.asList(new Tag("type",
+				"multipolygon")), members));
+
+		this.configuration.setExtentIndex(true);
+		RAMTileBasedDataProcessor baseDataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addDeletedWay(baseDataProcessor);
+		TestDataUtils.addData(baseDataProcessor);
+		ExtentIndex baseExtentIndex = baseDataProcessor.getExtentIndex();
+		Assert.assertNotNull(baseExtentIndex.get(EntityType.Way, 30));
+		Assert.assertNotNull(baseExtentIndex.get(EntityType.Node, 13));
+		Assert.assertNotNull(baseExtentIndex.get(EntityType.Relation, 100));
+
+		RAMTileBasedDataProcessor dataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addData(dataProcessor);
+		BitSet[] changedTiles = osmChange.getChangedTiles(dataProcessor, baseExtentIndex);
+
+		// the modified node, the inner way which contains it and the outer way of the same multipolygon
+		Assert.assertTrue(isChanged(dataProcessor, changedTiles, 52.51, 13.51));
+		Assert.assertTrue(isChanged(dataProcessor, changedTiles, 52.50, 13.50));
+		Assert.assertTrue(isChanged(dataProcessor, changedTiles, 52.52, 13.52));
+		// the created POI
+		Assert.assertTrue(isChanged(dataProcessor, changedTiles, 52.55, 13.55));
+		// the deleted way, which is only contained in the base file
+		Assert.assertTrue(isChanged(dataProcessor, changedTiles, 52.45, 13.45));
+		Assert.assertTrue(isChanged(dataProcessor, changedTiles, 52.46, 13.46));
+		// the ways of the beach are not affected
+		Assert.assertFalse(isChanged(dataProcessor, changedTiles, 52.60, 13.60));
+		Assert.assertFalse(isChanged(dataProcessor, changedTiles, 52.62, 13.62));
+		Assert.assertFalse(isChanged(dataProcessor, changedTiles, 52.69, 13.41));
+
+		// all zoom intervals are affected
+		for (BitSet tiles : changedTiles) {
+			Assert.assertFalse(tiles.isEmpty());
+		}
+	}
+
+	@Test
+	public void fixOrderingTest() {
+		OSMTagMapping tagMapping = this.configuration.getTagMapping();
+		Map<Short, Short> optimizedWayIds = new LinkedHashMap<>(tagMapping.getOptimizedWayIds());
+		RAMTileBasedDataProcessor dataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		TestDataUtils.addData(dataProcessor);
+		short beach = tagMapping.getWayTag("natural", "beach").getId();
+		short university = tagMapping.getPoiTag("amenity", "university").getId();
+		Assert.assertEquals(Short.valueOf((short) 0), dataProcessor.getOptimizedWayIds().get(Short.valueOf(beach)));
+
+		// tags of the base file keep their ids, further tags are appended
+		dataProcessor.fixTagOrdering(new ArrayList<String>(), Arrays.asList("natural=coastline", "natural=beach"));
+		Assert.assertEquals(Short.valueOf((short) 1), dataProcessor.getOptimizedWayIds().get(Short.valueOf(beach)));
+		Assert.assertEquals(Short.valueOf((short) 0),
+				dataProcessor.getOptimizedPoiIds().get(Short.valueOf(university)));
+
+		// the ordering is kept by the data processor, the tag mapping is not changed
+		Assert.assertEquals(optimizedWayIds, tagMapping.getOptimizedWayIds());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void fixOrderingUnknownTagTest() {
+		RAMTileBasedDataProcessor dataProcessor = RAMTileBasedDataProcessor.newInstance(this.configuration);
+		dataProcessor.fixTagOrdering(new ArrayList<String>(), Arrays.asList("unknown=tag"));
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.simplify.DouglasPeuckerSimplifier;
+
+public class LineSimplifierTest {
+	private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+	@Test
+	public void simplifyTest() {
+		LineString lineString = GEOMETRY_FACTORY.createLineString(new Coordinate[] { new Coordinate(0, 0),
+				new Coordinate(1, 0.1), new Coordinate(2, 0), new Coordinate(3, 5), new Coordinate(4, 0) });
+		Coordinate[] simplified = LineSimplifier.simplify(lineString.getCoordinateSequence(), 0.5);
+		Assert.assertArrayEquals(new Coordinate[] { new Coordinate(0, 0), new Coordinate(2, 0),
+				new Coordinate(3, 5), new Coordinate(4, 0) }, simplified);
+
+		// nothing to remove
+		Assert.assertNull(LineSimplifier.simplify(lineString.getCoordinateSequence(), 0.01));
+		Assert.assertNull(LineSimplifier.simplify(GEOMETRY_FACTORY.createLineString(
+				new Coordinate[] { new Coordinate(0, 0), new Coordinate(1, 1) }).getCoordinateSequence(), 10));
+	}
+
+	@Test
+	public void randomTest() {
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++) {
+			Coordinate[] coordinates = new Coordinate[3 + random.nextInt(200)];
+			double x = 0;
+			double y = 0;
+			for (int j = 0; j < coordinates.length; j++) {
+				x += random.nextDouble();
+				y += random.nextDouble() - 0.5;
+				coordinates[j] = new Coordinate(x, y);
+			}
+			LineString lineString = GEOMETRY_FACTORY.createLineString(coordinates);
+			double tolerance = random.nextDouble();
+
+			Coordinate[] expected = DouglasPeuckerSimplifier.simplify(lineString, tolerance).getCoordinates();
+			Coordinate[] actual = LineSimplifier.simplify(lineString.getCoordinateSequence(), tolerance);
+			Assert.assertArrayEquals(expected, actual == null ? coordinates : actual);
+		}
+	}
+}
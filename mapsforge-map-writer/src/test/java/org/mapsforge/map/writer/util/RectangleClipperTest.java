@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class RectangleClipperTest {
+	private static final double EPSILON = 1e-9;
+	private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+	private static final Envelope RECTANGLE = new Envelope(0, 10, 0, 10);
+
+	private static Coordinate[] randomCoordinates(Random random, int amount) {
+		Coordinate[] coordinates = new Coordinate[amount];
+		for (int i = 0; i < amount; i++) {
+			coordinates[i] = new Coordinate(random.nextInt(31) - 10, random.nextInt(31) - 10);
+		}
+		return coordinates;
+	}
+
+	/**
+	 * @return a star-shaped polygon around the given center, which is always valid.
+	 */
+	private static Polygon randomPolygon(Random random, double centerX, double centerY) {
+		int amount = 3 + random.nextInt(10);
+		Coordinate[] coordinates = new Coordinate[amount + 1];
+		for (int i = 0; i < amount; i++) {
+			double angle = 2 * Math.PI * i / amount;
+			double radius = 1 + random.nextDouble() * 12;
+			coordinates[i] = new Coordinate(centerX + radius * Math.cos(angle), centerY + radius * Math.sin(angle));
+		}
+		coordinates[amount] = coordinates[0];
+		return GEOMETRY_FACTORY.createPolygon(GEOMETRY_FACTORY.createLinearRing(coordinates), null);
+	}
+
+	@Test
+	public void clipLineStringTest() {
+		Random random = new Random(42);
+		Geometry rectangle = GEOMETRY_FACTORY.toGeometry(RECTANGLE);
+		for (int i = 0; i < 1000; i++) {
+			Coordinate[] coordinates = randomCoordinates(random, 2 + random.nextInt(8));
+			LineString lineString = GEOMETRY_FACTORY.createLineString(coordinates);
+			Geometry actual = RectangleClipper.clipLineString(lineString, RECTANGLE);
+
+			// JTS merges overlapping segments, so the segments are intersected one by one
+			double expectedLength = 0;
+			for (int j = 1; j < coordinates.length; j++) {
+				expectedLength += rectangle.intersection(
+						GEOMETRY_FACTORY.createLineString(new Coordinate[] { coordinates[j - 1], coordinates[j] }))
+						.getLength();
+			}
+			Assert.assertTrue(actual.isEmpty() || actual instanceof LineString || actual instanceof MultiLineString);
+			Assert.assertEquals(expectedLength, actual.getLength(), EPSILON);
+			Assert.assertTrue(actual.isEmpty() || RECTANGLE.covers(actual.getEnvelopeInternal()));
+		}
+	}
+
+	@Test
+	public void clipClosedLineStringTest() {
+		// starts inside, leaves the rectangle on the right side and returns
+		LineString lineString = GEOMETRY_FACTORY.createLineString(new Coordinate[] { new Coordinate(5, 5),
+				new Coordinate(15, 5), new Coordinate(15, 8), new Coordinate(5, 8), new Coordinate(5, 5) });
+		Geometry actual = RectangleClipper.clipLineString(lineString, RECTANGLE);
+		Assert.assertTrue(actual instanceof LineString);
+		Assert.assertEquals(13, actual.getLength(), EPSILON);
+		Assert.assertEquals(new Coordinate(10, 8), actual.getCoordinates()[0]);
+		Assert.assertEquals(new Coordinate(10, 5), actual.getCoordinates()[actual.getNumPoints() - 1]);
+	}
+
+	@Test
+	public void clipPolygonTest() {
+		Random random = new Random(42);
+		Geometry rectangle = GEOMETRY_FACTORY.toGeometry(RECTANGLE);
+		int clipped = 0;
+		for (int i = 0; i < 1000; i++) {
+			Polygon polygon = randomPolygon(random, random.nextInt(31) - 10, random.nextInt(31) - 10);
+			Geometry actual = RectangleClipper.clipPolygon(polygon, RECTANGLE);
+			if (actual == null) {
+				// the polygon is split into several parts
+				continue;
+			}
+			clipped++;
+			Assert.assertEquals(rectangle.intersection(polygon).getArea(), actual.getArea(), EPSILON);
+			Assert.assertTrue(actual.isValid());
+		}
+		Assert.assertTrue(clipped > 500);
+
+		// polygons with holes are left to JTS
+		Polygon withHole = GEOMETRY_FACTORY.createPolygon(
+				GEOMETRY_FACTORY.createLinearRing(new Coordinate[] { new Coordinate(-5, -5), new Coordinate(15, -5),
+						new Coordinate(15, 15), new Coordinate(-5, 15), new Coordinate(-5, -5) }),
+				new LinearRing[] { GEOMETRY_FACTORY.createLinearRing(new Coordinate[] {
+						new Coordinate(1, 1), new Coordinate(2, 1), new Coordinate(2, 2), new Coordinate(1, 1) }) });
+		Assert.assertNull(RectangleClipper.clipPolygon(withHole, RECTANGLE));
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.writer.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.mapsforge.map.writer.model.TDNode;
+import org.mapsforge.map.writer.model.TDWay;
+import org.mapsforge.map.writer.model.TileBasedDataProcessor;
+import org.mapsforge.map.writer.model.TileData;
+import org.mapsforge.map.writer.model.TileGridLayout;
+import org.mapsforge.map.writer.model.ZoomIntervalConfiguration;
+import org.openstreetmap.osmosis.core.domain.v0_6.EntityType;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.OsmUser;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+
+/**
+ * A small OSM data set around 52.5,13.5 which is shared by the tests of the data processors and the map file writer.
+ */
+public final class TestDataUtils {
+	/**
+	 * The changes to the data set: way 30 is deleted, node 7 is modified and POI 13 is created.
+	 */
+	public static final File CHANGE_FILE = new File("src/test/resources/change.osc");
+
+	private static final Date TIMESTAMP = new Date(0);
+
+	/**
+	 * Adds the nodes, ways and the multipolygon of the data set and completes the data processor.
+	 */
+	public static void addData(TileBasedDataProcessor dataProcessor) {
+		// nodes are not ordered by id
+		dataProcessor.addNode(createNode(3, 52.52, 13.52));
+		dataProcessor.addNode(createNode(1, 52.50, 13.50));
+		dataProcessor.addNode(createNode(2, 52.50, 13.52));
+		dataProcessor.addNode(createNode(4, 52.52, 13.50));
+		dataProcessor.addNode(createNode(5, 52.505, 13.505));
+		dataProcessor.addNode(createNode(6, 52.505, 13.51));
+		dataProcessor.addNode(createNode(7, 52.51, 13.51));
+		dataProcessor.addNode(createNode(8, 52.51, 13.505));
+		dataProcessor.addNode(createNode(9, 52.60, 13.60));
+		dataProcessor.addNode(createNode(10, 52.60, 13.62));
+		dataProcessor.addNode(createNode(11, 52.62, 13.62));
+		dataProcessor.addNode(createNode(12, 52.62, 13.60));
+		dataProcessor.addNode(createNode(13, 52.55, 13.55, new Tag("amenity", "university"), new Tag("name",
+				"Universität")));
+
+		// outer and inner way of a multipolygon
+		dataProcessor.addWay(createWay(20, new long[] { 1, 2, 3, 4, 1 }));
+		dataProcessor.addWay(createWay(21, new long[] { 5, 6, 7, 8, 5 }));
+		// two ways with equal attributes
+		dataProcessor.addWay(createWay(22, new long[] { 9, 10, 11, 12, 9 }, new Tag("natural", "beach"), new Tag(
+				"name", "Strand")));
+		dataProcessor.addWay(createWay(23, new long[] { 10, 11 }, new Tag("natural", "beach"), new Tag("name",
+				"Strand")));
+		// a way with an unknown way node is invalid
+		dataProcessor.addWay(createWay(24, new long[] { 9, 99 }, new Tag("natural", "beach")));
+
+		List<RelationMember> members = new ArrayList<>();
+		members.add(new RelationMember(20, EntityType.Way, "outer"));
+		members.add(new RelationMember(21, EntityType.Way, "inner"));
+		dataProcessor.addRelation(new Relation(100, 1, TIMESTAMP, OsmUser.NONE, 1, Arrays.asList(new Tag("type",
+				"multipolygon"), new Tag("natural", "beach"), new Tag("name", "Insel")), members));
+
+		dataProcessor.complete();
+	}
+
+	/**
+	 * Adds the way which is deleted by the {@link #CHANGE_FILE change file}, must be called before
+	 * {@link #addData(TileBasedDataProcessor)}.
+	 */
+	public static void addDeletedWay(TileBasedDataProcessor dataProcessor) {
+		dataProcessor.addNode(createNode(14, 52.45, 13.45));
+		dataProcessor.addNode(createNode(15, 52.46, 13.46));
+		dataProcessor.addWay(createWay(30, new long[] { 14, 15 }, new Tag("natural", "beach")));
+	}
+
+	public static Node createNode(long id, double latitude, double longitude, Tag... tags) {
+		return new Node(id, 1, TIMESTAMP, OsmUser.NONE, 1, Arrays.asList(tags), latitude, longitude);
+	}
+
+	public static Way createWay(long id, long[] wayNodeIds, Tag... tags) {
+		List<WayNode> wayNodes = new ArrayList<>();
+		for (long wayNodeId : wayNodeIds) {
+			wayNodes.add(new WayNode(wayNodeId));
+		}
+		return new Way(id, 1, TIMESTAMP, OsmUser.NONE, 1, Arrays.asList(tags), wayNodes);
+	}
+
+	/**
+	 * @return the sorted descriptions of all POIs and ways of all tiles of all zoom intervals.
+	 */
+	public static List<String> describeTiles(TileBasedDataProcessor dataProcessor) {
+		List<String> descriptions = new ArrayList<>();
+		ZoomIntervalConfiguration zoomIntervalConfiguration = dataProcessor.getZoomIntervalConfiguration();
+		for (int i = 0; i < zoomIntervalConfiguration.getNumberOfZoomIntervals(); i++) {
+			TileGridLayout tileGridLayout = dataProcessor.getTileGridLayout(i);
+			for (int x = 0; x < tileGridLayout.getAmountTilesHorizontal(); x++) {
+				for (int y = 0; y < tileGridLayout.getAmountTilesVertical(); y++) {
+					TileData tileData = dataProcessor.getTile(i, tileGridLayout.getUpperLeft().getX() + x,
+							tileGridLayout.getUpperLeft().getY() + y);
+					String tile = i + "/" + x + "/" + y + "/";
+					Map<Byte, List<TDNode>> pois = new TreeMap<>(tileData.poisByZoomlevel(
+							zoomIntervalConfiguration.getMinZoom(i), zoomIntervalConfiguration.getMaxZoom(i)));
+					for (Map.Entry<Byte, List<TDNode>> entry : pois.entrySet()) {
+						for (TDNode poi : entry.getValue()) {
+							descriptions.add(tile + entry.getKey() + "/" + describe(poi));
+						}
+					}
+					Map<Byte, List<TDWay>> ways = new TreeMap<>(tileData.waysByZoomlevel(
+							zoomIntervalConfiguration.getMinZoom(i), zoomIntervalConfiguration.getMaxZoom(i)));
+					for (Map.Entry<Byte, List<TDWay>> entry : ways.entrySet()) {
+						for (TDWay way : entry.getValue()) {
+							descriptions.add(tile + entry.getKey() + "/" + describe(way));
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(descriptions);
+		return descriptions;
+	}
+
+	private static String describe(TDNode poi) {
+		return poi.getId() + ":" + poi.getLatitude() + "," + poi.getLongitude() + ":" + poi.getName() + ":"
+				+ Arrays.toString(poi.getTags());
+	}
+
+	private static String describe(TDWay way) {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append(way.getId()).append(':').append(way.getShape()).append(':').append(way.getName())
+				.append(':').append(Arrays.toString(way.getTags()));
+		for (TDNode wayNode : way.getWayNodes()) {
+			stringBuilder.append(':').append(wayNode.getLatitude()).append(',').append(wayNode.getLongitude());
+		}
+		return stringBuilder.toString();
+	}
+
+	private TestDataUtils() {
+		throw new IllegalStateException();
+	}
+}
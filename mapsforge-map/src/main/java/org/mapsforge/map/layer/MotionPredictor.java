@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer;
+
+import org.mapsforge.core.model.Point;
+
+/**
+ * Estimates the velocity of the map from the positions at which it is drawn and extrapolates where the map will be
+ * shortly, so that tiles can be requested before they become visible.
+ * <p>
+ * This class is not thread safe.
+ */
+class MotionPredictor {
+	/**
+	 * Frames further apart than this many milliseconds belong to separate movements.
+	 */
+	static final long MAX_FRAME_INTERVAL = 250;
+
+	/**
+	 * Predicted movements shorter than this many pixels are ignored.
+	 */
+	static final double MIN_DISTANCE = 32;
+
+	/**
+	 * Weight of the latest frame in the smoothed velocity.
+	 */
+	private static final double SMOOTHING = 0.5;
+
+	private long lastTime;
+	private Point lastTopLeftPoint;
+	private byte lastZoomLevel;
+	private final long lookAhead;
+	private double velocityX;
+	private double velocityY;
+
+	/**
+	 * @param lookAhead
+	 *            the time in milliseconds for which the movement is extrapolated.
+	 */
+	MotionPredictor(long lookAhead) {
+		this.lookAhead = lookAhead;
+	}
+
+	/**
+	 * @return the expected top left point of the map after the look ahead time or null, if the map is not moving.
+	 */
+	Point predict() {
+		if (this.lastTopLeftPoint == null) {
+			return null;
+		}
+		double dx = this.velocityX * this.lookAhead;
+		double dy = this.velocityY * this.lookAhead;
+		if (Math.hypot(dx, dy) < MIN_DISTANCE) {
+			return null;
+		}
+		return this.lastTopLeftPoint.offset(dx, dy);
+	}
+
+	/**
+	 * Records the position at which the map has been drawn.
+	 *
+	 * @param topLeftPoint
+	 *            the top left point of the drawn map in absolute pixel coordinates.
+	 * @param zoomLevel
+	 *            the zoom level of the drawn map.
+	 * @param time
+	 *            the time of drawing in milliseconds.
+	 */
+	void update(Point topLeftPoint, byte zoomLevel, long time) {
+		long interval = time - this.lastTime;
+		if (this.lastTopLeftPoint == null || zoomLevel != this.lastZoomLevel || interval > MAX_FRAME_INTERVAL) {
+			// pixel coordinates of different zoom levels cannot be compared
+			this.velocityX = 0;
+			this.velocityY = 0;
+		} else if (interval > 0) {
+			double frameVelocityX = (topLeftPoint.x - this.lastTopLeftPoint.x) / interval;
+			double frameVelocityY = (topLeftPoint.y - this.lastTopLeftPoint.y) / interval;
+			this.velocityX = SMOOTHING * frameVelocityX + (1 - SMOOTHING) * this.velocityX;
+			this.velocityY = SMOOTHING * frameVelocityY + (1 - SMOOTHING) * this.velocityY;
+		}
+		this.lastTopLeftPoint = topLeftPoint;
+		this.lastZoomLevel = zoomLevel;
+		this.lastTime = time;
+	}
+}
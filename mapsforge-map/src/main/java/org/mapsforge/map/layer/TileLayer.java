@@ -16,6 +16,7 @@
  */
 package org.mapsforge.map.layer;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -27,6 +28,7 @@ import org.mapsforge.core.graphics.TileBitmap;
 import org.mapsforge.core.model.BoundingBox;
 import org.mapsforge.core.model.Point;
 import org.mapsforge.core.model.Tile;
+import org.mapsforge.core.util.MercatorProjection;
 import org.mapsforge.map.layer.cache.TileCache;
 import org.mapsforge.map.layer.queue.Job;
 import org.mapsforge.map.layer.queue.JobQueue;
@@ -35,12 +37,21 @@ import org.mapsforge.map.model.MapViewPosition;
 import org.mapsforge.map.util.LayerUtil;
 
 public abstract class TileLayer<T extends Job> extends Layer {
+	/**
+	 * Time in milliseconds for which the movement of the map is extrapolated to prefetch tiles.
+	 */
+	private static final long PREFETCH_LOOK_AHEAD = 500;
+
 	protected final boolean hasJobQueue;
 	protected final boolean isTransparent;
 	protected JobQueue<T> jobQueue;
 	protected final TileCache tileCache;
 	private final MapViewPosition mapViewPosition;
 	private final Matrix matrix;
+	private final MotionPredictor motionPredictor;
+	// the jobs around the working set of the last frame, they only change when the visible tiles change
+	private Set<Job> surroundingJobs;
+	private Set<Job> workingSet;
 
 	public TileLayer(TileCache tileCache, MapViewPosition mapViewPosition, Matrix matrix, boolean isTransparent) {
 		this(tileCache, mapViewPosition, matrix, isTransparent, true);
@@ -60,6 +71,7 @@ public abstract class TileLayer<T extends Job> extends Layer {
 		this.mapViewPosition = mapViewPosition;
 		this.matrix = matrix;
 		this.isTransparent = isTransparent;
+		this.motionPredictor = new MotionPredictor(PREFETCH_LOOK_AHEAD);
 	}
 
 	@Override
@@ -82,10 +94,20 @@ public abstract class TileLayer<T extends Job> extends Layer {
 		}
 
 		Set<Job> jobs = new HashSet<>();
+		Set<Tile> tiles = new HashSet<Tile>();
 		for (TilePosition tilePosition : tilePositions) {
 			jobs.add(createJob(tilePosition.tile));
+			tiles.add(tilePosition.tile);
+		}
+		if (this.hasJobQueue) {
+			// jobs for tiles which have scrolled out of view are not worth finishing
+			this.jobQueue.setWorkingSet(tiles);
+		}
+		if (!jobs.equals(this.workingSet)) {
+			this.workingSet = jobs;
+			this.surroundingJobs = getSurroundingJobs(tiles);
 		}
-		this.tileCache.setWorkingSet(jobs);
+		this.tileCache.setWorkingSet(jobs, this.surroundingJobs);
 
 		for (int i = tilePositions.size() - 1; i >= 0; --i) {
 			TilePosition tilePosition = tilePositions.get(i);
@@ -100,7 +122,7 @@ public abstract class TileLayer<T extends Job> extends Layer {
 				}
 				drawParentTileBitmap(canvas, point, tile);
 			} else {
-				if (isTileStale(tile, bitmap) && this.hasJobQueue && !this.tileCache.containsKey(job)) {
+				if (this.hasJobQueue && isTileStale(tile, bitmap)) {
 					this.jobQueue.add(job);
 				}
 				retrieveLabelsOnly(job);
@@ -109,6 +131,8 @@ public abstract class TileLayer<T extends Job> extends Layer {
 			}
 		}
 		if (this.hasJobQueue) {
+			this.motionPredictor.update(topLeftPoint, zoomLevel, System.currentTimeMillis());
+			this.jobQueue.prefetch(getPredictedJobs(zoomLevel, canvas.getWidth(), canvas.getHeight(), jobs));
 			this.jobQueue.notifyWorkers();
 		}
 
@@ -151,6 +175,48 @@ public abstract class TileLayer<T extends Job> extends Layer {
 	protected void retrieveLabelsOnly(T job) {
 	}
 
+	/**
+	 * @return the jobs for the tiles which will be visible after the predicted movement of the map and which are
+	 *         neither visible nor cached now.
+	 */
+	private List<T> getPredictedJobs(byte zoomLevel, int width, int height, Set<Job> visibleJobs) {
+		List<T> predictedJobs = new ArrayList<T>();
+		Point predictedTopLeftPoint = this.motionPredictor.predict();
+		if (predictedTopLeftPoint == null) {
+			return predictedJobs;
+		}
+
+		int tileSize = this.displayModel.getTileSize();
+		int tileLeft = MercatorProjection.pixelXToTileX(predictedTopLeftPoint.x, zoomLevel, tileSize);
+		int tileTop = MercatorProjection.pixelYToTileY(predictedTopLeftPoint.y, zoomLevel, tileSize);
+		int tileRight = MercatorProjection.pixelXToTileX(predictedTopLeftPoint.x + width, zoomLevel, tileSize);
+		int tileBottom = MercatorProjection.pixelYToTileY(predictedTopLeftPoint.y + height, zoomLevel, tileSize);
+		for (int tileY = tileTop; tileY <= tileBottom; ++tileY) {
+			for (int tileX = tileLeft; tileX <= tileRight; ++tileX) {
+				T job = createJob(new Tile(tileX, tileY, zoomLevel, tileSize));
+				if (!visibleJobs.contains(job) && !this.tileCache.containsKey(job)) {
+					predictedJobs.add(job);
+				}
+			}
+		}
+		return predictedJobs;
+	}
+
+	/**
+	 * @return the jobs for the ring of tiles just outside the given tiles.
+	 */
+	private Set<Job> getSurroundingJobs(Set<Tile> tiles) {
+		Set<Job> surroundingJobs = new HashSet<Job>();
+		for (Tile tile : tiles) {
+			for (Tile neighbour : tile.getNeighbours()) {
+				if (!tiles.contains(neighbour)) {
+					surroundingJobs.add(createJob(neighbour));
+				}
+			}
+		}
+		return surroundingJobs;
+	}
+
 	private void drawParentTileBitmap(Canvas canvas, Point point, Tile tile) {
 		Tile cachedParentTile = getCachedParentTile(tile, 4);
 		if (cachedParentTile != null) {
@@ -17,14 +17,24 @@
  */
 package org.mapsforge.map.layer.cache;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -48,18 +58,29 @@ import org.mapsforge.map.model.common.Observer;
  * {@link #FileSystemTileCache(int, File, GraphicFactory, boolean)}.
  *
  * Note: previously the FileSystemTileCache utilized threading to speed up response times. This is not the
- * case anymore and the constructors have been removed.
+ * case anymore and the constructors have been removed. Instead, tiles can optionally be written by a background
+ * thread, see {@link #FileSystemTileCache(int, File, GraphicFactory, boolean, int)}.
  */
 public class FileSystemTileCache implements TileCache {
 	static final String FILE_EXTENSION = ".tile";
+	static final String INDEX_FILE_NAME = "cache.index";
+	private static final int INDEX_VERSION = 1;
 	private static final Logger LOGGER = Logger.getLogger(FileSystemTileCache.class.getName());
 
+	/**
+	 * Maximum number of tiles that the writer thread takes from the queue at once.
+	 */
+	private static final int MAX_WRITE_BATCH = 16;
+
 	/**
 	 * Runnable that reads the cache directory and re-populates the cache with data saved by previous instances.
 	 * <p>
 	 * This method assumes tile files to have a file extension of {@link #FILE_EXTENSION} and reside in a second-level
 	 * of subdir of the cache dir (as in the standard TMS directory layout of zoomlevel/x/y). The relative path to the
 	 * cached tile, after stripping the extension, is used as the lookup key.
+	 * <p>
+	 * The files of each directory are added at once, so that lookups are blocked only briefly. Tiles that have been
+	 * put into the cache in the meantime are not replaced.
 	 */
 	private class CacheDirectoryReader implements Runnable {
 		public void run() {
@@ -71,26 +92,66 @@ public class FileSystemTileCache implements TileCache {
 						for (File x : xFiles) {
 							File[] yFiles = x.listFiles();
 							if (yFiles != null) {
-								for (File y : yFiles) {
-									if (isValidFile(y) && y.getName().endsWith(FILE_EXTENSION)) {
-										int index = y.getName().lastIndexOf(FILE_EXTENSION);
-										String key = Job.composeKey(z.getName(), x.getName(), y.getName().substring(0, index));
-										try {
-											FileSystemTileCache.this.lock.writeLock().lock();
-											if (FileSystemTileCache.this.lruCache.put(key, y) != null) {
-												LOGGER.warning("overwriting cached entry: " + key);
-											}
-										} finally {
-											FileSystemTileCache.this.lock.writeLock().unlock();
-										}
-									}
-								}
+								addFiles(z.getName(), x.getName(), yFiles);
 							}
 						}
 					}
 				}
 			}
 		}
+
+		private void addFiles(String z, String x, File[] yFiles) {
+			try {
+				FileSystemTileCache.this.lock.writeLock().lock();
+				for (File y : yFiles) {
+					// the files are not checked here, invalid files are removed when they are read
+					if (y.getName().endsWith(FILE_EXTENSION)) {
+						int index = y.getName().lastIndexOf(FILE_EXTENSION);
+						String key = Job.composeKey(z, x, y.getName().substring(0, index));
+						if (!FileSystemTileCache.this.lruCache.containsKey(key)) {
+							FileSystemTileCache.this.lruCache.put(key, y);
+						}
+					}
+				}
+			} finally {
+				FileSystemTileCache.this.lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * A tile which has been put into the cache but not yet written to the file system.
+	 */
+	private static final class PendingWrite {
+		final TileBitmap bitmap;
+		final Job job;
+
+		PendingWrite(Job job, TileBitmap bitmap) {
+			this.job = job;
+			this.bitmap = bitmap;
+		}
+	}
+
+	/**
+	 * Runnable that writes pending tiles to the file system in the order in which they were put into the cache.
+	 */
+	private class Writer implements Runnable {
+		@Override
+		public void run() {
+			List<String> batch = new ArrayList<String>(MAX_WRITE_BATCH);
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					batch.add(FileSystemTileCache.this.writeQueue.take());
+					FileSystemTileCache.this.writeQueue.drainTo(batch, MAX_WRITE_BATCH - 1);
+					for (String key : batch) {
+						writePending(key);
+					}
+					batch.clear();
+				}
+			} catch (InterruptedException e) {
+				// the cache has been destroyed
+			}
+		}
 	}
 
 	/**
@@ -107,20 +168,6 @@ public class FileSystemTileCache implements TileCache {
 				|| !file.canWrite());
 	}
 
-	/**
-	 * Determines whether a File instance refers to a valid file which can be read.
-	 * <p>
-	 * This method checks that {@code file} refers to an existing file to which the current process has read access. It
-	 * does not create directories and not verify that the directory is writable. If you need this behavior, use
-	 * {@link #isValidCacheDirectory(File)} instead.
-	 * 
-	 * @param file
-	 *            The File instance to examine. This can be null, which will cause the method to return {@code false}.
-	 */
-	private static boolean isValidFile(File file) {
-		return file != null && file.isFile() && file.canRead();
-	}
-
 	/**
 	 * Recursively deletes directory and all files. See
 	 * http://stackoverflow.com/questions/3775694/deleting-folder-from-java/3775723#3775723
@@ -155,7 +202,11 @@ public class FileSystemTileCache implements TileCache {
 	private FileWorkingSetCache<String> lruCache;
 	private final ReentrantReadWriteLock lock;
 	private final Observable observable;
+	private final Map<String, PendingWrite> pendingWrites;
 	private final boolean persistent;
+	private final BlockingQueue<String> writeQueue;
+	private final Object writeLock;
+	private final Thread writerThread;
 
 	/**
 	 * Compatibility constructor that creates a non-threaded, non-persistent FSTC.
@@ -192,31 +243,77 @@ public class FileSystemTileCache implements TileCache {
 	 *            if cache data will be kept between instances
 	 * @throws IllegalArgumentException
 	 *             if the capacity is negative.
-	 * @throws IllegalArgumentException
-	 *             if the capacity is negative.
 	 */
 	public FileSystemTileCache(int capacity, File cacheDirectory, GraphicFactory graphicFactory, boolean persistent) {
+		this(capacity, cacheDirectory, graphicFactory, persistent, 0);
+	}
+
+	/**
+	 * Creates a new FileSystemTileCache which optionally writes tiles in the background.
+	 * <p>
+	 * With a positive {@code writeQueueCapacity}, {@link #put(Job, TileBitmap)} only queues the tile and returns, a
+	 * dedicated thread compresses and writes the queued tiles. Until then they are served from memory, repeated puts
+	 * of the same tile are coalesced into one write. If the queue is full because the file system cannot keep up,
+	 * {@link #put(Job, TileBitmap)} blocks until there is space again.
+	 *
+	 * @param capacity
+	 *            the maximum number of entries in this cache.
+	 * @param cacheDirectory
+	 *            the directory where cached tiles will be stored.
+	 * @param graphicFactory
+	 *            the graphicFactory implementation to use.
+	 * @param persistent
+	 *            if cache data will be kept between instances
+	 * @param writeQueueCapacity
+	 *            the maximum number of tiles waiting to be written, 0 to write tiles synchronously.
+	 * @throws IllegalArgumentException
+	 *             if the capacity or the write queue capacity is negative.
+	 */
+	public FileSystemTileCache(int capacity, File cacheDirectory, GraphicFactory graphicFactory, boolean persistent,
+			int writeQueueCapacity) {
+		if (writeQueueCapacity < 0) {
+			throw new IllegalArgumentException("write queue capacity must not be negative: " + writeQueueCapacity);
+		}
 		this.observable = new Observable();
 		this.persistent = persistent;
 		this.lruCache = new FileWorkingSetCache<>(capacity);
 		this.lock = new ReentrantReadWriteLock();
 		if (isValidCacheDirectory(cacheDirectory)) {
 			this.cacheDirectory = cacheDirectory;
-			if (this.persistent) {
-				// this will start a new thread to read in the cache directory.
+			if (this.persistent && !readIndex()) {
+				// without a valid index, this will start a new thread to read in the cache directory.
 				// there is the potential that files will be recreated because they
 				// are not yet in the cache, but this will not cause any corruption.
-				new Thread(new CacheDirectoryReader()).start();
+				Thread thread = new Thread(new CacheDirectoryReader(), "FileSystemTileCacheReader");
+				thread.setDaemon(true);
+				thread.start();
 			}
 
 		} else {
 			this.cacheDirectory = null;
 		}
 		this.graphicFactory = graphicFactory;
+
+		this.pendingWrites = new HashMap<String, PendingWrite>();
+		this.writeLock = new Object();
+		if (writeQueueCapacity > 0 && this.cacheDirectory != null) {
+			this.writeQueue = new LinkedBlockingQueue<String>(writeQueueCapacity);
+			this.writerThread = new Thread(new Writer(), "FileSystemTileCacheWriter");
+			this.writerThread.setDaemon(true);
+			this.writerThread.start();
+		} else {
+			this.writeQueue = null;
+			this.writerThread = null;
+		}
 	}
 
 	@Override
 	public boolean containsKey(Job key) {
+		synchronized (this.pendingWrites) {
+			if (this.pendingWrites.containsKey(key.getKey())) {
+				return true;
+			}
+		}
 		try {
 			lock.readLock().lock();
 			// if we are using a threaded cache we return true if the tile is still in the
@@ -233,7 +330,8 @@ public class FileSystemTileCache implements TileCache {
 	 * Applications are expected to call this method when they no longer require the cache.
 	 * <p>
 	 * If the cache is not persistent, calling this method is equivalent to calling {@link #purge()}. If the cache is
-	 * persistent, it does nothing.
+	 * persistent, pending tiles are written to the file system and the index of the cache is saved, so that the next
+	 * instance can start without scanning the cache directory. In both cases a background writer thread is stopped.
 	 * <p>
 	 * Beginning with 0.5.1, accessing the cache after calling {@code destroy()} is discouraged. In order to empty the
 	 * cache and force all tiles to be re-rendered or re-requested from the source, use {@link #purge()} instead.
@@ -242,12 +340,40 @@ public class FileSystemTileCache implements TileCache {
 	 */
 	@Override
 	public void destroy() {
-		if (!this.persistent)
+		if (!this.persistent) {
 			purge();
+		} else {
+			flush();
+			writeIndex();
+		}
+		if (this.writerThread != null) {
+			this.writerThread.interrupt();
+		}
+	}
+
+	/**
+	 * Writes all tiles which are waiting to be written by the background thread and returns when they have been
+	 * written. Does nothing if tiles are written synchronously.
+	 */
+	public void flush() {
+		List<String> keys;
+		synchronized (this.pendingWrites) {
+			keys = new ArrayList<String>(this.pendingWrites.keySet());
+		}
+		for (String key : keys) {
+			writePending(key);
+		}
 	}
 
 	@Override
 	public TileBitmap get(Job key) {
+		synchronized (this.pendingWrites) {
+			PendingWrite pendingWrite = this.pendingWrites.get(key.getKey());
+			if (pendingWrite != null) {
+				pendingWrite.bitmap.incrementRefCount();
+				return pendingWrite.bitmap;
+			}
+		}
 
 		File file;
 		try {
@@ -302,6 +428,29 @@ public class FileSystemTileCache implements TileCache {
 		return get(key);
 	}
 
+	/**
+	 * Returns the timestamp of a cached tile, which is the modification time of its file, without decoding the file.
+	 */
+	@Override
+	public long getTimestamp(Job key) {
+		synchronized (this.pendingWrites) {
+			PendingWrite pendingWrite = this.pendingWrites.get(key.getKey());
+			if (pendingWrite != null) {
+				return pendingWrite.bitmap.getTimestamp();
+			}
+		}
+
+		File file;
+		try {
+			lock.readLock().lock();
+			file = this.lruCache.get(key.getKey());
+		} finally {
+			lock.readLock().unlock();
+		}
+		// returns 0 if the file does not exist
+		return file == null ? 0 : file.lastModified();
+	}
+
 	/**
 	 * Whether the cache is persistent.
 	 */
@@ -323,14 +472,19 @@ public class FileSystemTileCache implements TileCache {
 	 */
 	@Override
 	public void purge() {
-		try {
-			this.lock.writeLock().lock();
-			this.lruCache.clear();
-		} finally {
-			this.lock.writeLock().unlock();
-		}
+		// wait for a tile that is just being written, it would otherwise reappear after purging
+		synchronized (this.writeLock) {
+			discardPendingWrites();
+
+			try {
+				this.lock.writeLock().lock();
+				this.lruCache.clear();
+			} finally {
+				this.lock.writeLock().unlock();
+			}
 
-		deleteDirectory(this.cacheDirectory);
+			deleteDirectory(this.cacheDirectory);
+		}
 	}
 
 	@Override
@@ -345,7 +499,11 @@ public class FileSystemTileCache implements TileCache {
 			return;
 		}
 
-		storeData(key, bitmap);
+		if (this.writeQueue == null) {
+			storeData(key, bitmap);
+		} else {
+			enqueue(key, bitmap);
+		}
 		this.observable.notifyObservers();
 	}
 
@@ -357,6 +515,11 @@ public class FileSystemTileCache implements TileCache {
 		this.lruCache.setWorkingSet(workingSetInteger);
 	}
 
+	public void setWorkingSet(Set<Job> workingSet, Set<Job> prefetchSet) {
+		// there is no faster level to prefetch into
+		setWorkingSet(workingSet);
+	}
+
 	@Override
 	public void addObserver(final Observer observer) {
 		this.observable.addObserver(observer);
@@ -368,6 +531,39 @@ public class FileSystemTileCache implements TileCache {
 	}
 
 
+	private void discardPendingWrites() {
+		synchronized (this.pendingWrites) {
+			for (PendingWrite pendingWrite : this.pendingWrites.values()) {
+				pendingWrite.bitmap.decrementRefCount();
+			}
+			this.pendingWrites.clear();
+			if (this.writeQueue != null) {
+				this.writeQueue.clear();
+			}
+		}
+	}
+
+	/**
+	 * Queues a tile for the writer thread, blocking while the queue is full. If the tile is already waiting to be
+	 * written, only its bitmap is replaced.
+	 */
+	private void enqueue(Job key, TileBitmap bitmap) {
+		bitmap.incrementRefCount();
+		synchronized (this.pendingWrites) {
+			PendingWrite previous = this.pendingWrites.put(key.getKey(), new PendingWrite(key, bitmap));
+			if (previous != null) {
+				previous.bitmap.decrementRefCount();
+				return;
+			}
+		}
+		try {
+			this.writeQueue.put(key.getKey());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			writePending(key.getKey());
+		}
+	}
+
 	private File getOutputFile(Job job) {
 		String file = this.cacheDirectory + File.separator + job.getKey();
 		String dir = file.substring(0, file.lastIndexOf(File.separatorChar));
@@ -377,6 +573,48 @@ public class FileSystemTileCache implements TileCache {
 		return null;
 	}
 
+	/**
+	 * Reads the index saved by {@link #writeIndex()} and deletes it, so that the index of an instance which is not
+	 * destroyed properly is never used.
+	 *
+	 * @return true if the index was read, false if it is missing or invalid.
+	 */
+	private boolean readIndex() {
+		File indexFile = new File(this.cacheDirectory, INDEX_FILE_NAME);
+		if (!indexFile.isFile()) {
+			return false;
+		}
+
+		DataInputStream dataInputStream = null;
+		try {
+			dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			int version = dataInputStream.readInt();
+			if (version != INDEX_VERSION) {
+				LOGGER.warning("unsupported cache index version: " + version);
+				return false;
+			}
+			int numberOfEntries = dataInputStream.readInt();
+			try {
+				this.lock.writeLock().lock();
+				for (int i = 0; i < numberOfEntries; ++i) {
+					String key = dataInputStream.readUTF();
+					this.lruCache.put(key, new File(this.cacheDirectory, key + FILE_EXTENSION));
+				}
+			} finally {
+				this.lock.writeLock().unlock();
+			}
+			return true;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "could not read cache index: " + indexFile, e);
+			return false;
+		} finally {
+			IOUtils.closeQuietly(dataInputStream);
+			if (!indexFile.delete()) {
+				LOGGER.warning("could not delete cache index: " + indexFile);
+			}
+		}
+	}
+
 	private void remove(Job key) {
 		try {
 			lock.writeLock().lock();
@@ -422,7 +660,11 @@ public class FileSystemTileCache implements TileCache {
 			// most likely cause is that the disk is full, just disable the
 			// cache otherwise
 			// more and more exceptions will be thrown.
-			this.destroy();
+			if (this.persistent) {
+				discardPendingWrites();
+			} else {
+				purge();
+			}
 			try {
 				lock.writeLock().lock();
 				this.lruCache = new FileWorkingSetCache<String>(0);
@@ -435,4 +677,72 @@ public class FileSystemTileCache implements TileCache {
 
 	}
 
+	/**
+	 * Saves the keys of all cached tiles in LRU order, the tiles themselves are checked only when they are read.
+	 */
+	private void writeIndex() {
+		if (this.cacheDirectory == null || !this.cacheDirectory.isDirectory()) {
+			return;
+		}
+
+		File indexFile = new File(this.cacheDirectory, INDEX_FILE_NAME);
+		File temporaryFile = new File(this.cacheDirectory, INDEX_FILE_NAME + ".tmp");
+		DataOutputStream dataOutputStream = null;
+		try {
+			this.lock.readLock().lock();
+			if (this.lruCache.isEmpty()) {
+				return;
+			}
+			dataOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+			dataOutputStream.writeInt(INDEX_VERSION);
+			dataOutputStream.writeInt(this.lruCache.size());
+			// iterating over the keys does not change the access order
+			for (String key : this.lruCache.keySet()) {
+				dataOutputStream.writeUTF(key);
+			}
+			dataOutputStream.close();
+			dataOutputStream = null;
+			if ((indexFile.exists() && !indexFile.delete()) || !temporaryFile.renameTo(indexFile)) {
+				throw new IOException("could not replace cache index: " + indexFile);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "could not write cache index: " + indexFile, e);
+			temporaryFile.delete();
+		} finally {
+			this.lock.readLock().unlock();
+			IOUtils.closeQuietly(dataOutputStream);
+		}
+	}
+
+	/**
+	 * Writes a pending tile to the file system, the tile is served from memory until it has been written. If the
+	 * tile is replaced while it is written, the newer bitmap is written as well.
+	 */
+	private void writePending(String key) {
+		synchronized (this.writeLock) {
+			while (true) {
+				PendingWrite pendingWrite;
+				synchronized (this.pendingWrites) {
+					pendingWrite = this.pendingWrites.get(key);
+					if (pendingWrite == null) {
+						return;
+					}
+					// the writer holds its own reference in case the tile is replaced while it is written
+					pendingWrite.bitmap.incrementRefCount();
+				}
+
+				storeData(pendingWrite.job, pendingWrite.bitmap);
+				pendingWrite.bitmap.decrementRefCount();
+
+				synchronized (this.pendingWrites) {
+					if (this.pendingWrites.get(key) == pendingWrite) {
+						this.pendingWrites.remove(key);
+						pendingWrite.bitmap.decrementRefCount();
+						return;
+					}
+				}
+			}
+		}
+	}
+
 }
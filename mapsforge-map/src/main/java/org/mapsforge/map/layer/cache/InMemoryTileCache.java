@@ -15,24 +15,89 @@
  */
 package org.mapsforge.map.layer.cache;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import org.mapsforge.core.graphics.TileBitmap;
-import org.mapsforge.core.util.WorkingSetCache;
 import org.mapsforge.map.layer.queue.Job;
 import org.mapsforge.map.model.common.Observable;
 import org.mapsforge.map.model.common.Observer;
 
 /**
  * A thread-safe cache for tile images with a variable size and LRU policy.
+ * <p>
+ * The size of the cache can be limited by the number of tiles and by the estimated memory of the cached bitmaps. The
+ * tiles are distributed over several shards, each guarded by its own lock, so concurrent lookups from the UI thread
+ * and from rendering threads rarely contend. When the cache is full, the least recently used tile of all shards is
+ * removed.
  */
 public class InMemoryTileCache implements TileCache {
 	private static final Logger LOGGER = Logger.getLogger(InMemoryTileCache.class.getName());
 
-	private BitmapLRUCache lruCache;
-	private Observable observable;
+	/**
+	 * Estimated number of bytes per pixel of a tile bitmap.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * Number of independently locked shards, must be a power of two.
+	 */
+	private static final int NUMBER_OF_SHARDS = 16;
+
+	private static final class CacheEntry {
+		final TileBitmap bitmap;
+		long lastAccess;
+		final long size;
+
+		CacheEntry(TileBitmap bitmap, long size, long lastAccess) {
+			this.bitmap = bitmap;
+			this.size = size;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	/**
+	 * A part of the cache with access-ordered entries, guarded by the shard itself.
+	 */
+	private static final class Shard {
+		final LinkedHashMap<Job, CacheEntry> map = new LinkedHashMap<Job, CacheEntry>(16, 0.75f, true);
+	}
+
+	/**
+	 * @param bitmap
+	 *            the tile bitmap.
+	 * @return the estimated memory of the bitmap in bytes.
+	 */
+	static long estimateSize(TileBitmap bitmap) {
+		return (long) BYTES_PER_PIXEL * bitmap.getWidth() * bitmap.getHeight();
+	}
+
+	private static void validateByteCapacity(long byteCapacity) {
+		if (byteCapacity < 0) {
+			throw new IllegalArgumentException("byte capacity must not be negative: " + byteCapacity);
+		}
+	}
+
+	private static void validateCapacity(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+	}
+
+	private final AtomicLong accessCounter;
+	private volatile long byteCapacity;
+	private final AtomicLong byteSize;
+	private volatile int capacity;
+	private final Object evictionLock;
+	private final Observable observable;
+	private final Shard[] shards;
+	private final AtomicInteger size;
 
 	/**
 	 * @param capacity
@@ -41,32 +106,79 @@ public class InMemoryTileCache implements TileCache {
 	 *             if the capacity is negative.
 	 */
 	public InMemoryTileCache(int capacity) {
-		this.lruCache = new BitmapLRUCache(capacity);
+		this(capacity, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param capacity
+	 *            the maximum number of entries in this cache.
+	 * @param byteCapacity
+	 *            the maximum estimated memory of all cached bitmaps in bytes.
+	 * @throws IllegalArgumentException
+	 *             if any of the capacities is negative.
+	 */
+	public InMemoryTileCache(int capacity, long byteCapacity) {
+		validateCapacity(capacity);
+		validateByteCapacity(byteCapacity);
+
+		this.capacity = capacity;
+		this.byteCapacity = byteCapacity;
+		this.accessCounter = new AtomicLong();
+		this.byteSize = new AtomicLong();
+		this.evictionLock = new Object();
 		this.observable = new Observable();
+		this.shards = new Shard[NUMBER_OF_SHARDS];
+		for (int i = 0; i < NUMBER_OF_SHARDS; ++i) {
+			this.shards[i] = new Shard();
+		}
+		this.size = new AtomicInteger();
 	}
 
 	@Override
-	public synchronized boolean containsKey(Job key) {
-		return this.lruCache.containsKey(key);
+	public boolean containsKey(Job key) {
+		Shard shard = getShard(key);
+		synchronized (shard) {
+			return shard.map.containsKey(key);
+		}
 	}
 
 	@Override
-	public synchronized void destroy() {
+	public void destroy() {
 		purge();
 	}
 
 	@Override
-	public synchronized TileBitmap get(Job key) {
-		TileBitmap bitmap = this.lruCache.get(key);
-		if (bitmap != null) {
-			bitmap.incrementRefCount();
+	public TileBitmap get(Job key) {
+		Shard shard = getShard(key);
+		synchronized (shard) {
+			CacheEntry cacheEntry = shard.map.get(key);
+			if (cacheEntry == null) {
+				return null;
+			}
+			cacheEntry.lastAccess = this.accessCounter.incrementAndGet();
+			// the reference is taken while the shard is locked, so the bitmap cannot be evicted in between
+			cacheEntry.bitmap.incrementRefCount();
+			return cacheEntry.bitmap;
 		}
-		return bitmap;
+	}
+
+	/**
+	 * @return the maximum estimated memory of all cached bitmaps in bytes.
+	 */
+	public long getByteCapacity() {
+		return this.byteCapacity;
+	}
+
+	/**
+	 * @return the estimated memory of all cached bitmaps in bytes.
+	 */
+	public long getByteSize() {
+		return this.byteSize.get();
 	}
 
 	@Override
-	public synchronized int getCapacity() {
-		return this.lruCache.capacity;
+	public int getCapacity() {
+		return this.capacity;
 	}
 
 	@Override
@@ -79,34 +191,77 @@ public class InMemoryTileCache implements TileCache {
 		return get(key);
 	}
 
+	@Override
+	public long getTimestamp(Job key) {
+		Shard shard = getShard(key);
+		synchronized (shard) {
+			CacheEntry cacheEntry = shard.map.get(key);
+			return cacheEntry == null ? 0 : cacheEntry.bitmap.getTimestamp();
+		}
+	}
+
 	@Override
 	public void purge() {
-		for (TileBitmap bitmap : this.lruCache.values()) {
-			bitmap.decrementRefCount();
+		for (Shard shard : this.shards) {
+			List<CacheEntry> cacheEntries;
+			synchronized (shard) {
+				cacheEntries = new ArrayList<CacheEntry>(shard.map.values());
+				shard.map.clear();
+			}
+			for (CacheEntry cacheEntry : cacheEntries) {
+				this.size.decrementAndGet();
+				this.byteSize.addAndGet(-cacheEntry.size);
+				cacheEntry.bitmap.decrementRefCount();
+			}
 		}
-		this.lruCache.clear();
 	}
 
 	@Override
-	public synchronized void put(Job key, TileBitmap bitmap) {
+	public void put(Job key, TileBitmap bitmap) {
 		if (key == null) {
 			throw new IllegalArgumentException("key must not be null");
 		} else if (bitmap == null) {
 			throw new IllegalArgumentException("bitmap must not be null");
 		}
 
-		TileBitmap old = this.lruCache.get(key);
+		CacheEntry cacheEntry = new CacheEntry(bitmap, estimateSize(bitmap), this.accessCounter.incrementAndGet());
+		bitmap.incrementRefCount();
+
+		Shard shard = getShard(key);
+		CacheEntry old;
+		synchronized (shard) {
+			old = shard.map.put(key, cacheEntry);
+		}
 		if (old != null) {
-			old.decrementRefCount();
+			if (old.bitmap != bitmap) {
+				LOGGER.warning("overwriting cached entry: " + key);
+			}
+			this.byteSize.addAndGet(-old.size);
+			old.bitmap.decrementRefCount();
+		} else {
+			this.size.incrementAndGet();
 		}
+		this.byteSize.addAndGet(cacheEntry.size);
 
-		if (this.lruCache.put(key, bitmap) != null) {
-			LOGGER.warning("overwriting cached entry: " + key);
-		}
-		bitmap.incrementRefCount();
+		evict();
 		this.observable.notifyObservers();
 	}
 
+	/**
+	 * Sets the new memory limit of this cache. If the cached bitmaps already exceed the new limit, items are discarded
+	 * based on the cache policy.
+	 *
+	 * @param byteCapacity
+	 *            the new maximum estimated memory of all cached bitmaps in bytes.
+	 * @throws IllegalArgumentException
+	 *             if the byte capacity is negative.
+	 */
+	public void setByteCapacity(long byteCapacity) {
+		validateByteCapacity(byteCapacity);
+		this.byteCapacity = byteCapacity;
+		evict();
+	}
+
 	/**
 	 * Sets the new size of this cache. If this cache already contains more items than the new capacity allows, items
 	 * are discarded based on the cache policy.
@@ -116,14 +271,32 @@ public class InMemoryTileCache implements TileCache {
 	 * @throws IllegalArgumentException
 	 *             if the capacity is negative.
 	 */
-	public synchronized void setCapacity(int capacity) {
-		BitmapLRUCache lruCacheNew = new BitmapLRUCache(capacity);
-		lruCacheNew.putAll(this.lruCache);
-		this.lruCache = lruCacheNew;
+	public void setCapacity(int capacity) {
+		validateCapacity(capacity);
+		this.capacity = capacity;
+		evict();
+	}
+
+	/**
+	 * Marks the tiles of the working set as most recently used, so they are the last to be discarded.
+	 */
+	@Override
+	public void setWorkingSet(Set<Job> jobs) {
+		for (Job job : jobs) {
+			Shard shard = getShard(job);
+			synchronized (shard) {
+				CacheEntry cacheEntry = shard.map.get(job);
+				if (cacheEntry != null) {
+					cacheEntry.lastAccess = this.accessCounter.incrementAndGet();
+				}
+			}
+		}
 	}
 
-	public synchronized void setWorkingSet(Set<Job> jobs) {
-		this.lruCache.setWorkingSet(jobs);
+	@Override
+	public void setWorkingSet(Set<Job> workingSet, Set<Job> prefetchSet) {
+		// there is no faster level to prefetch into
+		setWorkingSet(workingSet);
 	}
 
 	@Override
@@ -136,25 +309,59 @@ public class InMemoryTileCache implements TileCache {
 		this.observable.removeObserver(observer);
 	}
 
-}
-
-class BitmapLRUCache extends WorkingSetCache<Job, TileBitmap> {
-	private static final long serialVersionUID = 1L;
-
-	public BitmapLRUCache(int capacity) {
-		super(capacity);
+	private void evict() {
+		synchronized (this.evictionLock) {
+			while (this.size.get() > this.capacity || this.byteSize.get() > this.byteCapacity) {
+				if (!evictEldest()) {
+					return;
+				}
+			}
+		}
 	}
 
-	@Override
-	protected boolean removeEldestEntry(Map.Entry<Job, TileBitmap> eldest) {
-		if (size() > this.capacity) {
-			TileBitmap bitmap = eldest.getValue();
-			if (bitmap != null) {
-				bitmap.decrementRefCount();
+	/**
+	 * Removes the least recently used entry. The eldest entry of each shard is its first entry, so the eldest entry of
+	 * the whole cache is found by comparing the first entries of all shards.
+	 *
+	 * @return false if the cache is empty, true otherwise.
+	 */
+	private boolean evictEldest() {
+		Shard eldestShard = null;
+		long eldestAccess = Long.MAX_VALUE;
+		for (Shard shard : this.shards) {
+			synchronized (shard) {
+				if (!shard.map.isEmpty()) {
+					long lastAccess = shard.map.values().iterator().next().lastAccess;
+					if (lastAccess < eldestAccess) {
+						eldestAccess = lastAccess;
+						eldestShard = shard;
+					}
+				}
 			}
-			return true;
 		}
-		return false;
+		if (eldestShard == null) {
+			return false;
+		}
+
+		CacheEntry eldest;
+		synchronized (eldestShard) {
+			Iterator<CacheEntry> iterator = eldestShard.map.values().iterator();
+			if (!iterator.hasNext()) {
+				// the shard has been purged in the meantime
+				return true;
+			}
+			eldest = iterator.next();
+			iterator.remove();
+		}
+		this.size.decrementAndGet();
+		this.byteSize.addAndGet(-eldest.size);
+		eldest.bitmap.decrementRefCount();
+		return true;
 	}
 
+	private Shard getShard(Job key) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return this.shards[hash & (NUMBER_OF_SHARDS - 1)];
+	}
 }
@@ -0,0 +1,717 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.core.graphics.CorruptedInputStreamException;
+import org.mapsforge.core.graphics.GraphicFactory;
+import org.mapsforge.core.graphics.TileBitmap;
+import org.mapsforge.core.util.IOUtils;
+import org.mapsforge.map.layer.queue.Job;
+import org.mapsforge.map.model.common.Observable;
+import org.mapsforge.map.model.common.Observer;
+
+/**
+ * A thread-safe cache for image files with a fixed size and LRU policy, which stores all tiles in a single pack file.
+ * <p>
+ * Tiles are appended to the pack file {@value #FILE_NAME} in the cache directory, an in-memory index maps each tile
+ * to the position of its data. Every record consists of the tile key, the timestamp of the tile and the compressed
+ * image data. Tiles that are replaced or evicted leave unused space in the file, which is reclaimed by rewriting the
+ * file once it consists mostly of unused space. Evictions are recorded in the file as well, so that a persistent
+ * cache restores exactly the tiles it held before. Records are written strictly one after the other and in the order
+ * in which the index is changed, so after a crash only the last record can be incomplete.
+ * <p>
+ * Compared to the {@link FileSystemTileCache}, this cache needs only a single file and can be restored with one
+ * sequential read of the pack file.
+ */
+public class PackFileTileCache implements TileCache {
+	static final String FILE_NAME = "tiles.pack";
+	private static final Logger LOGGER = Logger.getLogger(PackFileTileCache.class.getName());
+
+	/**
+	 * Minimum size of the pack file in bytes before unused space is reclaimed.
+	 */
+	private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+	/**
+	 * Size in bytes of the fixed part of a record: key length, timestamp and data length.
+	 */
+	private static final int RECORD_HEADER_SIZE = 2 + 8 + 4;
+
+	private static final String TEMPORARY_FILE_NAME = FILE_NAME + ".tmp";
+
+	/**
+	 * Data length of a record which marks the removal of a tile.
+	 */
+	private static final int TOMBSTONE = -1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final class PackEntry {
+		final int length;
+		final long offset;
+		final int recordSize;
+		final long timestamp;
+
+		PackEntry(long offset, int length, int recordSize, long timestamp) {
+			this.offset = offset;
+			this.length = length;
+			this.recordSize = recordSize;
+			this.timestamp = timestamp;
+		}
+	}
+
+	private static ByteBuffer createRecord(byte[] key, long timestamp, byte[] data) {
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + key.length + (data == null ? 0 : data.length));
+		buffer.putShort((short) key.length);
+		buffer.put(key);
+		buffer.putLong(timestamp);
+		if (data == null) {
+			buffer.putInt(TOMBSTONE);
+		} else {
+			buffer.putInt(data.length);
+			buffer.put(data);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static boolean isValidCacheDirectory(File file) {
+		return !((file == null) || (!file.exists() && !file.mkdirs()) || !file.isDirectory() || !file.canRead()
+				|| !file.canWrite());
+	}
+
+	private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("unexpected end of pack file at position: " + position);
+			}
+		}
+	}
+
+	/**
+	 * Replaces a file with another one. Renaming is atomic where the platform supports it, but on some platforms a
+	 * file cannot be renamed onto an existing file, the target is deleted first then.
+	 */
+	private static void replace(File source, File target) throws IOException {
+		if (source.renameTo(target)) {
+			return;
+		}
+		if (target.exists() && !target.delete()) {
+			throw new IOException("could not delete pack file: " + target);
+		}
+		if (!source.renameTo(target)) {
+			throw new IOException("could not rename " + source + " to " + target);
+		}
+	}
+
+	private static boolean skipFully(DataInputStream dataInputStream, int length) throws IOException {
+		int remaining = length;
+		while (remaining > 0) {
+			int skipped = dataInputStream.skipBytes(remaining);
+			if (skipped <= 0) {
+				return false;
+			}
+			remaining -= skipped;
+		}
+		return true;
+	}
+
+	private static void writeFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			fileChannel.write(buffer, position + buffer.position());
+		}
+	}
+
+	private int capacity;
+	private final Object compactionLock;
+	private final File file;
+	private FileChannel fileChannel;
+	private long fileSize;
+	private final GraphicFactory graphicFactory;
+	private final LinkedHashMap<String, PackEntry> index;
+	private long liveSize;
+	private final ReentrantReadWriteLock lock;
+	private final Observable observable;
+	private final boolean persistent;
+	private final Object writeLock;
+
+	/**
+	 * Creates a new PackFileTileCache.
+	 * <p>
+	 * A persistent cache will serve the tiles it finds in the pack file in {@code cacheDirectory}, calling
+	 * {@link #destroy()} closes the pack file but keeps it. A non-persistent cache starts with an empty pack file and
+	 * deletes it on {@link #destroy()}.
+	 *
+	 * @param capacity
+	 *            the maximum number of entries in this cache.
+	 * @param cacheDirectory
+	 *            the directory where the pack file will be stored.
+	 * @param graphicFactory
+	 *            the graphicFactory implementation to use.
+	 * @param persistent
+	 *            if cache data will be kept between instances
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	public PackFileTileCache(int capacity, File cacheDirectory, GraphicFactory graphicFactory, boolean persistent) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.capacity = capacity;
+		this.compactionLock = new Object();
+		this.graphicFactory = graphicFactory;
+		this.index = new LinkedHashMap<String, PackEntry>(16, 0.75f, true);
+		this.lock = new ReentrantReadWriteLock();
+		this.observable = new Observable();
+		this.persistent = persistent;
+		this.writeLock = new Object();
+
+		if (isValidCacheDirectory(cacheDirectory)) {
+			this.file = new File(cacheDirectory, FILE_NAME);
+			try {
+				open();
+			} catch (IOException e) {
+				LOGGER.log(Level.SEVERE, "could not open pack file: " + this.file, e);
+				close();
+			}
+		} else {
+			this.file = null;
+		}
+	}
+
+	@Override
+	public boolean containsKey(Job key) {
+		synchronized (this.index) {
+			return this.index.containsKey(key.getKey());
+		}
+	}
+
+	/**
+	 * Destroys this cache.
+	 * <p>
+	 * If the cache is not persistent, the pack file is deleted. In any case the pack file is closed and this cache
+	 * must not be used any more.
+	 */
+	@Override
+	public void destroy() {
+		if (!this.persistent) {
+			purge();
+		}
+		this.lock.writeLock().lock();
+		try {
+			synchronized (this.index) {
+				this.index.clear();
+			}
+			close();
+			if (!this.persistent && this.file != null && this.file.exists() && !this.file.delete()) {
+				LOGGER.warning("could not delete pack file: " + this.file);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public TileBitmap get(Job key) {
+		String cacheKey = key.getKey();
+		PackEntry packEntry;
+		byte[] data;
+		this.lock.readLock().lock();
+		try {
+			if (this.fileChannel == null) {
+				return null;
+			}
+			synchronized (this.index) {
+				packEntry = this.index.get(cacheKey);
+			}
+			if (packEntry == null) {
+				return null;
+			}
+			data = new byte[packEntry.length];
+			readFully(this.fileChannel, ByteBuffer.wrap(data), packEntry.offset);
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, e.getMessage(), e);
+			return null;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+
+		try {
+			TileBitmap result = this.graphicFactory.createTileBitmap(new ByteArrayInputStream(data), key.tile.tileSize,
+					key.hasAlpha);
+			result.setTimestamp(packEntry.timestamp);
+			return result;
+		} catch (CorruptedInputStreamException e) {
+			remove(cacheKey);
+			LOGGER.log(Level.WARNING, "invalid data in pack file cache " + cacheKey + " " + data.length, e);
+			return null;
+		} catch (IOException e) {
+			remove(cacheKey);
+			LOGGER.log(Level.SEVERE, e.getMessage(), e);
+			return null;
+		}
+	}
+
+	@Override
+	public int getCapacity() {
+		synchronized (this.index) {
+			return this.capacity;
+		}
+	}
+
+	@Override
+	public int getCapacityFirstLevel() {
+		return getCapacity();
+	}
+
+	@Override
+	public TileBitmap getImmediately(Job key) {
+		return get(key);
+	}
+
+	@Override
+	public long getTimestamp(Job key) {
+		synchronized (this.index) {
+			PackEntry packEntry = this.index.get(key.getKey());
+			return packEntry == null ? 0 : packEntry.timestamp;
+		}
+	}
+
+	/**
+	 * Whether the cache is persistent.
+	 */
+	public boolean isPersistent() {
+		return this.persistent;
+	}
+
+	/**
+	 * Purges this cache.
+	 * <p>
+	 * Calls to {@link #get(Job)} issued after purging will not return any tiles added before the purge operation. The
+	 * pack file is truncated, freeing up disk space.
+	 */
+	@Override
+	public void purge() {
+		this.lock.writeLock().lock();
+		try {
+			synchronized (this.index) {
+				this.index.clear();
+				this.fileSize = 0;
+				this.liveSize = 0;
+			}
+			if (this.fileChannel != null) {
+				this.fileChannel.truncate(0);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "could not truncate pack file: " + this.file, e);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void put(Job key, TileBitmap bitmap) {
+		if (key == null) {
+			throw new IllegalArgumentException("key must not be null");
+		} else if (bitmap == null) {
+			throw new IllegalArgumentException("bitmap must not be null");
+		}
+
+		if (getCapacity() == 0) {
+			return;
+		}
+
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			bitmap.compress(outputStream);
+			append(key.getKey(), bitmap.getTimestamp(), outputStream.toByteArray());
+			if (isCompactionNeeded()) {
+				compact(true);
+			}
+		} catch (IOException e) {
+			// most likely cause is that the disk is full, disable the cache as otherwise more and more
+			// exceptions will be thrown.
+			LOGGER.log(Level.SEVERE, "Disabling pack file cache", e);
+			disable();
+			return;
+		}
+		this.observable.notifyObservers();
+	}
+
+	public void setWorkingSet(Set<Job> workingSet) {
+		synchronized (this.index) {
+			for (Job job : workingSet) {
+				this.index.get(job.getKey());
+			}
+		}
+	}
+
+	public void setWorkingSet(Set<Job> workingSet, Set<Job> prefetchSet) {
+		// there is no faster level to prefetch into
+		setWorkingSet(workingSet);
+	}
+
+	@Override
+	public void addObserver(final Observer observer) {
+		this.observable.addObserver(observer);
+	}
+
+	@Override
+	public void removeObserver(final Observer observer) {
+		this.observable.removeObserver(observer);
+	}
+
+	/**
+	 * Rewrites the pack file with the current tiles only, in their LRU order.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	void compact() throws IOException {
+		compact(false);
+	}
+
+	/**
+	 * @return the size of the pack file in bytes.
+	 */
+	long getFileSize() {
+		synchronized (this.index) {
+			return this.fileSize;
+		}
+	}
+
+	/**
+	 * Appends a record for a tile and records the evictions that become necessary. The index is updated only after the
+	 * data has been written, so concurrent readers never see incomplete records.
+	 */
+	private void append(String cacheKey, long timestamp, byte[] data) throws IOException {
+		byte[] key = cacheKey.getBytes(UTF8);
+		ByteBuffer record = createRecord(key, timestamp, data);
+		int recordSize = record.remaining();
+
+		this.lock.readLock().lock();
+		try {
+			if (this.fileChannel == null) {
+				return;
+			}
+			// the tombstones are written before any other record, so that a concurrent put of an evicted tile is
+			// never followed by the tombstone of its previous entry
+			synchronized (this.writeLock) {
+				long position = write(record);
+
+				PackEntry packEntry = new PackEntry(position + recordSize - data.length, data.length, recordSize,
+						timestamp);
+				List<String> evictedKeys = new ArrayList<String>();
+				synchronized (this.index) {
+					PackEntry old = this.index.put(cacheKey, packEntry);
+					if (old != null) {
+						LOGGER.warning("overwriting cached entry: " + cacheKey);
+						this.liveSize -= old.recordSize;
+					}
+					this.liveSize += recordSize;
+
+					Iterator<Map.Entry<String, PackEntry>> iterator = this.index.entrySet().iterator();
+					while (this.index.size() > this.capacity && iterator.hasNext()) {
+						Map.Entry<String, PackEntry> eldest = iterator.next();
+						this.liveSize -= eldest.getValue().recordSize;
+						evictedKeys.add(eldest.getKey());
+						iterator.remove();
+					}
+				}
+				for (String evictedKey : evictedKeys) {
+					appendTombstone(evictedKey);
+				}
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends a record which marks the removal of a tile, the caller must hold the read lock and the write monitor.
+	 */
+	private void appendTombstone(String cacheKey) throws IOException {
+		write(createRecord(cacheKey.getBytes(UTF8), 0, null));
+	}
+
+	private void close() {
+		IOUtils.closeQuietly(this.fileChannel);
+		this.fileChannel = null;
+	}
+
+	/**
+	 * Rewrites the pack file with the current tiles only. The live records are copied to a temporary file while readers
+	 * and writers carry on, only the records written in the meantime are copied while this cache is locked, before the
+	 * temporary file replaces the pack file.
+	 *
+	 * @param onlyIfNeeded
+	 *            true to skip the compaction if it is no longer needed, for example because a concurrent call has
+	 *            already compacted the file.
+	 */
+	private void compact(boolean onlyIfNeeded) throws IOException {
+		if (this.file == null) {
+			return;
+		}
+		synchronized (this.compactionLock) {
+			if (onlyIfNeeded && !isCompactionNeeded()) {
+				return;
+			}
+
+			File temporaryFile = new File(this.file.getParentFile(), TEMPORARY_FILE_NAME);
+			RandomAccessFile temporaryRandomAccessFile = new RandomAccessFile(temporaryFile, "rw");
+			Map<String, PackEntry> copiedEntries = new LinkedHashMap<String, PackEntry>();
+			Map<String, PackEntry> compactedEntries = new LinkedHashMap<String, PackEntry>();
+			long position = 0;
+			try {
+				FileChannel temporaryChannel = temporaryRandomAccessFile.getChannel();
+				temporaryChannel.truncate(0);
+
+				this.lock.readLock().lock();
+				try {
+					if (this.fileChannel == null) {
+						return;
+					}
+					synchronized (this.index) {
+						copiedEntries.putAll(this.index);
+					}
+					for (Map.Entry<String, PackEntry> entry : copiedEntries.entrySet()) {
+						position = copyRecord(entry.getKey(), entry.getValue(), temporaryChannel, position,
+								compactedEntries);
+					}
+				} finally {
+					this.lock.readLock().unlock();
+				}
+
+				this.lock.writeLock().lock();
+				try {
+					if (this.fileChannel == null || (onlyIfNeeded && !isCompactionNeeded())) {
+						return;
+					}
+					LinkedHashMap<String, PackEntry> currentEntries;
+					synchronized (this.index) {
+						currentEntries = new LinkedHashMap<String, PackEntry>(this.index);
+					}
+					LinkedHashMap<String, PackEntry> compactedIndex = new LinkedHashMap<String, PackEntry>(16, 0.75f,
+							true);
+					long compactedLiveSize = 0;
+					for (Map.Entry<String, PackEntry> entry : currentEntries.entrySet()) {
+						String cacheKey = entry.getKey();
+						PackEntry packEntry = entry.getValue();
+						if (copiedEntries.get(cacheKey) != packEntry) {
+							// the tile has been written after the copy was started
+							position = copyRecord(cacheKey, packEntry, temporaryChannel, position, compactedEntries);
+						}
+						compactedIndex.put(cacheKey, compactedEntries.get(cacheKey));
+						compactedLiveSize += packEntry.recordSize;
+					}
+					IOUtils.closeQuietly(temporaryRandomAccessFile);
+
+					close();
+					try {
+						replace(temporaryFile, this.file);
+					} finally {
+						this.fileChannel = new RandomAccessFile(this.file, "rw").getChannel();
+					}
+					synchronized (this.index) {
+						this.index.clear();
+						this.index.putAll(compactedIndex);
+						this.fileSize = position;
+						this.liveSize = compactedLiveSize;
+					}
+				} finally {
+					this.lock.writeLock().unlock();
+				}
+			} finally {
+				IOUtils.closeQuietly(temporaryRandomAccessFile);
+				// without the pack file the temporary file is restored when the cache is opened again
+				if (this.file.exists() && temporaryFile.exists() && !temporaryFile.delete()) {
+					LOGGER.warning("could not delete temporary pack file: " + temporaryFile);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the record of a tile from the pack file to the given position of another file, the caller must hold the
+	 * read lock.
+	 *
+	 * @return the position after the copied record.
+	 */
+	private long copyRecord(String cacheKey, PackEntry packEntry, FileChannel targetChannel, long position,
+			Map<String, PackEntry> targetEntries) throws IOException {
+		byte[] data = new byte[packEntry.length];
+		readFully(this.fileChannel, ByteBuffer.wrap(data), packEntry.offset);
+		writeFully(targetChannel, createRecord(cacheKey.getBytes(UTF8), packEntry.timestamp, data), position);
+		targetEntries.put(cacheKey, new PackEntry(position + packEntry.recordSize - data.length, data.length,
+				packEntry.recordSize, packEntry.timestamp));
+		return position + packEntry.recordSize;
+	}
+
+	private void disable() {
+		this.lock.writeLock().lock();
+		try {
+			synchronized (this.index) {
+				this.capacity = 0;
+			}
+			purge();
+			close();
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private boolean isCompactionNeeded() {
+		synchronized (this.index) {
+			return this.fileSize >= MIN_COMPACTION_SIZE && this.fileSize - this.liveSize > this.liveSize;
+		}
+	}
+
+	private void open() throws IOException {
+		File temporaryFile = new File(this.file.getParentFile(), TEMPORARY_FILE_NAME);
+		if (this.persistent && !this.file.exists() && temporaryFile.exists() && !temporaryFile.renameTo(this.file)) {
+			// a compaction has been interrupted after the old pack file was deleted
+			LOGGER.warning("could not restore compacted pack file: " + temporaryFile);
+		}
+		this.fileChannel = new RandomAccessFile(this.file, "rw").getChannel();
+		if (this.persistent) {
+			readIndex();
+		} else {
+			this.fileChannel.truncate(0);
+		}
+		this.fileSize = this.fileChannel.size();
+	}
+
+	/**
+	 * Restores the index from the records in the pack file. An incomplete record at the end of the file, for example
+	 * after a crash while writing, is discarded together with everything after it.
+	 */
+	private void readIndex() throws IOException {
+		long size = this.fileChannel.size();
+		long position = 0;
+		this.fileChannel.position(0);
+		// the stream must not be closed as this would close the file channel
+		DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(this.fileChannel)));
+		try {
+			while (position < size) {
+				int keyLength = dataInputStream.readUnsignedShort();
+				if (keyLength == 0) {
+					// tile keys are never empty, the file has not been written completely
+					break;
+				}
+				byte[] key = new byte[keyLength];
+				dataInputStream.readFully(key);
+				long timestamp = dataInputStream.readLong();
+				int length = dataInputStream.readInt();
+				int recordSize = RECORD_HEADER_SIZE + keyLength + Math.max(0, length);
+				if (length < TOMBSTONE || position + recordSize > size || !skipFully(dataInputStream, length)) {
+					break;
+				}
+
+				String cacheKey = new String(key, UTF8);
+				PackEntry old;
+				if (length == TOMBSTONE) {
+					old = this.index.remove(cacheKey);
+				} else {
+					old = this.index.put(cacheKey, new PackEntry(position + recordSize - length, length, recordSize,
+							timestamp));
+					this.liveSize += recordSize;
+				}
+				if (old != null) {
+					this.liveSize -= old.recordSize;
+				}
+				position += recordSize;
+			}
+		} catch (EOFException e) {
+			// incomplete record at the end of the file
+		}
+
+		if (position < size) {
+			LOGGER.warning("discarding " + (size - position) + " bytes of incomplete data at the end of pack file: "
+					+ this.file);
+			this.fileChannel.truncate(position);
+		}
+
+		// the capacity may have been reduced since the pack file was written
+		Iterator<PackEntry> iterator = this.index.values().iterator();
+		while (this.index.size() > this.capacity && iterator.hasNext()) {
+			this.liveSize -= iterator.next().recordSize;
+			iterator.remove();
+		}
+	}
+
+	private void remove(String cacheKey) {
+		this.lock.readLock().lock();
+		try {
+			if (this.fileChannel == null) {
+				return;
+			}
+			synchronized (this.writeLock) {
+				synchronized (this.index) {
+					PackEntry old = this.index.remove(cacheKey);
+					if (old == null) {
+						return;
+					}
+					this.liveSize -= old.recordSize;
+				}
+				appendTombstone(cacheKey);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, e.getMessage(), e);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Appends a record at the end of the pack file, the caller must hold the read lock and the write monitor. Records
+	 * are written one at a time, so that the file never contains a gap which has been reserved but not yet written.
+	 *
+	 * @return the position of the record.
+	 */
+	private long write(ByteBuffer record) throws IOException {
+		long position;
+		synchronized (this.index) {
+			position = this.fileSize;
+		}
+		writeFully(this.fileChannel, record, position);
+		synchronized (this.index) {
+			this.fileSize = position + record.limit();
+		}
+		return position;
+	}
+}
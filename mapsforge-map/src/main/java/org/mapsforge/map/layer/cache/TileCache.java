@@ -68,6 +68,15 @@ public interface TileCache extends ObservableInterface {
 	 */
 	TileBitmap getImmediately(Job key);
 
+	/**
+	 * Returns the timestamp of a cached image without loading the image, for example to check whether the image is
+	 * outdated.
+	 * 
+	 * @return the timestamp of the image for the given key in milliseconds since January 1, 1970 GMT or 0, if this
+	 *         cache contains no image for the key.
+	 */
+	long getTimestamp(Job key);
+
 	/**
 	 * Purges this cache.
 	 * <p>
@@ -93,4 +102,13 @@ public interface TileCache extends ObservableInterface {
 	 * the fastest cache.
 	 */
 	void setWorkingSet(Set<Job> workingSet);
+
+	/**
+	 * Reserves a working set in this cache like {@link #setWorkingSet(Set)}. Multi-level caches may also bring the
+	 * elements of the prefetch set into the fastest cache, other caches ignore it.
+	 * 
+	 * @param prefetchSet
+	 *            the elements which are likely to be needed next, typically the tiles around the visible ones.
+	 */
+	void setWorkingSet(Set<Job> workingSet, Set<Job> prefetchSet);
 }
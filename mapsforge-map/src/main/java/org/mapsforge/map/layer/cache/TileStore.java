@@ -110,6 +110,12 @@ public class TileStore implements TileCache {
 		return get(key);
 	}
 
+	@Override
+	public synchronized long getTimestamp(Job key) {
+		File file = this.findFile(key);
+		return file == null ? 0 : file.lastModified();
+	}
+
 	@Override
 	public synchronized void purge() {
 		// no-op
@@ -146,6 +152,12 @@ public class TileStore implements TileCache {
 		// all tiles are always in the cache
 	}
 
+	@Override
+	public void setWorkingSet(Set<Job> workingSet, Set<Job> prefetchSet) {
+		// there is no faster level to prefetch into
+		setWorkingSet(workingSet);
+	}
+
 	@Override
 	public void addObserver(final Observer observer) {
 	}
@@ -15,24 +15,105 @@
  */
 package org.mapsforge.map.layer.cache;
 
-import org.mapsforge.core.graphics.TileBitmap;
-import org.mapsforge.map.layer.queue.Job;
-import org.mapsforge.map.model.common.Observer;
-
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.mapsforge.core.graphics.TileBitmap;
+import org.mapsforge.map.layer.queue.Job;
+import org.mapsforge.map.model.common.Observer;
 
+/**
+ * A tile cache that combines a small and fast first level cache with a larger and slower second level cache.
+ * <p>
+ * Tiles of the working set that are only found in the second level are promoted to the first level in the
+ * background, so the thread that draws the map never waits for a tile to be read and decoded. The first level
+ * notifies its observers whenever a tile has been promoted. The number of promotions started per call of
+ * {@link #setWorkingSet(Set)} is limited by the promotion budget, the remaining tiles follow with the next calls.
+ */
 public class TwoLevelTileCache implements TileCache {
+	/**
+	 * Default maximum number of promotions started per frame.
+	 */
+	public static final int DEFAULT_PROMOTION_BUDGET = 8;
+
+	private static final class PromotionThreadFactory implements ThreadFactory {
+		PromotionThreadFactory() {
+			// do nothing
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "TwoLevelTileCachePromotion");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private final class Promotion implements Runnable {
+		private final Job job;
+		private final boolean prefetch;
+
+		Promotion(Job job, boolean prefetch) {
+			this.job = job;
+			this.prefetch = prefetch;
+		}
+
+		@Override
+		public void run() {
+			try {
+				// a visible tile may have scrolled out of view since it was scheduled
+				if ((this.prefetch || TwoLevelTileCache.this.workingSet.contains(this.job))
+						&& !TwoLevelTileCache.this.firstLevelTileCache.containsKey(this.job)) {
+					promote(this.job);
+				}
+			} finally {
+				TwoLevelTileCache.this.pendingPromotions.remove(this.job);
+			}
+		}
+	}
+
+	private static void validatePromotionBudget(int promotionBudget) {
+		if (promotionBudget <= 0) {
+			throw new IllegalArgumentException("promotion budget must be positive: " + promotionBudget);
+		}
+	}
 
 	private final TileCache firstLevelTileCache;
+	private final Set<Job> pendingPromotions;
+	private final ExecutorService promotionExecutor;
+	private volatile int promotionBudget;
 	private final TileCache secondLevelTileCache;
-	private final Set<Job> workingSet;
+	private volatile Set<Job> workingSet;
 
 	public TwoLevelTileCache(TileCache firstLevelTileCache, TileCache secondLevelTileCache) {
+		this(firstLevelTileCache, secondLevelTileCache, DEFAULT_PROMOTION_BUDGET);
+	}
+
+	/**
+	 * @param firstLevelTileCache
+	 *            the fast cache from which tiles are drawn.
+	 * @param secondLevelTileCache
+	 *            the slow cache which holds all tiles.
+	 * @param promotionBudget
+	 *            the maximum number of promotions from the second to the first level started per frame.
+	 * @throws IllegalArgumentException
+	 *             if the promotion budget is not positive.
+	 */
+	public TwoLevelTileCache(TileCache firstLevelTileCache, TileCache secondLevelTileCache, int promotionBudget) {
+		validatePromotionBudget(promotionBudget);
+
 		this.firstLevelTileCache = firstLevelTileCache;
 		this.secondLevelTileCache = secondLevelTileCache;
-		this.workingSet = Collections.synchronizedSet(new HashSet<Job>());
+		this.promotionBudget = promotionBudget;
+		this.pendingPromotions = Collections.newSetFromMap(new ConcurrentHashMap<Job, Boolean>());
+		this.promotionExecutor = Executors.newSingleThreadExecutor(new PromotionThreadFactory());
+		this.workingSet = Collections.emptySet();
 	}
 
 	@Override
@@ -42,6 +123,7 @@ public class TwoLevelTileCache implements TileCache {
 
 	@Override
 	public void destroy() {
+		this.promotionExecutor.shutdownNow();
 		this.firstLevelTileCache.destroy();
 		this.secondLevelTileCache.destroy();
 	}
@@ -75,6 +157,21 @@ public class TwoLevelTileCache implements TileCache {
 		return firstLevelTileCache.get(key);
 	}
 
+	@Override
+	public long getTimestamp(Job key) {
+		if (this.firstLevelTileCache.containsKey(key)) {
+			return this.firstLevelTileCache.getTimestamp(key);
+		}
+		return this.secondLevelTileCache.getTimestamp(key);
+	}
+
+	/**
+	 * @return the maximum number of promotions started per frame.
+	 */
+	public int getPromotionBudget() {
+		return this.promotionBudget;
+	}
+
 	@Override
 	public void purge() {
 		this.firstLevelTileCache.purge();
@@ -89,18 +186,58 @@ public class TwoLevelTileCache implements TileCache {
 		this.secondLevelTileCache.put(key, bitmap);
 	}
 
+	/**
+	 * @param promotionBudget
+	 *            the maximum number of promotions started per frame.
+	 * @throws IllegalArgumentException
+	 *             if the promotion budget is not positive.
+	 */
+	public void setPromotionBudget(int promotionBudget) {
+		validatePromotionBudget(promotionBudget);
+		this.promotionBudget = promotionBudget;
+	}
+
 	@Override
 	public void setWorkingSet(Set<Job> newWorkingSet) {
-		this.workingSet.clear();
-		this.workingSet.addAll(newWorkingSet);
+		setWorkingSet(newWorkingSet, Collections.<Job> emptySet());
+	}
+
+	/**
+	 * Reserves a working set in this cache and schedules the promotion of its tiles to the first level. Tiles of the
+	 * prefetch set, typically the ring of tiles just outside the visible area, are promoted as well, but not more than
+	 * the promotion budget and the first level capacity beside the working set allow.
+	 *
+	 * @param newWorkingSet
+	 *            the tiles which are currently visible.
+	 * @param prefetchSet
+	 *            the tiles which are likely to become visible next.
+	 */
+	@Override
+	public void setWorkingSet(Set<Job> newWorkingSet, Set<Job> prefetchSet) {
+		this.workingSet = Collections.unmodifiableSet(new HashSet<Job>(newWorkingSet));
 		this.firstLevelTileCache.setWorkingSet(this.workingSet);
 		this.secondLevelTileCache.setWorkingSet(this.workingSet);
-		for (Job job : workingSet) {
-			if (!firstLevelTileCache.containsKey(job) && secondLevelTileCache.containsKey(job)) {
-				TileBitmap tileBitmap = secondLevelTileCache.get(job);
-				if (tileBitmap != null) {
-					firstLevelTileCache.put(job, tileBitmap);
-				}
+
+		int budget = this.promotionBudget;
+		for (Job job : this.workingSet) {
+			if (budget == 0) {
+				return;
+			}
+			if (schedulePromotion(job, false)) {
+				--budget;
+			}
+		}
+
+		// the first level keeps the working set, prefetched tiles only get the remaining entries, which may still hold
+		// other tiles, so that prefetched tiles do not displace each other
+		int spareCapacity = this.firstLevelTileCache.getCapacity() - this.workingSet.size();
+		budget = Math.min(budget, spareCapacity);
+		for (Job job : prefetchSet) {
+			if (budget <= 0) {
+				return;
+			}
+			if (!this.workingSet.contains(job) && schedulePromotion(job, true)) {
+				--budget;
 			}
 		}
 	}
@@ -117,4 +254,32 @@ public class TwoLevelTileCache implements TileCache {
 		this.firstLevelTileCache.removeObserver(observer);
 	}
 
+	private void promote(Job job) {
+		TileBitmap tileBitmap = this.secondLevelTileCache.get(job);
+		if (tileBitmap != null) {
+			this.firstLevelTileCache.put(job, tileBitmap);
+			tileBitmap.decrementRefCount();
+		}
+	}
+
+	/**
+	 * @return true if a promotion has been scheduled, false if the tile needs no promotion.
+	 */
+	private boolean schedulePromotion(Job job, boolean prefetch) {
+		if (this.firstLevelTileCache.containsKey(job) || !this.secondLevelTileCache.containsKey(job)) {
+			return false;
+		}
+		if (!this.pendingPromotions.add(job)) {
+			// already on its way, but it still counts against the budget
+			return true;
+		}
+		try {
+			this.promotionExecutor.execute(new Promotion(job, prefetch));
+		} catch (RejectedExecutionException e) {
+			// the cache has been destroyed
+			this.pendingPromotions.remove(job);
+			return false;
+		}
+		return true;
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.download;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the tile downloads of a {@link TileDownloadLayer}, shared by all of its download threads.
+ */
+public class DownloadStatistics {
+	private static final double NANOSECONDS_PER_SECOND = 1e9;
+
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong notModifiedResponses = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong time = new AtomicLong();
+
+	/**
+	 * @return the number of bytes received in response bodies.
+	 */
+	public long getBytes() {
+		return this.bytes.get();
+	}
+
+	/**
+	 * @return the number of tiles which could not be downloaded, even after retrying.
+	 */
+	public long getFailures() {
+		return this.failures.get();
+	}
+
+	/**
+	 * @return the number of revalidated tiles which the server confirmed to be unchanged.
+	 */
+	public long getNotModifiedResponses() {
+		return this.notModifiedResponses.get();
+	}
+
+	/**
+	 * @return the number of HTTP requests, including retries.
+	 */
+	public long getRequests() {
+		return this.requests.get();
+	}
+
+	/**
+	 * @return the number of requests which were repeated after an error.
+	 */
+	public long getRetries() {
+		return this.retries.get();
+	}
+
+	/**
+	 * @return the average number of bytes received per second spent on requests, 0 if there were no requests yet.
+	 */
+	public double getThroughput() {
+		long nanos = this.time.get();
+		if (nanos == 0) {
+			return 0;
+		}
+		return this.bytes.get() * NANOSECONDS_PER_SECOND / nanos;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("requests=");
+		stringBuilder.append(getRequests());
+		stringBuilder.append(", notModifiedResponses=");
+		stringBuilder.append(getNotModifiedResponses());
+		stringBuilder.append(", retries=");
+		stringBuilder.append(getRetries());
+		stringBuilder.append(", failures=");
+		stringBuilder.append(getFailures());
+		stringBuilder.append(", bytes=");
+		stringBuilder.append(getBytes());
+		stringBuilder.append(", throughput=");
+		stringBuilder.append(getThroughput());
+		return stringBuilder.toString();
+	}
+
+	void addFailure() {
+		this.failures.incrementAndGet();
+	}
+
+	void addRequest(long responseBytes, long nanos, boolean notModified) {
+		this.requests.incrementAndGet();
+		this.bytes.addAndGet(responseBytes);
+		this.time.addAndGet(nanos);
+		if (notModified) {
+			this.notModifiedResponses.incrementAndGet();
+		}
+	}
+
+	void addRetry() {
+		this.retries.incrementAndGet();
+	}
+}
@@ -15,12 +15,16 @@
  */
 package org.mapsforge.map.layer.download;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.mapsforge.core.graphics.Canvas;
 import org.mapsforge.core.graphics.GraphicFactory;
 import org.mapsforge.core.graphics.TileBitmap;
 import org.mapsforge.core.model.BoundingBox;
 import org.mapsforge.core.model.Point;
 import org.mapsforge.core.model.Tile;
+import org.mapsforge.core.util.LRUCache;
 import org.mapsforge.map.layer.TileLayer;
 import org.mapsforge.map.layer.cache.TileCache;
 import org.mapsforge.map.layer.download.tilesource.TileSource;
@@ -31,8 +35,21 @@ import org.mapsforge.map.model.common.Observer;
 public class TileDownloadLayer extends TileLayer<DownloadJob> implements Observer {
 	private static final int DOWNLOAD_THREADS_MAX = 8;
 
+	/**
+	 * Maximum number of remembered entity tags for the revalidation of stale tiles.
+	 */
+	private static final int ENTITY_TAGS_CAPACITY = 1024;
+
+	/**
+	 * Time in milliseconds for which stale tiles are not revalidated after a revalidation has failed.
+	 */
+	private static final long REVALIDATION_PAUSE = 60000;
+
 	private long cacheTimeToLive = 0;
+	private final Map<String, String> entityTags;
 	private final GraphicFactory graphicFactory;
+	private volatile long revalidationPausedUntil;
+	private final DownloadStatistics statistics;
 	private boolean started;
 	private final TileCache tileCache;
 	private TileDownloadThread[] tileDownloadThreads;
@@ -46,6 +63,8 @@ public class TileDownloadLayer extends TileLayer<DownloadJob> implements Observe
 		this.tileSource = tileSource;
 		this.cacheTimeToLive = tileSource.getDefaultTimeToLive();
 		this.graphicFactory = graphicFactory;
+		this.entityTags = Collections.synchronizedMap(new LRUCache<String, String>(ENTITY_TAGS_CAPACITY));
+		this.statistics = new DownloadStatistics();
 	}
 
 	@Override
@@ -66,6 +85,13 @@ public class TileDownloadLayer extends TileLayer<DownloadJob> implements Observe
 		return cacheTimeToLive;
 	}
 
+	/**
+	 * @return the counters of the downloads of this layer.
+	 */
+	public DownloadStatistics getStatistics() {
+		return this.statistics;
+	}
+
 	@Override
 	public void onDestroy() {
 		for (TileDownloadThread tileDownloadThread : this.tileDownloadThreads) {
@@ -112,7 +138,7 @@ public class TileDownloadLayer extends TileLayer<DownloadJob> implements Observe
 			this.tileDownloadThreads = new TileDownloadThread[numberOfDownloadThreads];
 			for (int i = 0; i < numberOfDownloadThreads; ++i) {
 				this.tileDownloadThreads[i] = new TileDownloadThread(this.tileCache, this.jobQueue, this,
-						this.graphicFactory, this.displayModel);
+						this.graphicFactory, this.displayModel, this.statistics, this.entityTags);
 			}
 		} else {
 			if (this.tileDownloadThreads != null) {
@@ -151,10 +177,11 @@ public class TileDownloadLayer extends TileLayer<DownloadJob> implements Observe
 	 * </ul>
 	 * <p>
 	 * When a tile has become stale, the layer will first display the tile referenced by {@code bitmap} and attempt to
-	 * obtain a fresh copy in the background. When a fresh copy becomes available, the layer will replace it and update
-	 * the cache. If a fresh copy cannot be obtained (e.g. because the tile is obtained from an online source which
-	 * cannot be reached), the stale tile will continue to be used until another
-	 * {@code #draw(BoundingBox, byte, Canvas, Point)} operation requests it again.
+	 * obtain a fresh copy in the background. The server is asked with a conditional request whether the tile has been
+	 * modified, an unchanged tile is kept with a renewed timestamp instead of being downloaded again. When a fresh copy
+	 * becomes available, the layer will replace it and update the cache. If a fresh copy cannot be obtained (e.g.
+	 * because the tile is obtained from an online source which cannot be reached), the stale tile will continue to be
+	 * used until another {@code #draw(BoundingBox, byte, Canvas, Point)} operation requests it again.
 	 * 
 	 * @param tile
 	 *            A tile. This parameter is not used for a {@code TileDownloadLayer} and can be null.
@@ -168,6 +195,18 @@ public class TileDownloadLayer extends TileLayer<DownloadJob> implements Observe
 		return cacheTimeToLive != 0 && ((bitmap.getTimestamp() + cacheTimeToLive) < System.currentTimeMillis());
 	}
 
+	boolean isRevalidationPaused() {
+		return System.currentTimeMillis() < this.revalidationPausedUntil;
+	}
+
+	/**
+	 * Stops the revalidation of stale tiles for a while, so that an unreachable server is not asked again and again
+	 * for tiles which are already available.
+	 */
+	void pauseRevalidation() {
+		this.revalidationPausedUntil = System.currentTimeMillis() + REVALIDATION_PAUSE;
+	}
+
 	@Override
 	protected void onAdd() {
 		if (tileCache != null) {
@@ -16,12 +16,12 @@
 package org.mapsforge.map.layer.download;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.mapsforge.core.graphics.GraphicFactory;
 import org.mapsforge.core.graphics.TileBitmap;
-import org.mapsforge.map.layer.Layer;
 import org.mapsforge.map.layer.cache.TileCache;
 import org.mapsforge.map.layer.queue.JobQueue;
 import org.mapsforge.map.model.DisplayModel;
@@ -31,13 +31,16 @@ class TileDownloadThread extends PausableThread {
 	private static final Logger LOGGER = Logger.getLogger(TileDownloadThread.class.getName());
 
 	private final DisplayModel displayModel;
+	private final Map<String, String> entityTags;
 	private final GraphicFactory graphicFactory;
 	private JobQueue<DownloadJob> jobQueue;
-	private final Layer layer;
+	private final TileDownloadLayer layer;
+	private final DownloadStatistics statistics;
 	private final TileCache tileCache;
 
-	TileDownloadThread(TileCache tileCache, JobQueue<DownloadJob> jobQueue, Layer layer, GraphicFactory graphicFactory,
-			DisplayModel displayModel) {
+	TileDownloadThread(TileCache tileCache, JobQueue<DownloadJob> jobQueue, TileDownloadLayer layer,
+			GraphicFactory graphicFactory, DisplayModel displayModel, DownloadStatistics statistics,
+			Map<String, String> entityTags) {
 		super();
 
 		this.tileCache = tileCache;
@@ -45,6 +48,8 @@ class TileDownloadThread extends PausableThread {
 		this.layer = layer;
 		this.graphicFactory = graphicFactory;
 		this.displayModel = displayModel;
+		this.statistics = statistics;
+		this.entityTags = entityTags;
 	}
 
 	public void setJobQueue(JobQueue<DownloadJob> jobQueue) {
@@ -57,7 +62,22 @@ class TileDownloadThread extends PausableThread {
 
 		try {
 			if (!this.tileCache.containsKey(downloadJob)) {
-				downloadTile(downloadJob);
+				downloadTile(downloadJob, null);
+			} else {
+				// the tile has been queued because it is stale, only ask the server whether it has changed
+				TileBitmap cachedBitmap = this.layer.isRevalidationPaused() ? null : this.tileCache.get(downloadJob);
+				if (cachedBitmap != null) {
+					try {
+						if (this.layer.isTileStale(downloadJob.tile, cachedBitmap)) {
+							downloadTile(downloadJob, cachedBitmap);
+						}
+					} catch (IOException e) {
+						this.layer.pauseRevalidation();
+						throw e;
+					} finally {
+						cachedBitmap.decrementRefCount();
+					}
+				}
 			}
 		} catch (IOException e) {
 			LOGGER.log(Level.SEVERE, e.getMessage(), e);
@@ -76,14 +96,29 @@ class TileDownloadThread extends PausableThread {
 		return true;
 	}
 
-	private void downloadTile(DownloadJob downloadJob) throws IOException {
-		TileDownloader tileDownloader = new TileDownloader(downloadJob, this.graphicFactory);
-		TileBitmap bitmap = tileDownloader.downloadImage();
+	private void downloadTile(DownloadJob downloadJob, TileBitmap cachedBitmap) throws IOException {
+		TileDownloader tileDownloader = new TileDownloader(downloadJob, this.graphicFactory, this.statistics,
+				this.entityTags);
+		TileBitmap bitmap = tileDownloader.downloadImage(cachedBitmap);
+		if (bitmap == null) {
+			return;
+		} else if (bitmap == cachedBitmap) {
+			// a revalidated tile has only got a new timestamp and expiration, which must be stored in the cache as
+			// well, otherwise the tile is still stale when it is looked up again
+			if (!isInterrupted()) {
+				this.tileCache.put(downloadJob, bitmap);
+			}
+			return;
+		}
 
-		if (!isInterrupted() && bitmap != null) {
-			bitmap.scaleTo(this.displayModel.getTileSize(), this.displayModel.getTileSize());
-			this.tileCache.put(downloadJob, bitmap);
-			this.layer.requestRedraw();
+		try {
+			if (!isInterrupted()) {
+				bitmap.scaleTo(this.displayModel.getTileSize(), this.displayModel.getTileSize());
+				this.tileCache.put(downloadJob, bitmap);
+				this.layer.requestRedraw();
+			}
+		} finally {
+			bitmap.decrementRefCount();
 		}
 	}
 }
@@ -15,10 +15,15 @@
  */
 package org.mapsforge.map.layer.download;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
 import org.mapsforge.core.graphics.CorruptedInputStreamException;
@@ -26,10 +31,59 @@ import org.mapsforge.core.graphics.GraphicFactory;
 import org.mapsforge.core.graphics.TileBitmap;
 import org.mapsforge.core.util.IOUtils;
 
+/**
+ * Downloads a single tile.
+ * <p>
+ * Response bodies, including those of error responses, are always read completely before the stream is closed, so
+ * the underlying HTTP connection is returned to the keep-alive pool of the platform and reused for the next tile from
+ * the same host. Cached tiles are revalidated with a conditional request, and failed requests are retried with an
+ * increasing delay.
+ */
 class TileDownloader {
+	/**
+	 * An HTTP error response.
+	 */
+	static class HttpStatusException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		final int responseCode;
+
+		HttpStatusException(int responseCode, URL url) {
+			super("HTTP " + responseCode + ": " + url);
+			this.responseCode = responseCode;
+		}
+	}
+
+	static final int MAX_ATTEMPTS = 3;
+	static final long RETRY_DELAY = 250;
+	private static final int BUFFER_SIZE = 8192;
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
 	private static final int TIMEOUT_CONNECT = 5000;
 	private static final int TIMEOUT_READ = 10000;
 
+	/**
+	 * Reads and discards the body of a response so that its connection can be reused.
+	 */
+	private static void discardResponse(HttpURLConnection httpURLConnection) {
+		InputStream inputStream = null;
+		try {
+			inputStream = httpURLConnection.getInputStream();
+		} catch (IOException e) {
+			inputStream = httpURLConnection.getErrorStream();
+		}
+		if (inputStream == null) {
+			return;
+		}
+		try {
+			readFully(inputStream);
+		} catch (IOException e) {
+			// the connection will not be reused
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+		}
+	}
+
 	private static InputStream getInputStream(URLConnection urlConnection) throws IOException {
 		if ("gzip".equals(urlConnection.getContentEncoding())) {
 			return new GZIPInputStream(urlConnection.getInputStream());
@@ -44,10 +98,35 @@ class TileDownloader {
 		return urlConnection;
 	}
 
+	private static boolean isRetryable(IOException e) {
+		if (e instanceof HttpStatusException) {
+			// client errors will not go away by asking again
+			return ((HttpStatusException) e).responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+		}
+		return true;
+	}
+
+	private static byte[] readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(BUFFER_SIZE);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int bytesRead;
+		while ((bytesRead = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, bytesRead);
+		}
+		return outputStream.toByteArray();
+	}
+
 	private final DownloadJob downloadJob;
+	private final Map<String, String> entityTags;
 	private final GraphicFactory graphicFactory;
+	private final DownloadStatistics statistics;
 
-	TileDownloader(DownloadJob downloadJob, GraphicFactory graphicFactory) {
+	/**
+	 * @param entityTags
+	 *            the entity tags of previously downloaded tiles by URL, must be thread safe.
+	 */
+	TileDownloader(DownloadJob downloadJob, GraphicFactory graphicFactory, DownloadStatistics statistics,
+			Map<String, String> entityTags) {
 		if (downloadJob == null) {
 			throw new IllegalArgumentException("downloadJob must not be null");
 		} else if (graphicFactory == null) {
@@ -56,16 +135,94 @@ class TileDownloader {
 
 		this.downloadJob = downloadJob;
 		this.graphicFactory = graphicFactory;
+		this.statistics = statistics;
+		this.entityTags = entityTags;
 	}
 
 	TileBitmap downloadImage() throws IOException {
+		return downloadImage(null);
+	}
+
+	/**
+	 * Downloads the tile or, if a cached bitmap is given, only revalidates it.
+	 *
+	 * @param cachedBitmap
+	 *            the cached bitmap of the tile or null, if the tile is not cached.
+	 * @return the cached bitmap with a renewed timestamp and expiration if the tile has not been modified, the new
+	 *         bitmap otherwise or null, if the image could not be decoded. The caller has to put a renewed bitmap
+	 *         into the tile cache again to keep the renewal.
+	 * @throws IOException
+	 *             if the tile could not be downloaded.
+	 */
+	TileBitmap downloadImage(TileBitmap cachedBitmap) throws IOException {
 		URL url = this.downloadJob.tileSource.getTileUrl(this.downloadJob.tile);
+		for (int attempt = 1;; ++attempt) {
+			long start = System.nanoTime();
+			try {
+				return request(url, cachedBitmap, start);
+			} catch (IOException e) {
+				this.statistics.addRequest(0, System.nanoTime() - start, false);
+				if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+					this.statistics.addFailure();
+					throw e;
+				}
+			}
+
+			this.statistics.addRetry();
+			try {
+				Thread.sleep(RETRY_DELAY << (attempt - 1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting to retry: " + url);
+			}
+		}
+	}
+
+	private TileBitmap request(URL url, TileBitmap cachedBitmap, long start) throws IOException {
+		String key = url.toString();
 		URLConnection urlConnection = getURLConnection(url);
+		if (cachedBitmap != null) {
+			urlConnection.setIfModifiedSince(cachedBitmap.getTimestamp());
+			String entityTag = this.entityTags.get(key);
+			if (entityTag != null) {
+				urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, entityTag);
+			}
+		}
+
+		if (urlConnection instanceof HttpURLConnection) {
+			HttpURLConnection httpURLConnection = (HttpURLConnection) urlConnection;
+			int responseCode = httpURLConnection.getResponseCode();
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedBitmap != null) {
+				discardResponse(httpURLConnection);
+				this.statistics.addRequest(0, System.nanoTime() - start, true);
+				cachedBitmap.setTimestamp(System.currentTimeMillis());
+				cachedBitmap.setExpiration(urlConnection.getExpiration());
+				return cachedBitmap;
+			} else if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				discardResponse(httpURLConnection);
+				throw new HttpStatusException(responseCode, url);
+			}
+		}
+
+		byte[] data;
 		InputStream inputStream = getInputStream(urlConnection);
+		try {
+			data = readFully(inputStream);
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+		}
+		this.statistics.addRequest(data.length, System.nanoTime() - start, false);
+
+		String entityTag = urlConnection.getHeaderField(HEADER_ETAG);
+		if (entityTag != null) {
+			this.entityTags.put(key, entityTag);
+		} else {
+			this.entityTags.remove(key);
+		}
 
 		try {
-			TileBitmap result = this.graphicFactory.createTileBitmap(inputStream, this.downloadJob.tile.tileSize,
-					this.downloadJob.hasAlpha);
+			TileBitmap result = this.graphicFactory.createTileBitmap(new ByteArrayInputStream(data),
+					this.downloadJob.tile.tileSize, this.downloadJob.hasAlpha);
 			result.setExpiration(urlConnection.getExpiration());
 			return result;
 		} catch (CorruptedInputStreamException e) {
@@ -73,8 +230,6 @@ class TileDownloader {
 			// when the connection is slow or busy, returning null here ensures that
 			// the tile will be downloaded again
 			return null;
-		} finally {
-			IOUtils.closeQuietly(inputStream);
 		}
 	}
 }
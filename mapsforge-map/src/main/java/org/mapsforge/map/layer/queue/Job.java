@@ -23,6 +23,7 @@ import org.mapsforge.core.model.Tile;
 public class Job {
 	public final boolean hasAlpha;
 	public final Tile tile;
+	private volatile boolean cancelled;
 	private final String key;
 
 	private static String composeKey(byte z, long x, long y) {
@@ -70,4 +71,16 @@ public class Job {
 	public int hashCode() {
 		return this.tile.hashCode();
 	}
+
+	/**
+	 * Returns whether the tile of this job is no longer needed. Long running jobs should check this regularly and stop
+	 * early once they have been cancelled.
+	 */
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	void cancel() {
+		this.cancelled = true;
+	}
 }
@@ -15,42 +15,86 @@
  */
 package org.mapsforge.map.layer.queue;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.mapsforge.core.model.MapPosition;
+import org.mapsforge.core.model.Tile;
 import org.mapsforge.map.model.DisplayModel;
 import org.mapsforge.map.model.MapViewPosition;
 
+/**
+ * A thread safe priority queue for jobs, the most important job is the one closest to the current map position.
+ * <p>
+ * Queued jobs are kept in a binary heap, so adding and taking a job needs logarithmic time, and duplicates are
+ * detected with hash lookups. Priorities are only recalculated for all queued jobs when the map position has changed
+ * since the last calculation, new jobs get their priority when they are added. Waiting workers are signalled whenever
+ * a job is added or removed. Jobs for tiles that are only expected to become visible can be queued as prefetch jobs,
+ * which rank behind all other jobs and are cancelled when the prediction changes. Jobs for tiles which are neither
+ * visible nor predicted are dropped, or cancelled if a worker is already busy with them. A job which is added again
+ * while a cancelled job for the same tile is still assigned is queued as soon as the cancelled job is removed, provided
+ * that its tile is still visible.
+ */
 public class JobQueue<T extends Job> {
 	private static final int QUEUE_CAPACITY = 128;
 
-	private final List<T> assignedJobs = new LinkedList<T>();
+	private final Set<T> assignedJobs = new HashSet<T>();
+	private final Condition changed;
 	private final DisplayModel displayModel;
+	private final ReentrantLock lock = new ReentrantLock();
 	private final MapViewPosition mapViewPosition;
-	private final List<QueueItem<T>> queueItems = new LinkedList<QueueItem<T>>();
-	private boolean scheduleNeeded;
+	private final PriorityQueue<QueueItem<T>> queue = new PriorityQueue<QueueItem<T>>(QUEUE_CAPACITY,
+			QueueItemComparator.INSTANCE);
+	private final Map<T, QueueItem<T>> queueItems = new HashMap<T, QueueItem<T>>();
+	private Set<Tile> predictedTiles = Collections.emptySet();
+	private final Map<T, T> requestedJobs = new HashMap<T, T>();
+	private MapPosition scheduledMapPosition;
+	private int scheduledTileSize;
+	private Set<Tile> workingSet;
 
 	public JobQueue(MapViewPosition mapViewPosition, DisplayModel displayModel) {
 		this.mapViewPosition = mapViewPosition;
 		this.displayModel = displayModel;
+		this.changed = this.lock.newCondition();
 	}
 
-	public synchronized void add(T job) {
-		if (!this.assignedJobs.contains(job)) {
-			QueueItem<T> queueItem = new QueueItem<T>(job);
-			if (!this.queueItems.contains(queueItem)) {
-				this.queueItems.add(queueItem);
-				this.scheduleNeeded = true;
-				this.notifyWorkers();
+	public void add(T job) {
+		this.lock.lock();
+		try {
+			QueueItem<T> queueItem = this.queueItems.get(job);
+			if (queueItem != null) {
+				if (queueItem.prefetch) {
+					// the prediction came true, the job is now needed for a visible tile
+					this.queue.remove(queueItem);
+					queueItem.prefetch = false;
+					enqueue(queueItem);
+				}
+			} else if (!this.assignedJobs.contains(job)) {
+				enqueue(new QueueItem<T>(job));
+				this.changed.signalAll();
+			} else {
+				// the assigned job might have been cancelled, remember the request until it is removed
+				this.requestedJobs.put(job, job);
 			}
+		} finally {
+			this.lock.unlock();
 		}
 	}
 
 	/**
 	 * Returns the most important entry from this queue. The method blocks while this queue is empty.
 	 */
-	public synchronized T get() throws InterruptedException {
+	public T get() throws InterruptedException {
 		return get(Integer.MAX_VALUE);
 	}
 
@@ -61,48 +105,175 @@ public class JobQueue<T extends Job> {
 	 *                    are already so many jobs assigned, the queue will block. This is to ensure
 	 *                    that the scheduling will continue to work.
 	 */
-	public synchronized T get(int maxAssigned) throws InterruptedException {
-		while (this.queueItems.isEmpty() || this.assignedJobs.size() >= maxAssigned) {
-			this.wait(200);
+	public T get(int maxAssigned) throws InterruptedException {
+		this.lock.lock();
+		try {
+			while (this.queue.isEmpty() || this.assignedJobs.size() >= maxAssigned) {
+				this.changed.await();
+			}
+			return assignNext();
+		} finally {
+			this.lock.unlock();
 		}
+	}
 
-		if (this.scheduleNeeded) {
-			this.scheduleNeeded = false;
-			schedule(displayModel.getTileSize());
+	/**
+	 * Wakes up all threads waiting for this queue, for example after the map position has changed.
+	 */
+	public void notifyWorkers() {
+		this.lock.lock();
+		try {
+			this.changed.signalAll();
+		} finally {
+			this.lock.unlock();
 		}
+	}
 
-		T job = this.queueItems.remove(0).object;
-		this.assignedJobs.add(job);
-		return job;
+	/**
+	 * Queues jobs for tiles which are expected to become visible soon. Prefetched jobs rank behind the jobs for
+	 * visible tiles. Each call replaces the previous prediction: queued prefetch jobs which are not part of the given
+	 * jobs are cancelled.
+	 *
+	 * @param jobs
+	 *            the jobs for the predicted tiles, may be empty to cancel all prefetching.
+	 */
+	public void prefetch(Collection<T> jobs) {
+		this.lock.lock();
+		try {
+			Set<T> predicted = new HashSet<T>(jobs);
+			for (Iterator<QueueItem<T>> iterator = this.queue.iterator(); iterator.hasNext();) {
+				QueueItem<T> queueItem = iterator.next();
+				if (queueItem.prefetch && !predicted.contains(queueItem.object)) {
+					iterator.remove();
+					this.queueItems.remove(queueItem.object);
+				}
+			}
+			this.predictedTiles = new HashSet<Tile>();
+			for (T job : predicted) {
+				this.predictedTiles.add(job.tile);
+			}
+			cancelStaleJobs();
+
+			boolean added = false;
+			for (T job : predicted) {
+				if (!this.assignedJobs.contains(job) && !this.queueItems.containsKey(job)) {
+					QueueItem<T> queueItem = new QueueItem<T>(job);
+					queueItem.prefetch = true;
+					enqueue(queueItem);
+					added = true;
+				}
+			}
+			if (added) {
+				this.changed.signalAll();
+			}
+		} finally {
+			this.lock.unlock();
+		}
 	}
 
-	public synchronized void notifyWorkers() {
-		this.notifyAll();
+	public void remove(T job) {
+		this.lock.lock();
+		try {
+			this.assignedJobs.remove(job);
+			T requestedJob = this.requestedJobs.remove(job);
+			if (requestedJob != null && job.isCancelled() && !requestedJob.isCancelled()
+					&& this.workingSet.contains(job.tile)) {
+				// the tile has become visible again after its job had been cancelled
+				enqueue(new QueueItem<T>(requestedJob));
+			}
+			this.changed.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
 	}
 
-	public synchronized void remove(T job) {
-		this.assignedJobs.remove(job);
-		this.notifyWorkers();
+	/**
+	 * Sets the tiles which are currently visible. Queued jobs for other tiles are dropped and jobs for other tiles
+	 * which are already assigned are {@link Job#isCancelled() cancelled}, unless they have been queued as prefetch
+	 * jobs for tiles which are still predicted to become visible.
+	 *
+	 * @param workingSet
+	 *            the visible tiles.
+	 */
+	public void setWorkingSet(Set<Tile> workingSet) {
+		this.lock.lock();
+		try {
+			this.workingSet = new HashSet<Tile>(workingSet);
+			for (Iterator<QueueItem<T>> iterator = this.queue.iterator(); iterator.hasNext();) {
+				QueueItem<T> queueItem = iterator.next();
+				if (!queueItem.prefetch && !this.workingSet.contains(queueItem.object.tile)) {
+					iterator.remove();
+					this.queueItems.remove(queueItem.object);
+				}
+			}
+			cancelStaleJobs();
+		} finally {
+			this.lock.unlock();
+		}
 	}
 
 	/**
 	 * @return the current number of entries in this queue.
 	 */
-	public synchronized int size() {
-		return this.queueItems.size();
+	public int size() {
+		this.lock.lock();
+		try {
+			return this.queue.size();
+		} finally {
+			this.lock.unlock();
+		}
 	}
 
-	private void schedule(int tileSize) {
-		QueueItemScheduler.schedule(this.queueItems, this.mapViewPosition.getMapPosition(), tileSize);
-		Collections.sort(this.queueItems, QueueItemComparator.INSTANCE);
-		trimToSize();
+	private T assignNext() {
+		MapPosition mapPosition = this.mapViewPosition.getMapPosition();
+		int tileSize = this.displayModel.getTileSize();
+		if (!mapPosition.equals(this.scheduledMapPosition) || tileSize != this.scheduledTileSize) {
+			schedule(mapPosition, tileSize);
+		}
+
+		T job = this.queue.poll().object;
+		this.queueItems.remove(job);
+		this.assignedJobs.add(job);
+		return job;
 	}
 
-	private void trimToSize() {
-		int queueSize = this.queueItems.size();
+	private void cancelStaleJobs() {
+		if (this.workingSet == null) {
+			return;
+		}
+		for (T job : this.assignedJobs) {
+			if (!this.workingSet.contains(job.tile) && !this.predictedTiles.contains(job.tile)) {
+				job.cancel();
+			}
+		}
+	}
 
-		while (queueSize > QUEUE_CAPACITY) {
-			this.queueItems.remove(--queueSize);
+	private void enqueue(QueueItem<T> queueItem) {
+		if (this.scheduledMapPosition != null) {
+			queueItem.setPriority(QueueItemScheduler.calculatePriority(queueItem.object.tile,
+					this.scheduledMapPosition, this.scheduledTileSize));
 		}
+		this.queueItems.put(queueItem.object, queueItem);
+		this.queue.add(queueItem);
+	}
+
+	/**
+	 * Recalculates the priorities of all queued jobs for a new map position and drops the least important jobs if the
+	 * queue exceeds its capacity.
+	 */
+	private void schedule(MapPosition mapPosition, int tileSize) {
+		List<QueueItem<T>> items = new ArrayList<QueueItem<T>>(this.queue);
+		QueueItemScheduler.schedule(items, mapPosition, tileSize);
+		Collections.sort(items, QueueItemComparator.INSTANCE);
+
+		for (int i = items.size() - 1; i >= QUEUE_CAPACITY; --i) {
+			this.queueItems.remove(items.remove(i).object);
+		}
+
+		// the items are sorted, so rebuilding the heap does not need to move any of them
+		this.queue.clear();
+		this.queue.addAll(items);
+		this.scheduledMapPosition = mapPosition;
+		this.scheduledTileSize = tileSize;
 	}
 }
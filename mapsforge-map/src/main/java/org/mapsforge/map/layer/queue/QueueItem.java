@@ -16,6 +16,10 @@ package org.mapsforge.map.layer.queue;
 
 class QueueItem<T extends Job> {
 	final T object;
+	/**
+	 * Whether the job has only been queued in anticipation of a map movement.
+	 */
+	boolean prefetch;
 	private double priority;
 
 	QueueItem(T object) {
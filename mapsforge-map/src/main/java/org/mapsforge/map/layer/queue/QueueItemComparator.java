@@ -27,7 +27,10 @@ final class QueueItemComparator implements Comparator<QueueItem<?>>, Serializabl
 
 	@Override
 	public int compare(QueueItem<?> queueItem1, QueueItem<?> queueItem2) {
-		if (queueItem1.getPriority() < queueItem2.getPriority()) {
+		// prefetched jobs rank strictly behind all other jobs, regardless of their priority
+		if (queueItem1.prefetch != queueItem2.prefetch) {
+			return queueItem1.prefetch ? 1 : -1;
+		} else if (queueItem1.getPriority() < queueItem2.getPriority()) {
 			return -1;
 		} else if (queueItem1.getPriority() > queueItem2.getPriority()) {
 			return 1;
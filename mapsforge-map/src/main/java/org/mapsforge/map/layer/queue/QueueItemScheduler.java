@@ -31,7 +31,7 @@ final class QueueItemScheduler {
 		}
 	}
 
-	private static double calculatePriority(Tile tile, MapPosition mapPosition, int tileSize) {
+	static double calculatePriority(Tile tile, MapPosition mapPosition, int tileSize) {
 		double tileLatitude = MercatorProjection.tileYToLatitude(tile.tileY, tile.zoomLevel);
 		double tileLongitude = MercatorProjection.tileXToLongitude(tile.tileX, tile.zoomLevel);
 
@@ -28,6 +28,7 @@ import org.mapsforge.core.graphics.Bitmap;
 import org.mapsforge.core.graphics.Color;
 import org.mapsforge.core.graphics.Display;
 import org.mapsforge.core.mapelements.MapElementContainer;
+import org.mapsforge.core.mapelements.MapElementIndex;
 import org.mapsforge.core.graphics.Position;
 import org.mapsforge.core.graphics.GraphicFactory;
 import org.mapsforge.core.graphics.Paint;
@@ -113,9 +114,13 @@ public class DatabaseRenderer implements RenderCallback {
 
 	/**
 	 * Called when a job needs to be executed.
+	 * <p>
+	 * The job is abandoned if it is cancelled while the map data is read, while the render theme is matched or before
+	 * the labels are placed.
 	 * 
 	 * @param rendererJob
 	 *            the job that should be executed.
+	 * @return the rendered tile or null, if the job has been cancelled or could not be executed.
 	 */
 	public TileBitmap executeJob(RendererJob rendererJob) {
 
@@ -136,7 +141,13 @@ public class DatabaseRenderer implements RenderCallback {
 
 				if (this.mapDatabase != null) {
 					MapReadResult mapReadResult = this.mapDatabase.readMapData(rendererJob.tile);
+					if (rendererJob.isCancelled()) {
+						return null;
+					}
 					processReadMapData(renderContext, mapReadResult);
+					if (rendererJob.isCancelled()) {
+						return null;
+					}
 				}
 
 				if (!rendererJob.labelsOnly) {
@@ -149,6 +160,13 @@ public class DatabaseRenderer implements RenderCallback {
 					renderContext.canvasRasterer.drawWays(renderContext);
 				}
 
+				if (rendererJob.isCancelled()) {
+					if (bitmap != null) {
+						bitmap.decrementRefCount();
+					}
+					return null;
+				}
+
 				if (renderLabels) {
 					Set<MapElementContainer> labelsToDraw = processLabels(renderContext);
 					// now draw the ways and the labels
@@ -209,6 +227,16 @@ public class DatabaseRenderer implements RenderCallback {
 		return ZOOM_MAX;
 	}
 
+	/**
+	 * Removes the labels which tiles of a zoom level have left for their neighbours, once no tile of that zoom level
+	 * will be drawn again.
+	 */
+	void removeTileData(byte zoomLevel) {
+		if (this.tileDependencies != null) {
+			this.tileDependencies.removeTileData(zoomLevel);
+		}
+	}
+
 	void removeTileInProgress(Tile tile) {
 		if (this.tileDependencies != null) {
 			this.tileDependencies.removeTileInProgress(tile);
@@ -263,12 +291,12 @@ public class DatabaseRenderer implements RenderCallback {
 	@Override
 	public void renderWaySymbol(final RenderContext renderContext, Display display, int priority, Bitmap symbol, float dy, boolean alignCenter, boolean repeat, float repeatGap, float repeatStart, boolean rotate, PolylineContainer way) {
 		WayDecorator.renderSymbol(symbol, display, priority, dy, alignCenter, repeat, repeatGap,
-				repeatStart, rotate, way.getCoordinatesAbsolute(), renderContext.labels);
+				repeatStart, rotate, way.getPixelCoordinatesAbsolute(), renderContext.labels);
 	}
 
 	@Override
 	public void renderWayText(final RenderContext renderContext, Display display, int priority, String textKey, float dy, Paint fill, Paint stroke, PolylineContainer way) {
-		WayDecorator.renderText(way.getTile(), textKey, display, priority, dy, fill, stroke, way.getCoordinatesAbsolute(), renderContext.labels);
+		WayDecorator.renderText(way.getTile(), textKey, display, priority, dy, fill, stroke, way.getPixelCoordinatesAbsolute(), renderContext.labels);
 	}
 
 	boolean renderBitmap(RenderContext renderContext) {
@@ -340,20 +368,18 @@ public class DatabaseRenderer implements RenderCallback {
 			// remove those elements that clash in this list already.
 			List<MapElementContainer> currentElementsOrdered = LayerUtil.collisionFreeOrdered(renderContext.labels);
 
-			// now we go through this list, ordered by priority, to see which can be drawn without clashing.
-			Iterator<MapElementContainer> currentMapElementsIterator = currentElementsOrdered.iterator();
-			while (currentMapElementsIterator.hasNext()) {
-				MapElementContainer current = currentMapElementsIterator.next();
-				for (MapElementContainer label : labelsToDraw) {
-					if (label.clashesWith(current)) {
-						currentMapElementsIterator.remove();
-						break;
-					}
+			// now we go through this list, ordered by priority, to see which can be drawn without clashing
+			// with the labels from the neighbouring tiles.
+			MapElementIndex mapElementIndex = new MapElementIndex();
+			for (MapElementContainer label : labelsToDraw) {
+				mapElementIndex.add(label);
+			}
+			for (MapElementContainer current : currentElementsOrdered) {
+				if (!mapElementIndex.clashesWith(current)) {
+					labelsToDraw.add(current);
 				}
 			}
 
-			labelsToDraw.addAll(currentElementsOrdered);
-
 			// update dependencies, add to the dependencies list all the elements that overlap to the
 			// neighbouring tiles, first clearing out the cache for this relation.
 			for (Tile tile : neighbours) {
@@ -22,26 +22,28 @@ final class GeometryUtils {
 	 * Calculates the center of the minimum bounding rectangle for the given coordinates.
 	 * 
 	 * @param coordinates
-	 *            the coordinates for which calculation should be done.
+	 *            the coordinates for which calculation should be done, x and y values alternately.
 	 * @return the center coordinates of the minimum bounding rectangle.
 	 */
-	static Point calculateCenterOfBoundingBox(Point[] coordinates) {
-		double pointXMin = coordinates[0].x;
-		double pointXMax = coordinates[0].x;
-		double pointYMin = coordinates[0].y;
-		double pointYMax = coordinates[0].y;
+	static Point calculateCenterOfBoundingBox(double[] coordinates) {
+		double pointXMin = coordinates[0];
+		double pointXMax = coordinates[0];
+		double pointYMin = coordinates[1];
+		double pointYMax = coordinates[1];
 
-		for (Point immutablePoint : coordinates) {
-			if (immutablePoint.x < pointXMin) {
-				pointXMin = immutablePoint.x;
-			} else if (immutablePoint.x > pointXMax) {
-				pointXMax = immutablePoint.x;
+		for (int i = 2; i < coordinates.length; i += 2) {
+			double x = coordinates[i];
+			double y = coordinates[i + 1];
+			if (x < pointXMin) {
+				pointXMin = x;
+			} else if (x > pointXMax) {
+				pointXMax = x;
 			}
 
-			if (immutablePoint.y < pointYMin) {
-				pointYMin = immutablePoint.y;
-			} else if (immutablePoint.y > pointYMax) {
-				pointYMax = immutablePoint.y;
+			if (y < pointYMin) {
+				pointYMin = y;
+			} else if (y > pointYMax) {
+				pointYMax = y;
 			}
 		}
 
@@ -16,6 +16,8 @@
  */
 package org.mapsforge.map.layer.renderer;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -28,14 +30,25 @@ import org.mapsforge.map.layer.Layer;
 import org.mapsforge.map.layer.cache.TileCache;
 import org.mapsforge.map.layer.queue.JobQueue;
 
-public class MapWorkerPool implements Runnable {
+/**
+ * A pool of rendering threads for a {@link TileRendererLayer}.
+ * <p>
+ * Every worker takes the most important job directly from the shared {@link JobQueue} as soon as it becomes idle, so
+ * no worker waits while jobs are queued and the queue order is kept. All rendering state is created per job, map
+ * files are read with per-call buffers, so workers do not share mutable state apart from the caches.
+ */
+public class MapWorkerPool {
+
+	/**
+	 * Estimated heap memory in bytes one rendering thread requires for the map data, labels and bitmap of a tile.
+	 */
+	private static final long MEMORY_PER_THREAD = 8 * 1024 * 1024;
 
 	// the default number of threads is one greater than the number of processors as one thread
-	// is likely to be blocked on I/O reading map data. Technically this value can change, so a
-	// better implementation, maybe one that also takes the available memory into account, would
-	// be good.
-	// For stability reasons (see #591), we set default number of threads to 1
-	public static final int DEFAULT_NUMBER_OF_THREADS = 1;//Runtime.getRuntime().availableProcessors() + 1;
+	// is likely to be blocked on I/O reading map data. On devices with little memory the number
+	// is reduced so that rendering can use at most a quarter of the heap.
+	public static final int DEFAULT_NUMBER_OF_THREADS = calculateNumberOfThreads(Runtime.getRuntime()
+			.availableProcessors(), Runtime.getRuntime().maxMemory());
 	public static int NUMBER_OF_THREADS = DEFAULT_NUMBER_OF_THREADS;
 
 	public static boolean DEBUG_TIMING = false;
@@ -45,13 +58,25 @@ public class MapWorkerPool implements Runnable {
 	private final AtomicLong totalTime = new AtomicLong();
 	private static final Logger LOGGER = Logger.getLogger(MapWorkerPool.class.getName());
 
+	/**
+	 * Calculates a safe number of rendering threads.
+	 *
+	 * @param availableProcessors the number of processors available to the virtual machine.
+	 * @param maxMemory the maximum heap memory in bytes.
+	 * @return the number of rendering threads, at least one.
+	 */
+	static int calculateNumberOfThreads(int availableProcessors, long maxMemory) {
+		long memoryLimit = maxMemory / 4 / MEMORY_PER_THREAD;
+		return (int) Math.max(1, Math.min(availableProcessors + 1, memoryLimit));
+	}
+
 	private final DatabaseRenderer databaseRenderer;
-	private ExecutorService self;
+	// the threads of workers which are waiting for a job, only these are interrupted when the workers are stopped
+	private final Set<Thread> idleWorkers = new HashSet<Thread>();
 	private ExecutorService workers;
 	private final JobQueue<RendererJob> jobQueue;
 	private final Layer layer;
 	private final TileCache tileCache;
-	private boolean inShutdown;
 
 	public MapWorkerPool(TileCache tileCache, JobQueue<RendererJob> jobQueue, DatabaseRenderer databaseRenderer, Layer layer) {
 		super();
@@ -60,90 +85,142 @@ public class MapWorkerPool implements Runnable {
 		this.jobQueue = jobQueue;
 		this.databaseRenderer = databaseRenderer;
 		this.layer = layer;
-		this.inShutdown = false;
 	}
 
-	public void start() {
-		this.self = Executors.newSingleThreadExecutor();
-		this.workers = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
-		this.self.execute(this);
+	/**
+	 * Starts the workers, has no effect if the workers are already running.
+	 */
+	public synchronized void start() {
+		if (this.workers != null && !this.workers.isShutdown()) {
+			return;
+		}
+		int numberOfThreads = Math.max(1, NUMBER_OF_THREADS);
+		this.workers = Executors.newFixedThreadPool(numberOfThreads);
+		for (int i = 0; i < numberOfThreads; ++i) {
+			this.workers.execute(new MapWorker(this.workers));
+		}
 	}
 
-	public void stop() {
-		this.inShutdown = true;
-		this.self.shutdown();
-		this.workers.shutdown();
+	/**
+	 * Stops the workers, jobs which are currently rendered are finished but their results are discarded.
+	 */
+	public synchronized void stop() {
+		if (this.workers != null) {
+			this.workers.shutdown();
+			// rendering threads are not interrupted, an interrupted read would close the channel of the map file
+			synchronized (this.idleWorkers) {
+				for (Thread thread : this.idleWorkers) {
+					thread.interrupt();
+				}
+			}
+		}
 	}
 
-	public void run() {
+	private void render(RendererJob rendererJob, ExecutorService executor) {
+		rendererJob.renderThemeFuture.incrementRefCount();
+		TileBitmap bitmap = null;
 		try {
-			while (!inShutdown) {
-				RendererJob rendererJob = this.jobQueue.get(NUMBER_OF_THREADS);
-				if (!this.tileCache.containsKey(rendererJob) || rendererJob.labelsOnly) {
-					if (!inShutdown) {
-						workers.execute(new MapWorker(rendererJob));
-					} else {
-						jobQueue.remove(rendererJob);
-					}
+			long start = 0;
+
+			if (DEBUG_TIMING) {
+				start = System.currentTimeMillis();
+				LOGGER.info("ConcurrentJobs " + concurrentJobs.incrementAndGet());
+			}
+
+			bitmap = this.databaseRenderer.executeJob(rendererJob);
+
+			if (executor.isShutdown() || (rendererJob.isCancelled() && bitmap == null)) {
+				return;
+			}
+
+			if (!rendererJob.labelsOnly && bitmap != null) {
+				this.tileCache.put(rendererJob, bitmap);
+				this.databaseRenderer.removeTileInProgress(rendererJob.tile);
+			}
+			this.layer.requestRedraw();
+
+			if (DEBUG_TIMING) {
+				long end = System.currentTimeMillis();
+				long te = totalExecutions.incrementAndGet();
+				long tt = totalTime.addAndGet(end - start);
+				if (te % 10 == 0) {
+					LOGGER.info("TIMING " + Long.toString(te) + " " + Double.toString(tt / te));
 				}
+				concurrentJobs.decrementAndGet();
+			}
+		} finally {
+			rendererJob.renderThemeFuture.decrementRefCount();
+			this.jobQueue.remove(rendererJob);
+			if (bitmap != null) {
+				bitmap.decrementRefCount();
 			}
-		} catch (InterruptedException e) {
-			LOGGER.log(Level.SEVERE, "MapWorkerPool interrupted", e);
-			// should get restarted by the ExecutorService
 		}
 	}
 
-	class MapWorker implements Runnable {
+	/**
+	 * @return true if the tile is cached and has been rendered from the current map data, false otherwise.
+	 */
+	static boolean isRendered(TileCache tileCache, RendererJob rendererJob) {
+		if (!tileCache.containsKey(rendererJob)) {
+			return false;
+		}
+		// the timestamp is looked up without decoding the tile
+		return rendererJob.mapDataStore.getDataTimestamp(rendererJob.tile) <= tileCache.getTimestamp(rendererJob);
+	}
+
+	private class MapWorker implements Runnable {
 
-		private final RendererJob rendererJob;
+		// the executor this worker belongs to, the worker ends once it has been shut down
+		private final ExecutorService executor;
 
-		MapWorker(RendererJob rendererJob) {
-			this.rendererJob = rendererJob;
-			this.rendererJob.renderThemeFuture.incrementRefCount();
+		MapWorker(ExecutorService executor) {
+			this.executor = executor;
 		}
 
+		@Override
 		public void run() {
-			TileBitmap bitmap = null;
 			try {
-				long start = 0;
-
-				if (inShutdown) {
-					return;
-				}
-
-				if (DEBUG_TIMING) {
-					start = System.currentTimeMillis();
-					LOGGER.info("ConcurrentJobs " + concurrentJobs.incrementAndGet());
-				}
-
-				bitmap = MapWorkerPool.this.databaseRenderer.executeJob(rendererJob);
-
-				if (inShutdown) {
-					return;
+				while (!this.executor.isShutdown()) {
+					RendererJob rendererJob = takeJob();
+					if (rendererJob == null) {
+						return;
+					}
+					if (this.executor.isShutdown() || rendererJob.isCancelled()
+							|| (!rendererJob.labelsOnly && isRendered(MapWorkerPool.this.tileCache, rendererJob))) {
+						MapWorkerPool.this.jobQueue.remove(rendererJob);
+						continue;
+					}
+					render(rendererJob, this.executor);
 				}
+			} catch (InterruptedException e) {
+				// the workers have been stopped while this worker was waiting for a job
+				LOGGER.log(Level.FINE, "MapWorker interrupted", e);
+			}
+		}
 
-				if (!rendererJob.labelsOnly && bitmap != null) {
-					MapWorkerPool.this.tileCache.put(rendererJob, bitmap);
-					MapWorkerPool.this.databaseRenderer.removeTileInProgress(rendererJob.tile);
-				}
-				MapWorkerPool.this.layer.requestRedraw();
-
-				if (DEBUG_TIMING) {
-					long end = System.currentTimeMillis();
-					long te = totalExecutions.incrementAndGet();
-					long tt = totalTime.addAndGet(end - start);
-					if (te % 10 == 0) {
-						LOGGER.info("TIMING " + Long.toString(te) + " " + Double.toString(tt / te));
-					}
-					concurrentJobs.decrementAndGet();
+		/**
+		 * Blocks until the next job is available.
+		 * 
+		 * @return the next job or null, if the workers have been stopped.
+		 */
+		private RendererJob takeJob() throws InterruptedException {
+			Thread thread = Thread.currentThread();
+			synchronized (MapWorkerPool.this.idleWorkers) {
+				// checked under the lock, so that stop() either sees this thread waiting or this thread sees the stop
+				if (this.executor.isShutdown()) {
+					return null;
 				}
+				MapWorkerPool.this.idleWorkers.add(thread);
+			}
+			try {
+				return MapWorkerPool.this.jobQueue.get();
 			} finally {
-				this.rendererJob.renderThemeFuture.decrementRefCount();
-				jobQueue.remove(rendererJob);
-				if (bitmap != null) {
-					bitmap.decrementRefCount();
+				synchronized (MapWorkerPool.this.idleWorkers) {
+					MapWorkerPool.this.idleWorkers.remove(thread);
+					// clears an interrupt which arrived after the job had been taken, it must not reach the renderer
+					Thread.interrupted();
 				}
 			}
 		}
 	}
-}
\ No newline at end of file
+}
@@ -21,6 +21,7 @@ import org.mapsforge.core.model.LatLong;
 import org.mapsforge.core.model.Point;
 import org.mapsforge.core.model.Tag;
 import org.mapsforge.core.model.Tile;
+import org.mapsforge.core.util.LatLongUtils;
 import org.mapsforge.core.util.MercatorProjection;
 import org.mapsforge.map.reader.Way;
 
@@ -31,6 +32,10 @@ import org.mapsforge.map.reader.Way;
  * pixel coordinates of the way as many ways will not actually be rendered on a
  * map. In order to save memory, after evaluation, the internally stored way is
  * released.
+ *
+ * The pixel coordinates are stored in flat arrays with alternating x and y values,
+ * one array per way segment, so that rendering does not create an object per way
+ * node. The {@link Point} based accessors are only kept for compatibility.
  */
 
 public class PolylineContainer implements ShapeContainer {
@@ -38,6 +43,7 @@ public class PolylineContainer implements ShapeContainer {
 	private Point center;
 	private Point[][] coordinatesAbsolute;
 	private Point[][] coordinatesRelativeToTile;
+	private double[][] pixelCoordinatesAbsolute;
 	private final List<Tag> tags;
 	private final byte layer;
 	private final Tile tile;
@@ -51,14 +57,21 @@ public class PolylineContainer implements ShapeContainer {
 		this.tile = tile;
 		layer = way.layer;
 		this.way = way;
-		this.isClosedWay = isClosedWay(way.latLongs[0]);
+		if (way.latLongs != null) {
+			this.isClosedWay = isClosedWay(way.latLongs[0]);
+		} else {
+			this.isClosedWay = isClosedWay(way.coordinates[0]);
+		}
 	}
 
 	PolylineContainer(Point[] coordinates, Tile tile, List tags) {
-		this.coordinatesAbsolute = new Point[1][];
+		this.coordinatesAbsolute = null;
 		this.coordinatesRelativeToTile = null;
-		this.coordinatesAbsolute[0] = new Point[coordinates.length];
-		System.arraycopy(coordinates, 0, coordinatesAbsolute[0], 0, coordinates.length);
+		this.pixelCoordinatesAbsolute = new double[1][coordinates.length * 2];
+		for (int i = 0; i < coordinates.length; ++i) {
+			this.pixelCoordinatesAbsolute[0][2 * i] = coordinates[i].x;
+			this.pixelCoordinatesAbsolute[0][2 * i + 1] = coordinates[i].y;
+		}
 		this.tags = tags;
 		this.tile = tile;
 		this.layer = 0;
@@ -67,23 +80,21 @@ public class PolylineContainer implements ShapeContainer {
 
 	public Point getCenterAbsolute() {
 		if (null == center) {
-			this.center = GeometryUtils.calculateCenterOfBoundingBox(getCoordinatesAbsolute()[0]);
+			this.center = GeometryUtils.calculateCenterOfBoundingBox(getPixelCoordinatesAbsolute()[0]);
 		}
 		return this.center;
 	}
 
 	public Point[][] getCoordinatesAbsolute() {
-		// deferred evaluation as some PolyLineContainers will never be drawn. However,
-		// to save memory, after computing the absolute coordinates, the way is released.
 		if (coordinatesAbsolute == null) {
-			coordinatesAbsolute = new Point[way.latLongs.length][];
-			for (int i = 0; i < way.latLongs.length; ++i) {
-				coordinatesAbsolute[i] = new Point[way.latLongs[i].length];
-				for (int j = 0; j < way.latLongs[i].length; ++j) {
-					coordinatesAbsolute[i][j] = MercatorProjection.getPixelAbsolute(way.latLongs[i][j], tile.mapSize);
+			double[][] pixelCoordinates = getPixelCoordinatesAbsolute();
+			coordinatesAbsolute = new Point[pixelCoordinates.length][];
+			for (int i = 0; i < pixelCoordinates.length; ++i) {
+				coordinatesAbsolute[i] = new Point[pixelCoordinates[i].length / 2];
+				for (int j = 0; j < coordinatesAbsolute[i].length; ++j) {
+					coordinatesAbsolute[i][j] = new Point(pixelCoordinates[i][2 * j], pixelCoordinates[i][2 * j + 1]);
 				}
 			}
-			this.way = null;
 		}
 		return coordinatesAbsolute;
 	}
@@ -106,6 +117,47 @@ public class PolylineContainer implements ShapeContainer {
 		return layer;
 	}
 
+	/**
+	 * Returns the absolute pixel coordinates of the way, the x and y values of each way node are stored alternately
+	 * in one array per way segment. The returned arrays must not be modified.
+	 *
+	 * @return the absolute pixel coordinates of all way segments.
+	 */
+	public double[][] getPixelCoordinatesAbsolute() {
+		// deferred evaluation as some PolyLineContainers will never be drawn. However,
+		// to save memory, after computing the absolute coordinates, the way is released.
+		if (pixelCoordinatesAbsolute == null) {
+			long mapSize = tile.mapSize;
+			if (way.latLongs != null) {
+				pixelCoordinatesAbsolute = new double[way.latLongs.length][];
+				for (int i = 0; i < way.latLongs.length; ++i) {
+					LatLong[] latLongs = way.latLongs[i];
+					double[] pixels = new double[latLongs.length * 2];
+					for (int j = 0; j < latLongs.length; ++j) {
+						pixels[2 * j] = MercatorProjection.longitudeToPixelX(latLongs[j].longitude, mapSize);
+						pixels[2 * j + 1] = MercatorProjection.latitudeToPixelY(latLongs[j].latitude, mapSize);
+					}
+					pixelCoordinatesAbsolute[i] = pixels;
+				}
+			} else {
+				pixelCoordinatesAbsolute = new double[way.coordinates.length][];
+				for (int i = 0; i < way.coordinates.length; ++i) {
+					int[] coordinates = way.coordinates[i];
+					double[] pixels = new double[coordinates.length];
+					for (int j = 0; j < coordinates.length; j += 2) {
+						pixels[j] = MercatorProjection.longitudeToPixelX(
+								LatLongUtils.microdegreesToDegrees(coordinates[j + 1]), mapSize);
+						pixels[j + 1] = MercatorProjection.latitudeToPixelY(
+								LatLongUtils.microdegreesToDegrees(coordinates[j]), mapSize);
+					}
+					pixelCoordinatesAbsolute[i] = pixels;
+				}
+			}
+			this.way = null;
+		}
+		return pixelCoordinatesAbsolute;
+	}
+
 	@Override
 	public ShapeType getShapeType() {
 		return ShapeType.POLYLINE;
@@ -127,4 +179,9 @@ public class PolylineContainer implements ShapeContainer {
 		return latLongs[0].distance(latLongs[latLongs.length -1]) < 0.000000001;
 	}
 
+	private boolean isClosedWay(int[] coordinates) {
+		return coordinates[0] == coordinates[coordinates.length - 2]
+				&& coordinates[1] == coordinates[coordinates.length - 1];
+	}
+
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.renderer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for a run of a {@link TileBatchRenderer}, shared by all of its rendering threads.
+ */
+public class RenderStatistics {
+	private static final double MILLISECONDS_PER_SECOND = 1000;
+
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong renderedTiles = new AtomicLong();
+	private final AtomicLong skippedTiles = new AtomicLong();
+	private final long startTime;
+	private final long totalTiles;
+
+	RenderStatistics(long totalTiles) {
+		this.totalTiles = totalTiles;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the number of tiles which could not be rendered.
+	 */
+	public long getFailures() {
+		return this.failures.get();
+	}
+
+	/**
+	 * @return the number of tiles which have been processed so far, whether rendered, skipped or failed.
+	 */
+	public long getProcessedTiles() {
+		return this.renderedTiles.get() + this.skippedTiles.get() + this.failures.get();
+	}
+
+	/**
+	 * @return the number of tiles which have been rendered and written to the tile cache.
+	 */
+	public long getRenderedTiles() {
+		return this.renderedTiles.get();
+	}
+
+	/**
+	 * @return the number of tiles which were skipped because the tile cache already contained them.
+	 */
+	public long getSkippedTiles() {
+		return this.skippedTiles.get();
+	}
+
+	/**
+	 * @return the average number of rendered tiles per second since the start of the run.
+	 */
+	public double getTilesPerSecond() {
+		long time = Math.max(1, System.currentTimeMillis() - this.startTime);
+		return this.renderedTiles.get() * MILLISECONDS_PER_SECOND / time;
+	}
+
+	/**
+	 * @return the number of tiles in the area and zoom range of the run.
+	 */
+	public long getTotalTiles() {
+		return this.totalTiles;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("processed=");
+		stringBuilder.append(getProcessedTiles());
+		stringBuilder.append('/');
+		stringBuilder.append(getTotalTiles());
+		stringBuilder.append(", rendered=");
+		stringBuilder.append(getRenderedTiles());
+		stringBuilder.append(", skipped=");
+		stringBuilder.append(getSkippedTiles());
+		stringBuilder.append(", failures=");
+		stringBuilder.append(getFailures());
+		stringBuilder.append(", tilesPerSecond=");
+		stringBuilder.append(getTilesPerSecond());
+		return stringBuilder.toString();
+	}
+
+	void addFailure() {
+		this.failures.incrementAndGet();
+	}
+
+	void addRenderedTile() {
+		this.renderedTiles.incrementAndGet();
+	}
+
+	void addSkippedTile() {
+		this.skippedTiles.incrementAndGet();
+	}
+}
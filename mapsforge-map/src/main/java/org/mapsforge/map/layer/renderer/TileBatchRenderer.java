@@ -0,0 +1,313 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.renderer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.core.graphics.GraphicFactory;
+import org.mapsforge.core.graphics.TileBitmap;
+import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.core.model.Tile;
+import org.mapsforge.map.layer.cache.TileCache;
+import org.mapsforge.map.model.DisplayModel;
+import org.mapsforge.map.reader.MapDataStore;
+import org.mapsforge.map.rendertheme.XmlRenderTheme;
+import org.mapsforge.map.rendertheme.rule.RenderThemeFuture;
+
+/**
+ * Renders all tiles of an area over a range of zoom levels into a {@link TileCache}, without a map view.
+ * <p>
+ * The tiles are rendered with labels by a {@link DatabaseRenderer} on several threads. All threads take their tiles
+ * from one {@link TileSequence}, so tiles which are rendered at the same time are close to each other. This keeps the
+ * map data which is read and the labels which are shared with neighbouring tiles local. Tiles which the cache already
+ * contains from the current map data are skipped unless overwriting is enabled, so an interrupted run can be resumed.
+ * <p>
+ * The labels which tiles leave for their neighbours are dropped once all tiles of a zoom level have been rendered,
+ * so the memory of a run does not grow with the number of zoom levels.
+ * <p>
+ * Progress is logged periodically, the returned {@link RenderStatistics} summarize the run. The render theme is
+ * compiled once and shared by all runs, {@link #destroy()} releases it.
+ */
+public class TileBatchRenderer {
+	private static final Logger LOGGER = Logger.getLogger(TileBatchRenderer.class.getName());
+
+	/**
+	 * Interval in milliseconds between two progress messages.
+	 */
+	private static final long PROGRESS_INTERVAL = 10000;
+
+	/**
+	 * @param boundingBox
+	 *            the area to render.
+	 * @param zoomLevelMin
+	 *            the first zoom level to render.
+	 * @param zoomLevelMax
+	 *            the last zoom level to render.
+	 * @param tileSize
+	 *            the tile size in pixels.
+	 * @return the number of tiles of the area over the range of zoom levels.
+	 */
+	public static long getTileCount(BoundingBox boundingBox, byte zoomLevelMin, byte zoomLevelMax, int tileSize) {
+		return new TileSequence(boundingBox, zoomLevelMin, zoomLevelMax, tileSize).getSize();
+	}
+
+	private volatile boolean cancelled;
+	private final DisplayModel displayModel;
+	private final GraphicFactory graphicFactory;
+	private boolean isTransparent;
+	private final MapDataStore mapDataStore;
+	private int numberOfThreads;
+	private boolean overwrite;
+	private final RenderThemeFuture renderThemeFuture;
+	private float textScale;
+	private final TileCache tileCache;
+
+	/**
+	 * @param mapDataStore
+	 *            the map data to render.
+	 * @param tileCache
+	 *            the cache which receives the rendered tiles.
+	 * @param xmlRenderTheme
+	 *            the render theme to use.
+	 * @param displayModel
+	 *            the display model which defines the tile size and scale.
+	 * @param graphicFactory
+	 *            the graphicFactory implementation to use.
+	 */
+	public TileBatchRenderer(MapDataStore mapDataStore, TileCache tileCache, XmlRenderTheme xmlRenderTheme,
+			DisplayModel displayModel, GraphicFactory graphicFactory) {
+		this.mapDataStore = mapDataStore;
+		this.tileCache = tileCache;
+		this.displayModel = displayModel;
+		this.graphicFactory = graphicFactory;
+		this.numberOfThreads = MapWorkerPool.DEFAULT_NUMBER_OF_THREADS;
+		this.textScale = 1;
+		this.renderThemeFuture = new RenderThemeFuture(graphicFactory, xmlRenderTheme, displayModel);
+		this.renderThemeFuture.incrementRefCount();
+	}
+
+	/**
+	 * Stops a running {@link #render} call, tiles which are currently rendered are finished first.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	/**
+	 * Releases the render theme, this renderer must not be used afterwards.
+	 */
+	public void destroy() {
+		this.renderThemeFuture.decrementRefCount();
+	}
+
+	public int getNumberOfThreads() {
+		return this.numberOfThreads;
+	}
+
+	public float getTextScale() {
+		return this.textScale;
+	}
+
+	public boolean isOverwrite() {
+		return this.overwrite;
+	}
+
+	public boolean isTransparent() {
+		return this.isTransparent;
+	}
+
+	/**
+	 * Renders all tiles of an area over a range of zoom levels and waits until they have been written to the tile
+	 * cache.
+	 *
+	 * @param boundingBox
+	 *            the area to render.
+	 * @param zoomLevelMin
+	 *            the first zoom level to render.
+	 * @param zoomLevelMax
+	 *            the last zoom level to render.
+	 * @return the statistics of this run.
+	 * @throws IllegalArgumentException
+	 *             if the range of zoom levels or the render theme is invalid.
+	 * @throws InterruptedException
+	 *             if the calling thread was interrupted while waiting, rendering is cancelled then.
+	 */
+	public RenderStatistics render(BoundingBox boundingBox, byte zoomLevelMin, byte zoomLevelMax)
+			throws InterruptedException {
+		if (zoomLevelMin < 0 || zoomLevelMin > zoomLevelMax) {
+			throw new IllegalArgumentException("invalid zoom levels: " + zoomLevelMin + '-' + zoomLevelMax);
+		}
+		this.cancelled = false;
+
+		TileSequence tileSequence = new TileSequence(boundingBox, zoomLevelMin, zoomLevelMax,
+				this.displayModel.getTileSize());
+		RenderStatistics renderStatistics = new RenderStatistics(tileSequence.getSize());
+		// compiles the render theme on the first run, later runs return immediately
+		this.renderThemeFuture.run();
+		try {
+			this.renderThemeFuture.get();
+		} catch (ExecutionException e) {
+			throw new IllegalArgumentException("invalid render theme", e.getCause());
+		}
+		DatabaseRenderer databaseRenderer = new DatabaseRenderer(this.mapDataStore, this.graphicFactory, this.tileCache);
+
+		TileQueue tileQueue = new TileQueue(tileSequence, databaseRenderer);
+
+		int threads = Math.max(1, this.numberOfThreads);
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		try {
+			for (int i = 0; i < threads; ++i) {
+				workers.execute(new RenderWorker(databaseRenderer, renderStatistics, tileQueue));
+			}
+			workers.shutdown();
+			while (!workers.awaitTermination(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS)) {
+				LOGGER.info(renderStatistics.toString());
+			}
+		} finally {
+			if (!workers.isTerminated()) {
+				this.cancelled = true;
+			}
+		}
+		LOGGER.info(renderStatistics.toString());
+		return renderStatistics;
+	}
+
+	/**
+	 * @param numberOfThreads
+	 *            the number of rendering threads, defaults to {@link MapWorkerPool#DEFAULT_NUMBER_OF_THREADS}.
+	 */
+	public void setNumberOfThreads(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * @param overwrite
+	 *            true to render tiles which the tile cache already contains, false to skip them.
+	 */
+	public void setOverwrite(boolean overwrite) {
+		this.overwrite = overwrite;
+	}
+
+	public void setTextScale(float textScale) {
+		this.textScale = textScale;
+	}
+
+	/**
+	 * @param isTransparent
+	 *            true to render tiles with a transparent background, false to fill it with the map background.
+	 */
+	public void setTransparent(boolean isTransparent) {
+		this.isTransparent = isTransparent;
+	}
+
+	private void render(Tile tile, DatabaseRenderer databaseRenderer, RenderStatistics renderStatistics) {
+		RendererJob rendererJob = new RendererJob(tile, this.mapDataStore, this.renderThemeFuture, this.displayModel,
+				this.textScale, this.isTransparent, false);
+		if (!this.overwrite && MapWorkerPool.isRendered(this.tileCache, rendererJob)) {
+			renderStatistics.addSkippedTile();
+			return;
+		}
+
+		// a reference per tile keeps the render theme alive if the renderer is destroyed during a cancelled run
+		this.renderThemeFuture.incrementRefCount();
+		TileBitmap bitmap = null;
+		try {
+			bitmap = databaseRenderer.executeJob(rendererJob);
+			if (bitmap == null) {
+				renderStatistics.addFailure();
+				return;
+			}
+			this.tileCache.put(rendererJob, bitmap);
+			renderStatistics.addRenderedTile();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.SEVERE, "failed to render tile: " + tile, e);
+			renderStatistics.addFailure();
+		} finally {
+			databaseRenderer.removeTileInProgress(tile);
+			this.renderThemeFuture.decrementRefCount();
+			if (bitmap != null) {
+				bitmap.decrementRefCount();
+			}
+		}
+	}
+
+	/**
+	 * Hands out the tiles of a run to the workers and keeps track of the tiles which are still rendered per zoom
+	 * level, so that the label dependencies of a zoom level can be removed as soon as all its tiles are done.
+	 */
+	private static class TileQueue {
+		private final DatabaseRenderer databaseRenderer;
+		private final int[] pendingTiles = new int[Byte.MAX_VALUE + 1];
+		private final TileSequence tileSequence;
+		private byte zoomLevel = -1;
+
+		TileQueue(TileSequence tileSequence, DatabaseRenderer databaseRenderer) {
+			this.tileSequence = tileSequence;
+			this.databaseRenderer = databaseRenderer;
+		}
+
+		synchronized void finish(Tile tile) {
+			// the sequence is ordered by zoom level, so no further tiles of a previous zoom level will be handed out
+			if (--this.pendingTiles[tile.zoomLevel] == 0
+					&& (tile.zoomLevel != this.zoomLevel || !this.tileSequence.hasNext())) {
+				this.databaseRenderer.removeTileData(tile.zoomLevel);
+			}
+		}
+
+		synchronized Tile next() {
+			if (!this.tileSequence.hasNext()) {
+				return null;
+			}
+			Tile tile = this.tileSequence.next();
+			if (tile.zoomLevel != this.zoomLevel) {
+				if (this.zoomLevel >= 0 && this.pendingTiles[this.zoomLevel] == 0) {
+					this.databaseRenderer.removeTileData(this.zoomLevel);
+				}
+				this.zoomLevel = tile.zoomLevel;
+			}
+			++this.pendingTiles[tile.zoomLevel];
+			return tile;
+		}
+	}
+
+	private class RenderWorker implements Runnable {
+		private final DatabaseRenderer databaseRenderer;
+		private final RenderStatistics renderStatistics;
+		private final TileQueue tileQueue;
+
+		RenderWorker(DatabaseRenderer databaseRenderer, RenderStatistics renderStatistics, TileQueue tileQueue) {
+			this.databaseRenderer = databaseRenderer;
+			this.renderStatistics = renderStatistics;
+			this.tileQueue = tileQueue;
+		}
+
+		@Override
+		public void run() {
+			Tile tile;
+			while (!TileBatchRenderer.this.cancelled && (tile = this.tileQueue.next()) != null) {
+				try {
+					render(tile, this.databaseRenderer, this.renderStatistics);
+				} finally {
+					this.tileQueue.finish(tile);
+				}
+			}
+		}
+	}
+}
@@ -5,6 +5,7 @@ import org.mapsforge.core.model.Tile;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -80,6 +81,20 @@ public class TileDependencies {
 
 	}
 
+	/**
+	 * Cache maintenance operation to remove data for all tiles of a zoom level. This should be executed
+	 * if no tile of the zoom level will be drawn again, e.g. by the batch renderer.
+	 * @param zoomLevel
+	 */
+	synchronized void removeTileData(byte zoomLevel) {
+		Iterator<Tile> iterator = overlapData.keySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().zoomLevel == zoomLevel) {
+				iterator.remove();
+			}
+		}
+	}
+
 	synchronized boolean isTileInProgress(Tile tile) {
 		return tilesInProgress.contains(tile);
 	}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.renderer;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.core.model.Tile;
+import org.mapsforge.core.util.MercatorProjection;
+
+/**
+ * Enumerates the tiles of a bounding box over a range of zoom levels in a spatially coherent order.
+ * <p>
+ * Each zoom level is divided into square blocks of tiles. The blocks are visited row by row in alternating
+ * directions and the tiles of a block row by row, so consecutive tiles are always close to each other. Tiles are
+ * created on demand, the sequence needs no memory proportional to the number of tiles.
+ * <p>
+ * This class is not thread safe.
+ */
+class TileSequence implements Iterator<Tile> {
+	/**
+	 * Edge length in tiles of a block.
+	 */
+	static final int BLOCK_SIZE = 8;
+
+	private int blockColumn;
+	private int blockRow;
+	private int blocksX;
+	private int blocksY;
+	private final BoundingBox boundingBox;
+	private int maxTileX;
+	private int maxTileY;
+	private int minTileX;
+	private int minTileY;
+	private Tile next;
+	private final long size;
+	private int tileInBlock;
+	private final int tileSize;
+	private byte zoomLevel;
+	private final byte zoomLevelMax;
+
+	/**
+	 * @param boundingBox
+	 *            the area to enumerate.
+	 * @param zoomLevelMin
+	 *            the first zoom level.
+	 * @param zoomLevelMax
+	 *            the last zoom level.
+	 * @param tileSize
+	 *            the tile size in pixels.
+	 */
+	TileSequence(BoundingBox boundingBox, byte zoomLevelMin, byte zoomLevelMax, int tileSize) {
+		this.boundingBox = boundingBox;
+		this.zoomLevelMax = zoomLevelMax;
+		this.tileSize = tileSize;
+
+		long tiles = 0;
+		for (int zoom = zoomLevelMin; zoom <= zoomLevelMax; ++zoom) {
+			startZoomLevel((byte) zoom);
+			tiles += (long) (this.maxTileX - this.minTileX + 1) * (this.maxTileY - this.minTileY + 1);
+		}
+		this.size = tiles;
+
+		if (zoomLevelMin <= zoomLevelMax) {
+			startZoomLevel(zoomLevelMin);
+			this.next = findNext();
+		}
+	}
+
+	/**
+	 * @return the number of tiles in this sequence, including those which have been returned already.
+	 */
+	long getSize() {
+		return this.size;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return this.next != null;
+	}
+
+	@Override
+	public Tile next() {
+		if (this.next == null) {
+			throw new NoSuchElementException();
+		}
+		Tile tile = this.next;
+		this.next = findNext();
+		return tile;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private Tile findNext() {
+		while (true) {
+			if (this.blockRow == this.blocksY) {
+				if (this.zoomLevel == this.zoomLevelMax) {
+					return null;
+				}
+				startZoomLevel((byte) (this.zoomLevel + 1));
+				continue;
+			}
+
+			// odd block rows are traversed from right to left
+			int column = this.blockRow % 2 == 0 ? this.blockColumn : this.blocksX - 1 - this.blockColumn;
+			int blockX = this.minTileX + column * BLOCK_SIZE;
+			int blockY = this.minTileY + this.blockRow * BLOCK_SIZE;
+			int blockWidth = Math.min(BLOCK_SIZE, this.maxTileX - blockX + 1);
+			int blockHeight = Math.min(BLOCK_SIZE, this.maxTileY - blockY + 1);
+
+			if (this.tileInBlock < blockWidth * blockHeight) {
+				int tileX = blockX + this.tileInBlock % blockWidth;
+				int tileY = blockY + this.tileInBlock / blockWidth;
+				++this.tileInBlock;
+				return new Tile(tileX, tileY, this.zoomLevel, this.tileSize);
+			}
+
+			this.tileInBlock = 0;
+			if (++this.blockColumn == this.blocksX) {
+				this.blockColumn = 0;
+				++this.blockRow;
+			}
+		}
+	}
+
+	private void startZoomLevel(byte zoomLevel) {
+		this.zoomLevel = zoomLevel;
+		this.minTileX = MercatorProjection.longitudeToTileX(this.boundingBox.minLongitude, zoomLevel);
+		this.maxTileX = MercatorProjection.longitudeToTileX(this.boundingBox.maxLongitude, zoomLevel);
+		this.minTileY = MercatorProjection.latitudeToTileY(this.boundingBox.maxLatitude, zoomLevel);
+		this.maxTileY = MercatorProjection.latitudeToTileY(this.boundingBox.minLatitude, zoomLevel);
+		this.blocksX = (this.maxTileX - this.minTileX + BLOCK_SIZE) / BLOCK_SIZE;
+		this.blocksY = (this.maxTileY - this.minTileY + BLOCK_SIZE) / BLOCK_SIZE;
+		this.blockColumn = 0;
+		this.blockRow = 0;
+		this.tileInBlock = 0;
+	}
+}
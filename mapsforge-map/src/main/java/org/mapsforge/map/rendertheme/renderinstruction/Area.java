@@ -17,8 +17,8 @@
 package org.mapsforge.map.rendertheme.renderinstruction;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mapsforge.core.graphics.Bitmap;
 import org.mapsforge.core.graphics.Cap;
@@ -67,7 +67,7 @@ public class Area extends RenderInstruction {
 		this.stroke.setStyle(Style.STROKE);
 		this.stroke.setStrokeCap(Cap.ROUND);
 
-		this.strokes = new HashMap<>();
+		this.strokes = new ConcurrentHashMap<>();
 
 		extractValues(elementName, pullParser);
 	}
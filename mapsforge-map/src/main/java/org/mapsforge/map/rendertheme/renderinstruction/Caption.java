@@ -36,8 +36,8 @@ import org.mapsforge.map.rendertheme.XmlUtils;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a text label on the map.
@@ -77,13 +77,13 @@ public class Caption extends RenderInstruction {
 		this.fill = graphicFactory.createPaint();
 		this.fill.setColor(Color.BLACK);
 		this.fill.setStyle(Style.FILL);
-		this.fills = new HashMap<>();
+		this.fills = new ConcurrentHashMap<>();
 
 		this.stroke = graphicFactory.createPaint();
 		this.stroke.setColor(Color.BLACK);
 		this.stroke.setStyle(Style.STROKE);
-		this.strokes = new HashMap<>();
-		this.dyScaled = new HashMap<>();
+		this.strokes = new ConcurrentHashMap<>();
+		this.dyScaled = new ConcurrentHashMap<>();
 
 
 		this.display = Display.IFSPACE;
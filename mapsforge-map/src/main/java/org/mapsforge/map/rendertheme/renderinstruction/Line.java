@@ -17,8 +17,8 @@
 package org.mapsforge.map.rendertheme.renderinstruction;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.mapsforge.core.graphics.Bitmap;
@@ -66,8 +66,8 @@ public class Line extends RenderInstruction {
 		this.stroke.setStyle(Style.STROKE);
 		this.stroke.setStrokeCap(Cap.ROUND);
 		this.stroke.setStrokeJoin(Join.ROUND);
-		this.strokes = new HashMap<>();
-		this.dyScaled = new HashMap<>();
+		this.strokes = new ConcurrentHashMap<>();
+		this.dyScaled = new ConcurrentHashMap<>();
 
 		extractValues(graphicFactory, displayModel, elementName, pullParser, relativePathPrefix);
 	}
@@ -17,8 +17,8 @@
 package org.mapsforge.map.rendertheme.renderinstruction;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mapsforge.core.graphics.Bitmap;
 import org.mapsforge.core.graphics.Display;
@@ -43,8 +43,8 @@ public class LineSymbol extends RenderInstruction {
 	private static final float REPEAT_START_DEFAULT = 30f;
 
 	private boolean alignCenter;
-	private Bitmap bitmap;
-	private boolean bitmapInvalid;
+	private volatile Bitmap bitmap;
+	private volatile boolean bitmapInvalid;
 	private Display display;
 	private float dy;
 	private final Map<Byte, Float> dyScaled;
@@ -63,7 +63,7 @@ public class LineSymbol extends RenderInstruction {
 		this.display = Display.IFSPACE;
 		this.rotate = true;
 		this.relativePathPrefix = relativePathPrefix;
-		this.dyScaled = new HashMap<>();
+		this.dyScaled = new ConcurrentHashMap<>();
 
 		extractValues(elementName, pullParser);
 	}
@@ -88,10 +88,15 @@ public class LineSymbol extends RenderInstruction {
 		}
 
 		if (this.bitmap == null && !this.bitmapInvalid) {
-			try {
-				this.bitmap = createBitmap(relativePathPrefix, src);
-			} catch (IOException ioException) {
-				this.bitmapInvalid = true;
+			synchronized (this) {
+				// the bitmap must only be created once, even if several threads render at the same time
+				if (this.bitmap == null && !this.bitmapInvalid) {
+					try {
+						this.bitmap = createBitmap(relativePathPrefix, src);
+					} catch (IOException ioException) {
+						this.bitmapInvalid = true;
+					}
+				}
 			}
 		}
 
@@ -33,8 +33,8 @@ import org.mapsforge.map.rendertheme.XmlUtils;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a text along a polyline on the map.
@@ -59,14 +59,14 @@ public class PathText extends RenderInstruction {
 		this.fill.setColor(Color.BLACK);
 		this.fill.setStyle(Style.FILL);
 		this.fill.setTextAlign(Align.CENTER);
-		this.fills = new HashMap<>();
+		this.fills = new ConcurrentHashMap<>();
 
 		this.stroke = graphicFactory.createPaint();
 		this.stroke.setColor(Color.BLACK);
 		this.stroke.setStyle(Style.STROKE);
 		this.stroke.setTextAlign(Align.CENTER);
-		this.strokes = new HashMap<>();
-		this.dyScaled = new HashMap<>();
+		this.strokes = new ConcurrentHashMap<>();
+		this.dyScaled = new ConcurrentHashMap<>();
 		this.display = Display.IFSPACE;
 
 		extractValues(graphicFactory, displayModel, elementName, pullParser);
@@ -35,8 +35,8 @@ import org.xmlpull.v1.XmlPullParserException;
  * Represents an icon on the map.
  */
 public class Symbol extends RenderInstruction {
-	private Bitmap bitmap;
-	private boolean bitmapInvalid;
+	private volatile Bitmap bitmap;
+	private volatile boolean bitmapInvalid;
 	private Display display;
 	private String id;
 	private int priority;
@@ -59,11 +59,16 @@ public class Symbol extends RenderInstruction {
 	}
 
 	public Bitmap getBitmap() {
-		if (this.bitmap == null && !bitmapInvalid) {
-			try {
-				this.bitmap = createBitmap(relativePathPrefix, src);
-			} catch (IOException ioException) {
-				this.bitmapInvalid = true;
+		if (this.bitmap == null && !this.bitmapInvalid) {
+			synchronized (this) {
+				// the bitmap must only be created once, even if several threads render at the same time
+				if (this.bitmap == null && !this.bitmapInvalid) {
+					try {
+						this.bitmap = createBitmap(relativePathPrefix, src);
+					} catch (IOException ioException) {
+						this.bitmapInvalid = true;
+					}
+				}
 			}
 		}
 		return this.bitmap;
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.rendertheme.rule;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mapsforge.map.rendertheme.renderinstruction.RenderInstruction;
+
+/**
+ * A thread safe cache for the render instructions that match a way or node. Lookups never block, so any number of
+ * rendering threads can match against the same {@link RenderTheme} at the same time.
+ * <p>
+ * Keeping a global access order would require a lock for every lookup, instead a fraction of arbitrary entries is
+ * removed when the cache is full.
+ */
+class MatchingCache {
+	/**
+	 * Fraction of the capacity that is removed when the cache is full.
+	 */
+	private static final int EVICTION_DIVISOR = 8;
+
+	private final int capacity;
+	private final ConcurrentHashMap<MatchingCacheKey, List<RenderInstruction>> map;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of entries in this cache.
+	 */
+	MatchingCache(int capacity) {
+		this.capacity = capacity;
+		this.map = new ConcurrentHashMap<MatchingCacheKey, List<RenderInstruction>>(capacity);
+	}
+
+	void clear() {
+		this.map.clear();
+	}
+
+	/**
+	 * @return the cached render instructions or null, if the key is not cached.
+	 */
+	List<RenderInstruction> get(MatchingCacheKey matchingCacheKey) {
+		return this.map.get(matchingCacheKey);
+	}
+
+	/**
+	 * Adds the render instructions for a key, the list must not be modified afterwards.
+	 */
+	void put(MatchingCacheKey matchingCacheKey, List<RenderInstruction> renderInstructions) {
+		if (this.map.size() >= this.capacity) {
+			int evictions = Math.max(1, this.capacity / EVICTION_DIVISOR);
+			Iterator<MatchingCacheKey> iterator = this.map.keySet().iterator();
+			while (evictions > 0 && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+				--evictions;
+			}
+		}
+		this.map.put(matchingCacheKey, renderInstructions);
+	}
+
+	int size() {
+		return this.map.size();
+	}
+}
@@ -15,11 +15,11 @@
 package org.mapsforge.map.rendertheme.rule;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.mapsforge.core.util.LRUCache;
 import org.mapsforge.map.layer.renderer.PolylineContainer;
 import org.mapsforge.map.reader.PointOfInterest;
 import org.mapsforge.map.rendertheme.RenderCallback;
@@ -28,6 +28,9 @@ import org.mapsforge.map.rendertheme.renderinstruction.RenderInstruction;
 
 /**
  * A RenderTheme defines how ways and nodes are drawn.
+ * <p>
+ * Matching is thread safe without a global lock: the rules are not modified after the theme has been built and the
+ * matching caches allow concurrent lookups, so several rendering threads can match at the same time.
  */
 public class RenderTheme {
 	private static final int MATCHING_CACHE_SIZE = 1024;
@@ -38,8 +41,9 @@ public class RenderTheme {
 	private int levels;
 	private final int mapBackground;
 	private final int mapBackgroundOutside;
-	private final LRUCache<MatchingCacheKey, List<RenderInstruction>> wayMatchingCache;
-	private final LRUCache<MatchingCacheKey, List<RenderInstruction>> poiMatchingCache;
+	private final MatchingCache wayMatchingCache;
+	private final MatchingCache poiMatchingCache;
+	private RuleIndex ruleIndex;
 	private final ArrayList<Rule> rulesList; // NOPMD we need specific interface
 
 	private final Map<Byte, Float> strokeScales = new HashMap<>();
@@ -52,8 +56,8 @@ public class RenderTheme {
 		this.mapBackground = renderThemeBuilder.mapBackground;
 		this.mapBackgroundOutside = renderThemeBuilder.mapBackgroundOutside;
 		this.rulesList = new ArrayList<>();
-		this.poiMatchingCache = new LRUCache<>(MATCHING_CACHE_SIZE);
-		this.wayMatchingCache = new LRUCache<>(MATCHING_CACHE_SIZE);
+		this.poiMatchingCache = new MatchingCache(MATCHING_CACHE_SIZE);
+		this.wayMatchingCache = new MatchingCache(MATCHING_CACHE_SIZE);
 	}
 
 	/**
@@ -125,7 +129,7 @@ public class RenderTheme {
 	 * @param poi
  *            the point of interest.
 	 */
-	public synchronized void matchNode(RenderCallback renderCallback, final RenderContext renderContext, PointOfInterest poi) {
+	public void matchNode(RenderCallback renderCallback, final RenderContext renderContext, PointOfInterest poi) {
 		MatchingCacheKey matchingCacheKey = new MatchingCacheKey(poi.tags, renderContext.rendererJob.tile.zoomLevel, Closed.NO);
 
 		List<RenderInstruction> matchingList = this.poiMatchingCache.get(matchingCacheKey);
@@ -140,8 +144,15 @@ public class RenderTheme {
 		// cache miss
 		matchingList = new ArrayList<RenderInstruction>();
 
-		for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
-			this.rulesList.get(i).matchNode(renderCallback, renderContext, matchingList, poi);
+		if (this.ruleIndex == null) {
+			for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
+				this.rulesList.get(i).matchNode(renderCallback, renderContext, matchingList, poi);
+			}
+		} else {
+			BitSet candidates = this.ruleIndex.getNodeCandidates(poi.tags, renderContext.rendererJob.tile.zoomLevel);
+			for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+				this.rulesList.get(i).matchNode(renderCallback, renderContext, matchingList, poi);
+			}
 		}
 		this.poiMatchingCache.put(matchingCacheKey, matchingList);
 	}
@@ -193,13 +204,15 @@ public class RenderTheme {
 		for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
 			this.rulesList.get(i).onComplete();
 		}
+		// only candidate rules are evaluated when the matching cache misses
+		this.ruleIndex = RuleIndex.create(this.rulesList);
 	}
 
 	void setLevels(int levels) {
 		this.levels = levels;
 	}
 
-	private synchronized void matchWay(RenderCallback renderCallback, final RenderContext renderContext, Closed closed, PolylineContainer way) {
+	private void matchWay(RenderCallback renderCallback, final RenderContext renderContext, Closed closed, PolylineContainer way) {
 		MatchingCacheKey matchingCacheKey = new MatchingCacheKey(way.getTags(), way.getTile().zoomLevel, closed);
 
 		List<RenderInstruction> matchingList = this.wayMatchingCache.get(matchingCacheKey);
@@ -213,8 +226,15 @@ public class RenderTheme {
 
 		// cache miss
 		matchingList = new ArrayList<RenderInstruction>();
-		for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
-			this.rulesList.get(i).matchWay(renderCallback, way, way.getTile(), closed, matchingList, renderContext);
+		if (this.ruleIndex == null) {
+			for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
+				this.rulesList.get(i).matchWay(renderCallback, way, way.getTile(), closed, matchingList, renderContext);
+			}
+		} else {
+			BitSet candidates = this.ruleIndex.getWayCandidates(way.getTags(), way.getTile().zoomLevel, closed);
+			for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+				this.rulesList.get(i).matchWay(renderCallback, way, way.getTile(), closed, matchingList, renderContext);
+			}
 		}
 
 		this.wayMatchingCache.put(matchingCacheKey, matchingList);
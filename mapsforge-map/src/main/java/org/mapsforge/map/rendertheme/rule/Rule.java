@@ -16,6 +16,7 @@
 package org.mapsforge.map.rendertheme.rule;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +40,7 @@ abstract class Rule {
 	final byte zoomMax;
 	final byte zoomMin;
 	private final ArrayList<RenderInstruction> renderInstructions; // NOSONAR NOPMD we need specific interface
+	private RuleIndex subRuleIndex;
 	private final ArrayList<Rule> subRules; // NOSONAR NOPMD we need specific interface
 
 	Rule(RuleBuilder ruleBuilder) {
@@ -79,8 +81,16 @@ abstract class Rule {
 				this.renderInstructions.get(i).renderNode(renderCallback, renderContext, pointOfInterest);
 				matchingList.add(this.renderInstructions.get(i));
 			}
-			for (int i = 0, n = this.subRules.size(); i < n; ++i) {
-				this.subRules.get(i).matchNode(renderCallback, renderContext, matchingList, pointOfInterest);
+			if (this.subRuleIndex == null) {
+				for (int i = 0, n = this.subRules.size(); i < n; ++i) {
+					this.subRules.get(i).matchNode(renderCallback, renderContext, matchingList, pointOfInterest);
+				}
+			} else {
+				BitSet candidates = this.subRuleIndex.getNodeCandidates(pointOfInterest.tags,
+						renderContext.rendererJob.tile.zoomLevel);
+				for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+					this.subRules.get(i).matchNode(renderCallback, renderContext, matchingList, pointOfInterest);
+				}
 			}
 		}
 	}
@@ -92,8 +102,15 @@ abstract class Rule {
 				this.renderInstructions.get(i).renderWay(renderCallback, renderContext, way);
 				matchingList.add(this.renderInstructions.get(i));
 			}
-			for (int i = 0, n = this.subRules.size(); i < n; ++i) {
-				this.subRules.get(i).matchWay(renderCallback, way, tile, closed, matchingList, renderContext);
+			if (this.subRuleIndex == null) {
+				for (int i = 0, n = this.subRules.size(); i < n; ++i) {
+					this.subRules.get(i).matchWay(renderCallback, way, tile, closed, matchingList, renderContext);
+				}
+			} else {
+				BitSet candidates = this.subRuleIndex.getWayCandidates(way.getTags(), tile.zoomLevel, closed);
+				for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+					this.subRules.get(i).matchWay(renderCallback, way, tile, closed, matchingList, renderContext);
+				}
 			}
 		}
 	}
@@ -107,6 +124,7 @@ abstract class Rule {
 		for (int i = 0, n = this.subRules.size(); i < n; ++i) {
 			this.subRules.get(i).onComplete();
 		}
+		this.subRuleIndex = RuleIndex.create(this.subRules);
 	}
 
 	void scaleStrokeWidth(float scaleFactor, byte zoomLevel) {
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.rendertheme.rule;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapsforge.core.model.Tag;
+
+/**
+ * An immutable index over a list of sibling rules which selects the candidate rules for the tags of a way or node.
+ * <p>
+ * Rules that require one of a set of keys are indexed by these keys, rules that accept any key but require one of a
+ * set of values are indexed by these values. All other rules are always candidates. The candidates are further
+ * restricted by zoom level, element type and closed-ness, so that only rules which can match have to be evaluated.
+ * Candidates are returned as bit positions in the original rule list, iterating them in ascending order preserves
+ * the order in which the rules are declared in the render theme.
+ */
+final class RuleIndex {
+	/**
+	 * Minimum number of sibling rules for which an index is created, shorter lists are evaluated sequentially.
+	 */
+	static final int MIN_RULES = 8;
+
+	private static final int ZOOM_LEVELS = Byte.MAX_VALUE + 1;
+
+	/**
+	 * @param rules
+	 *            the sibling rules in the order of the render theme.
+	 * @return a new index for the rules or null, if there are too few rules for an index to pay off.
+	 */
+	static RuleIndex create(List<Rule> rules) {
+		if (rules.size() < MIN_RULES) {
+			return null;
+		}
+		return new RuleIndex(rules);
+	}
+
+	private static void addAll(Map<String, BitSet> map, List<String> strings, int index, int numberOfRules) {
+		for (int i = 0, n = strings.size(); i < n; ++i) {
+			BitSet bitSet = map.get(strings.get(i));
+			if (bitSet == null) {
+				bitSet = new BitSet(numberOfRules);
+				map.put(strings.get(i), bitSet);
+			}
+			bitSet.set(index);
+		}
+	}
+
+	private static boolean isZoomBoundary(List<Rule> rules, int zoomLevel) {
+		for (int i = 0, n = rules.size(); i < n; ++i) {
+			Rule rule = rules.get(i);
+			if (rule.zoomMin == zoomLevel || rule.zoomMax + 1 == zoomLevel) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private final BitSet nodeRules;
+	private final Map<String, BitSet> rulesByKey;
+	private final Map<String, BitSet> rulesByValue;
+	private final BitSet[] rulesByZoomLevel;
+	private final BitSet unindexedRules;
+	private final BitSet[] wayRules;
+
+	private RuleIndex(List<Rule> rules) {
+		int numberOfRules = rules.size();
+		this.nodeRules = new BitSet(numberOfRules);
+		this.rulesByKey = new HashMap<String, BitSet>();
+		this.rulesByValue = new HashMap<String, BitSet>();
+		this.unindexedRules = new BitSet(numberOfRules);
+		this.wayRules = new BitSet[Closed.values().length];
+		for (Closed closed : Closed.values()) {
+			this.wayRules[closed.ordinal()] = new BitSet(numberOfRules);
+		}
+
+		for (int i = 0; i < numberOfRules; ++i) {
+			Rule rule = rules.get(i);
+			if (rule.elementMatcher.matches(Element.NODE)) {
+				this.nodeRules.set(i);
+			}
+			if (rule.elementMatcher.matches(Element.WAY)) {
+				for (Closed closed : Closed.values()) {
+					if (rule.closedMatcher.matches(closed)) {
+						this.wayRules[closed.ordinal()].set(i);
+					}
+				}
+			}
+
+			if (rule instanceof PositiveRule && ((PositiveRule) rule).keyMatcher instanceof KeyMatcher) {
+				addAll(this.rulesByKey, ((KeyMatcher) ((PositiveRule) rule).keyMatcher).keys, i, numberOfRules);
+			} else if (rule instanceof PositiveRule && ((PositiveRule) rule).valueMatcher instanceof ValueMatcher) {
+				addAll(this.rulesByValue, ((ValueMatcher) ((PositiveRule) rule).valueMatcher).values, i, numberOfRules);
+			} else {
+				this.unindexedRules.set(i);
+			}
+		}
+
+		// consecutive zoom levels without a rule boundary share the same set
+		this.rulesByZoomLevel = new BitSet[ZOOM_LEVELS];
+		for (int zoomLevel = 0; zoomLevel < ZOOM_LEVELS; ++zoomLevel) {
+			if (zoomLevel > 0 && !isZoomBoundary(rules, zoomLevel)) {
+				this.rulesByZoomLevel[zoomLevel] = this.rulesByZoomLevel[zoomLevel - 1];
+				continue;
+			}
+			BitSet bitSet = new BitSet(numberOfRules);
+			for (int i = 0; i < numberOfRules; ++i) {
+				Rule rule = rules.get(i);
+				if (rule.zoomMin <= zoomLevel && rule.zoomMax >= zoomLevel) {
+					bitSet.set(i);
+				}
+			}
+			this.rulesByZoomLevel[zoomLevel] = bitSet;
+		}
+	}
+
+	/**
+	 * @param tags
+	 *            the tags of the node.
+	 * @param zoomLevel
+	 *            the zoom level of the tile.
+	 * @return a new set with the positions of all rules which might match the node.
+	 */
+	BitSet getNodeCandidates(List<Tag> tags, byte zoomLevel) {
+		return getCandidates(tags, zoomLevel, this.nodeRules);
+	}
+
+	/**
+	 * @param tags
+	 *            the tags of the way.
+	 * @param zoomLevel
+	 *            the zoom level of the tile.
+	 * @param closed
+	 *            the closed-ness of the way.
+	 * @return a new set with the positions of all rules which might match the way.
+	 */
+	BitSet getWayCandidates(List<Tag> tags, byte zoomLevel, Closed closed) {
+		return getCandidates(tags, zoomLevel, this.wayRules[closed.ordinal()]);
+	}
+
+	private BitSet getCandidates(List<Tag> tags, byte zoomLevel, BitSet elementRules) {
+		BitSet candidates = (BitSet) this.unindexedRules.clone();
+		for (int i = 0, n = tags.size(); i < n; ++i) {
+			Tag tag = tags.get(i);
+			BitSet bitSet = this.rulesByKey.get(tag.key);
+			if (bitSet != null) {
+				candidates.or(bitSet);
+			}
+			bitSet = this.rulesByValue.get(tag.value);
+			if (bitSet != null) {
+				candidates.or(bitSet);
+			}
+		}
+		candidates.and(this.rulesByZoomLevel[zoomLevel]);
+		candidates.and(elementRules);
+		return candidates;
+	}
+}
@@ -18,11 +18,11 @@ package org.mapsforge.map.util;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import org.mapsforge.core.mapelements.MapElementContainer;
+import org.mapsforge.core.mapelements.MapElementIndex;
 import org.mapsforge.core.model.BoundingBox;
 import org.mapsforge.core.model.Point;
 import org.mapsforge.core.model.Tile;
@@ -72,7 +72,8 @@ public final class LayerUtil {
 	/**
 	 * Transforms a list of MapElements, orders it and removes those elements that overlap.
 	 * This operation is useful for an early elimination of elements in a list that will never
-	 * be drawn because they overlap.
+	 * be drawn because they overlap. Collisions are detected with a {@link MapElementIndex}, so each
+	 * element is only tested against the already accepted elements in its vicinity.
 	 *
 	 * @param input list of MapElements
 	 * @return collision-free, ordered list, a subset of the input.
@@ -82,18 +83,13 @@ public final class LayerUtil {
 		// sort items by priority (highest first)
 		Collections.sort(input, Collections.reverseOrder());
 		// in order of priority, see if an item can be drawn, i.e. none of the items
-		// in the currentItemsToDraw list clashes with it.
-		List<MapElementContainer> output = new LinkedList<MapElementContainer>();
+		// already in the output clashes with it.
+		List<MapElementContainer> output = new ArrayList<MapElementContainer>();
+		MapElementIndex mapElementIndex = new MapElementIndex();
 		for (MapElementContainer item : input) {
-			boolean hasSpace = true;
-			for (MapElementContainer outputElement : output) {
-				if (outputElement.clashesWith(item)) {
-					hasSpace = false;
-					break;
-				}
-			}
-			if (hasSpace) {
+			if (!mapElementIndex.clashesWith(item)) {
 				output.add(item);
+				mapElementIndex.add(item);
 			}
 		}
 		return output;
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.model.Point;
+
+public class MotionPredictorTest {
+	@Test
+	public void predictTest() {
+		MotionPredictor motionPredictor = new MotionPredictor(100);
+		Assert.assertNull(motionPredictor.predict());
+
+		motionPredictor.update(new Point(0, 0), (byte) 10, 1000);
+		Assert.assertNull(motionPredictor.predict());
+
+		// a constant velocity of one pixel per millisecond to the right
+		for (int i = 1; i <= 10; ++i) {
+			motionPredictor.update(new Point(i * 20, 0), (byte) 10, 1000 + i * 20);
+		}
+		Point prediction = motionPredictor.predict();
+		Assert.assertEquals(300, prediction.x, 1);
+		Assert.assertEquals(0, prediction.y, 0);
+
+		// a pause ends the movement
+		long time = 1200 + MotionPredictor.MAX_FRAME_INTERVAL + 1;
+		motionPredictor.update(new Point(200, 0), (byte) 10, time);
+		Assert.assertNull(motionPredictor.predict());
+
+		// a zoom level change ends the movement
+		motionPredictor.update(new Point(200, 20), (byte) 10, time + 20);
+		Assert.assertNotNull(motionPredictor.predict());
+		motionPredictor.update(new Point(400, 80), (byte) 11, time + 40);
+		Assert.assertNull(motionPredictor.predict());
+	}
+
+	@Test
+	public void slowMotionTest() {
+		MotionPredictor motionPredictor = new MotionPredictor(100);
+		motionPredictor.update(new Point(0, 0), (byte) 10, 1000);
+		motionPredictor.update(new Point(1, 1), (byte) 10, 1020);
+		Assert.assertNull(motionPredictor.predict());
+	}
+}
@@ -343,4 +343,115 @@ public class FileSystemTileCacheTest {
 
 		tileCache2.destroy();
 	}
+
+	@Test
+	public void persistentIndexTest() {
+		int tileSize = TILE_SIZES[0];
+		TileSource tileSource = OpenStreetMapMapnik.INSTANCE;
+		Job[] job = new Job[4];
+		for (int i = 0; i < job.length; i++) {
+			job[i] = new DownloadJob(new Tile(i, 0, (byte) 4, tileSize), tileSource);
+		}
+		File indexFile = new File(this.cacheDirectory, FileSystemTileCache.INDEX_FILE_NAME);
+
+		FileSystemTileCache tileCache1 = new FileSystemTileCache(3, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		for (int i = 0; i < 3; i++) {
+			tileCache1.put(job[i], GRAPHIC_FACTORY.createTileBitmap(tileSize, false));
+		}
+		Assert.assertNotNull(tileCache1.get(job[0]));
+		tileCache1.destroy();
+		Assert.assertTrue(indexFile.isFile());
+
+		// the index is read synchronously and deleted
+		FileSystemTileCache tileCache2 = new FileSystemTileCache(3, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Assert.assertFalse(indexFile.exists());
+		for (int i = 0; i < 3; i++) {
+			Assert.assertTrue(tileCache2.containsKey(job[i]));
+		}
+
+		// the LRU order is restored
+		tileCache2.put(job[3], GRAPHIC_FACTORY.createTileBitmap(tileSize, false));
+		Assert.assertTrue(tileCache2.containsKey(job[0]));
+		Assert.assertFalse(tileCache2.containsKey(job[1]));
+		Assert.assertNotNull(tileCache2.get(job[2]));
+
+		tileCache2.purge();
+		tileCache2.destroy();
+		Assert.assertFalse(indexFile.exists());
+	}
+
+	@Test
+	public void timestampTest() {
+		int tileSize = TILE_SIZES[0];
+		Job job1 = new DownloadJob(new Tile(1, 2, (byte) 3, tileSize), OpenStreetMapMapnik.INSTANCE);
+		Job job2 = new DownloadJob(new Tile(2, 2, (byte) 3, tileSize), OpenStreetMapMapnik.INSTANCE);
+
+		TileCache tileCache = createNewTileCache(2, this.cacheDirectory);
+		Assert.assertEquals(0, tileCache.getTimestamp(job1));
+
+		tileCache.put(job1, GRAPHIC_FACTORY.createTileBitmap(tileSize, false));
+		TileBitmap bitmap = tileCache.get(job1);
+		Assert.assertTrue(tileCache.getTimestamp(job1) > 0);
+		Assert.assertEquals(bitmap.getTimestamp(), tileCache.getTimestamp(job1));
+		Assert.assertEquals(0, tileCache.getTimestamp(job2));
+
+		tileCache.purge();
+		Assert.assertEquals(0, tileCache.getTimestamp(job1));
+
+		tileCache.destroy();
+		Assert.assertFalse(this.cacheDirectory.exists());
+	}
+
+	@Test
+	public void writeBehindTest() {
+		int tileSize = TILE_SIZES[0];
+		TileSource tileSource = OpenStreetMapMapnik.INSTANCE;
+		FileSystemTileCache tileCache = new FileSystemTileCache(4, this.cacheDirectory, GRAPHIC_FACTORY, true, 2);
+
+		Job[] job = new Job[6];
+		for (int i = 0; i < job.length; i++) {
+			job[i] = new DownloadJob(new Tile(i, 0, (byte) 4, tileSize), tileSource);
+			TileBitmap bitmap = GRAPHIC_FACTORY.createTileBitmap(tileSize, false);
+			tileCache.put(job[i], bitmap);
+
+			// pending tiles are served from memory
+			Assert.assertTrue(tileCache.containsKey(job[i]));
+			verifyEquals(bitmap, tileCache.get(job[i]));
+		}
+
+		tileCache.flush();
+		for (int i = 0; i < 2; i++) {
+			Assert.assertFalse(tileCache.containsKey(job[i]));
+			Assert.assertNull(tileCache.get(job[i]));
+		}
+		for (int i = 2; i < job.length; i++) {
+			Assert.assertTrue(tileCache.containsKey(job[i]));
+			Assert.assertNotNull(tileCache.get(job[i]));
+		}
+		Assert.assertEquals(1, this.cacheDirectory.list().length);
+
+		tileCache.purge();
+		for (int i = 0; i < job.length; i++) {
+			Assert.assertFalse(tileCache.containsKey(job[i]));
+		}
+		tileCache.destroy();
+		Assert.assertFalse(this.cacheDirectory.exists());
+	}
+
+	@Test
+	public void writeBehindPersistentTest() {
+		int tileSize = TILE_SIZES[0];
+		Job job = new DownloadJob(new Tile(1, 2, (byte) 3, tileSize), OpenStreetMapMapnik.INSTANCE);
+
+		FileSystemTileCache tileCache1 = new FileSystemTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true, 8);
+		tileCache1.put(job, GRAPHIC_FACTORY.createTileBitmap(tileSize, false));
+		tileCache1.put(job, GRAPHIC_FACTORY.createTileBitmap(tileSize, false));
+		// pending tiles are written when a persistent cache is destroyed
+		tileCache1.destroy();
+
+		FileSystemTileCache tileCache2 = new FileSystemTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, false);
+		Assert.assertTrue(new File(this.cacheDirectory, job.getKey() + FileSystemTileCache.FILE_EXTENSION).isFile());
+		tileCache2.destroy();
+		Assert.assertFalse(this.cacheDirectory.exists());
+	}
 }
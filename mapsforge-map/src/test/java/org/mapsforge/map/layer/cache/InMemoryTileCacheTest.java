@@ -15,6 +15,10 @@
  */
 package org.mapsforge.map.layer.cache;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -32,6 +36,7 @@ import org.mapsforge.map.reader.MapFile;
 
 public class InMemoryTileCacheTest {
 	private static final GraphicFactory GRAPHIC_FACTORY = AwtGraphicFactory.INSTANCE;
+	private static final int NUMBER_OF_TILES = 50;
 	private static final int[] TILE_SIZES = { 256, 128, 376, 512, 100 };
 
 	private static void verifyInvalidCapacity(InMemoryTileCache inMemoryTileCache, int capacity) {
@@ -52,6 +57,50 @@ public class InMemoryTileCacheTest {
 		}
 	}
 
+	@Test
+	public void byteCapacityTest() {
+		TileSource tileSource = OpenStreetMapMapnik.INSTANCE;
+		Job job1 = new DownloadJob(new Tile(1, 1, (byte) 1, 256), tileSource);
+		Job job2 = new DownloadJob(new Tile(2, 2, (byte) 2, 256), tileSource);
+		Job job3 = new DownloadJob(new Tile(3, 3, (byte) 3, 512), tileSource);
+
+		TileBitmap bitmap1 = GRAPHIC_FACTORY.createTileBitmap(256, true);
+		TileBitmap bitmap3 = GRAPHIC_FACTORY.createTileBitmap(512, true);
+		long size256 = InMemoryTileCache.estimateSize(bitmap1);
+		Assert.assertEquals(4 * size256, InMemoryTileCache.estimateSize(bitmap3));
+
+		InMemoryTileCache inMemoryTileCache = new InMemoryTileCache(10, 4 * size256);
+		Assert.assertEquals(4 * size256, inMemoryTileCache.getByteCapacity());
+
+		inMemoryTileCache.put(job1, bitmap1);
+		inMemoryTileCache.put(job2, GRAPHIC_FACTORY.createTileBitmap(256, true));
+		Assert.assertEquals(2 * size256, inMemoryTileCache.getByteSize());
+
+		// the least recently used tile is discarded first
+		Assert.assertEquals(bitmap1, inMemoryTileCache.get(job1));
+		inMemoryTileCache.setByteCapacity(size256);
+		Assert.assertTrue(inMemoryTileCache.containsKey(job1));
+		Assert.assertFalse(inMemoryTileCache.containsKey(job2));
+		Assert.assertEquals(size256, inMemoryTileCache.getByteSize());
+
+		inMemoryTileCache.setByteCapacity(4 * size256);
+		inMemoryTileCache.put(job3, bitmap3);
+		Assert.assertFalse(inMemoryTileCache.containsKey(job1));
+		Assert.assertTrue(inMemoryTileCache.containsKey(job3));
+		Assert.assertEquals(4 * size256, inMemoryTileCache.getByteSize());
+
+		inMemoryTileCache.purge();
+		Assert.assertFalse(inMemoryTileCache.containsKey(job3));
+		Assert.assertEquals(0, inMemoryTileCache.getByteSize());
+
+		try {
+			inMemoryTileCache.setByteCapacity(-1);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(true);
+		}
+	}
+
 	@Test
 	public void inMemoryTileCacheTestTest() {
 		for (int tileSize : TILE_SIZES) {
@@ -133,4 +182,26 @@ public class InMemoryTileCacheTest {
 			verifyInvalidCapacity(inMemoryTileCache, -1);
 		}
 	}
+
+	@Test
+	public void workingSetTest() {
+		InMemoryTileCache inMemoryTileCache = new InMemoryTileCache(NUMBER_OF_TILES);
+		TileSource tileSource = OpenStreetMapMapnik.INSTANCE;
+		List<Job> jobs = new ArrayList<Job>();
+		for (int i = 0; i < NUMBER_OF_TILES; ++i) {
+			Job job = new DownloadJob(new Tile(i, i, (byte) 10, 256), tileSource);
+			jobs.add(job);
+			inMemoryTileCache.put(job, GRAPHIC_FACTORY.createTileBitmap(256, true));
+		}
+
+		// the two eldest tiles are kept when they are part of the working set
+		Set<Job> workingSet = new HashSet<Job>(jobs.subList(0, 2));
+		inMemoryTileCache.setWorkingSet(workingSet);
+		inMemoryTileCache.setCapacity(2);
+		Assert.assertTrue(inMemoryTileCache.containsKey(jobs.get(0)));
+		Assert.assertTrue(inMemoryTileCache.containsKey(jobs.get(1)));
+		for (int i = 2; i < NUMBER_OF_TILES; ++i) {
+			Assert.assertFalse(inMemoryTileCache.containsKey(jobs.get(i)));
+		}
+	}
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.graphics.GraphicFactory;
+import org.mapsforge.core.graphics.TileBitmap;
+import org.mapsforge.core.model.Tile;
+import org.mapsforge.map.awt.AwtGraphicFactory;
+import org.mapsforge.map.layer.download.DownloadJob;
+import org.mapsforge.map.layer.download.tilesource.OpenStreetMapMapnik;
+import org.mapsforge.map.layer.queue.Job;
+
+public class PackFileTileCacheTest {
+	private static final GraphicFactory GRAPHIC_FACTORY = AwtGraphicFactory.INSTANCE;
+	private static final String TMP_DIR = System.getProperty("java.io.tmpdir");
+	private static final int TILE_SIZE = 256;
+
+	private static Job createJob(int i) {
+		return new DownloadJob(new Tile(i, i, (byte) 10, TILE_SIZE), OpenStreetMapMapnik.INSTANCE);
+	}
+
+	private static void verifyInvalidPut(TileCache tileCache, Job job, TileBitmap bitmap) {
+		try {
+			tileCache.put(job, bitmap);
+			Assert.fail("job: " + job + ", bitmap: " + bitmap);
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(true);
+		}
+	}
+
+	private final File cacheDirectory = new File(TMP_DIR, getClass().getSimpleName() + System.currentTimeMillis());
+
+	@After
+	public void afterTest() {
+		new File(this.cacheDirectory, PackFileTileCache.FILE_NAME).delete();
+		if (this.cacheDirectory.exists() && !this.cacheDirectory.delete()) {
+			throw new IllegalStateException("could not delete cache directory: " + this.cacheDirectory);
+		}
+	}
+
+	@Test
+	public void compactTest() throws IOException {
+		PackFileTileCache tileCache = new PackFileTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		for (int i = 0; i < 10; ++i) {
+			tileCache.put(createJob(i), GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+		}
+		long fileSize = tileCache.getFileSize();
+
+		tileCache.compact();
+		Assert.assertTrue(tileCache.getFileSize() < fileSize);
+		Assert.assertEquals(tileCache.getFileSize(), new File(this.cacheDirectory, PackFileTileCache.FILE_NAME).length());
+		Assert.assertFalse(tileCache.containsKey(createJob(7)));
+		Assert.assertNotNull(tileCache.get(createJob(8)));
+		Assert.assertNotNull(tileCache.get(createJob(9)));
+
+		// LRU order is kept
+		tileCache.put(createJob(10), GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+		Assert.assertFalse(tileCache.containsKey(createJob(8)));
+		Assert.assertTrue(tileCache.containsKey(createJob(9)));
+		tileCache.destroy();
+
+		tileCache = new PackFileTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Assert.assertTrue(tileCache.containsKey(createJob(9)));
+		Assert.assertTrue(tileCache.containsKey(createJob(10)));
+		tileCache.purge();
+		tileCache.destroy();
+	}
+
+	@Test
+	public void concurrentPutTest() throws InterruptedException {
+		final PackFileTileCache tileCache = new PackFileTileCache(100, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; ++i) {
+			final int thread = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10; ++j) {
+						tileCache.put(createJob(thread * 10 + j), GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long fileSize = tileCache.getFileSize();
+		tileCache.destroy();
+
+		// all records have been written without gaps, so all of them are restored
+		File file = new File(this.cacheDirectory, PackFileTileCache.FILE_NAME);
+		Assert.assertEquals(fileSize, file.length());
+		PackFileTileCache restoredTileCache = new PackFileTileCache(100, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Assert.assertEquals(fileSize, file.length());
+		for (int i = 0; i < threads.length * 10; ++i) {
+			Assert.assertNotNull(restoredTileCache.get(createJob(i)));
+		}
+		restoredTileCache.purge();
+		restoredTileCache.destroy();
+	}
+
+	@Test
+	public void concurrentEvictionTest() throws InterruptedException {
+		final PackFileTileCache tileCache = new PackFileTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; ++i) {
+			final int thread = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 20; ++j) {
+						// the threads put and evict the same few tiles, one of them compacts the file meanwhile
+						tileCache.put(createJob((thread + j) % 4), GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+						if (thread == 0) {
+							try {
+								tileCache.compact();
+							} catch (IOException e) {
+								throw new IllegalStateException(e);
+							}
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		boolean[] cached = new boolean[4];
+		for (int i = 0; i < cached.length; ++i) {
+			cached[i] = tileCache.containsKey(createJob(i));
+		}
+		tileCache.destroy();
+
+		// the persistent cache restores exactly the tiles it held
+		PackFileTileCache restoredTileCache = new PackFileTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		for (int i = 0; i < cached.length; ++i) {
+			Assert.assertEquals(cached[i], restoredTileCache.containsKey(createJob(i)));
+			if (cached[i]) {
+				Assert.assertNotNull(restoredTileCache.get(createJob(i)));
+			}
+		}
+		restoredTileCache.purge();
+		restoredTileCache.destroy();
+	}
+
+	@Test
+	public void packFileTileCacheTest() {
+		PackFileTileCache tileCache = new PackFileTileCache(1, this.cacheDirectory, GRAPHIC_FACTORY, false);
+		Assert.assertEquals(1, tileCache.getCapacity());
+		Assert.assertFalse(tileCache.isPersistent());
+
+		Job job1 = createJob(1);
+		Job job2 = createJob(2);
+		Assert.assertFalse(tileCache.containsKey(job1));
+		Assert.assertNull(tileCache.get(job1));
+
+		tileCache.put(job1, GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+		Assert.assertTrue(tileCache.containsKey(job1));
+		TileBitmap bitmap = tileCache.get(job1);
+		Assert.assertEquals(TILE_SIZE, bitmap.getWidth());
+		Assert.assertEquals(TILE_SIZE, bitmap.getHeight());
+
+		tileCache.put(job2, GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+		Assert.assertFalse(tileCache.containsKey(job1));
+		Assert.assertTrue(tileCache.containsKey(job2));
+		Assert.assertNull(tileCache.get(job1));
+		Assert.assertNotNull(tileCache.get(job2));
+
+		verifyInvalidPut(tileCache, null, GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+		verifyInvalidPut(tileCache, job1, null);
+
+		tileCache.purge();
+		Assert.assertFalse(tileCache.containsKey(job2));
+		Assert.assertEquals(0, tileCache.getFileSize());
+
+		tileCache.destroy();
+		Assert.assertFalse(new File(this.cacheDirectory, PackFileTileCache.FILE_NAME).exists());
+	}
+
+	@Test
+	public void persistentTest() throws IOException {
+		PackFileTileCache tileCache = new PackFileTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Assert.assertTrue(tileCache.isPersistent());
+		for (int i = 0; i < 3; ++i) {
+			tileCache.put(createJob(i), GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+		}
+		tileCache.destroy();
+
+		// simulate an incomplete record at the end of the file
+		File file = new File(this.cacheDirectory, PackFileTileCache.FILE_NAME);
+		long fileSize = file.length();
+		FileOutputStream outputStream = new FileOutputStream(file, true);
+		outputStream.write(new byte[] { 0, 5, 'a', 'b' });
+		outputStream.close();
+
+		tileCache = new PackFileTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Assert.assertEquals(fileSize, file.length());
+		Assert.assertFalse(tileCache.containsKey(createJob(0)));
+		Assert.assertTrue(tileCache.containsKey(createJob(1)));
+		Assert.assertTrue(tileCache.containsKey(createJob(2)));
+		Assert.assertEquals(TILE_SIZE, tileCache.get(createJob(1)).getWidth());
+		tileCache.destroy();
+
+		tileCache = new PackFileTileCache(1, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Assert.assertFalse(tileCache.containsKey(createJob(1)));
+		Assert.assertTrue(tileCache.containsKey(createJob(2)));
+		tileCache.purge();
+		tileCache.destroy();
+	}
+
+	@Test
+	public void zeroFilledDataTest() throws IOException {
+		PackFileTileCache tileCache = new PackFileTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		tileCache.put(createJob(1), GRAPHIC_FACTORY.createTileBitmap(TILE_SIZE, true));
+		tileCache.destroy();
+
+		// simulate space which has been allocated but not written before a crash
+		File file = new File(this.cacheDirectory, PackFileTileCache.FILE_NAME);
+		long fileSize = file.length();
+		FileOutputStream outputStream = new FileOutputStream(file, true);
+		outputStream.write(new byte[100]);
+		outputStream.close();
+
+		tileCache = new PackFileTileCache(2, this.cacheDirectory, GRAPHIC_FACTORY, true);
+		Assert.assertEquals(fileSize, file.length());
+		Assert.assertEquals(fileSize, tileCache.getFileSize());
+		Assert.assertTrue(tileCache.containsKey(createJob(1)));
+		tileCache.purge();
+		tileCache.destroy();
+	}
+}
@@ -14,6 +14,9 @@
  */
 package org.mapsforge.map.layer.cache;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.mapsforge.core.graphics.GraphicFactory;
@@ -29,6 +32,69 @@ public class TwoLevelTileCacheTest {
 	private static final GraphicFactory GRAPHIC_FACTORY = AwtGraphicFactory.INSTANCE;
 	private static final int[] TILE_SIZES = { 256, 128, 376, 512, 100 };
 
+	private static Job createJob(int i) {
+		return new DownloadJob(new Tile(i, i, (byte) 10, TILE_SIZES[0]), OpenStreetMapMapnik.INSTANCE);
+	}
+
+	private static void waitForPromotion(TileCache tileCache, Job job) throws InterruptedException {
+		for (int i = 0; i < 100 && !tileCache.containsKey(job); ++i) {
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	public void promotionTest() throws InterruptedException {
+		TileCache tileCache1 = new InMemoryTileCache(4);
+		TileCache tileCache2 = new InMemoryTileCache(10);
+		TwoLevelTileCache twoLevelTileCache = new TwoLevelTileCache(tileCache1, tileCache2, 2);
+		Assert.assertEquals(2, twoLevelTileCache.getPromotionBudget());
+		for (int i = 0; i < 6; ++i) {
+			twoLevelTileCache.put(createJob(i), GRAPHIC_FACTORY.createTileBitmap(TILE_SIZES[0], false));
+		}
+		Assert.assertFalse(tileCache1.containsKey(createJob(0)));
+
+		Set<Job> workingSet = new HashSet<Job>();
+		workingSet.add(createJob(0));
+		Set<Job> prefetchSet = new HashSet<Job>();
+		prefetchSet.add(createJob(1));
+		twoLevelTileCache.setWorkingSet(workingSet, prefetchSet);
+		waitForPromotion(tileCache1, createJob(0));
+		waitForPromotion(tileCache1, createJob(1));
+		Assert.assertTrue(tileCache1.containsKey(createJob(0)));
+		Assert.assertTrue(tileCache1.containsKey(createJob(1)));
+
+		// the prefetch set may only use the free capacity of the first level
+		workingSet.add(createJob(2));
+		workingSet.add(createJob(3));
+		workingSet.add(createJob(4));
+		prefetchSet.clear();
+		prefetchSet.add(createJob(5));
+		twoLevelTileCache.setPromotionBudget(4);
+		twoLevelTileCache.setWorkingSet(workingSet, prefetchSet);
+		waitForPromotion(tileCache1, createJob(2));
+		waitForPromotion(tileCache1, createJob(3));
+		waitForPromotion(tileCache1, createJob(4));
+		Assert.assertTrue(tileCache1.containsKey(createJob(0)));
+		Assert.assertTrue(tileCache1.containsKey(createJob(2)));
+		Assert.assertTrue(tileCache1.containsKey(createJob(3)));
+		Assert.assertTrue(tileCache1.containsKey(createJob(4)));
+		Assert.assertFalse(tileCache1.containsKey(createJob(5)));
+
+		twoLevelTileCache.destroy();
+	}
+
+	@Test
+	public void promotionBudgetTest() {
+		TwoLevelTileCache twoLevelTileCache = new TwoLevelTileCache(new InMemoryTileCache(1), new InMemoryTileCache(1));
+		try {
+			twoLevelTileCache.setPromotionBudget(0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(true);
+		}
+		twoLevelTileCache.destroy();
+	}
+
 	@Test
 	public void twoLevelTileCacheTest() {
 		for (int tileSize : TILE_SIZES) {
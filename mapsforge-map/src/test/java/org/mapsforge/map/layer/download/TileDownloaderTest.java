@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.download;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapsforge.core.graphics.GraphicFactory;
+import org.mapsforge.core.graphics.TileBitmap;
+import org.mapsforge.core.model.LatLong;
+import org.mapsforge.core.model.Tile;
+import org.mapsforge.map.awt.AwtGraphicFactory;
+import org.mapsforge.map.layer.cache.PackFileTileCache;
+import org.mapsforge.map.layer.download.tilesource.OnlineTileSource;
+import org.mapsforge.map.layer.queue.JobQueue;
+import org.mapsforge.map.model.DisplayModel;
+import org.mapsforge.map.model.MapViewPosition;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TileDownloaderTest {
+	private static final String ENTITY_TAG = "\"42\"";
+	private static final GraphicFactory GRAPHIC_FACTORY = AwtGraphicFactory.INSTANCE;
+	private static final int TILE_SIZE = 256;
+
+	/**
+	 * A tile server which answers the first requests for tile x with an internal server error.
+	 */
+	private static class StubHandler implements HttpHandler {
+		final AtomicInteger conditionalRequests = new AtomicInteger();
+		final Map<String, AtomicInteger> requests = Collections.synchronizedMap(new HashMap<String, AtomicInteger>());
+		private final byte[] image;
+
+		StubHandler(byte[] image) {
+			this.image = image;
+		}
+
+		@Override
+		public void handle(HttpExchange httpExchange) throws IOException {
+			String path = httpExchange.getRequestURI().getPath();
+			int count = getCount(path);
+			int tileX = Integer.parseInt(path.split("/")[2]);
+			if (tileX == 404) {
+				send(httpExchange, 404, new byte[0]);
+			} else if (tileX >= 500 && count <= tileX - 500) {
+				send(httpExchange, 500, new byte[0]);
+			} else if (ENTITY_TAG.equals(httpExchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				this.conditionalRequests.incrementAndGet();
+				httpExchange.sendResponseHeaders(304, -1);
+				httpExchange.close();
+			} else {
+				httpExchange.getResponseHeaders().add("ETag", ENTITY_TAG);
+				send(httpExchange, 200, this.image);
+			}
+		}
+
+		private int getCount(String path) {
+			synchronized (this.requests) {
+				AtomicInteger count = this.requests.get(path);
+				if (count == null) {
+					count = new AtomicInteger();
+					this.requests.put(path, count);
+				}
+				return count.incrementAndGet();
+			}
+		}
+
+		private static void send(HttpExchange httpExchange, int responseCode, byte[] body) throws IOException {
+			httpExchange.sendResponseHeaders(responseCode, body.length == 0 ? -1 : body.length);
+			OutputStream outputStream = httpExchange.getResponseBody();
+			outputStream.write(body);
+			outputStream.close();
+		}
+	}
+
+	private static byte[] createImage() throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB), "png", outputStream);
+		return outputStream.toByteArray();
+	}
+
+	private Map<String, String> entityTags;
+	private HttpServer httpServer;
+	private DownloadStatistics statistics;
+	private StubHandler stubHandler;
+	private OnlineTileSource tileSource;
+
+	@After
+	public void afterTest() {
+		this.httpServer.stop(0);
+	}
+
+	@Before
+	public void beforeTest() throws IOException {
+		this.stubHandler = new StubHandler(createImage());
+		this.httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.httpServer.createContext("/", this.stubHandler);
+		this.httpServer.start();
+
+		this.tileSource = new OnlineTileSource(new String[] { "localhost" }, this.httpServer.getAddress().getPort());
+		this.tileSource.setBaseUrl("/").setName("stub");
+		this.statistics = new DownloadStatistics();
+		this.entityTags = Collections.synchronizedMap(new HashMap<String, String>());
+	}
+
+	@Test
+	public void clientErrorTest() {
+		try {
+			createTileDownloader(404).downloadImage();
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertTrue(e instanceof TileDownloader.HttpStatusException);
+		}
+		Assert.assertEquals(1, this.statistics.getRequests());
+		Assert.assertEquals(0, this.statistics.getRetries());
+		Assert.assertEquals(1, this.statistics.getFailures());
+	}
+
+	@Test
+	public void revalidateTest() throws IOException {
+		TileBitmap bitmap = createTileDownloader(1).downloadImage();
+		Assert.assertEquals(TILE_SIZE, bitmap.getWidth());
+		Assert.assertEquals(1, this.entityTags.size());
+		Assert.assertTrue(this.statistics.getBytes() > 0);
+
+		bitmap.setTimestamp(0);
+		Assert.assertSame(bitmap, createTileDownloader(1).downloadImage(bitmap));
+		Assert.assertTrue(bitmap.getTimestamp() > 0);
+		Assert.assertEquals(1, this.stubHandler.conditionalRequests.get());
+		Assert.assertEquals(2, this.statistics.getRequests());
+		Assert.assertEquals(1, this.statistics.getNotModifiedResponses());
+
+		// without an entity tag the tile is downloaded again
+		this.entityTags.clear();
+		TileBitmap newBitmap = createTileDownloader(1).downloadImage(bitmap);
+		Assert.assertNotSame(bitmap, newBitmap);
+		Assert.assertEquals(TILE_SIZE, newBitmap.getWidth());
+		Assert.assertEquals(3, this.statistics.getRequests());
+	}
+
+	@Test
+	public void revalidatedTileIsStoredTest() throws IOException, InterruptedException {
+		File cacheDirectory = new File(System.getProperty("java.io.tmpdir"), getClass().getSimpleName()
+				+ System.currentTimeMillis());
+		PackFileTileCache tileCache = new PackFileTileCache(10, cacheDirectory, GRAPHIC_FACTORY, false);
+		DisplayModel displayModel = new DisplayModel();
+		MapViewPosition mapViewPosition = new MapViewPosition(displayModel);
+		mapViewPosition.setCenter(new LatLong(0, 0));
+		try {
+			TileDownloadLayer tileDownloadLayer = new TileDownloadLayer(tileCache, mapViewPosition, this.tileSource,
+					GRAPHIC_FACTORY);
+			tileDownloadLayer.setCacheTimeToLive(60000);
+			JobQueue<DownloadJob> jobQueue = new JobQueue<DownloadJob>(mapViewPosition, displayModel);
+			TileDownloadThread tileDownloadThread = new TileDownloadThread(tileCache, jobQueue, tileDownloadLayer,
+					GRAPHIC_FACTORY, displayModel, this.statistics, this.entityTags);
+
+			// a stale tile which has been downloaded before
+			DownloadJob downloadJob = new DownloadJob(new Tile(1, 1, (byte) 10, TILE_SIZE), this.tileSource);
+			TileBitmap bitmap = createTileDownloader(1).downloadImage();
+			bitmap.setTimestamp(1);
+			tileCache.put(downloadJob, bitmap);
+			bitmap.decrementRefCount();
+
+			jobQueue.add(downloadJob);
+			tileDownloadThread.doWork();
+			Assert.assertEquals(1, this.stubHandler.conditionalRequests.get());
+
+			// the renewed tile is not requested again
+			TileBitmap cachedBitmap = tileCache.get(downloadJob);
+			Assert.assertFalse(tileDownloadLayer.isTileStale(downloadJob.tile, cachedBitmap));
+			cachedBitmap.decrementRefCount();
+			jobQueue.add(downloadJob);
+			tileDownloadThread.doWork();
+			Assert.assertEquals(1, this.stubHandler.conditionalRequests.get());
+			Assert.assertEquals(2, this.statistics.getRequests());
+		} finally {
+			mapViewPosition.destroy();
+			tileCache.destroy();
+			File[] files = cacheDirectory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			if (cacheDirectory.exists() && !cacheDirectory.delete()) {
+				throw new IllegalStateException("could not delete cache directory: " + cacheDirectory);
+			}
+		}
+	}
+
+	@Test
+	public void retryTest() throws IOException {
+		// the first two requests fail
+		Assert.assertNotNull(createTileDownloader(502).downloadImage());
+		Assert.assertEquals(3, this.statistics.getRequests());
+		Assert.assertEquals(2, this.statistics.getRetries());
+		Assert.assertEquals(0, this.statistics.getFailures());
+
+		// the server keeps failing
+		try {
+			createTileDownloader(500 + TileDownloader.MAX_ATTEMPTS).downloadImage();
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertTrue(true);
+		}
+		Assert.assertEquals(1, this.statistics.getFailures());
+	}
+
+	private TileDownloader createTileDownloader(int tileX) {
+		DownloadJob downloadJob = new DownloadJob(new Tile(tileX, 1, (byte) 10, TILE_SIZE), this.tileSource);
+		return new TileDownloader(downloadJob, GRAPHIC_FACTORY, this.statistics, this.entityTags);
+	}
+}
@@ -15,8 +15,17 @@
  */
 package org.mapsforge.map.layer.queue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.mapsforge.core.model.LatLong;
+import org.mapsforge.core.model.MapPosition;
 import org.mapsforge.core.model.Tile;
 import org.mapsforge.map.model.FixedTileSizeDisplayModel;
 import org.mapsforge.map.model.MapViewPosition;
@@ -25,6 +34,74 @@ public class JobQueueTest {
 
 	private static final int TILE_SIZE = 256;
 
+	@Test
+	public void cancelTest() throws InterruptedException {
+		MapViewPosition mapViewPosition = new MapViewPosition(new FixedTileSizeDisplayModel(256));
+		JobQueue<Job> jobQueue = new JobQueue<Job>(mapViewPosition, new FixedTileSizeDisplayModel(256));
+
+		Tile tile1 = new Tile(0, 0, (byte) 1, TILE_SIZE);
+		Tile tile2 = new Tile(1, 0, (byte) 1, TILE_SIZE);
+		Tile tile3 = new Tile(0, 1, (byte) 1, TILE_SIZE);
+		Job job1 = new Job(tile1, false);
+		Job job2 = new Job(tile2, false);
+		Job job3 = new Job(tile3, false);
+		jobQueue.setWorkingSet(new HashSet<Tile>(Arrays.asList(tile1, tile2, tile3)));
+		jobQueue.add(job1);
+		jobQueue.add(job2);
+		jobQueue.add(job3);
+		Job assigned = jobQueue.get();
+		Assert.assertEquals(2, jobQueue.size());
+
+		// queued jobs for tiles which are no longer visible are dropped
+		Set<Tile> workingSet = new HashSet<Tile>();
+		workingSet.add(assigned.tile);
+		jobQueue.setWorkingSet(workingSet);
+		Assert.assertEquals(0, jobQueue.size());
+		Assert.assertFalse(assigned.isCancelled());
+
+		// a predicted tile is not cancelled either
+		jobQueue.prefetch(Arrays.asList(new Job(assigned.tile, false)));
+		jobQueue.setWorkingSet(Collections.<Tile> emptySet());
+		Assert.assertFalse(assigned.isCancelled());
+
+		// assigned jobs for tiles which are neither visible nor predicted are cancelled
+		jobQueue.prefetch(Collections.<Job> emptyList());
+		Assert.assertTrue(assigned.isCancelled());
+		jobQueue.remove(assigned);
+	}
+
+	@Test
+	public void cancelledJobRequestedAgainTest() throws InterruptedException {
+		MapViewPosition mapViewPosition = new MapViewPosition(new FixedTileSizeDisplayModel(256));
+		JobQueue<Job> jobQueue = new JobQueue<Job>(mapViewPosition, new FixedTileSizeDisplayModel(256));
+
+		Tile tile = new Tile(0, 0, (byte) 1, TILE_SIZE);
+		Set<Tile> workingSet = Collections.singleton(tile);
+		jobQueue.setWorkingSet(workingSet);
+		jobQueue.add(new Job(tile, false));
+		Job assigned = jobQueue.get();
+
+		// the tile scrolls out of view and back while its cancelled job is still assigned
+		jobQueue.setWorkingSet(Collections.<Tile> emptySet());
+		Assert.assertTrue(assigned.isCancelled());
+		jobQueue.setWorkingSet(workingSet);
+		jobQueue.add(new Job(tile, false));
+		Assert.assertEquals(0, jobQueue.size());
+
+		jobQueue.remove(assigned);
+		Assert.assertEquals(1, jobQueue.size());
+		Job requested = jobQueue.get();
+		Assert.assertEquals(tile, requested.tile);
+		Assert.assertFalse(requested.isCancelled());
+
+		// a request is dropped if the tile is no longer visible when the cancelled job is removed
+		jobQueue.add(new Job(tile, false));
+		jobQueue.setWorkingSet(Collections.<Tile> emptySet());
+		Assert.assertTrue(requested.isCancelled());
+		jobQueue.remove(requested);
+		Assert.assertEquals(0, jobQueue.size());
+	}
+
 	@Test
 	public void jobQueueTest() throws InterruptedException {
 		MapViewPosition mapViewPosition = new MapViewPosition(new FixedTileSizeDisplayModel(256));
@@ -59,4 +136,102 @@ public class JobQueueTest {
 		jobQueue.remove(job3);
 
 	}
+
+	@Test
+	public void jobRequestedWhileAssignedTest() throws InterruptedException {
+		MapViewPosition mapViewPosition = new MapViewPosition(new FixedTileSizeDisplayModel(256));
+		JobQueue<Job> jobQueue = new JobQueue<Job>(mapViewPosition, new FixedTileSizeDisplayModel(256));
+
+		Job job = new Job(new Tile(0, 0, (byte) 0, TILE_SIZE), false);
+		jobQueue.add(job);
+		Assert.assertEquals(job, jobQueue.get());
+		Assert.assertEquals(0, jobQueue.size());
+
+		// an assigned job is not queued again until it has been removed
+		jobQueue.add(job);
+		Assert.assertEquals(0, jobQueue.size());
+		jobQueue.remove(job);
+		jobQueue.add(job);
+		Assert.assertEquals(1, jobQueue.size());
+	}
+
+	@Test
+	public void prefetchTest() throws InterruptedException {
+		MapViewPosition mapViewPosition = new MapViewPosition(new FixedTileSizeDisplayModel(256));
+		mapViewPosition.setMapPosition(new MapPosition(new LatLong(0, 0), (byte) 2), false);
+		JobQueue<Job> jobQueue = new JobQueue<Job>(mapViewPosition, new FixedTileSizeDisplayModel(256));
+
+		Job job1 = new Job(new Tile(1, 1, (byte) 2, TILE_SIZE), false);
+		Job job2 = new Job(new Tile(3, 3, (byte) 2, TILE_SIZE), false);
+		Job job3 = new Job(new Tile(0, 0, (byte) 2, TILE_SIZE), false);
+		jobQueue.prefetch(Arrays.asList(job1, job2));
+		jobQueue.add(job3);
+		Assert.assertEquals(3, jobQueue.size());
+
+		// a new prediction cancels the queued prefetch jobs that are no longer predicted
+		jobQueue.prefetch(Arrays.asList(job1));
+		Assert.assertEquals(2, jobQueue.size());
+
+		// prefetch jobs rank behind jobs for visible tiles, even if they are closer to the map center
+		Assert.assertEquals(job3, jobQueue.get());
+		Assert.assertEquals(job1, jobQueue.get());
+		jobQueue.remove(job1);
+		jobQueue.remove(job3);
+
+		// a prefetch job becomes a regular job when it is added and is not cancelled any more
+		jobQueue.prefetch(Arrays.asList(job1, job2));
+		jobQueue.add(job2);
+		jobQueue.prefetch(Collections.<Job> emptyList());
+		Assert.assertEquals(1, jobQueue.size());
+		Assert.assertEquals(job2, jobQueue.get());
+	}
+
+	@Test
+	public void rescheduleTest() throws InterruptedException {
+		MapViewPosition mapViewPosition = new MapViewPosition(new FixedTileSizeDisplayModel(256));
+		mapViewPosition.setMapPosition(new MapPosition(new LatLong(0, 0), (byte) 2), false);
+		JobQueue<Job> jobQueue = new JobQueue<Job>(mapViewPosition, new FixedTileSizeDisplayModel(256));
+
+		Job job1 = new Job(new Tile(0, 0, (byte) 2, TILE_SIZE), false);
+		Job job2 = new Job(new Tile(1, 1, (byte) 2, TILE_SIZE), false);
+		Job job3 = new Job(new Tile(3, 3, (byte) 2, TILE_SIZE), false);
+		jobQueue.add(job1);
+		jobQueue.add(job2);
+		Assert.assertEquals(job2, jobQueue.get());
+
+		jobQueue.remove(job2);
+
+		// the priorities of queued jobs must follow the map position
+		jobQueue.add(job3);
+		mapViewPosition.setMapPosition(new MapPosition(new LatLong(-80, 170), (byte) 2), false);
+		Assert.assertEquals(job3, jobQueue.get());
+		Assert.assertEquals(job1, jobQueue.get());
+		Assert.assertEquals(0, jobQueue.size());
+	}
+
+	@Test
+	public void signalTest() throws InterruptedException {
+		MapViewPosition mapViewPosition = new MapViewPosition(new FixedTileSizeDisplayModel(256));
+		final JobQueue<Job> jobQueue = new JobQueue<Job>(mapViewPosition, new FixedTileSizeDisplayModel(256));
+		final Job job = new Job(new Tile(0, 0, (byte) 0, TILE_SIZE), false);
+		final List<Job> results = new ArrayList<Job>();
+
+		Thread worker = new Thread() {
+			@Override
+			public void run() {
+				try {
+					results.add(jobQueue.get());
+				} catch (InterruptedException e) {
+					// the result stays empty
+				}
+			}
+		};
+		worker.start();
+		jobQueue.add(job);
+		worker.join(5000);
+
+		Assert.assertFalse(worker.isAlive());
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(job, results.get(0));
+	}
 }
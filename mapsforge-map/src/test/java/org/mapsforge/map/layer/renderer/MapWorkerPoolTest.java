@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.renderer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MapWorkerPoolTest {
+	private static final long MB = 1024 * 1024;
+
+	@Test
+	public void calculateNumberOfThreadsTest() {
+		// one thread more than processors if there is enough memory
+		Assert.assertEquals(5, MapWorkerPool.calculateNumberOfThreads(4, 1024 * MB));
+		Assert.assertEquals(2, MapWorkerPool.calculateNumberOfThreads(1, 1024 * MB));
+
+		// limited by the available memory
+		Assert.assertEquals(2, MapWorkerPool.calculateNumberOfThreads(8, 64 * MB));
+
+		// never less than one thread
+		Assert.assertEquals(1, MapWorkerPool.calculateNumberOfThreads(8, 16 * MB));
+		Assert.assertEquals(1, MapWorkerPool.calculateNumberOfThreads(0, 0));
+	}
+}
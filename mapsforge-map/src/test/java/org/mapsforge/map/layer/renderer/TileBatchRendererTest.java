@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.renderer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.graphics.GraphicFactory;
+import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.core.model.LatLong;
+import org.mapsforge.core.model.Tile;
+import org.mapsforge.map.awt.AwtGraphicFactory;
+import org.mapsforge.map.layer.cache.InMemoryTileCache;
+import org.mapsforge.map.model.DisplayModel;
+import org.mapsforge.map.reader.MapDataStore;
+import org.mapsforge.map.reader.MapReadResult;
+import org.mapsforge.map.rendertheme.InternalRenderTheme;
+
+public class TileBatchRendererTest {
+	private static final BoundingBox BOUNDING_BOX = new BoundingBox(52.4, 13.2, 52.6, 13.6);
+	private static final GraphicFactory GRAPHIC_FACTORY = AwtGraphicFactory.INSTANCE;
+
+	private static class EmptyMapDataStore implements MapDataStore {
+		@Override
+		public BoundingBox boundingBox() {
+			return BOUNDING_BOX;
+		}
+
+		@Override
+		public void close() {
+			// do nothing
+		}
+
+		@Override
+		public long getDataTimestamp(Tile tile) {
+			return 0;
+		}
+
+		@Override
+		public MapReadResult readMapData(Tile tile) {
+			return null;
+		}
+
+		@Override
+		public LatLong startPosition() {
+			return BOUNDING_BOX.getCenterPoint();
+		}
+
+		@Override
+		public Byte startZoomLevel() {
+			return null;
+		}
+
+		@Override
+		public boolean supportsTile(Tile tile) {
+			return tile.getBoundingBox().intersects(BOUNDING_BOX);
+		}
+	}
+
+	@Test
+	public void renderTest() throws InterruptedException {
+		DisplayModel displayModel = new DisplayModel();
+		long tileCount = TileBatchRenderer.getTileCount(BOUNDING_BOX, (byte) 8, (byte) 12, displayModel.getTileSize());
+		InMemoryTileCache tileCache = new InMemoryTileCache((int) tileCount);
+		TileBatchRenderer tileBatchRenderer = new TileBatchRenderer(new EmptyMapDataStore(), tileCache,
+				InternalRenderTheme.OSMARENDER, displayModel, GRAPHIC_FACTORY);
+		tileBatchRenderer.setNumberOfThreads(2);
+
+		RenderStatistics renderStatistics = tileBatchRenderer.render(BOUNDING_BOX, (byte) 8, (byte) 12);
+		Assert.assertEquals(tileCount, renderStatistics.getTotalTiles());
+		Assert.assertEquals(tileCount, renderStatistics.getRenderedTiles());
+		Assert.assertEquals(0, renderStatistics.getFailures());
+		Assert.assertTrue(renderStatistics.getTilesPerSecond() > 0);
+
+		// a second run skips the tiles which have already been rendered
+		renderStatistics = tileBatchRenderer.render(BOUNDING_BOX, (byte) 8, (byte) 12);
+		Assert.assertEquals(0, renderStatistics.getRenderedTiles());
+		Assert.assertEquals(tileCount, renderStatistics.getSkippedTiles());
+
+		tileBatchRenderer.setOverwrite(true);
+		renderStatistics = tileBatchRenderer.render(BOUNDING_BOX, (byte) 12, (byte) 12);
+		Assert.assertEquals(renderStatistics.getTotalTiles(), renderStatistics.getRenderedTiles());
+		tileBatchRenderer.destroy();
+		tileCache.destroy();
+	}
+
+	@Test
+	public void zoomLevelTest() throws InterruptedException {
+		TileBatchRenderer tileBatchRenderer = new TileBatchRenderer(new EmptyMapDataStore(), new InMemoryTileCache(1),
+				InternalRenderTheme.OSMARENDER, new DisplayModel(), GRAPHIC_FACTORY);
+		try {
+			tileBatchRenderer.render(BOUNDING_BOX, (byte) 10, (byte) 9);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(true);
+		}
+		tileBatchRenderer.destroy();
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.layer.renderer;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.core.model.Tile;
+import org.mapsforge.core.util.MercatorProjection;
+
+public class TileSequenceTest {
+	private static final int TILE_SIZE = 256;
+
+	@Test
+	public void emptyTest() {
+		TileSequence tileSequence = new TileSequence(new BoundingBox(0, 0, 1, 1), (byte) 5, (byte) 4, TILE_SIZE);
+		Assert.assertEquals(0, tileSequence.getSize());
+		Assert.assertFalse(tileSequence.hasNext());
+	}
+
+	@Test
+	public void tileSequenceTest() {
+		BoundingBox boundingBox = new BoundingBox(47.2, 5.8, 55.1, 15.1);
+		TileSequence tileSequence = new TileSequence(boundingBox, (byte) 0, (byte) 9, TILE_SIZE);
+
+		Set<Tile> tiles = new HashSet<Tile>();
+		Tile previous = null;
+		while (tileSequence.hasNext()) {
+			Tile tile = tileSequence.next();
+			Assert.assertTrue(tiles.add(tile));
+			Assert.assertTrue(boundingBox.intersects(tile.getBoundingBox()));
+
+			if (previous != null && previous.zoomLevel == tile.zoomLevel) {
+				// consecutive tiles are at most one block apart
+				Assert.assertTrue(Math.abs(tile.tileX - previous.tileX) < 2 * TileSequence.BLOCK_SIZE);
+				Assert.assertTrue(Math.abs(tile.tileY - previous.tileY) < 2 * TileSequence.BLOCK_SIZE);
+			} else if (previous != null) {
+				Assert.assertEquals(previous.zoomLevel + 1, tile.zoomLevel);
+			}
+			previous = tile;
+		}
+		Assert.assertEquals(tileSequence.getSize(), tiles.size());
+		Assert.assertEquals(9, previous.zoomLevel);
+
+		// all tiles of the bounding box are enumerated
+		byte zoomLevel = 9;
+		int tilesX = MercatorProjection.longitudeToTileX(boundingBox.maxLongitude, zoomLevel)
+				- MercatorProjection.longitudeToTileX(boundingBox.minLongitude, zoomLevel) + 1;
+		int tilesY = MercatorProjection.latitudeToTileY(boundingBox.minLatitude, zoomLevel)
+				- MercatorProjection.latitudeToTileY(boundingBox.maxLatitude, zoomLevel) + 1;
+		Assert.assertEquals(tilesX * tilesY, new TileSequence(boundingBox, zoomLevel, zoomLevel, TILE_SIZE).getSize());
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.rendertheme.rule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.core.model.Tag;
+import org.mapsforge.map.rendertheme.renderinstruction.RenderInstruction;
+
+public class MatchingCacheTest {
+	private static MatchingCacheKey createKey(int i) {
+		List<Tag> tags = new ArrayList<Tag>();
+		tags.add(new Tag("key", Integer.toString(i)));
+		return new MatchingCacheKey(tags, (byte) 10, Closed.NO);
+	}
+
+	@Test
+	public void capacityTest() {
+		MatchingCache matchingCache = new MatchingCache(16);
+		List<RenderInstruction> renderInstructions = Collections.emptyList();
+
+		for (int i = 0; i < 100; ++i) {
+			matchingCache.put(createKey(i), renderInstructions);
+			Assert.assertTrue(matchingCache.size() <= 16);
+			Assert.assertSame(renderInstructions, matchingCache.get(createKey(i)));
+		}
+
+		matchingCache.clear();
+		Assert.assertEquals(0, matchingCache.size());
+		Assert.assertNull(matchingCache.get(createKey(99)));
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.map.rendertheme.rule;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Stack;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.mapsforge.core.model.Tag;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+public class RuleIndexTest {
+	private static final String[] RULES = { "e='way' k='highway' v='primary|secondary'",
+			"e='way' k='highway' v='*' zoom-min='14'", "e='way' k='building' v='*' closed='yes'",
+			"e='node' k='place' v='city'", "e='any' k='*' v='yes'", "e='way' k='oneway' v='~|no'",
+			"e='way' k='waterway|natural' v='*'", "e='node' k='amenity' v='parking' zoom-max='10'",
+			"e='way' k='*' v='*' closed='no'", "e='way' k='landuse' v='forest'" };
+
+	private static Rule createRule(String attributes) throws XmlPullParserException, IOException {
+		XmlPullParser pullParser = new KXmlParser();
+		pullParser.setInput(new StringReader("<rule " + attributes + "/>"));
+		pullParser.nextTag();
+		return new RuleBuilder("rule", pullParser, new Stack<Rule>()).build();
+	}
+
+	private static List<Rule> createRules() throws XmlPullParserException, IOException {
+		List<Rule> rules = new ArrayList<Rule>();
+		for (String attributes : RULES) {
+			rules.add(createRule(attributes));
+		}
+		return rules;
+	}
+
+	private static void verifyNode(List<Rule> rules, RuleIndex ruleIndex, List<Tag> tags, byte zoomLevel) {
+		BitSet candidates = ruleIndex.getNodeCandidates(tags, zoomLevel);
+		for (int i = 0; i < rules.size(); ++i) {
+			if (rules.get(i).matchesNode(tags, zoomLevel)) {
+				Assert.assertTrue(candidates.get(i));
+			}
+		}
+	}
+
+	private static void verifyWay(List<Rule> rules, RuleIndex ruleIndex, List<Tag> tags, byte zoomLevel, Closed closed) {
+		BitSet candidates = ruleIndex.getWayCandidates(tags, zoomLevel, closed);
+		for (int i = 0; i < rules.size(); ++i) {
+			if (rules.get(i).matchesWay(tags, zoomLevel, closed)) {
+				Assert.assertTrue(candidates.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void candidatesTest() throws XmlPullParserException, IOException {
+		List<Rule> rules = createRules();
+		RuleIndex ruleIndex = RuleIndex.create(rules);
+		Assert.assertNotNull(ruleIndex);
+
+		List<Tag> highwayTags = Arrays.asList(new Tag("highway", "primary"), new Tag("oneway", "yes"));
+		BitSet candidates = ruleIndex.getWayCandidates(highwayTags, (byte) 12, Closed.NO);
+		Assert.assertEquals(BitSet.valueOf(new long[] { 0x131 }), candidates);
+
+		candidates = ruleIndex.getWayCandidates(highwayTags, (byte) 14, Closed.YES);
+		Assert.assertEquals(BitSet.valueOf(new long[] { 0x33 }), candidates);
+
+		List<Tag> nodeTags = Arrays.asList(new Tag("place", "city"), new Tag("amenity", "parking"));
+		candidates = ruleIndex.getNodeCandidates(nodeTags, (byte) 10);
+		Assert.assertEquals(BitSet.valueOf(new long[] { 0x88 }), candidates);
+		candidates = ruleIndex.getNodeCandidates(nodeTags, (byte) 11);
+		Assert.assertEquals(BitSet.valueOf(new long[] { 0x8 }), candidates);
+	}
+
+	@Test
+	public void createTest() throws XmlPullParserException, IOException {
+		List<Rule> rules = createRules();
+		Assert.assertNull(RuleIndex.create(rules.subList(0, RuleIndex.MIN_RULES - 1)));
+		Assert.assertNotNull(RuleIndex.create(rules.subList(0, RuleIndex.MIN_RULES)));
+	}
+
+	@Test
+	public void matchingRulesAreCandidatesTest() throws XmlPullParserException, IOException {
+		List<Rule> rules = createRules();
+		RuleIndex ruleIndex = RuleIndex.create(rules);
+
+		List<List<Tag>> tagLists = new ArrayList<List<Tag>>();
+		tagLists.add(new ArrayList<Tag>());
+		tagLists.add(Arrays.asList(new Tag("highway", "secondary"), new Tag("oneway", "no")));
+		tagLists.add(Arrays.asList(new Tag("building", "yes")));
+		tagLists.add(Arrays.asList(new Tag("natural", "water"), new Tag("landuse", "forest")));
+		tagLists.add(Arrays.asList(new Tag("place", "city"), new Tag("amenity", "parking")));
+		tagLists.add(Arrays.asList(new Tag("foo", "bar")));
+
+		for (List<Tag> tags : tagLists) {
+			for (byte zoomLevel = 0; zoomLevel < 22; ++zoomLevel) {
+				verifyNode(rules, ruleIndex, tags, zoomLevel);
+				verifyWay(rules, ruleIndex, tags, zoomLevel, Closed.YES);
+				verifyWay(rules, ruleIndex, tags, zoomLevel, Closed.NO);
+			}
+		}
+	}
+}